@@ -0,0 +1,100 @@
+package com.telemetry;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Update throughput of TelemetryManager against the boxed ArrayList/HashMap
+ * store it replaced. Run with "ant bench".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TelemetryManager_bench {
+    private static final int CHANNELS = 20;
+
+    private TelemetryManager manager;
+    private BoxedStore boxed;
+    private int channel;
+    private double value;
+
+    @Setup public void setup(final Blackhole bh) {
+        manager = new TelemetryManager();
+        boxed = new BoxedStore();
+        for(int i = 0; i < CHANNELS; i++) {
+            TelemetryListener sink = new TelemetryListener() {
+                public void update(double data) {
+                    bh.consume(data);
+                }
+            };
+            manager.registerListener(i, sink);
+            boxed.registerListener(i, sink);
+            manager.update(i, 0.0);
+            boxed.update(i, 0.0);
+        }
+    }
+
+    @Benchmark public void arrayStore() {
+        channel = (channel + 1) % CHANNELS;
+        value += 0.5;
+        manager.update(channel, value);
+    }
+
+    @Benchmark public void boxedStore() {
+        channel = (channel + 1) % CHANNELS;
+        value += 0.5;
+        boxed.update(channel, value);
+    }
+
+    /**
+     * The store as it was before: boxed values, boxed listener map keys,
+     * linked listener lists and a boxed graph sample ring per channel
+     */
+    static class BoxedStore {
+        private final List<Double> telemetry = new ArrayList<Double>();
+        private final Map<Integer,List<TelemetryListener>> listenerMap =
+            new HashMap<Integer,List<TelemetryListener>>();
+
+        void update(int id, double value) {
+            while(id >= telemetry.size()) {
+                registerListener(telemetry.size(), new BoxedSamples());
+                telemetry.add(0.0);
+            }
+            telemetry.set(id, value);
+            List<TelemetryListener> listeners = listenerMap.get(id);
+            if(listeners == null) return;
+            for(TelemetryListener tl : listeners) {
+                tl.update(value);
+            }
+        }
+
+        void registerListener(int id, TelemetryListener tl) {
+            List<TelemetryListener> listeners = listenerMap.get(id);
+            if(listeners == null) {
+                listeners = new LinkedList<TelemetryListener>();
+                listenerMap.put(id, listeners);
+            }
+            listeners.add(tl);
+        }
+    }
+
+    static class BoxedSamples implements TelemetryListener {
+        private final List<Double> data = new ArrayList<Double>();
+        private int oldestPosition;
+
+        BoxedSamples() {
+            for(int i = 0; i < 1000; i++) data.add(0.0d);
+        }
+
+        public void update(double d) {
+            data.set(oldestPosition, d);
+            oldestPosition = (oldestPosition + 1) % 1000;
+        }
+    }
+}
@@ -11,12 +11,17 @@ import com.ui.*;
 import com.telemetry.*;
 import com.xml;
 import com.graph.DataSource;
+import com.logging.RotationPolicy;
+import com.stream.StreamProtocol;
+import com.stream.TelemetryServer;
 
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.nio.file.*;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.*;
 
 import java.awt.geom.Point2D;
@@ -34,11 +39,22 @@ public class Context {
     public Theme theme;
     public SettingList settingList;
     public TelemetryManager telemetry;
-    public TelemetryLogger telemLog;
     public CommsMonitor commsMonitor;
 
     private WaypointList waypoint;
-    private SerialPort port;
+    private final List<SerialLink> links = new CopyOnWriteArrayList<SerialLink>();
+    private final List<TelemetryLogger> telemLogs =
+        new CopyOnWriteArrayList<TelemetryLogger>();
+    private int logPeriod = TelemetryLogger.DEFAULT_LOG_PERIOD_MS;
+    private final List<WaypointListener> fleetListeners =
+        new CopyOnWriteArrayList<WaypointListener>();
+    private SerialLink selectedLink;
+    private TelemetryReplay replay;
+    private final SensorEventIndex replayEvents = new SensorEventIndex();
+    private DerivedTelemetry derived;
+    private TelemetryMonitor monitor;
+    private TelemetryServer streamServer;
+    private boolean reloadingWaypoints;
     private ResourceBundle resources;
     private Properties persist;
     private String APMVersion;
@@ -50,7 +66,6 @@ public class Context {
     
     public Context(Dashboard dashboard) {
         dash        = dashboard;
-        port        = null;
         connected   = false;
 
         Calendar cal = Calendar.getInstance();
@@ -90,11 +105,20 @@ public class Context {
         // Instance these classes after the resources have been loaded
         waypoint    = new WaypointList();
         theme       = new Theme(this);
-        sender      = new SerialSender(this);
-        parser      = new SerialParser(this, waypoint);
-        settingList = new SettingList(this);
         telemetry   = new TelemetryManager(this);
-        telemLog    = new TelemetryLogger(this, telemetry);
+        LatencyTrace.getInstance().setEnabled(
+            Boolean.valueOf(getResource("latency_trace", "true").trim()));
+        telemetry.setLatencyTrace(LatencyTrace.getInstance());
+        Runtime.getRuntime().addShutdownHook(new Thread(this::writeLatency));
+        try {
+            telemetry.getDispatcher().setFrameRate(Integer.parseInt(
+                getResource("ui_frame_rate",
+                    String.valueOf(TelemetryDispatcher.DEFAULT_FRAME_RATE)).trim()));
+        } catch (NumberFormatException e) {
+            ioerr.warning("Bad ui_frame_rate " + e);
+        }
+        selectLink(addLink().getId());
+        settingList = new SettingList(this);
 
         loadHomeLocation();
         
@@ -102,73 +126,142 @@ public class Context {
         waypoint.addListener(new WaypointListener(){
             @Override
             public void changed(Source s, Dot point, int index, Action action) {
-                if(s == Source.REMOTE) return;
+                if(reloadingWaypoints) return;
+                // Keep the selected vehicle's copy of the mission in step with
+                // the editor; remote sourced changes are mirrored but not sent
+                WaypointList linkList = selectedLink.getWaypointList();
                 Message tosend;
                 switch(action){
                     case ADD:
+                        linkList.add(new Dot(point), index, Source.REMOTE);
                         tosend = Message.addWaypoint((byte)(index&0xff), point);
                         break;
                     case SET:
+                        linkList.set(new Dot(point), index, Source.REMOTE);
                         tosend = Message.setWaypoint((byte)(index&0xff), point);
                         break;
                     case DELETE:
+                        linkList.remove(index, Source.REMOTE);
                         tosend = Message.deleteWaypoint((byte)(index&0xff));
                         break;
                     default:
                         return;
                 }
+                if(s == Source.REMOTE) return;
                 sender.sendMessage(tosend);
             }
             @Override
             public void targetChanged(Source s, int targetIndex) {
+                if(reloadingWaypoints) return;
+                selectedLink.getWaypointList().setTarget(targetIndex, Source.REMOTE);
                 if(s == Source.REMOTE) return;
                 sender.sendMessage(Message.setTarget((byte) targetIndex));
             }
             @Override
             public void loopModeSet(Source s, boolean isLooped) {
+                if(reloadingWaypoints) return;
+                selectedLink.getWaypointList().setLooped(isLooped, Source.REMOTE);
                 if(s == Source.REMOTE) return;
                 sender.sendMessage(Message.setLooping((byte) ((isLooped)?1:0) ));
             }
         });
 
-        final double lastLatitude[] = new double[2];
-        telemetry.registerListener(Serial.LATITUDE, new TelemetryListener() {
-            public void update(double data) {
-                lastLatitude[0] = data;
+        // The rover and home markers are reused for every commit; the
+        // waypoint list keeps the reference and hands out copies. Moving
+        // them repaints the map, so they are updated once per frame.
+        final Dot rover = waypoint.getRover();
+        telemetry.registerUiListener(TelemetryRecord.Kind.POSITION,
+                                     new TelemetryRecord.Listener() {
+            public void update(TelemetryRecord position) {
+                rover.setLatitude(position.get(TelemetryRecord.LATITUDE));
+                rover.setLongitude(position.get(TelemetryRecord.LONGITUDE));
+                waypoint.setRover(rover);
             }
         });
-        telemetry.registerListener(Serial.LONGITUDE, new TelemetryListener() {
-            public void update(double data) {
-                Dot location = waypoint.getRover();
-                location.setLatitude(lastLatitude[0]);
-                location.setLongitude(data);
-                waypoint.setRover(location);
+        final Dot home = waypoint.getHome();
+        telemetry.registerUiListener(TelemetryRecord.Kind.HOME,
+                                     new TelemetryRecord.Listener() {
+            public void update(TelemetryRecord homeRecord) {
+                home.setLatitude(homeRecord.get(TelemetryRecord.LATITUDE));
+                home.setLongitude(homeRecord.get(TelemetryRecord.LONGITUDE));
+                waypoint.setHome(home);
             }
         });
-        telemetry.registerListener(Serial.HOMELATITUDE, new TelemetryListener() {
-            public void update(double data) {
-                lastLatitude[1] = data;
+        derived = new DerivedTelemetry();
+        try (Reader formulas = new FileReader(getResource("derivedTelemetry"))) {
+            derived.load(formulas);
+            derived.attach(telemetry);
+        } catch (Exception e) {
+            ioerr.severe("Can't load derived telemetry " + e);
+        }
+        monitor = new TelemetryMonitor(this);
+        startStreamServer();
+    }
+
+    /**
+     * Serves the display store to other processes if a port is configured
+     */
+    private void startStreamServer() {
+        try {
+            int port = Integer.parseInt(getResource("telemetry_server_port", "0").trim());
+            if(port <= 0) return;
+            streamServer = new TelemetryServer(telemetry, new InetSocketAddress(
+                getResource("telemetry_server_address", "127.0.0.1").trim(), port),
+                TelemetryServer.DEFAULT_BUFFER_BYTES);
+        } catch (IOException | NumberFormatException e) {
+            ioerr.warning("Can't start telemetry server " + e);
+            return;
+        }
+        ioerr.info("Serving telemetry on port " + streamServer.getPort());
+
+        waypoint.addListener(new WaypointListener() {
+            @Override
+            public void changed(Source s, Dot point, int index, Action action) {
+                byte kind = (action == Action.ADD) ? StreamProtocol.WAYPOINT_ADD
+                          : (action == Action.SET) ? StreamProtocol.WAYPOINT_SET
+                          : StreamProtocol.WAYPOINT_DELETE;
+                streamServer.publishWaypoint(kind, index, point.getLatitude(),
+                    point.getLongitude(), point.getAltitude());
             }
-        });
-        telemetry.registerListener(Serial.HOMELONGITUDE, new TelemetryListener() {
-            public void update(double data) {
-                Dot location = waypoint.getHome();
-                location.setLatitude(lastLatitude[1]);
-                location.setLongitude(data);
-                waypoint.setHome(location);
+            @Override
+            public void targetChanged(Source s, int target) {
+                streamServer.publishWaypoint(StreamProtocol.WAYPOINT_TARGET,
+                    target, 0, 0, (short) 0);
             }
-        });
-        telemetry.registerListener(Serial.ALTITUDE, new TelemetryListener() {
-            public void update(double altitude) {
-                double homeAlt = telemetry.getTelemetry(Serial.HOMEALTITUDE);
-                if(homeAlt != 0.0d){
-                    telemetry.updateTelemetry(Serial.DELTAALTITUDE,
-                        altitude - homeAlt
-                        );
-                }
+            @Override
+            public void homeMoved(Source s, Dot home) {
+                streamServer.publishWaypoint(StreamProtocol.WAYPOINT_HOME, -1,
+                    home.getLatitude(), home.getLongitude(), home.getAltitude());
+            }
+            @Override
+            public void loopModeSet(Source s, boolean isLooped) {
+                streamServer.publishWaypoint(StreamProtocol.WAYPOINT_LOOP,
+                    isLooped ? 1 : 0, 0, 0, (short) 0);
             }
         });
     }
+
+    /**
+     * Returns the server streaming telemetry to other processes, or null if
+     * it is not running
+     */
+    public TelemetryServer getTelemetryServer() {
+        return streamServer;
+    }
+
+    /**
+     * Returns the engine computing derived channels in the display store
+     */
+    public DerivedTelemetry getDerivedTelemetry() {
+        return derived;
+    }
+
+    /**
+     * Returns the monitor raising alarms on the display store
+     */
+    public TelemetryMonitor getTelemetryMonitor() {
+        return monitor;
+    }
     
     public void toggleLocale() {
         String current = (String) persist.get("subject");
@@ -223,23 +316,249 @@ public class Context {
     }
     
     public void updatePort(SerialPort newPort) {
-        closePort();
-        port = newPort;
-        sender.start();
-        parser.updatePort();
-        connected = true;
+        updatePort(selectedLink, newPort, Serial.BAUD);
+    }
+    public void updatePort(SerialLink link, SerialPort newPort, int baud) {
+        link.open(newPort, baud);
     }
     public void closePort() {
-        sender.stop();
-        port = null;
-        connected = false;
+        closePort(selectedLink);
+    }
+    public void closePort(SerialLink link) {
+        link.close();
+    }
+    /**
+     * Called by a link whenever its port is attached or detached, including
+     * outages handled by its supervisor.
+     */
+    public void linkStateChanged(SerialLink link) {
+        if(link == selectedLink) {
+            connected = link.isConnected();
+        }
     }
     public SerialPort port() {
-        return port;
+        return selectedLink.port();
+    }
+
+    /**
+     * Creates a new, unconnected vehicle link. Listeners registered with
+     * addFleetListener are attached to the new link's waypoint list, and
+     * its telemetry is logged on its own, to the session's log name
+     * followed by "-link" and the link id.
+     * @return - the new link
+     */
+    public SerialLink addLink() {
+        SerialLink link = new SerialLink(this, links.size());
+        for(WaypointListener l : fleetListeners) {
+            link.getWaypointList().addListener(l);
+        }
+        TelemetryLogger log = new TelemetryLogger(this, link.getTelemetry(),
+            instanceLogName + "-link" + link.getId());
+        log.setPeriod(logPeriod);
+        telemLogs.add(log);
+        links.add(link);
+        return link;
+    }
+
+    /**
+     * Sampling period of the PERIODIC mode telemetry logs, in ms
+     */
+    public int getLogPeriod() {
+        return logPeriod;
+    }
+
+    /**
+     * Sets the sampling period of every vehicle's telemetry log
+     */
+    public void setLogPeriod(int period) {
+        logPeriod = period;
+        for(TelemetryLogger log : telemLogs) {
+            log.setPeriod(period);
+        }
+    }
+
+    /**
+     * Returns every vehicle link, connected or not, in creation order.
+     */
+    public List<SerialLink> getLinks() {
+        return Collections.unmodifiableList(links);
+    }
+
+    public SerialLink getSelectedLink() {
+        return selectedLink;
+    }
+
+    /**
+     * Returns the telemetry history of the selected vehicle
+     */
+    public HistoryStore getHistory() {
+        return selectedLink.getHistory();
+    }
+
+    /**
+     * Returns the telemetry statistics of the selected vehicle
+     */
+    public TelemetryStats getStats() {
+        return selectedLink.getStats();
+    }
+
+    /**
+     * Returns the sensor events of the session on display, the replay's
+     * while one is running, or null before a vehicle is selected
+     */
+    public SensorEventIndex getSensorEvents() {
+        if(replay != null) return replayEvents;
+        return (selectedLink == null) ? null : selectedLink.getSensorEvents();
+    }
+
+    /**
+     * Switches the map and widgets over to the vehicle on link `id`. The
+     * display telemetry store and waypoint list are reloaded from the
+     * link's own copies without sending anything to the vehicle; derived
+     * channels, which the link stores do not have, are recomputed from the
+     * reloaded inputs. Alarm rules start over, so one vehicle's samples can
+     * not trip them for another.
+     * @param id - index of the link to select
+     */
+    public void selectLink(int id) {
+        SerialLink link = links.get(id);
+        boolean replaying = endReplay();
+        if(link == selectedLink && !replaying) return;
+
+        if(selectedLink != null) {
+            selectedLink.setSelected(false);
+        }
+
+        if(monitor != null) monitor.setPaused(true);
+        TelemetryManager linkTelemetry = link.getTelemetry();
+        telemetry.clearTimes();
+        for(int i = 0; i < linkTelemetry.maxIndex(); i++) {
+            if(derived != null && derived.isOutput(i)) continue;
+            telemetry.update(i, linkTelemetry.get(i),
+                             linkTelemetry.getSentTime(i),
+                             linkTelemetry.getReceivedTime(i));
+        }
+        telemetry.commit();
+        telemetry.setHistory(link.getHistory());
+        if(monitor != null) monitor.setPaused(false);
+
+        WaypointList linkList = link.getWaypointList();
+        reloadingWaypoints = true;
+        try {
+            waypoint.clear(WaypointListener.Source.REMOTE);
+            for(int i = 0; i < linkList.size(); i++) {
+                waypoint.add(linkList.get(i).dot(), i,
+                        WaypointListener.Source.REMOTE);
+            }
+            waypoint.setLooped(linkList.getLooped(),
+                    WaypointListener.Source.REMOTE);
+            waypoint.setTarget(linkList.getTarget(),
+                    WaypointListener.Source.REMOTE);
+            waypoint.setRover(linkList.getRover(),
+                    WaypointListener.Source.REMOTE);
+        } finally {
+            reloadingWaypoints = false;
+        }
+
+        selectedLink = link;
+        parser    = link.getParser();
+        sender    = link.getSender();
+        connected = link.isConnected();
+        link.setSelected(true);
+    }
+
+    /**
+     * Drives the map and widgets from a recorded session instead of the
+     * selected vehicle, which keeps running and logging but stops being
+     * mirrored into the display store. Alarms pause so the replay does not
+     * stop or alert the live vehicle.
+     * @param log - first segment of the session's telemetry log
+     * @return - the replay, paused at the start of the session
+     */
+    public TelemetryReplay startReplay(Path log) throws IOException {
+        endReplay();
+        selectedLink.setSelected(false);
+        monitor.setPaused(true);
+        telemetry.setHistory(null);
+        try {
+            replay = new TelemetryReplay(log, telemetry);
+            replayEvents.clear();
+            replayEvents.attach(telemetry);
+        } catch (IOException e) {
+            //back to live, reloading the display from the vehicle
+            monitor.setPaused(false);
+            SerialLink live = selectedLink;
+            selectedLink = null;
+            selectLink(live.getId());
+            throw e;
+        }
+        return replay;
+    }
+
+    /**
+     * Ends any replay and returns the display to the selected vehicle
+     */
+    public void stopReplay() {
+        selectLink(selectedLink.getId());
+    }
+
+    /**
+     * Returns the replay driving the display, or null when live
+     */
+    public TelemetryReplay getReplay() {
+        return replay;
+    }
+
+    private boolean endReplay() {
+        if(replay == null) return false;
+        replay.close();
+        replay = null;
+        replayEvents.detach();
+        monitor.setPaused(false);
+        return true;
+    }
+
+    /**
+     * Register a viewer of every vehicle's waypoint list, such as a map
+     * layer overlaying the positions of vehicles that are not selected.
+     */
+    public void addFleetListener(WaypointListener l) {
+        fleetListeners.add(l);
+        for(SerialLink link : links) {
+            link.getWaypointList().addListener(l);
+        }
     }
     public String getInstanceLogName() {
         return instanceLogName;
     }
+
+    //the trace covers every link, so it is written once for the session
+    private void writeLatency() {
+        LatencyTrace trace = LatencyTrace.getInstance();
+        if(!trace.isEnabled()
+        || trace.getCount(LatencyTrace.Stage.PORT_READ) == 0) return;
+        Path path = Paths.get("log", instanceLogName + LatencyTrace.EXTENSION);
+        try (Writer out = Files.newBufferedWriter(path)) {
+            trace.write(out);
+        } catch (IOException ex) {
+            System.err.println(ex);
+        }
+    }
+    /**
+     * Rotation for the session's log files, from the log_rotate_mb,
+     * log_rotate_minutes and log_compress resources
+     */
+    public RotationPolicy getLogRotation() {
+        try {
+            long mb = Long.parseLong(getResource("log_rotate_mb", "0").trim());
+            long minutes = Long.parseLong(getResource("log_rotate_minutes", "0").trim());
+            boolean compress = Boolean.parseBoolean(
+                getResource("log_compress", "true").trim());
+            return new RotationPolicy(mb * 1024 * 1024, minutes * 60 * 1000, compress);
+        } catch (NumberFormatException e) {
+            return RotationPolicy.NEVER;
+        }
+    }
     public ResourceBundle loadResourceBundle(String name) {
         return ResourceBundle.getBundle(name, locale);
     }
@@ -293,7 +612,7 @@ public class Context {
         return telemetry.getDataSources();
     }
     public void onConnection() {
-        sender.sendWaypointList();
+        selectedLink.onConnection();
     }
     
     /**
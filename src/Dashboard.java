@@ -3,9 +3,10 @@ package com;
 import com.logging.*;
 import com.map.MapPanel;
 import com.map.WaypointList;
+import com.serial.LinkSelectPanel;
 import com.serial.Serial;
-import com.serial.SerialConnectPanel;
 import com.serial.SerialEventListener;
+import com.serial.SerialLink;
 import com.serial.SerialParser;
 import com.serial.SerialSender;
 import com.telemetry.*;
@@ -27,6 +28,7 @@ import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.awt.Point;
 import java.io.*;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Calendar;
@@ -58,7 +60,7 @@ public class Dashboard implements Runnable {
     public GPSWidget gpsWidget;
     public BumperWidget bumperWidget;
     public MapPanel mapPanel;
-    public SerialConnectPanel serialPanel;
+    public LinkSelectPanel serialPanel;
     
     //Logging
     private final Logger seriallog = Logger.getLogger("d.serial");
@@ -115,7 +117,9 @@ public class Dashboard implements Runnable {
         root.addHandler(console);
 
         try {
-            Handler file = new FileHandler("log/"+context.getInstanceLogName()+".log");
+            Handler file = new RotatingFileHandler(
+                Paths.get("log", context.getInstanceLogName()+".log"),
+                context.getLogRotation());
             file.setFormatter(new SimpleFormatter());
             String fileLevel = context.getResource("file_log_level", "OFF");
             file.setLevel(Level.parse(fileLevel));
@@ -133,23 +137,7 @@ public class Dashboard implements Runnable {
         f.setIconImage(context.theme.appIcon);//roverTop);
         f.setTitle("MINDS-i dashboard");
 
-        SerialEventListener connectActions = new SerialEventListener() {
-            public void connectionEstablished(SerialPort port) {
-                context.updatePort(port);
-                seriallog.info("Port opened");
-                context.sender.sendSync();
-                context.commsMonitor.getInstance().startHeartbeatTimer();
-            }
-            public void disconnectRequest() {
-                context.closePort();
-                seriallog.info("Serial Port Closed");
-                resetData();
-                context.commsMonitor.getInstance().stopHeartbeatTimer();
-            }
-        };
-        
-        serialPanel = new SerialConnectPanel(connectActions);
-        serialPanel.showBaudSelector(true);
+        serialPanel = new LinkSelectPanel(context, this::createConnectActions);
         
         JPanel messageBox = createAlertBox();
 
@@ -167,6 +155,34 @@ public class Dashboard implements Runnable {
         f.setVisible(true);
     }
 
+    /**
+     * Creates the connect/disconnect handling for one vehicle link.
+     * Heartbeat monitoring and widget resets only apply to the link
+     * currently selected for display.
+     * @param link - The link the actions apply to
+     * @return - The serial event listener for that link
+     */
+    private SerialEventListener createConnectActions(SerialLink link) {
+        return new SerialEventListener() {
+            public void connectionEstablished(SerialPort port) {
+                context.updatePort(link, port, serialPanel.getBaudRate(link));
+                seriallog.info(link.getName() + " port opened");
+                link.getSender().sendSync();
+                if(link.isSelected()) {
+                    context.commsMonitor.getInstance().startHeartbeatTimer();
+                }
+            }
+            public void disconnectRequest() {
+                context.closePort(link);
+                seriallog.info(link.getName() + " serial port closed");
+                if(link.isSelected()) {
+                    resetData();
+                    context.commsMonitor.getInstance().stopHeartbeatTimer();
+                }
+            }
+        };
+    }
+
     private JPanel createAlertBox() {
         AlertPanel ap = new AlertPanel(context.theme.alertFont, 8, 80);
         ap.setColor(context.theme.textColor);
@@ -179,28 +195,24 @@ public class Dashboard implements Runnable {
     }
 
     private void registerHorizonListeners(ArtificialHorizon ah, boolean sideBars){
-        final float lastPitch[] = new float[1];
-        context.telemetry.registerListener(Serial.PITCH, new TelemetryListener() {
-            public void update(double pitch) {
-                lastPitch[0] = (float)Math.toRadians(pitch);
-            }
-        });
-        context.telemetry.registerListener(Serial.ROLL, new TelemetryListener() {
-            public void update(double roll) {
-                ah.setAngles(lastPitch[0], (float)Math.toRadians(-roll));
+        context.telemetry.registerUiListener(TelemetryRecord.Kind.ATTITUDE,
+                                             new TelemetryRecord.Listener() {
+            public void update(TelemetryRecord attitude) {
+                double pitch = attitude.get(TelemetryRecord.PITCH);
+                double roll  = attitude.get(TelemetryRecord.ROLL);
+                ah.setAngles((float)Math.toRadians(pitch),
+                             (float)Math.toRadians(-roll));
+                if(sideBars) {
+                    ah.set(DataAxis.TOP, (float)attitude.get(TelemetryRecord.HEADING));
+                }
             }
         });
 
         if(sideBars){
             ah.setEnabled(DataAxis.TOP, true);
-            context.telemetry.registerListener(Serial.HEADING, new TelemetryListener() {
-                public void update(double yaw) {
-                    ah.set(DataAxis.TOP, (float)yaw);
-                }
-            });
 
             ah.setEnabled(DataAxis.RIGHT, true);
-            context.telemetry.registerListener(Serial.DELTAALTITUDE, new TelemetryListener() {
+            context.telemetry.registerUiListener(Serial.DELTAALTITUDE, new TelemetryListener() {
                 public void update(double alt) {
                     ah.set(DataAxis.RIGHT, (float)alt);
                 }
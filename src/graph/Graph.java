@@ -205,12 +205,15 @@ public class Graph extends JPanel {
 
         final DataSource source = data.getSource();
         GeneralPath dataShape  = new GeneralPath();
-        dataShape.moveTo(0,0);
-
-        for(int x=0; x<v.width(); x++) {
-            final float xData = v.xPixToData(x);
-            final float y     = v.yDataToPix((float)source.get((double)xData));
-            dataShape.lineTo(x, y);
+        if(source instanceof RangeSource) {
+            rangeShape(dataShape, (RangeSource) source, v);
+        } else {
+            dataShape.moveTo(0,0);
+            for(int x=0; x<v.width(); x++) {
+                final float xData = v.xPixToData(x);
+                final float y     = v.yDataToPix((float)source.get((double)xData));
+                dataShape.lineTo(x, y);
+            }
         }
 
         g.draw(dataShape);
@@ -218,6 +221,28 @@ public class Graph extends JPanel {
         g.dispose();
     }
 
+    //a vertical stroke per pixel column from the least to the greatest value
+    //it covers, joined column to column; columns without data leave a gap
+    private void rangeShape(GeneralPath shape, RangeSource source, View v) {
+        boolean drawing = false;
+        for(int x=0; x<v.width(); x++) {
+            final double from = v.xPixToData(x);
+            final double to   = v.xPixToData(x+1);
+            final double lo   = source.min(from, to);
+            final double hi   = source.max(from, to);
+            if(Double.isNaN(lo) || Double.isNaN(hi)) {
+                drawing = false;
+                continue;
+            }
+            final int yHi = v.yDataToPix((float)hi);
+            final int yLo = v.yDataToPix((float)lo);
+            if(drawing) shape.lineTo(x, yHi);
+            else        shape.moveTo(x, yHi);
+            shape.lineTo(x, yLo);
+            drawing = true;
+        }
+    }
+
     private void drawLabels(Graphics2D g2d, List<DataConfig> dcs, View v) {
         g2d = (Graphics2D) g2d.create();
         FontMetrics metrics = g2d.getFontMetrics();
@@ -55,10 +55,11 @@ class GraphConfigWindow {
             new SpinnerNumberModel(curYscale, Double.MIN_NORMAL, Double.MAX_VALUE, 1.0);
         SpinnerNumberModel ycenter =
             new SpinnerNumberModel(curYcenter, -Double.MAX_VALUE, Double.MAX_VALUE, 2.0);
-        SpinnerNumberModel xscale  = new SpinnerNumberModel(1.0, 0.0, 1.0, 0.05);
+        double curXscale  = Math.min(1.0, vs.at(1, 1).xRange());
+        SpinnerNumberModel xscale  = new SpinnerNumberModel(curXscale, 0.0, 1.0, 0.05);
 
         ChangeListener cl = (ChangeEvent e) -> {
-            subject.setViewSpec(new RTViewSpec(
+            subject.setViewSpec(subject.getViewSpec().rescale(
                 yscale.getNumber().floatValue(),
                 ycenter.getNumber().floatValue(),
                 xscale.getNumber().floatValue()
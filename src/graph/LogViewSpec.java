@@ -0,0 +1,62 @@
+package com.graph;
+
+/**
+ * LogViewSpec implements a ViewSpec for browsing a whole recording
+ *    - x = 0.0 is the start of the recording and x = 1.0 its end
+ *    - Zooming affects only the X axis, about the center of the view
+ *    - Horizontal panning is a pixel accurate shift, kept within the recording
+ *    - Vertical panning should be a simple pixel accurate shift
+ */
+
+public class LogViewSpec implements ViewSpec {
+    //float x coordinates resolve about 1e-7 near 1.0
+    private final static float WIDTH_MIN = 1e-6f;
+
+    private float xCenter;//data
+    private float xWidth; //data
+    private float yScale; //data
+    private float yCenter;//data
+
+    public LogViewSpec() {
+        this(40.0f, 0.0f, 1.0f, 0.5f);
+    }
+    public LogViewSpec(float yScale, float yCenter, float xWidth, float xCenter) {
+        this.yScale  = yScale;
+        this.yCenter = yCenter;
+        this.xWidth  = Math.min(1.0f, Math.max(WIDTH_MIN, xWidth));
+        this.xCenter = xCenter;
+        clampX();
+    }
+    public float maxY() {
+        return yCenter + yScale/2.0f;
+    }
+    public float minY() {
+        return yCenter - yScale/2.0f;
+    }
+    public float minX() {
+        return xCenter - xWidth/2.0f;
+    }
+    public float maxX() {
+        return xCenter + xWidth/2.0f;
+    }
+    public void zoom(float fac) {
+        xWidth = Math.min(1.0f, Math.max(WIDTH_MIN, xWidth*fac));
+        clampX();
+    }
+    public void panY(int pix, int height) {
+        yCenter -= (pix/(float)height)*yScale;
+    }
+    public void panX(int pix, int width) {
+        xCenter -= (pix/(float)width)*xWidth;
+        clampX();
+    }
+    public ViewSpec rescale(float yScale, float yCenter, float xScale) {
+        return new LogViewSpec(yScale, yCenter, xScale, xCenter);
+    }
+    public View at(int height, int width) {
+        return new View(height, width, yScale, yCenter, xWidth, xCenter);
+    }
+    private void clampX() {
+        xCenter = Math.min(1.0f - xWidth/2.0f, Math.max(xWidth/2.0f, xCenter));
+    }
+}
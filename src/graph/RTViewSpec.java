@@ -46,6 +46,9 @@ public class RTViewSpec implements ViewSpec {
         float nScale = xCenter - pix/(2.0f*(float)width);
         xCenter = Math.min(XCENTER_MAX, Math.max(XCENTER_MIN, nScale));
     }
+    public ViewSpec rescale(float yScale, float yCenter, float xScale) {
+        return new RTViewSpec(yScale, yCenter, xScale);
+    }
     public View at(int height, int width) {
         float xDist  = (1.0f-xCenter)*2.0f;
 
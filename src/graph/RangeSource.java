@@ -0,0 +1,11 @@
+package com.graph;
+
+/**
+ * A DataSource that can also report its extremes over a span of x, so a
+ * graph can draw everything a pixel column covers rather than one sample
+ * from it. Both return NaN where there is no data.
+ */
+public interface RangeSource extends DataSource {
+    public double min(double from, double to);
+    public double max(double from, double to);
+}
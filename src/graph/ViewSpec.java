@@ -13,4 +13,9 @@ public interface ViewSpec {
     void panX(int pix, int width);
     float maxY();
     float minY();
+    /**
+     * A spec like this one showing yScale data units about yCenter and
+     * xScale of the x range
+     */
+    ViewSpec rescale(float yScale, float yCenter, float xScale);
 }
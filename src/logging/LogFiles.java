@@ -0,0 +1,145 @@
+package com.logging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Naming, compression and reading of rotated log segments.
+ *
+ * A session's first segment keeps the plain name, such as log/x.tlog, and
+ * later ones insert their number before the extension: log/x.1.tlog,
+ * log/x.2.tlog and so on. A closed segment may be replaced by a gzipped copy
+ * with ".gz" appended; open and segments find either form, so readers never
+ * need to know which segments have been compressed.
+ */
+public class LogFiles {
+    public static final String COMPRESSED_SUFFIX = ".gz";
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private static final Logger iolog = Logger.getLogger("d.io");
+
+    private static final ExecutorService compressor =
+        Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "log compressor");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+
+    private LogFiles() {}
+
+    /**
+     * Path of segment `index` of the session whose first segment is `first`
+     */
+    public static Path segmentPath(Path first, int index) {
+        if(index == 0) return first;
+        String name = first.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String numbered = (dot < 0) ? name + "." + index
+                                    : name.substring(0, dot) + "." + index
+                                      + name.substring(dot);
+        return first.resolveSibling(numbered);
+    }
+
+    /**
+     * Every existing segment of the session starting at `first`, in order,
+     * each in whichever form, plain or compressed, is currently on disk.
+     */
+    public static List<Path> segments(Path first) {
+        List<Path> list = new ArrayList<Path>();
+        for(int i = 0; ; i++) {
+            Path plain = segmentPath(first, i);
+            Path packed = compressedPath(plain);
+            if(Files.exists(plain)) {
+                list.add(plain);
+            } else if(Files.exists(packed)) {
+                list.add(packed);
+            } else {
+                return list;
+            }
+        }
+    }
+
+    /**
+     * Opens a segment for reading, decompressing it if needed. If `path` is
+     * a plain segment that has since been compressed, the compressed copy
+     * is read instead.
+     */
+    public static InputStream open(Path path) throws IOException {
+        if(isCompressed(path)) {
+            return new GZIPInputStream(Files.newInputStream(path), BUFFER_BYTES);
+        }
+        try {
+            return new BufferedInputStream(Files.newInputStream(path), BUFFER_BYTES);
+        } catch (NoSuchFileException e) {
+            Path packed = compressedPath(path);
+            if(!Files.exists(packed)) throw e;
+            return new GZIPInputStream(Files.newInputStream(packed), BUFFER_BYTES);
+        }
+    }
+
+    public static boolean isCompressed(Path path) {
+        return path.getFileName().toString().endsWith(COMPRESSED_SUFFIX);
+    }
+
+    public static Path compressedPath(Path path) {
+        return path.resolveSibling(path.getFileName() + COMPRESSED_SUFFIX);
+    }
+
+    /**
+     * Waits for every compression submitted so far to finish
+     */
+    public static void awaitCompression() throws InterruptedException {
+        try {
+            compressor.submit(() -> { }).get();
+        } catch (java.util.concurrent.ExecutionException e) {
+            //an empty task cannot fail
+        }
+    }
+
+    /**
+     * Gzips a closed segment on the background compressor thread. The copy
+     * is written under a temporary name and moved into place before the
+     * original is deleted, so a reader always finds one complete form.
+     * @return - the compressed path, or the original if compression failed
+     */
+    public static Future<Path> compress(Path path) {
+        return compressor.submit(() -> {
+            Path packed = compressedPath(path);
+            Path partial = packed.resolveSibling(packed.getFileName() + ".part");
+            try {
+                try (InputStream in = Files.newInputStream(path);
+                     OutputStream out = new GZIPOutputStream(new BufferedOutputStream(
+                         Files.newOutputStream(partial), BUFFER_BYTES), BUFFER_BYTES)) {
+                    byte[] buffer = new byte[BUFFER_BYTES];
+                    int n;
+                    while((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                    }
+                }
+                Files.move(partial, packed, StandardCopyOption.ATOMIC_MOVE);
+                Files.delete(path);
+                return packed;
+            } catch (IOException e) {
+                iolog.warning("Could not compress " + path + " " + e);
+                Files.deleteIfExists(partial);
+                return path;
+            }
+        });
+    }
+}
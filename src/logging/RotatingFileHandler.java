@@ -0,0 +1,85 @@
+package com.logging;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.*;
+
+/**
+ * A file Handler that moves on to a new segment when its RotationPolicy
+ * says so, handing the finished segment to LogFiles to be compressed in the
+ * background. Like FileHandler, every record is flushed as it is published.
+ */
+public class RotatingFileHandler extends StreamHandler {
+    private final Path first;
+    private final RotationPolicy policy;
+    private int segment;
+    private Path current;
+    private CountingStream stream;
+    private long openedAt;
+
+    /**
+     * @param first - path of the first segment; later ones are named by
+     *        LogFiles.segmentPath
+     * @param policy - when to rotate and whether to compress
+     */
+    public RotatingFileHandler(Path first, RotationPolicy policy) throws IOException {
+        this.first  = first;
+        this.policy = policy;
+        open(first);
+    }
+
+    /** Path of the segment currently being written */
+    public synchronized Path getCurrentPath() {
+        return current;
+    }
+
+    @Override
+    public synchronized void publish(LogRecord record) {
+        super.publish(record);
+        flush();
+
+        long now = System.currentTimeMillis();
+        if(policy.shouldRotate(stream.count, openedAt, now)) {
+            Path finished = current;
+            try {
+                open(LogFiles.segmentPath(first, ++segment));
+            } catch (IOException e) {
+                reportError("Log rotation failed", e, ErrorManager.OPEN_FAILURE);
+                return;
+            }
+            if(policy.isCompressed()) LogFiles.compress(finished);
+        }
+    }
+
+    //setOutputStream flushes and closes the previous segment
+    private void open(Path path) throws IOException {
+        stream   = new CountingStream(Files.newOutputStream(path));
+        current  = path;
+        openedAt = System.currentTimeMillis();
+        setOutputStream(stream);
+    }
+
+    private static class CountingStream extends FilterOutputStream {
+        long count;
+
+        CountingStream(OutputStream out) {
+            super(new BufferedOutputStream(out));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.logging;
+
+/**
+ * When a log file should be closed and a new segment started, and whether
+ * closed segments are compressed. A limit of zero disables that check.
+ */
+public class RotationPolicy {
+    /** Never rotates */
+    public static final RotationPolicy NEVER = new RotationPolicy(0, 0, false);
+
+    private final long maxBytes;
+    private final long maxAgeMs;
+    private final boolean compress;
+
+    /**
+     * @param maxBytes - rotate once a segment reaches this size, or 0
+     * @param maxAgeMs - rotate once a segment has been open this long, or 0
+     * @param compress - gzip segments once they are closed
+     */
+    public RotationPolicy(long maxBytes, long maxAgeMs, boolean compress) {
+        this.maxBytes = maxBytes;
+        this.maxAgeMs = maxAgeMs;
+        this.compress = compress;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxAgeMs() {
+        return maxAgeMs;
+    }
+
+    public boolean isCompressed() {
+        return compress;
+    }
+
+    /**
+     * @param bytes - size of the open segment
+     * @param openedAt - ms since the epoch at which it was opened
+     * @param now - ms since the epoch
+     */
+    public boolean shouldRotate(long bytes, long openedAt, long now) {
+        return (maxBytes > 0 && bytes >= maxBytes)
+            || (maxAgeMs > 0 && now - openedAt >= maxAgeMs);
+    }
+}
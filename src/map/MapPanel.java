@@ -64,6 +64,9 @@ public class MapPanel extends JPanel implements CoordinateTransform {
         context.getWaypointList().addListener(new WaypointListener(){
             @Override public void unusedEvent() { repaint(); }
         });
+        context.addFleetListener(new WaypointListener(){
+            @Override public void roverMoved(Source s, Dot p) { repaint(); }
+        });
 
         mapSources = importMapSources(cxt);
         switchToServer(cxt.getResource("default_tile_server","satellite"));
@@ -96,6 +99,7 @@ public class MapPanel extends JPanel implements CoordinateTransform {
         roverPath = new RoverPath(context, this, context.getWaypointList(),
         		this, this);
         mll.add(roverPath);
+        mll.add(new SensorEventLayer(context, this));
         mll.add(mouseListener);
         addMouseWheelListener(mouseListener);
         addMouseListener(mll);
@@ -5,6 +5,7 @@ import static com.map.WaypointList.*;
 import com.map.command.*;
 import com.Context;
 import com.serial.Serial;
+import com.serial.SerialLink;
 import com.telemetry.TelemetryListener;
 import com.layer.Layer;
 
@@ -259,9 +260,27 @@ public class RoverPath implements Layer {
     private void paintDots(Graphics g) {
         drawLines(g);
         drawRoverLine(g);
+        drawFleet(g);
         drawPoints(g);
     }
 
+    /**
+     * Overlays the positions of connected vehicles other than the one
+     * currently selected for display.
+     * @param g - The graphics reference
+     */
+    private void drawFleet(Graphics g) {
+        for(SerialLink link : context.getLinks()) {
+            if(link.isSelected() || !link.isConnected()) {
+                continue;
+            }
+
+            Dot rover = link.getWaypointList().getRover();
+            Point2D loc = mapTransform.screenPosition(rover.getLocation());
+            drawImg(g, context.theme.roverImage, toPoint(loc));
+        }
+    }
+
     /**
      * Returns the screen coordinate (x, y) pixel position of
      * the Lng/Lat point found at the specified index in the
@@ -0,0 +1,84 @@
+package com.map;
+
+import com.Context;
+import com.layer.Layer;
+import com.telemetry.SensorEventIndex;
+
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Point2D;
+
+/**
+ * Marks where the displayed vehicle's bumpers were hit and its sonars saw
+ * something in near range, beneath the rover and mission path. Only the
+ * newest MAX_MARKERS events are drawn; their buffers are reused from one
+ * paint to the next.
+ */
+class SensorEventLayer implements Layer {
+    static final int MAX_MARKERS = 512;
+    private static final int MARKER_SIZE = 8;
+    private static final Color BUMPER_FILL = new Color(1f, 0.2f, 0.1f, 0.8f);
+    private static final Color SONAR_FILL  = new Color(1f, 0.8f, 0f, 0.6f);
+
+    private final Context context;
+    private final CoordinateTransform mapTransform;
+    private final long[] times = new long[MAX_MARKERS];
+    private final int[] channels = new int[MAX_MARKERS];
+    private final double[] latitudes = new double[MAX_MARKERS];
+    private final double[] longitudes = new double[MAX_MARKERS];
+    private final Point2D.Double location = new Point2D.Double();
+
+    SensorEventLayer(Context c, CoordinateTransform cT) {
+        context = c;
+        mapTransform = cT;
+    }
+
+    @Override
+    public int getZ() {
+        return 0;
+    }
+
+    @Override
+    public boolean onClick(MouseEvent e) {
+        return false;
+    }
+
+    @Override
+    public boolean onPress(MouseEvent e) {
+        return false;
+    }
+
+    @Override
+    public void onDrag(MouseEvent e) { }
+
+    @Override
+    public void onRelease(MouseEvent e) { }
+
+    @Override
+    public void paint(Graphics g) {
+        SensorEventIndex events = context.getSensorEvents();
+        if(events == null) return;
+        int n = events.latest(times, channels, latitudes, longitudes);
+
+        Graphics2D g2d = (Graphics2D) g.create();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                             RenderingHints.VALUE_ANTIALIAS_ON);
+        Rectangle clip = g2d.getClipBounds();
+        for(int i = 0; i < n; i++) {
+            if(Double.isNaN(latitudes[i])) continue;
+            if(latitudes[i] == 0 && longitudes[i] == 0) continue;
+
+            location.setLocation(longitudes[i], latitudes[i]);
+            Point2D p = mapTransform.screenPosition(location);
+            int x = (int) p.getX() - MARKER_SIZE / 2;
+            int y = (int) p.getY() - MARKER_SIZE / 2;
+            if(clip != null && !clip.intersects(x, y, MARKER_SIZE, MARKER_SIZE)) {
+                continue;
+            }
+            g2d.setColor(SensorEventIndex.isBumper(channels[i]) ? BUMPER_FILL
+                                                                : SONAR_FILL);
+            g2d.fillOval(x, y, MARKER_SIZE, MARKER_SIZE);
+        }
+        g2d.dispose();
+    }
+}
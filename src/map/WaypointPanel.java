@@ -13,6 +13,7 @@ import com.map.RoverPath;
 import com.serial.*;
 import com.ui.telemetry.TelemetryDataWindow;
 import com.ui.LogViewer;
+import com.ui.ReplayWindow;
 import com.ui.ninePatch.NinePatchPanel;
 import com.ui.SystemConfigWindow;
 import com.ui.Theme;
@@ -64,6 +65,7 @@ public class WaypointPanel extends NinePatchPanel {
     public JButton looping;
     public JButton config;
     public JButton logPanelButton;
+    public JButton replayButton;
     
     //Map Zoom Options
     public JButton zoomInButton;
@@ -216,6 +218,7 @@ public class WaypointPanel extends NinePatchPanel {
         looping 		= theme.makeButton(toggleLooping);
         config      	= theme.makeButton(openConfigWindow);
         logPanelButton 	= theme.makeButton(logPanelAction);
+        replayButton 	= theme.makeButton(openReplayWindow);
         
         //Map Zoom Options
         zoomInButton 	= theme.makeButton(zoomInAction);
@@ -238,7 +241,7 @@ public class WaypointPanel extends NinePatchPanel {
 
         JComponent[] format = new JComponent[] {
             tileButton, dataPanel, graphButton, reTarget, looping, 
-            config, logPanelButton, setHomeButton, clearWaypoints, 
+            config, logPanelButton, replayButton, setHomeButton, clearWaypoints, 
             enterButton, missionButton
         };
         
@@ -324,6 +327,8 @@ public class WaypointPanel extends NinePatchPanel {
         add(Box.createRigidArea(space));
         add(logPanelButton);
         add(Box.createRigidArea(space));
+        add(replayButton);
+        add(Box.createRigidArea(space));
         add(new JSeparator(SwingConstants.HORIZONTAL));
         add(Box.createRigidArea(space));
         add(setHomeButton);
@@ -817,6 +822,22 @@ public class WaypointPanel extends NinePatchPanel {
         }
     };
     
+    private ReplayWindow replayWindow;
+    private Action openReplayWindow = new AbstractAction() {
+        {
+            String text = "Replay";
+            putValue(Action.NAME, text);
+        }
+        public void actionPerformed(ActionEvent e) {
+        	if(replayWindow != null && replayWindow.getVisible() == true) {
+        		replayWindow.toFront();
+        		return;
+        	}
+        	
+        	replayWindow = new ReplayWindow(context);
+        }
+    };
+    
     private Action buildGraph = new AbstractAction() {
         {
             String text = "Graph";
@@ -0,0 +1,124 @@
+package com.serial;
+
+/**
+ * Estimates the offset between a vehicle's clock and the local clock, in the
+ * manner of NTP, from TIME_SYNC exchanges over a link.
+ *
+ * The dashboard sends its own time t0; the vehicle replies with t0 echoed and
+ * its clock t1 at the moment it answered; the reply arrives at local time t3.
+ * Assuming a symmetric link, the vehicle clock is ahead of the local one by
+ * t1 - (t0 + t3) / 2. The last few samples are kept and the one with the
+ * shortest round trip is trusted, since queueing delay only ever inflates the
+ * round trip and skews the estimate.
+ *
+ * Vehicle timestamps are unsigned 32 bit millisecond counters, and are
+ * unwrapped here into a continuous 64 bit time.
+ */
+public class LinkClock {
+    static final int FILTER_SIZE = 8;
+    private static final long U32_MASK = 0xFFFFFFFFL;
+    private static final long U32_HALF = 0x80000000L;
+
+    private final long[] offsets = new long[FILTER_SIZE];
+    private final long[] delays  = new long[FILTER_SIZE];
+    private int samples;
+    private int next;
+
+    private volatile long offset;
+    private volatile long roundTrip = -1;
+
+    private long lastRaw = -1;
+    private long wraps;
+
+    /**
+     * Returns the low 32 bits of a local time, as sent in a TIME_SYNC request
+     */
+    public static int wireTime(long localMs) {
+        return (int) localMs;
+    }
+
+    /**
+     * Records a TIME_SYNC reply.
+     * @param echoedWire - the request time echoed back by the vehicle
+     * @param vehicleWire - the vehicle's clock when it replied
+     * @param receivedMs - local time the reply arrived
+     */
+    public synchronized void addSample(int echoedWire, int vehicleWire, long receivedMs) {
+        long delay = (wireTime(receivedMs) - echoedWire) & U32_MASK;
+        if(delay >= U32_HALF) return;
+
+        long sentMs    = receivedMs - delay;
+        long vehicleMs = unwrap(vehicleWire);
+
+        offsets[next] = vehicleMs - (sentMs + receivedMs) / 2;
+        delays[next]  = delay;
+        next = (next + 1) % FILTER_SIZE;
+        if(samples < FILTER_SIZE) samples++;
+
+        int best = 0;
+        for(int i = 1; i < samples; i++) {
+            if(delays[i] < delays[best]) best = i;
+        }
+        offset    = offsets[best];
+        roundTrip = delays[best];
+    }
+
+    /**
+     * Extends a 32 bit vehicle timestamp into a continuous millisecond count,
+     * tolerating timestamps that arrive slightly out of order.
+     */
+    public synchronized long unwrap(int vehicleWire) {
+        long raw = vehicleWire & U32_MASK;
+        if(lastRaw < 0) {
+            lastRaw = raw;
+        } else {
+            long step = (raw - lastRaw) & U32_MASK;
+            if(step < U32_HALF) {
+                if(raw < lastRaw) wraps++;
+                lastRaw = raw;
+            } else if(raw > lastRaw) {
+                //a late arrival from before the most recent wrap
+                return ((wraps - 1) << 32) + raw;
+            }
+        }
+        return (wraps << 32) + raw;
+    }
+
+    /**
+     * Converts a vehicle timestamp into local time
+     */
+    public long toLocalTime(int vehicleWire) {
+        return unwrap(vehicleWire) - offset;
+    }
+
+    public boolean isSynced() {
+        return roundTrip >= 0;
+    }
+
+    /**
+     * Vehicle clock minus local clock, in ms
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Round trip of the sample the offset was taken from, in ms, or -1
+     * before the first exchange
+     */
+    public long getRoundTrip() {
+        return roundTrip;
+    }
+
+    /**
+     * Forgets every sample, for example after the vehicle has rebooted
+     */
+    public synchronized void reset() {
+        samples   = 0;
+        next      = 0;
+        offset    = 0;
+        roundTrip = -1;
+        lastRaw   = -1;
+        wraps     = 0;
+    }
+}
@@ -0,0 +1,146 @@
+package com.serial;
+
+import com.Context;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.util.HashMap;
+import java.util.Map;
+import javax.swing.*;
+
+/**
+ * Connection tray for multiple vehicles. Shows a selector for the vehicle the
+ * map and widgets follow, a button to add another vehicle, and the
+ * SerialConnectPanel belonging to the selected vehicle's link. Below them
+ * a status line reports reconnect attempts and how long past outages took
+ * to recover.
+ */
+public class LinkSelectPanel extends JPanel {
+    /**
+     * Supplies the connect/disconnect handling for a given link
+     */
+    public interface ListenerFactory {
+        SerialEventListener create(SerialLink link);
+    }
+
+    private static final int STATUS_PERIOD_MS = 500;
+
+    private Context context;
+    private ListenerFactory factory;
+    private JComboBox<SerialLink> vehicleSelect;
+    private JButton addButton;
+    private JPanel cards;
+    private CardLayout cardLayout;
+    private JLabel recoveryStatus;
+    private Map<SerialLink, SerialConnectPanel> panels =
+        new HashMap<SerialLink, SerialConnectPanel>();
+
+    public LinkSelectPanel(Context ctx, ListenerFactory factory) {
+        this.context = ctx;
+        this.factory = factory;
+
+        vehicleSelect = new JComboBox<SerialLink>();
+        addButton = new JButton(addVehicleAction);
+        cardLayout = new CardLayout();
+        cards = new JPanel(cardLayout);
+        cards.setOpaque(false);
+        recoveryStatus = new JLabel();
+
+        for(SerialLink link : context.getLinks()) {
+            addCard(link);
+        }
+        vehicleSelect.setSelectedItem(context.getSelectedLink());
+        cardLayout.show(cards, context.getSelectedLink().getName());
+
+        vehicleSelect.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                SerialLink link = (SerialLink)vehicleSelect.getSelectedItem();
+                if(link == null) return;
+                context.selectLink(link.getId());
+                cardLayout.show(cards, link.getName());
+            }
+        });
+
+        add(vehicleSelect);
+        add(addButton);
+        add(cards);
+        add(recoveryStatus);
+        setOpaque(false);
+        updateSelectorVisibility();
+
+        javax.swing.Timer statusTimer = new javax.swing.Timer(
+            STATUS_PERIOD_MS, new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    updateRecoveryStatus();
+                }
+            });
+        statusTimer.start();
+        updateRecoveryStatus();
+    }
+
+    private void updateRecoveryStatus() {
+        LinkSupervisor sup = context.getSelectedLink().getSupervisor();
+        String text;
+        String tip = null;
+        if(sup.isRecovering()) {
+            text = "Reconnecting...";
+        } else if(sup.getRecoveryCount() > 0) {
+            text = "Recovered in " + sup.getLastRecoveryMs() + " ms";
+            tip = sup.getRecoveryCount() + " outages, mean "
+                + sup.getMeanRecoveryMs() + " ms, max "
+                + sup.getMaxRecoveryMs() + " ms";
+        } else {
+            text = "";
+        }
+        if(!text.equals(recoveryStatus.getText())) {
+            recoveryStatus.setText(text);
+            LinkSelectPanel.this.revalidate();
+        }
+        recoveryStatus.setToolTipText(tip);
+    }
+
+    private void addCard(SerialLink link) {
+        SerialConnectPanel panel = new SerialConnectPanel(factory.create(link));
+        panel.showBaudSelector(true);
+        panels.put(link, panel);
+        cards.add(panel, link.getName());
+        vehicleSelect.addItem(link);
+    }
+
+    /**
+     * Returns the baud rate last used to connect `link`
+     */
+    public int getBaudRate(SerialLink link) {
+        SerialConnectPanel panel = panels.get(link);
+        return (panel == null) ? Serial.BAUD : panel.getBaudRate();
+    }
+
+    //the selector is only useful once there is more than one vehicle
+    private void updateSelectorVisibility() {
+        vehicleSelect.setVisible(vehicleSelect.getItemCount() > 1);
+    }
+
+    Action addVehicleAction = new AbstractAction() {
+        {
+            String text = "Add Vehicle";
+            putValue(Action.NAME, "+");
+            putValue(Action.SHORT_DESCRIPTION, text);
+        }
+        public void actionPerformed(ActionEvent e) {
+            SerialLink link = context.addLink();
+            addCard(link);
+            vehicleSelect.setSelectedItem(link);
+            updateSelectorVisibility();
+            LinkSelectPanel.this.revalidate();
+        }
+    };
+
+    @Override
+    public void setEnabled(boolean shouldEnable) {
+        vehicleSelect.setEnabled(shouldEnable);
+        addButton.setEnabled(shouldEnable);
+        for(Component c : cards.getComponents()) {
+            c.setEnabled(shouldEnable);
+        }
+    }
+}
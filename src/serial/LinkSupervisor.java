@@ -0,0 +1,229 @@
+package com.serial;
+
+import jssc.SerialPort;
+import jssc.SerialPortException;
+import jssc.SerialPortList;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Watches the port of a SerialLink and brings it back when it is lost, for
+ * example when a USB radio is unplugged or drops off the bus.
+ *
+ * While supervised, the port is checked periodically. Once it disappears the
+ * link is suspended rather than closed, so its telemetry listeners, waypoint
+ * list and unconfirmed messages survive, and reopening is retried with an
+ * exponential backoff. On recovery the sender resumes the session and the
+ * time spent disconnected is recorded.
+ */
+public class LinkSupervisor {
+    private static final int CHECK_PERIOD_MS   = 500;
+    private static final int MIN_BACKOFF_MS    = 250;
+    private static final int MAX_BACKOFF_MS    = 8000;
+
+    private final SerialLink link;
+    private final ScheduledExecutorService scheduler;
+    private volatile ScheduledFuture<?> task;
+
+    private String portName;
+    private int baud;
+    private volatile boolean lost;
+    private long lostAt;
+    private int backoffMs;
+
+    //Recovery metrics
+    private int recoveryCount;
+    private long lastRecoveryMs;
+    private long maxRecoveryMs;
+    private long totalRecoveryMs;
+
+    private final Logger seriallog = Logger.getLogger("d.serial");
+
+    /**
+     * Class Constructor
+     * @param link - the link to supervise
+     */
+    public LinkSupervisor(SerialLink link) {
+        this(link, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, link.getName() + " supervisor");
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    LinkSupervisor(SerialLink link, ScheduledExecutorService scheduler) {
+        this.link = link;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Begins watching `name`, which the link has just opened at `baud`.
+     */
+    public synchronized void start(String name, int baud) {
+        stop();
+        this.portName  = name;
+        this.baud      = baud;
+        this.lost      = false;
+        this.backoffMs = MIN_BACKOFF_MS;
+        task = scheduler.scheduleWithFixedDelay(
+                this::check, CHECK_PERIOD_MS, CHECK_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops supervision, abandoning any reconnect in progress.
+     */
+    public synchronized void stop() {
+        if(task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        lost = false;
+    }
+
+    /**
+     * Called when an I/O error suggests the port has gone away. This takes no
+     * lock, since the sender reports failures from its own threads while the
+     * supervisor may be resuming it; the check itself runs on the supervisor
+     * thread.
+     */
+    public void reportFailure(Exception e) {
+        if(task == null || lost) return;
+        seriallog.fine(link.getName() + " I/O failure " + e);
+        scheduler.execute(this::check);
+    }
+
+    public boolean isRecovering() {
+        return lost;
+    }
+
+    public synchronized int getRecoveryCount() {
+        return recoveryCount;
+    }
+
+    /**
+     * Time in ms between losing the port and resuming the session, for the
+     * most recent outage.
+     */
+    public synchronized long getLastRecoveryMs() {
+        return lastRecoveryMs;
+    }
+
+    public synchronized long getMaxRecoveryMs() {
+        return maxRecoveryMs;
+    }
+
+    public synchronized long getMeanRecoveryMs() {
+        return (recoveryCount == 0) ? 0 : totalRecoveryMs / recoveryCount;
+    }
+
+    /**
+     * Looks for a lost port, or tries to reopen one. The link is suspended
+     * and resumed outside this object's monitor, since resuming takes the
+     * sender's lock.
+     */
+    void check() {
+        boolean suspend = false;
+        SerialPort reopened = null;
+
+        synchronized(this) {
+            if(task == null) return;
+
+            if(lost) {
+                reopened = reopen();
+                if(reopened == null) {
+                    backoffMs = Math.min(MAX_BACKOFF_MS, backoffMs * 2);
+                    reschedule(backoffMs);
+                }
+            } else if(!portAlive()) {
+                lost = true;
+                lostAt = System.nanoTime();
+                backoffMs = MIN_BACKOFF_MS;
+                seriallog.warning(link.getName() + " lost " + portName
+                                  + "; attempting to reconnect");
+                suspend = true;
+                reschedule(backoffMs);
+            }
+        }
+
+        if(suspend) {
+            link.suspend();
+        } else if(reopened != null) {
+            link.resume(reopened);
+            //the operator may have disconnected while the port was reopening
+            if(!recovered()) link.suspend();
+        }
+    }
+
+    private boolean portAlive() {
+        SerialPort port = link.port();
+        if(port == null || !port.isOpened()) return false;
+        return Arrays.asList(portNames()).contains(portName);
+    }
+
+    //returns the reopened port, or null if it is still unavailable
+    private SerialPort reopen() {
+        if(!Arrays.asList(portNames()).contains(portName)) return null;
+
+        try {
+            return openPort(portName, baud);
+        } catch (SerialPortException e) {
+            seriallog.fine(link.getName() + " reconnect failed " + e);
+            return null;
+        }
+    }
+
+    String[] portNames() {
+        return SerialPortList.getPortNames();
+    }
+
+    SerialPort openPort(String name, int baud) throws SerialPortException {
+        SerialPort port = new SerialPort(name);
+        try {
+            port.openPort();
+            port.setParams(baud,
+                           SerialPort.DATABITS_8,
+                           SerialPort.STOPBITS_1,
+                           SerialPort.PARITY_NONE);
+            port.setFlowControlMode(SerialPort.FLOWCONTROL_NONE);
+            return port;
+        } catch (SerialPortException e) {
+            try {
+                port.closePort();
+            } catch (Exception ignored) {
+                //port never opened
+            }
+            throw e;
+        }
+    }
+
+    //returns false if supervision was stopped before the session resumed
+    private synchronized boolean recovered() {
+        if(task == null) return false;
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lostAt);
+        lost = false;
+        recoveryCount++;
+        lastRecoveryMs = elapsed;
+        maxRecoveryMs = Math.max(maxRecoveryMs, elapsed);
+        totalRecoveryMs += elapsed;
+        seriallog.warning(link.getName() + " reconnected to " + portName
+                          + " after " + elapsed + " ms");
+        reschedule(CHECK_PERIOD_MS);
+        return true;
+    }
+
+    //replace the periodic check with one that first runs after `delayMs`
+    private void reschedule(int delayMs) {
+        if(task != null) {
+            task.cancel(false);
+        }
+        int period = lost ? Math.max(delayMs, MIN_BACKOFF_MS) : CHECK_PERIOD_MS;
+        task = scheduler.scheduleWithFixedDelay(
+                this::check, delayMs, period, TimeUnit.MILLISECONDS);
+    }
+}
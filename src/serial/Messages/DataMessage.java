@@ -6,11 +6,13 @@ import com.serial.Messages.*;
 class DataMessage extends Message {
     int msgType;
     public DataMessage(int type, byte index, float data) {
+        this(type, index, Float.floatToIntBits(data));
+    }
+
+    public DataMessage(int type, byte index, int idata) {
         super();
         msgType = type;
 
-        int idata   = Float.floatToIntBits(data);
-
         content     = new byte[6];
         content[0]  = Serial.buildMessageLabel(Serial.DATA_TYPE, type);
         content[1]  = (byte) index;
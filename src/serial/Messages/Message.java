@@ -33,6 +33,34 @@ public class Message {
         return ((confirmation&0xFFFF) == (confirmSum&0xFFFF));
     }
     
+    /**
+     * Tests a sequenced ARQ acknowledgement against this message.
+     * @param cumulative - every sequence number up to and including this one
+     *        has been received
+     * @param selective - bit i set means sequence cumulative+1+i has also
+     *        been received
+     * @return - true if this message is acknowledged; always false for
+     *           messages sent without a sequence number
+     */
+    public boolean isAckedBy(int cumulative, int selective) {
+        int seq = getSequence();
+        if(seq < 0) return false;
+
+        int behind = (cumulative - seq) & 0xff;
+        if(behind < 0x80) return true;
+
+        int ahead = (seq - cumulative - 1) & 0xff;
+        return (ahead < 8) && (((selective >> ahead) & 1) != 0);
+    }
+
+    /**
+     * Returns the ARQ sequence number this message was sent with, or -1 if it
+     * is confirmed the old way by checksum.
+     */
+    public int getSequence() {
+        return -1;
+    }
+
     public boolean isPastExpiration(Date now) {
         return (now.getTime()-sent.getTime()) > Serial.MAX_CONFIRM_WAIT_MS;
     }
@@ -98,6 +126,14 @@ public class Message {
     public static Message syncMessage(byte resync) {
         return new WordMessage(Serial.SYNC_WORD, resync, (byte)0);
     }
+
+    public static Message syncMessage(byte resync, byte flags) {
+        return new WordMessage(Serial.SYNC_WORD, resync, flags);
+    }
+
+    public static Message sequenced(int sequence, Message msg) {
+        return new SequencedMessage(sequence, msg);
+    }
     
     public static Message telemetry(byte index, float data) {
         return new DataMessage(Serial.TELEMETRY_DATA, index, data);
@@ -155,6 +191,10 @@ public class Message {
     	return new DataMessage(Serial.INFO_DATA, (byte)Serial.APM_VERSION, (byte)0);
     }
     
+    public static Message timeSync(int localTime) {
+        return new DataMessage(Serial.INFO_DATA, (byte)Serial.TIME_SYNC, localTime);
+    }
+    
     public static Message sendHeartbeatPulse() {
     	return new DataMessage(Serial.INFO_DATA, (byte)Serial.HEARTBEAT, (byte)0);
     }
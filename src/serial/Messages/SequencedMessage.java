@@ -0,0 +1,54 @@
+package com.serial.Messages;
+
+import com.serial.Serial;
+
+/**
+ * Envelope for a reliable message sent under the sequenced ARQ extension.
+ *
+ * The frame content is the SEQUENCED_TYPE label, an 8 bit sequence number and
+ * then the wrapped message's own content. The vehicle unwraps it, applies the
+ * inner content in sequence order and answers with a SEQ_ACK word holding its
+ * cumulative sequence and a selective acknowledgement mask, so two identical
+ * messages in flight are never confused with one another.
+ */
+public class SequencedMessage extends Message {
+    private final Message inner;
+    private final int sequence;
+
+    public SequencedMessage(int sequence, Message inner) {
+        super();
+        this.inner    = inner;
+        this.sequence = sequence & 0xff;
+
+        content    = new byte[inner.content.length + 2];
+        content[0] = Serial.buildMessageLabel(Serial.SEQUENCED_TYPE, 0);
+        content[1] = (byte) this.sequence;
+        System.arraycopy(inner.content, 0, content, 2, inner.content.length);
+        buildChecksum();
+    }
+
+    public Message getInner() {
+        return inner;
+    }
+
+    @Override
+    public int getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public boolean isConfirmedBy(int confirmation) {
+        //only SEQ_ACK words acknowledge sequenced messages
+        return false;
+    }
+
+    @Override
+    public boolean needsConfirm() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return inner.toString() + " #" + sequence;
+    }
+}
@@ -0,0 +1,242 @@
+package com.serial;
+
+import com.serial.Messages.Message;
+
+import jssc.SerialPort;
+import jssc.SerialPortException;
+import jssc.SerialPortList;
+
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Finds the serial port and baud rate a vehicle is talking on.
+ *
+ * Every available port is probed at the same time on its own thread. Each
+ * probe tries the candidate baud rates in turn, sends a sync request and
+ * counts how many valid frames come back in a short window. Ports are then
+ * ranked by the rate of valid frames seen.
+ */
+public class PortDiscovery {
+    public static final int[] CANDIDATE_BAUDS = {
+        Serial.BAUD,
+        SerialPort.BAUDRATE_9600,
+        SerialPort.BAUDRATE_115200
+    };
+    public static final int DEFAULT_DEADLINE_MS = 600;
+    private static final int READ_POLL_MS      = 10;
+
+    private static final Logger seriallog = Logger.getLogger("d.serial");
+
+    /**
+     * The outcome of probing a single port
+     */
+    public static class Result implements Comparable<Result> {
+        private final String portName;
+        private final int baud;
+        private final int frames;
+        private final long elapsedMs;
+
+        Result(String portName, int baud, int frames, long elapsedMs) {
+            this.portName  = portName;
+            this.baud      = baud;
+            this.frames    = frames;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public String getPortName() {
+            return portName;
+        }
+
+        public int getBaud() {
+            return baud;
+        }
+
+        public int getFrames() {
+            return frames;
+        }
+
+        /**
+         * Valid frames received per second during the probe window
+         */
+        public double getFrameRate() {
+            return frames * 1000.0 / Math.max(1, elapsedMs);
+        }
+
+        public int compareTo(Result other) {
+            return Double.compare(other.getFrameRate(), getFrameRate());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s @ %d (%.1f frames/s)",
+                    portName, baud, getFrameRate());
+        }
+    }
+
+    private PortDiscovery() {}
+
+    /**
+     * Probes every port reported by SerialPortList.
+     * @param deadlineMs - total time allowed for the search
+     * @return - results for ports that answered, best first
+     */
+    public static List<Result> discover(int deadlineMs) {
+        return discover(SerialPortList.getPortNames(), deadlineMs);
+    }
+
+    /**
+     * Returns the best port found, or null if nothing answered.
+     * @param deadlineMs - total time allowed for the search
+     */
+    public static Result findBest(int deadlineMs) {
+        List<Result> results = discover(deadlineMs);
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    static List<Result> discover(String[] portNames, int deadlineMs) {
+        List<Result> results = new ArrayList<Result>();
+        if(portNames.length == 0) return results;
+
+        ExecutorService pool = Executors.newFixedThreadPool(portNames.length, r -> {
+            Thread t = new Thread(r, "port discovery");
+            t.setDaemon(true);
+            return t;
+        });
+
+        List<Future<Result>> probes = new ArrayList<Future<Result>>();
+        for(String name : portNames) {
+            probes.add(pool.submit(() -> probe(new SerialPort(name), deadlineMs)));
+        }
+
+        long giveUp = System.currentTimeMillis() + deadlineMs + READ_POLL_MS * 10;
+        for(Future<Result> probe : probes) {
+            try {
+                long remaining = Math.max(0, giveUp - System.currentTimeMillis());
+                Result r = probe.get(remaining, TimeUnit.MILLISECONDS);
+                if(r != null && r.getFrames() > 0) {
+                    results.add(r);
+                }
+            } catch (TimeoutException e) {
+                probe.cancel(true);
+            } catch (Exception e) {
+                seriallog.fine("Port probe failed " + e);
+            }
+        }
+        pool.shutdownNow();
+
+        Collections.sort(results);
+        return results;
+    }
+
+    /**
+     * Opens `port` and tries each candidate baud rate, stopping at the first
+     * one that produces valid frames. The port is always closed again.
+     * @param port - an unopened port
+     * @param budgetMs - time allowed for all baud rates on this port
+     * @return - the best result for this port
+     */
+    static Result probe(SerialPort port, int budgetMs) {
+        int window = Math.max(READ_POLL_MS, budgetMs / CANDIDATE_BAUDS.length);
+        Result best = new Result(port.getPortName(), Serial.BAUD, 0, window);
+
+        try {
+            port.openPort();
+            for(int baud : CANDIDATE_BAUDS) {
+                if(Thread.currentThread().isInterrupted()) break;
+
+                Result r = probeBaud(port, baud, window);
+                if(r.getFrames() > best.getFrames()) {
+                    best = r;
+                }
+                if(best.getFrames() > 0) break;
+            }
+        } catch (SerialPortException e) {
+            seriallog.fine("Cannot probe " + port.getPortName() + " " + e);
+        } finally {
+            try {
+                port.closePort();
+            } catch (Exception e) {
+                //port was never opened or is already gone
+            }
+        }
+
+        return best;
+    }
+
+    private static Result probeBaud(SerialPort port, int baud, int window)
+            throws SerialPortException {
+        port.setParams(baud,
+                       SerialPort.DATABITS_8,
+                       SerialPort.STOPBITS_1,
+                       SerialPort.PARITY_NONE);
+        port.purgePort(SerialPort.PURGE_RXCLEAR | SerialPort.PURGE_TXCLEAR);
+        Message.syncMessage(Serial.SYNC_REQUEST).send(port);
+
+        FrameCounter counter = new FrameCounter();
+        long start = System.currentTimeMillis();
+        long elapsed = 0;
+
+        while(elapsed < window) {
+            byte[] chunk = port.readBytes();
+            if(chunk != null) {
+                counter.feed(chunk);
+            } else {
+                try {
+                    Thread.sleep(READ_POLL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            elapsed = System.currentTimeMillis() - start;
+        }
+
+        return new Result(port.getPortName(), baud, counter.count, Math.max(elapsed, 1));
+    }
+
+    /**
+     * Runs raw bytes through a Decoder and counts every frame with a valid
+     * checksum, regardless of its type.
+     */
+    static class FrameCounter extends InputStream implements PacketReader {
+        private final Decoder decoder;
+        private byte[] chunk;
+        private int position;
+        int count;
+
+        FrameCounter() {
+            decoder = new Decoder(this, Serial.HEADER, Serial.FOOTER, Serial.CHECKSUM);
+            decoder.addPacketReader(this);
+        }
+
+        void feed(byte[] data) {
+            chunk = data;
+            position = 0;
+            decoder.update();
+        }
+
+        public int read() {
+            if(chunk == null || position >= chunk.length) return -1;
+            return chunk[position++] & 0xff;
+        }
+
+        public int claim(byte data) {
+            switch(Serial.getMsgType(data)) {
+                case Serial.WAYPOINT_TYPE:
+                case Serial.DATA_TYPE:
+                case Serial.WORD_TYPE:
+                case Serial.STRING_TYPE:
+                    return 255;
+                default:
+                    return -1;
+            }
+        }
+
+        public void handle(byte[] data) {
+            count++;
+        }
+    }
+}
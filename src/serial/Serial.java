@@ -7,6 +7,7 @@ public class Serial {
     public static final int DATA_TYPE      	 = 0x1;
     public static final int WORD_TYPE      	 = 0x2;
     public static final int STRING_TYPE    	 = 0x3;
+    public static final int SEQUENCED_TYPE 	 = 0x4;
     
     //Waypoint type
     public static final int ADD_WAYPOINT   	 = 0x0;
@@ -29,12 +30,14 @@ public class Serial {
     //Info Types
     public static final int APM_VERSION	   	 = 0x0;
     public static final int HEARTBEAT		 = 0x1;
+    public static final int TIME_SYNC		 = 0x2;
     
     //Word type
     public static final int CONFIRMATION   	 = 0x0;
     public static final int SYNC_WORD      	 = 0x1;
     public static final int COMMAND_WORD   	 = 0x2;
     public static final int STATE_WORD	   	 = 0x3;
+    public static final int SEQ_ACK	   	 	 = 0x4;
     
     //String type
     public static final int ERROR_STRING   	 = 0x0;
@@ -88,6 +91,9 @@ public class Serial {
     //Sync
     public static final byte SYNC_REQUEST = 0x00;
     public static final byte SYNC_RESPOND = 0x01;
+
+    //Sync capability flags, carried in the second byte of a sync word
+    public static final byte SYNC_ARQ     = 0x01;
     
     //Telemetry IDs
     public static final int LATITUDE      = 0;
@@ -110,6 +116,13 @@ public class Serial {
     public static final int DELTAALTITUDE = 17;
     public static final int GPSNUMSAT 	  = 18;
     public static final int GPSHDOP 	  = 19;
+    //recorded locally from STATE_WORD messages so logs carry the drive state
+    public static final int DRIVESTATE    = 23;
+    //recorded locally from SENSOR_DATA messages, one channel per sensor index
+    public static final int SONAR_FIRST   = 24;
+    public static final int SONAR_COUNT   = 5;
+    public static final int BUMPER_FIRST  = 29;
+    public static final int BUMPER_COUNT  = 2;
 
     public static final int	MAX_WAYPOINTS		= 64;
     public static final int	MAX_SETTINGS		= 64;
@@ -118,12 +131,28 @@ public class Serial {
     public static final int	BAUD				= SerialPort.BAUDRATE_57600;
     public static final int	U16_FIXED_POINT		= 256;
 
+    //Telemetry frames optionally carry the vehicle's u32 ms clock after the value
+    public static final int TIMESTAMPED_DATA_LENGTH = 10;
+
     public static final int MAX_CONFIRM_WAIT_MS	= 2000;
     public static final int MAX_FAILURES		= 6;
+    public static final int CLOCK_SYNC_PERIOD_MS = 5000;
+    //Sequenced messages in flight at once; bounded by the 8 bit SACK mask
+    public static final int ARQ_WINDOW			= 8;
 
     public static final byte[] HEADER = {0x13, 0x37};
     public static final byte[] FOOTER = {(byte)0x9A};
 
+    /** Checksum used to validate every frame of the protocol */
+    public static final Checksum CHECKSUM = new Checksum() {
+        public byte[] calc(byte[] plaintext) {
+            return fletcher16bytes(plaintext);
+        }
+        public int length() {
+            return 2;
+        }
+    };
+
     public static byte[] fletcher16bytes(byte[] message, int length) {
         int iterator = 0;
         int aSum = 0xff;
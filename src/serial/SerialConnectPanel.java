@@ -44,6 +44,7 @@ public class SerialConnectPanel extends JPanel {
     private SerialEventListener listener;
     private SerialPort connectedPort = null;
     private JButton refreshButton;
+    private JButton autoButton;
     private JButton connectButton;
     private JComboBox<String> dropDown;
     private JComboBox<BaudRate> baudSelect;
@@ -51,6 +52,7 @@ public class SerialConnectPanel extends JPanel {
     public SerialConnectPanel(SerialEventListener listener) {
         this.listener = listener;
         refreshButton = new JButton(refreshAction);
+        autoButton    = new JButton(autoConnectAction);
         connectButton = new JButton(connectAction);
         dropDown = new JComboBox<String>();
         addSerialList(dropDown);
@@ -68,6 +70,7 @@ public class SerialConnectPanel extends JPanel {
         add(refreshButton);
         add(dropDown);
         add(baudSelect);
+        add(autoButton);
         add(connectButton);
         setOpaque(false);
     }
@@ -76,6 +79,10 @@ public class SerialConnectPanel extends JPanel {
         this.baudRate = baudRate;
     }
 
+    public int getBaudRate() {
+        return baudRate;
+    }
+
     public void showBaudSelector(boolean show) {
         baudSelect.setVisible(show);
     }
@@ -85,6 +92,7 @@ public class SerialConnectPanel extends JPanel {
         disconnect are run off the UI thread. These functions control the four
         states and prevent multiple port actions from racing eachother
     */
+    private static final String BUTTON_SEARCHING     = "Searching ";
     private static final String BUTTON_CONNECTING    = "Connecting";
     private static final String BUTTON_CONNECTED     = "Disconnect";
     private static final String BUTTON_DISCONNECTING = "Disabling ";
@@ -106,11 +114,29 @@ public class SerialConnectPanel extends JPanel {
         }
         (new Thread(connectSerial)).start();
     }
+
+    private void autoConnect() {
+        synchronized(lock) {
+            if (inProgress) {
+                System.err.println("Connect command issued while a change was in Progress");
+                return;
+            }
+
+            refreshButton.setEnabled(false);
+            dropDown.setEnabled(false);
+            autoButton.setEnabled(false);
+            connectButton.setEnabled(false);
+            connectButton.setText(BUTTON_SEARCHING);
+            inProgress = true;
+        }
+        (new Thread(discoverSerial)).start();
+    }
     
     private void connectDone() {
         synchronized(lock) {
             refreshButton.setEnabled(false);
             dropDown.setEnabled(false);
+            autoButton.setEnabled(false);
             connectButton.setEnabled(true);
             connectButton.setText(BUTTON_CONNECTED);
             inProgress = false;
@@ -126,6 +152,7 @@ public class SerialConnectPanel extends JPanel {
             
             refreshButton.setEnabled(false);
             dropDown.setEnabled(false);
+            autoButton.setEnabled(false);
             connectButton.setEnabled(false);
             connectButton.setText(BUTTON_DISCONNECTING);
             inProgress = true;
@@ -138,6 +165,7 @@ public class SerialConnectPanel extends JPanel {
             refreshDropDown();
             refreshButton.setEnabled(true);
             dropDown.setEnabled(true);
+            autoButton.setEnabled(true);
             connectButton.setEnabled(true);
             connectButton.setText(BUTTON_DISCONNECTED);
             inProgress = false;
@@ -189,6 +217,48 @@ public class SerialConnectPanel extends JPanel {
         }
     };
 
+    Action autoConnectAction = new AbstractAction() {
+        {
+            putValue(Action.NAME, "Auto");
+            putValue(Action.SHORT_DESCRIPTION,
+                     "Search all ports and baud rates for a vehicle");
+        }
+        public void actionPerformed(ActionEvent e) {
+            if (connectedPort == null) {
+                autoConnect();
+            }
+        }
+    };
+
+    /*
+        Probes every port in parallel, then selects the port and baud rate
+        that produced the most valid frames and connects to it
+    */
+    private Runnable discoverSerial = new Runnable() {
+        public void run() {
+            PortDiscovery.Result best =
+                PortDiscovery.findBest(PortDiscovery.DEFAULT_DEADLINE_MS);
+
+            if(best == null) {
+                System.err.println("Auto connect found no responding vehicle");
+                disconnectDone();
+                return;
+            }
+
+            refreshDropDown();
+            dropDown.setSelectedItem(best.getPortName());
+            baudRate = best.getBaud();
+            for(int i = 0; i < rates.length; i++) {
+                if(rates[i].id == baudRate) {
+                    baudSelect.setSelectedIndex(i);
+                    break;
+                }
+            }
+
+            connectSerial.run();
+        }
+    };
+
     private Runnable connectSerial = new Runnable() {
         public void run() {
             String portName = (String)dropDown.getSelectedItem();
@@ -241,7 +311,9 @@ public class SerialConnectPanel extends JPanel {
             listener.disconnectRequest();
 
             try {
-                connectedPort.closePort();
+                if(connectedPort.isOpened()) {
+                    connectedPort.closePort();
+                }
             } 
             catch (Exception e) {
                 e.printStackTrace();
@@ -254,6 +326,7 @@ public class SerialConnectPanel extends JPanel {
     
     public void setEnabled(boolean shouldEnable) {
     	refreshButton.setEnabled(shouldEnable);
+    	autoButton.setEnabled(shouldEnable);
     	connectButton.setEnabled(shouldEnable);
     	dropDown.setEnabled(shouldEnable);
     	baudSelect.setEnabled(shouldEnable);
@@ -0,0 +1,306 @@
+package com.serial;
+
+import com.Context;
+import com.map.Dot;
+import com.map.WaypointList;
+import com.telemetry.HistoryStore;
+import com.telemetry.SensorEventIndex;
+import com.telemetry.TelemetryStats;
+import com.telemetry.TelemetryListener;
+import com.telemetry.TelemetryManager;
+import com.telemetry.TelemetryRecord;
+import static com.map.WaypointList.*;
+
+import jssc.SerialPort;
+
+import java.util.logging.Logger;
+
+/**
+ * A single dashboard to vehicle connection. Each link owns its own serial
+ * port, decode pipeline (SerialParser), SerialSender, telemetry store and
+ * waypoint list so that several vehicles can be connected at once.
+ *
+ * Exactly one link is "selected" at a time. The selected link mirrors its
+ * telemetry into the display TelemetryManager held by the Context and keeps
+ * its waypoint list in step with the map's mission editor, which is how the
+ * map and widgets switch from one vehicle to another.
+ */
+public class SerialLink {
+    private final Context context;
+    private final int id;
+    private final TelemetryManager telemetry;
+    private final HistoryStore history;
+    private final TelemetryStats stats;
+    private final SensorEventIndex sensorEvents;
+    private final WaypointList waypoints;
+    private final SerialParser parser;
+    private final SerialSender sender;
+    private final LinkSupervisor supervisor;
+    private final LinkClock clock = new LinkClock();
+
+    private volatile SerialPort port;
+    private volatile boolean connected;
+    private volatile boolean selected;
+
+    private final Logger seriallog = Logger.getLogger("d.serial");
+
+    /**
+     * Class Constructor
+     * @param ctx - the application context
+     * @param id - index of this link within the context's link list
+     */
+    public SerialLink(Context ctx, int id) {
+        this.context   = ctx;
+        this.id        = id;
+        this.telemetry = new TelemetryManager();
+        this.history   = new HistoryStore();
+        this.stats     = new TelemetryStats();
+        this.sensorEvents = new SensorEventIndex();
+        this.waypoints = new WaypointList();
+        this.sender    = new SerialSender(ctx, this);
+        this.parser    = new SerialParser(ctx, this);
+        this.supervisor = new LinkSupervisor(this);
+        history.attach(telemetry);
+        telemetry.setHistory(history);
+        stats.attach(telemetry);
+        sensorEvents.attach(telemetry);
+
+        //Track this vehicle's position in its own waypoint list so it can be
+        //drawn on the map even when another vehicle is selected.
+        final Dot rover = waypoints.getRover();
+        telemetry.registerListener(TelemetryRecord.Kind.POSITION,
+                                   new TelemetryRecord.Listener() {
+            public void update(TelemetryRecord position) {
+                rover.setLatitude(position.get(TelemetryRecord.LATITUDE));
+                rover.setLongitude(position.get(TelemetryRecord.LONGITUDE));
+                waypoints.setRover(rover, WaypointListener.Source.REMOTE);
+            }
+        });
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return "Vehicle " + (id + 1);
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    public SerialParser getParser() {
+        return parser;
+    }
+
+    public SerialSender getSender() {
+        return sender;
+    }
+
+    public LinkSupervisor getSupervisor() {
+        return supervisor;
+    }
+
+    /**
+     * Returns the estimate of this vehicle's clock relative to the local one
+     */
+    public LinkClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns the telemetry store holding this vehicle's latest values.
+     * Unlike the Context's display store this is written regardless of
+     * which vehicle is currently selected.
+     */
+    public TelemetryManager getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * Returns the recorded history of every channel this vehicle has reported
+     */
+    public HistoryStore getHistory() {
+        return history;
+    }
+
+    /**
+     * Returns running statistics of every channel this vehicle has reported
+     */
+    public TelemetryStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns the bumper hits and near range sonar readings of this vehicle
+     */
+    public SensorEventIndex getSensorEvents() {
+        return sensorEvents;
+    }
+
+    public WaypointList getWaypointList() {
+        return waypoints;
+    }
+
+    public SerialPort port() {
+        return port;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isSelected() {
+        return selected;
+    }
+
+    /**
+     * Marks this link as the one driving the map and widgets. Only called
+     * by the Context while switching vehicles.
+     */
+    public void setSelected(boolean selected) {
+        this.selected = selected;
+    }
+
+    /**
+     * Attaches a newly opened port to this link, starts its decode pipeline
+     * and sender, and puts the port under supervision so it is reopened
+     * automatically if lost.
+     * @param newPort - an opened and configured serial port
+     * @param baud - the baud rate `newPort` was opened at
+     */
+    public void open(SerialPort newPort, int baud) {
+        close();
+        attach(newPort);
+        supervisor.start(newPort.getPortName(), baud);
+    }
+
+    /**
+     * Ends the session on this link at the operator's request. Supervision
+     * stops, unconfirmed messages are dropped and the port is closed.
+     */
+    public void close() {
+        supervisor.stop();
+        detach();
+        sender.clearPending();
+    }
+
+    /**
+     * Detaches a port that has been lost while keeping the session state,
+     * so it can be picked up again by resume.
+     */
+    void suspend() {
+        detach();
+    }
+
+    /**
+     * Attaches a reopened port after an outage and resumes the session.
+     * @param newPort - the reopened port
+     */
+    void resume(SerialPort newPort) {
+        attach(newPort);
+        sender.resume();
+    }
+
+    /**
+     * Reports an I/O failure on this link's port to its supervisor.
+     */
+    public void reportFailure(Exception e) {
+        supervisor.reportFailure(e);
+    }
+
+    private void attach(SerialPort newPort) {
+        port = newPort;
+        connected = true;
+        sender.start();
+        parser.updatePort();
+        context.linkStateChanged(this);
+    }
+
+    private void detach() {
+        sender.stop();
+        parser.stop();
+        SerialPort oldPort = port;
+        port = null;
+        connected = false;
+
+        if(oldPort != null && oldPort.isOpened()) {
+            try {
+                oldPort.closePort();
+            } catch (Exception e) {
+                seriallog.fine(getName() + " port already gone " + e);
+            }
+        }
+        context.linkStateChanged(this);
+    }
+
+    /**
+     * Stores a decoded telemetry value for this vehicle, mirroring it into
+     * the display store when this link is selected.
+     * @param id - telemetry index
+     * @param value - the new value
+     */
+    public void setTelemetry(int id, float value) {
+        store(id, value, TelemetryManager.NO_TIME);
+    }
+
+    /**
+     * Stores a telemetry value stamped with the vehicle's clock. The stamp
+     * is converted to local time once the clock offset is known.
+     * @param id - telemetry index
+     * @param value - the new value
+     * @param vehicleTime - the vehicle's u32 ms clock when it was sampled
+     */
+    public void setTelemetry(int id, float value, int vehicleTime) {
+        long sent = clock.isSynced() ? clock.toLocalTime(vehicleTime)
+                                     : TelemetryManager.NO_TIME;
+        store(id, value, sent);
+    }
+
+    private void store(int id, float value, long sentTime) {
+        long received = System.currentTimeMillis();
+        telemetry.update(id, (double)value, sentTime, received);
+
+        if(selected) {
+            context.telemetry.update(id, (double)value, sentTime, received);
+        }
+    }
+
+    /**
+     * Publishes the composite records written during a decode pass, in this
+     * link's store and, when selected, the display store.
+     */
+    public void commitTelemetry() {
+        telemetry.commit();
+
+        if(selected) {
+            context.telemetry.commit();
+        }
+    }
+
+    /**
+     * Applies a target index reported by the vehicle.
+     * @param index - the new target index
+     */
+    public void setTarget(int index) {
+        waypoints.setTarget(index, WaypointListener.Source.REMOTE);
+
+        if(selected) {
+            context.getWaypointList().setTarget(index,
+                    WaypointListener.Source.REMOTE);
+        }
+    }
+
+    /**
+     * Called when a sync handshake completes with the vehicle.
+     */
+    public void onConnection() {
+        seriallog.fine(getName() + " synchronized");
+        //the vehicle may have restarted, taking its clock back to zero
+        clock.reset();
+        sender.sendTimeSync();
+        sender.sendWaypointList();
+    }
+}
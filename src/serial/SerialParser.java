@@ -10,6 +10,7 @@ import com.serial.*;
 import com.serial.Messages.*;
 import com.serial.Serial;
 import com.serial.CommsMonitor;
+import com.telemetry.LatencyTrace;
 import static com.map.WaypointList.*;
 
 import jssc.SerialPort;
@@ -19,6 +20,9 @@ import jssc.SerialPortEvent;
 
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 import java.io.InputStream;
@@ -31,41 +35,77 @@ import java.nio.charset.StandardCharsets;
 
 public class SerialParser implements SerialPortEventListener {
     private Context context;
-    private Decoder decoder;
+    private SerialLink link;
+    private volatile Decoder decoder;
     private StateMap descriptionMap;
-    private WaypointList waypoints;
     private CommsMonitor commsMonitor;
+
+    /**
+     * Each link decodes on its own thread so that several vehicles are
+     * parsed in parallel instead of queueing behind one another on the
+     * port event callbacks. Port events that arrive while a decode pass is
+     * already scheduled are folded into that pass.
+     */
+    private final ExecutorService decodeThread;
+    private final AtomicBoolean decodePending = new AtomicBoolean(false);
+    //when the port reported the bytes of the pass now scheduled
+    private volatile long portEventNs;
+    private final LatencyTrace trace = LatencyTrace.getInstance();
+    private final Runnable decodeTask = new Runnable() {
+        public void run() {
+            decodePending.set(false);
+            Decoder d = decoder;
+            if(d == null) return;
+            //only the selected vehicle's data reaches the screen
+            if(link.isSelected()) trace.begin(portEventNs);
+            try {
+                d.update();
+                link.commitTelemetry();
+            } finally {
+                trace.end();
+            }
+        }
+    };
     
     private final Logger seriallog = Logger.getLogger("d.serial");
     private final Logger robotlog = Logger.getLogger("d.robot");
 
-    public SerialParser(Context cxt, WaypointList waypoints) {
+    public SerialParser(Context cxt, SerialLink link) {
         context = cxt;
-        this.waypoints = waypoints;
+        this.link = link;
         commsMonitor = CommsMonitor.getInstance();
+        decodeThread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, link.getName() + " decoder");
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     public void serialEvent(SerialPortEvent event) {
-        decoder.update();
+        if(decodePending.compareAndSet(false, true)) {
+            portEventNs = System.nanoTime();
+            decodeThread.execute(decodeTask);
+        }
+    }
+
+    /**
+     * Detaches the decoder from the port; any pass already queued on the
+     * decode thread becomes a no-op.
+     */
+    public void stop() {
+        decoder = null;
     }
 
     public void updatePort() {
-        InputStream serial = new SerialInputStream(context.port());
-        Checksum check = new Checksum() {
-            public byte[] calc(byte[] plaintext) {
-                return Serial.fletcher16bytes(plaintext);
-            }
-            public int length() {
-                return 2;
-            }
-        };
-        decoder = new Decoder(serial, Serial.HEADER, Serial.FOOTER, check);
-        decoder.addPacketReader(new DataReader());
-        decoder.addPacketReader(new WordReader());
-        decoder.addPacketReader(new StringReader());
+        InputStream serial = new SerialInputStream(link.port());
+        Decoder d = new Decoder(serial, Serial.HEADER, Serial.FOOTER, Serial.CHECKSUM);
+        d.addPacketReader(new DataReader());
+        d.addPacketReader(new WordReader());
+        d.addPacketReader(new StringReader());
+        decoder = d;
 
         try {
-            context.port().addEventListener(this);
+            link.port().addEventListener(this);
         } catch(SerialPortException ex) {
             seriallog.severe(ex.getMessage());
         }
@@ -109,6 +149,7 @@ public class SerialParser implements SerialPortEventListener {
             else return -1;
         }
         public void handle(byte[] msg) {
+        	trace.stamp(LatencyTrace.Stage.FRAME_VALID);
         	int subtype = Serial.getSubtype(msg[0]);
             int index   = msg[1];
             
@@ -117,12 +158,13 @@ public class SerialParser implements SerialPortEventListener {
             
             switch(subtype) {
                 case Serial.TELEMETRY_DATA:
-                	tempdata = ( ((msg[2]&0xff)<<24)|
-                				 ((msg[3]&0xff)<<16)|
-                				 ((msg[4]&0xff)<< 8)|
-                				 ((msg[5]&0xff)) );
+                	tempdata = readInt(msg, 2);
                 	data  = Float.intBitsToFloat(tempdata);
-                    context.setTelemetry(index, data);
+                	if(msg.length >= Serial.TIMESTAMPED_DATA_LENGTH) {
+                		link.setTelemetry(index, data, readInt(msg, 6));
+                	} else {
+                		link.setTelemetry(index, data);
+                	}
                     break;
                     
                 case Serial.SETTING_DATA:
@@ -131,7 +173,9 @@ public class SerialParser implements SerialPortEventListener {
             					 ((msg[4]&0xff)<< 8)|
             					 ((msg[5]&0xff)) );
                 	data  = Float.intBitsToFloat(tempdata);
-                    context.setSettingQuiet(index, data);
+                	if(link.isSelected()) {
+                		context.setSettingQuiet(index, data);
+                	}
                     break;
                     
                 case Serial.SENSOR_DATA:
@@ -146,15 +190,27 @@ public class SerialParser implements SerialPortEventListener {
                 		sensorVal = (sensorVal << 8) | val;
                 	}
                 	
+                	//Stored as telemetry so every reading is kept in the link's
+                	//history and logs; the widgets follow the display store
                 	switch(sensorSubtype) {
                 		case Serial.OBJDETECT_SONIC:
                         	//SensorData: [0]MSB [1]LSB
-                        	context.dash.pingWidget.update(sensorIndex, sensorVal);
+                        	if(sensorIndex < 0 || sensorIndex >= Serial.SONAR_COUNT) {
+                        		seriallog.warning("SerialParser - Sensor Data - "
+                        			+ "Sonar index " + sensorIndex + " out of range");
+                        		break;
+                        	}
+                        	link.setTelemetry(Serial.SONAR_FIRST + sensorIndex, sensorVal);
                         	break;
                         
                 		case Serial.OBJDETECT_BUMPER:
                 			//SensorData: 0 = Off, 1 = On
-                			context.dash.bumperWidget.update(sensorIndex, sensorVal);
+                			if(sensorIndex < 0 || sensorIndex >= Serial.BUMPER_COUNT) {
+                				seriallog.warning("SerialParser - Sensor Data - "
+                					+ "Bumper index " + sensorIndex + " out of range");
+                				break;
+                			}
+                			link.setTelemetry(Serial.BUMPER_FIRST + sensorIndex, sensorVal);
                 			break;
                 			
                         default:
@@ -180,7 +236,16 @@ public class SerialParser implements SerialPortEventListener {
                 		case Serial.HEARTBEAT:
                 			int pulse = msg[2];
                 			
-                			commsMonitor.receiveHeartbeatPulse(pulse);
+                			if(link.isSelected()) {
+                				commsMonitor.receiveHeartbeatPulse(pulse);
+                			}
+                			break;
+
+                		case Serial.TIME_SYNC:
+                			if(msg.length >= Serial.TIMESTAMPED_DATA_LENGTH) {
+                				link.getClock().addSample(readInt(msg, 2),
+                						readInt(msg, 6), System.currentTimeMillis());
+                			}
                 			break;
                 			
                 		default:
@@ -195,6 +260,14 @@ public class SerialParser implements SerialPortEventListener {
         }
     }
     
+    //big endian 32 bit value starting at msg[at]
+    private static int readInt(byte[] msg, int at) {
+        return ( ((msg[at  ]&0xff)<<24)|
+                 ((msg[at+1]&0xff)<<16)|
+                 ((msg[at+2]&0xff)<< 8)|
+                 ((msg[at+3]&0xff)) );
+    }
+
     private class WordReader implements PacketReader {
         public int claim(byte data) {
             if(Serial.getMsgType(data) == Serial.WORD_TYPE) {
@@ -213,36 +286,52 @@ public class SerialParser implements SerialPortEventListener {
             
             switch(subtype) {
                 case Serial.CONFIRMATION:
-                    context.sender.notifyOfConfirm(join);
+                    link.getSender().notifyOfConfirm(join);
                     break;
                     
+                case Serial.SEQ_ACK:
+                    link.getSender().notifyOfAck(a & 0xff, b & 0xff);
+                    break;
+
                 case Serial.SYNC_WORD: {
+                        boolean arq = (b & Serial.SYNC_ARQ) != 0;
                         if(a == Serial.SYNC_REQUEST) {
-                            Message message = Message.syncMessage(Serial.SYNC_RESPOND);
-                            context.sender.sendMessage(message);
-                            context.onConnection();
+                            Message message = Message.syncMessage(
+                                Serial.SYNC_RESPOND, Serial.SYNC_ARQ);
+                            link.getSender().sendMessage(message);
+                            link.getSender().setSequenced(arq);
+                            link.onConnection();
                         } 
                         else if (a == Serial.SYNC_RESPOND) { //resync seen
-                            context.onConnection();
+                            link.getSender().setSequenced(arq);
+                            link.onConnection();
                         }
                     }
                     break;
                     
                 case Serial.COMMAND_WORD:
                     if(a == Serial.TARGET_CMD) {
-                        if(b < 0 || b >= waypoints.size()){
+                        if(b < 0 || b >= link.getWaypointList().size()){
                             seriallog.severe("Rover transmitted inconsistent target; resyncing");
-                            context.sender.sendWaypointList();
+                            link.getSender().sendWaypointList();
                         } 
                         else {
-                            waypoints.setTarget(b, WaypointListener.Source.REMOTE);
+                            link.setTarget(b);
                             seriallog.warning("SerialParser - New target index from rover: " + b);
                         }
                     }
                     break;
                 
                 case Serial.STATE_WORD:
-                	context.dash.stateWidget.update(a,b);
+                	if(a == Serial.DRIVE_STATE) {
+                		link.setTelemetry(Serial.DRIVESTATE, b);
+                	}
+                	if(link.isSelected()) {
+                		context.dash.stateWidget.update(a,b);
+                		if(context.getTelemetryServer() != null) {
+                			context.getTelemetryServer().publishState(a, b);
+                		}
+                	}
                 	break;
             }
         }
@@ -4,6 +4,7 @@ import com.Context;
 import com.Dashboard;
 import com.map.Dot;
 import com.map.MapPanel;
+import com.map.WaypointList;
 import com.serial.Messages.*;
 import com.serial.*;
 import java.util.Arrays;
@@ -15,26 +16,36 @@ import java.util.*;
 import javax.swing.SwingUtilities;
 
 public class SerialSender {
-    private static final Object lock = new Object();
-    private LinkedList<Message> pendingConfirm;
+    private final Object lock = new Object();
+    private final LinkedList<Message> pendingConfirm = new LinkedList<Message>();
+    //reliable messages waiting for room in the ARQ window
+    private final LinkedList<Message> sendQueue = new LinkedList<Message>();
+    private volatile boolean sequenced;
+    private int nextSequence;
     private Timer timer;
     private boolean sendingWaypointList;
     private int waypointListPosition;
     private int waypointListWaitingCode;
+    private volatile int syncedMissionDigest = NO_DIGEST;
+
+    private static final int NO_DIGEST = -1;
     private Context context;
+    private SerialLink link;
 
     private final Logger seriallog = Logger.getLogger("d.serial");
 
-    public SerialSender(Context cxt) {
+    public SerialSender(Context cxt, SerialLink link) {
         context = cxt;
+        this.link = link;
         setup();
     }
 
     private void setup() {
-        pendingConfirm = new LinkedList<Message>();
         TimerTask checkTask = new TimerTask() {
             @Override
             public void run() {
+                boolean sequenceBroken = false;
+                SerialPortException failure = null;
                 synchronized(lock) {
                     Date now = new Date();
                     for(Iterator<Message> i = pendingConfirm.iterator(); i.hasNext();) {
@@ -42,20 +53,35 @@ public class SerialSender {
                         if(msg.isPastExpiration(now)) {
                             if(msg.numberOfFailures() >= Serial.MAX_FAILURES) {
                                 i.remove();
+                                sequenceBroken |= (msg.getSequence() >= 0);
                                 seriallog.severe(
                                     "Connection failed; Rover unware of "+
                                     msg.toString()+
                                     "!");
                             } else {
-                                resendMessage(msg);
+                                SerialPortException ex = resend(msg);
+                                if(ex != null) failure = ex;
                             }
                         }
                     }
                 }
+                report(failure);
+                // An abandoned sequence number leaves a gap the vehicle
+                // can never fill; a fresh sync resets both sides
+                if(sequenceBroken) sendSync();
+            }
+        };
+        TimerTask clockTask = new TimerTask() {
+            @Override
+            public void run() {
+                sendTimeSync();
             }
         };
         timer = new Timer();
         timer.scheduleAtFixedRate(checkTask, 1000, 100);
+        timer.scheduleAtFixedRate(clockTask,
+                                  Serial.CLOCK_SYNC_PERIOD_MS,
+                                  Serial.CLOCK_SYNC_PERIOD_MS);
     }
 
     public void start() {
@@ -72,42 +98,232 @@ public class SerialSender {
         timer = null;
     }
 
+    /**
+     * Switches between sequenced ARQ and checksum confirmations, as agreed
+     * during the sync handshake. Either way both ends restart their sequence
+     * numbers, so sequenced messages still in flight are renumbered and sent
+     * again from the front of the queue.
+     * @param enable - true if the vehicle advertised SYNC_ARQ
+     */
+    public void setSequenced(boolean enable) {
+        SerialPortException failure = null;
+        synchronized(lock) {
+            LinkedList<Message> unsent = new LinkedList<Message>();
+            for(Iterator<Message> i = pendingConfirm.iterator(); i.hasNext();) {
+                Message msg = i.next();
+                if(msg instanceof SequencedMessage) {
+                    unsent.add(((SequencedMessage) msg).getInner());
+                    i.remove();
+                }
+            }
+            sendQueue.addAll(0, unsent);
+
+            sequenced = enable;
+            nextSequence = 0;
+            if(enable) {
+                failure = fillWindow();
+            } else {
+                while(!sendQueue.isEmpty()) {
+                    SerialPortException ex = transmit(sendQueue.removeFirst());
+                    if(ex != null) failure = ex;
+                }
+            }
+        }
+        report(failure);
+        seriallog.fine(link.getName() + (enable ? " using" : " not using")
+                       + " sequenced confirmations");
+    }
+
+    public boolean isSequenced() {
+        return sequenced;
+    }
+
     public void addPendingConfirm(Message msg) {
-        synchronized(pendingConfirm) {
+        synchronized(lock) {
             pendingConfirm.add(msg);
         }
     }
 
+    /**
+     * Drops every message still waiting for a confirmation. Used when the
+     * operator disconnects, as opposed to the link being lost.
+     */
+    public void clearPending() {
+        synchronized(lock) {
+            pendingConfirm.clear();
+            sendQueue.clear();
+        }
+        sendingWaypointList = false;
+        syncedMissionDigest = NO_DIGEST;
+    }
+
+    /**
+     * Picks a session back up after the port was lost and reopened. Messages
+     * that were awaiting confirmation are sent again straight away, and the
+     * waypoint list is only resent if it no longer matches the mission the
+     * vehicle last confirmed in full.
+     */
+    public void resume() {
+        SerialPortException failure = null;
+        synchronized(lock) {
+            for(Message msg : pendingConfirm) {
+                try {
+                    msg.send(link.port());
+                } catch (SerialPortException ex) {
+                    seriallog.severe(ex.getMessage());
+                    failure = ex;
+                    break;
+                }
+            }
+            if(failure == null) {
+                seriallog.fine("Resumed "+pendingConfirm.size()+" pending messages");
+                failure = fillWindow();
+            }
+        }
+        if(failure != null) {
+            report(failure);
+            return;
+        }
+
+        if(sendingWaypointList || missionDigest() != syncedMissionDigest) {
+            seriallog.info("Mission changed during outage; resending waypoints");
+            sendWaypointList();
+        } else {
+            seriallog.fine("Mission digest unchanged; skipping waypoint resend");
+        }
+    }
+
+    /**
+     * Returns a digest of the waypoint list, loop mode and target as they
+     * would be sent to the vehicle.
+     */
+    public int missionDigest() {
+        WaypointList list = link.getWaypointList();
+        int digest = list.getLooped() ? 1 : 0;
+        digest = digest * 31 + list.getTarget();
+        try {
+            for(int i = 0; i < list.size(); i++) {
+                Message msg = Message.addWaypoint((byte) i, list.get(i).dot());
+                digest = digest * 31 + msg.getConfirmSum();
+            }
+        } catch (IndexOutOfBoundsException e) {
+            //list was edited while being read; treat the mission as unknown
+            return NO_DIGEST;
+        }
+        return digest;
+    }
+
     public void sendMessage(Message msg) {
-        if(context.connected) {
-            try {
-                msg.send(context.port());
-                if(msg.needsConfirm())
-                    synchronized(lock) {
-                        pendingConfirm.add(msg);
-                    }
+        if(!link.isConnected()) return;
 
-                seriallog.finer(Integer.toHexString(msg.getConfirmSum()) +
-                                " Sent " +
-                                msg.toString());
+        report(enqueue(msg));
+    }
+
+    //Queues `msg` for the ARQ window or writes it straight away, returning
+    //the write failure if there was one
+    private SerialPortException enqueue(Message msg) {
+        if(sequenced && msg.needsConfirm()) {
+            synchronized(lock) {
+                sendQueue.add(msg);
+                return fillWindow();
+            }
+        }
+        return transmit(msg);
+    }
+
+    /**
+     * Tells the supervisor that writing to the port failed. Never called
+     * while holding `lock`: the supervisor may be resuming this sender, which
+     * takes `lock`, at the same time.
+     */
+    private void report(SerialPortException failure) {
+        if(failure != null) link.reportFailure(failure);
+    }
+
+    private SerialPortException transmit(Message msg) {
+        try {
+            msg.send(link.port());
+            if(msg.needsConfirm())
+                synchronized(lock) {
+                    pendingConfirm.add(msg);
+                }
+
+            seriallog.finer(Integer.toHexString(msg.getConfirmSum()) +
+                            " Sent " +
+                            msg.toString());
+        } catch (SerialPortException ex) {
+            seriallog.severe(ex.getMessage());
+            return ex;
+        }
+        return null;
+    }
+
+    /**
+     * Moves queued reliable messages into the ARQ window, numbering them as
+     * they go. A numbered message stays pending even if writing it fails,
+     * since the vehicle can not move past a missing sequence number.
+     * Must be called while holding `lock`; a write failure is returned to be
+     * reported once `lock` is released.
+     */
+    private SerialPortException fillWindow() {
+        if(!sequenced || !link.isConnected()) return null;
+
+        while(!sendQueue.isEmpty() && inFlight() < Serial.ARQ_WINDOW) {
+            Message msg = Message.sequenced(nextSequence, sendQueue.removeFirst());
+            nextSequence = (nextSequence + 1) & 0xff;
+            msg.sendTime(new Date());
+            pendingConfirm.add(msg);
+            try {
+                msg.send(link.port());
+                seriallog.finer("Sent " + msg.toString());
             } catch (SerialPortException ex) {
                 seriallog.severe(ex.getMessage());
+                return ex;
             }
         }
+        return null;
+    }
+
+    int inFlight() {
+        synchronized(lock) {
+            int count = 0;
+            for(Message msg : pendingConfirm) {
+                if(msg.getSequence() >= 0) count++;
+            }
+            return count;
+        }
+    }
+
+    int pending() {
+        synchronized(lock) {
+            return pendingConfirm.size();
+        }
+    }
+
+    int queued() {
+        synchronized(lock) {
+            return sendQueue.size();
+        }
     }
 
     public void resendMessage(Message msg) {
-        if(context.connected) {
+        report(resend(msg));
+    }
+
+    private SerialPortException resend(Message msg) {
+        if(link.isConnected()) {
             try {
                 msg.addFailure();
-                msg.send(context.port());
+                msg.send(link.port());
                 seriallog.warning(Integer.toHexString(msg.getConfirmSum())+" "+
                                   "No response to "+msg.toString()+
                                   " resend #"+msg.numberOfFailures());
             } catch (SerialPortException ex) {
                 seriallog.severe(ex.getMessage());
+                return ex;
             }
         }
+        return null;
     }
 
     public void notifyOfConfirm(int confirm) {
@@ -122,13 +338,49 @@ public class SerialSender {
                     break;
                 }
             }
+            checkMissionSynced();
+        }
+    }
+
+    /**
+     * Handles a SEQ_ACK word from the vehicle, releasing every acknowledged
+     * message and refilling the window from the queue.
+     * @param cumulative - highest sequence number received with no gaps
+     * @param selective - bitmask of sequence numbers received past the gap
+     */
+    public void notifyOfAck(int cumulative, int selective) {
+        seriallog.finer("Incomming ack to #" + cumulative + " mask " +
+                        Integer.toBinaryString(selective));
+        SerialPortException failure;
+        synchronized(lock) {
+            for(Iterator<Message> i = pendingConfirm.iterator(); i.hasNext();) {
+                if(i.next().isAckedBy(cumulative, selective)) {
+                    i.remove();
+                }
+            }
+            failure = fillWindow();
+            checkMissionSynced();
+        }
+        report(failure);
+    }
+
+    // Everything sent has been confirmed, so the vehicle holds the mission
+    // as it currently stands. Must be called while holding `lock`.
+    private void checkMissionSynced() {
+        if(pendingConfirm.isEmpty() && sendQueue.isEmpty()
+                && !sendingWaypointList) {
+            syncedMissionDigest = missionDigest();
         }
     }
 
     public void sendWaypointList() {
         waypointListPosition = 0;
-        if(context.connected) {
+        if(link.isConnected()) {
             seriallog.fine("Sending waypoint list");
+            if(sequenced) {
+                sendWholeWaypointList();
+                return;
+            }
             sendingWaypointList = true;
             Message msg = Message.clearWaypoints();
             sendMessage(msg);
@@ -136,17 +388,40 @@ public class SerialSender {
         }
     }
 
+    //With sequenced confirmations the vehicle applies messages in order, so
+    //the whole list can be queued at once instead of one waypoint per confirm
+    private void sendWholeWaypointList() {
+        WaypointList list = link.getWaypointList();
+        sendingWaypointList = false;
+        List<Message> mission = new ArrayList<Message>();
+        mission.add(Message.clearWaypoints());
+        for(int i = 0; i < list.size(); i++) {
+            mission.add(Message.addWaypoint((byte) i, list.get(i).dot()));
+        }
+        boolean looped = list.getLooped();
+        mission.add(Message.setLooping((byte) ((looped)?1:0) ));
+
+        SerialPortException failure = null;
+        synchronized(lock) {
+            for(Message msg : mission) {
+                SerialPortException ex = enqueue(msg);
+                if(ex != null) failure = ex;
+            }
+        }
+        report(failure);
+    }
+
     private void advanceWaypointList(int confirm) {
         if(confirm == waypointListWaitingCode) {
-            if(waypointListPosition >= context.getWaypointList().size()) {
+            if(waypointListPosition >= link.getWaypointList().size()) {
                 sendingWaypointList = false;
-                boolean looped = context.getWaypointList().getLooped();
+                boolean looped = link.getWaypointList().getLooped();
                 sendMessage(Message.setLooping((byte) ((looped)?1:0) ));
                 return;
             }
             Message msg = Message.addWaypoint(
                 (byte) waypointListPosition,
-                context.getWaypointList().get(waypointListPosition).dot());
+                link.getWaypointList().get(waypointListPosition).dot());
             sendMessage(msg);
             waypointListWaitingCode = msg.getConfirmSum();
             waypointListPosition++;
@@ -161,7 +436,7 @@ public class SerialSender {
     public void changeMovement(boolean shouldMove) {
     	Message msg;
     	
-    	if(context.connected) {
+    	if(link.isConnected()) {
     		if(shouldMove) {
     			msg = Message.startDriving();
     		}
@@ -180,7 +455,7 @@ public class SerialSender {
     public void toggleBumper(boolean shouldEnable) {
     	Message msg;
     	
-    	if(context.connected) {
+    	if(link.isConnected()) {
     		if(shouldEnable) {
     			msg = Message.enableBumper();
     		}
@@ -200,8 +475,15 @@ public class SerialSender {
     	sendMessage(Message.resetSettings());
     }
     
+    /**
+     * Sends the local time for the vehicle to echo back with its own clock
+     */
+    public void sendTimeSync() {
+        sendMessage(Message.timeSync(LinkClock.wireTime(System.currentTimeMillis())));
+    }
+
     public void sendSync() {
-        Message msg = Message.syncMessage(Serial.SYNC_REQUEST);
+        Message msg = Message.syncMessage(Serial.SYNC_REQUEST, Serial.SYNC_ARQ);
         sendMessage(msg);
     }
 }
@@ -0,0 +1,210 @@
+package com.stream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Blocking client for the stream served by TelemetryServer, for Java
+ * consumers such as recorders and analytics tools.
+ *
+ * Typical use:
+ * <pre>
+ *   try (StreamClient c = new StreamClient("localhost", port)) {
+ *       c.subscribe(Serial.VOLTAGE, 10);
+ *       while(true) {
+ *           StreamClient.Frame f = c.next();
+ *           ...
+ *       }
+ *   }
+ * </pre>
+ */
+public class StreamClient implements AutoCloseable {
+    /**
+     * A frame received from the server. Which fields are set depends on
+     * its type, one of the server to client types in StreamProtocol.
+     */
+    public static class Frame {
+        private final byte type;
+        private long time;
+        private int[] ids = new int[0];
+        private double[] values = new double[0];
+        private byte kind;
+        private int index;
+        private double latitude;
+        private double longitude;
+        private short altitude;
+
+        Frame(byte type) {
+            this.type = type;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        /** Server time of a TELEMETRY frame, ms since the epoch */
+        public long getTime() {
+            return time;
+        }
+
+        /** Number of channels in a TELEMETRY frame */
+        public int size() {
+            return ids.length;
+        }
+
+        public int getId(int i) {
+            return ids[i];
+        }
+
+        public double getValue(int i) {
+            return values[i];
+        }
+
+        /** WAYPOINT kind, or the state of a STATE frame */
+        public byte getKind() {
+            return kind;
+        }
+
+        /** WAYPOINT index, or the substate of a STATE frame */
+        public int getIndex() {
+            return index;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public short getAltitude() {
+            return altitude;
+        }
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final List<String> channelNames;
+
+    /**
+     * Connects and reads the server's channel names
+     */
+    public StreamClient(String host, int port) throws IOException {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        in.readInt();
+        if(in.readByte() != StreamProtocol.HELLO) {
+            socket.close();
+            throw new IOException("Not a telemetry stream");
+        }
+        short version = in.readShort();
+        if(version != StreamProtocol.VERSION) {
+            socket.close();
+            throw new IOException("Unsupported stream version " + version);
+        }
+        List<String> names = new ArrayList<String>();
+        for(int i = in.readShort(); i > 0; i--) {
+            names.add(in.readUTF());
+        }
+        channelNames = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Names of the server's channels, by id
+     */
+    public List<String> getChannelNames() {
+        return channelNames;
+    }
+
+    /**
+     * Asks for channel `id` at most `maxHz` times a second, or on every
+     * change if 0
+     */
+    public void subscribe(int id, int maxHz) throws IOException {
+        out.writeInt(1 + 2 + 4);
+        out.writeByte(StreamProtocol.SUBSCRIBE);
+        out.writeShort(1);
+        out.writeShort(id);
+        out.writeShort(maxHz);
+        out.flush();
+    }
+
+    public void unsubscribe(int id) throws IOException {
+        out.writeInt(1 + 2 + 2);
+        out.writeByte(StreamProtocol.UNSUBSCRIBE);
+        out.writeShort(1);
+        out.writeShort(id);
+        out.flush();
+    }
+
+    /**
+     * Turns waypoint and state events on or off
+     */
+    public void setEvents(boolean enabled) throws IOException {
+        out.writeInt(1 + 1);
+        out.writeByte(StreamProtocol.EVENTS);
+        out.writeByte(enabled ? 1 : 0);
+        out.flush();
+    }
+
+    /**
+     * Blocks until the next frame arrives
+     */
+    public Frame next() throws IOException {
+        int length = in.readInt();
+        Frame f = new Frame(in.readByte());
+        switch(f.type) {
+            case StreamProtocol.TELEMETRY:
+                f.time = in.readLong();
+                int n = in.readShort();
+                f.ids = new int[n];
+                f.values = new double[n];
+                for(int i = 0; i < n; i++) {
+                    f.ids[i] = in.readShort() & 0xffff;
+                    f.values[i] = in.readDouble();
+                }
+                break;
+            case StreamProtocol.WAYPOINT:
+                f.kind = in.readByte();
+                f.index = in.readInt();
+                f.latitude = in.readDouble();
+                f.longitude = in.readDouble();
+                f.altitude = in.readShort();
+                break;
+            case StreamProtocol.STATE:
+                f.kind = in.readByte();
+                f.index = in.readByte();
+                break;
+            default:
+                //newer frame types are skipped
+                in.skipBytes(length - 1);
+        }
+        return f;
+    }
+
+    /**
+     * Sets how long next() may block before failing
+     */
+    public void setTimeout(int ms) throws IOException {
+        socket.setSoTimeout(ms);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,58 @@
+package com.stream;
+
+/**
+ * Wire format of the telemetry stream served by TelemetryServer.
+ *
+ * Every frame, in both directions, is
+ * <pre>
+ *   int   length of what follows
+ *   byte  frame type
+ *   ...   payload, big-endian
+ * </pre>
+ * Client to server:
+ * <pre>
+ *   SUBSCRIBE    short n, n * (short channel, short max rate in Hz, 0 = every change)
+ *   UNSUBSCRIBE  short n, n * short channel
+ *   EVENTS       byte 1 to receive waypoint and state events, 0 to stop
+ * </pre>
+ * Server to client:
+ * <pre>
+ *   HELLO        short VERSION, short n, n * UTF channel name
+ *   TELEMETRY    long ms time, short n, n * (short channel, double value)
+ *   WAYPOINT     byte kind, int index, double lat, double lon, short altitude
+ *   STATE        byte state, byte substate
+ * </pre>
+ * A TELEMETRY frame carries only the latest value of each subscribed
+ * channel that changed since the client was last sent it, no more often
+ * than its rate allows.
+ */
+public final class StreamProtocol {
+    public static final short VERSION = 1;
+
+    public static final byte SUBSCRIBE   = 1;
+    public static final byte UNSUBSCRIBE = 2;
+    public static final byte EVENTS      = 3;
+
+    public static final byte HELLO       = 16;
+    public static final byte TELEMETRY   = 17;
+    public static final byte WAYPOINT    = 18;
+    public static final byte STATE       = 19;
+
+    /** WAYPOINT kinds */
+    public static final byte WAYPOINT_ADD    = 0;
+    public static final byte WAYPOINT_SET    = 1;
+    public static final byte WAYPOINT_DELETE = 2;
+    public static final byte WAYPOINT_TARGET = 3;
+    public static final byte WAYPOINT_HOME   = 4;
+    public static final byte WAYPOINT_LOOP   = 5;
+
+    /** Largest frame a client may send */
+    public static final int MAX_REQUEST_BYTES = 64 * 1024;
+    /** Bytes of a TELEMETRY frame before its entries */
+    public static final int TELEMETRY_HEADER_BYTES = 4 + 1 + 8 + 2;
+    public static final int TELEMETRY_ENTRY_BYTES = 2 + 8;
+    public static final int WAYPOINT_BYTES = 4 + 1 + 1 + 4 + 8 + 8 + 2;
+    public static final int STATE_BYTES = 4 + 1 + 2;
+
+    private StreamProtocol() {}
+}
@@ -0,0 +1,431 @@
+package com.stream;
+
+import com.serial.Serial;
+import com.telemetry.TelemetryManager;
+import com.telemetry.TelemetrySubscription;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * Streams live telemetry, waypoint and state events to other processes over
+ * TCP, using the frames described in StreamProtocol.
+ *
+ * The dashboard's only cost is a listener per channel that stores the
+ * latest value and bumps a version number; it never blocks and never
+ * touches a socket. A single server thread owns every connection with a
+ * non-blocking selector, and each TICK_MS builds a frame per client from
+ * the channels it subscribed to that changed, at no more than the rate it
+ * asked for. Values are conflated, so a client only ever receives the
+ * latest value of a channel.
+ *
+ * Each client has a fixed size output buffer. While it is more than half
+ * full no telemetry is added, letting the client catch up on the latest
+ * values; a client that stays behind for EVICT_AFTER_MS, or that has no
+ * room left for an event, is disconnected.
+ */
+public class TelemetryServer implements AutoCloseable {
+    public static final int DEFAULT_BUFFER_BYTES = 256 * 1024;
+    public static final int TICK_MS = 10;
+    public static final int EVICT_AFTER_MS = 2000;
+    private static final int EVENT_QUEUE_SIZE = 1024;
+
+    private final TelemetryManager telemetry;
+    private final TelemetrySubscription subscription;
+    private final int bufferBytes;
+    private final AtomicLongArray values = new AtomicLongArray(Serial.MAX_TELEMETRY);
+    private final AtomicLongArray versions = new AtomicLongArray(Serial.MAX_TELEMETRY);
+    private final BlockingQueue<byte[]> events =
+        new ArrayBlockingQueue<byte[]>(EVENT_QUEUE_SIZE);
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread thread;
+    private final List<Client> clients = new ArrayList<Client>();
+    private volatile int clientCount;
+
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+
+    private final Logger iolog = Logger.getLogger("d.io");
+
+    /**
+     * Starts serving `telemetry` on `address`
+     * @param telemetry - the store to stream
+     * @param address - where to listen; port 0 picks a free port
+     * @param bufferBytes - output buffer size of each client
+     */
+    public TelemetryServer(TelemetryManager telemetry, InetSocketAddress address,
+                           int bufferBytes) throws IOException {
+        this.telemetry = telemetry;
+        this.bufferBytes = bufferBytes;
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        try {
+            server.bind(address);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+
+        int[] all = new int[Serial.MAX_TELEMETRY];
+        for(int id = 0; id < all.length; id++) all[id] = id;
+        subscription = telemetry.subscribe(all, new TelemetrySubscription.Subscriber() {
+            public void update(int id, double data, long time) {
+                values.set(id, Double.doubleToRawLongBits(data));
+                versions.incrementAndGet(id);
+            }
+        });
+
+        thread = new Thread(this::serve, "telemetry server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Port the server is listening on
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /** Clients disconnected for falling behind */
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+    /** Events dropped because the server thread could not keep up */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    /**
+     * Sends a waypoint event to clients that asked for events
+     * @param kind - one of the StreamProtocol.WAYPOINT_ kinds
+     */
+    public void publishWaypoint(byte kind, int index, double lat, double lon,
+                                short altitude) {
+        ByteBuffer frame = ByteBuffer.allocate(StreamProtocol.WAYPOINT_BYTES);
+        frame.putInt(StreamProtocol.WAYPOINT_BYTES - 4)
+             .put(StreamProtocol.WAYPOINT)
+             .put(kind)
+             .putInt(index)
+             .putDouble(lat)
+             .putDouble(lon)
+             .putShort(altitude);
+        publish(frame.array());
+    }
+
+    /**
+     * Sends a vehicle state change to clients that asked for events
+     */
+    public void publishState(byte state, byte substate) {
+        ByteBuffer frame = ByteBuffer.allocate(StreamProtocol.STATE_BYTES);
+        frame.putInt(StreamProtocol.STATE_BYTES - 4)
+             .put(StreamProtocol.STATE)
+             .put(state)
+             .put(substate);
+        publish(frame.array());
+    }
+
+    private void publish(byte[] frame) {
+        if(!events.offer(frame)) droppedEvents.incrementAndGet();
+    }
+
+    /**
+     * Disconnects every client and stops listening
+     */
+    @Override
+    public void close() {
+        subscription.cancel();
+        thread.interrupt();
+        try {
+            selector.close();
+            server.close();
+        } catch (IOException e) {
+            iolog.fine("Telemetry server close failed " + e);
+        }
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for(Client c : clients) c.close();
+        clients.clear();
+        clientCount = 0;
+    }
+
+    private void serve() {
+        try {
+            long nextTick = System.nanoTime();
+            while(!Thread.currentThread().isInterrupted()) {
+                long wait = (nextTick - System.nanoTime()) / 1000000;
+                if(wait > 0) selector.select(wait); else selector.selectNow();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isValid()) continue;
+                    if(key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Client c = (Client) key.attachment();
+                        if(key.isReadable()) c.read();
+                        if(key.isValid() && key.isWritable()) c.flush();
+                    }
+                }
+
+                if(System.nanoTime() - nextTick >= 0) {
+                    nextTick = System.nanoTime() + TICK_MS * 1000000L;
+                    tick();
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            //closed by close()
+        } catch (IOException e) {
+            iolog.severe("Telemetry server stopped " + e);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if(channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Client c = new Client(channel);
+        c.key = channel.register(selector, SelectionKey.OP_READ, c);
+        clients.add(c);
+        clientCount = clients.size();
+        c.hello();
+        c.flush();
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        List<byte[]> pending = new ArrayList<byte[]>();
+        events.drainTo(pending);
+
+        Iterator<Client> it = clients.iterator();
+        while(it.hasNext()) {
+            Client c = it.next();
+            if(c.open) {
+                for(byte[] event : pending) c.event(event);
+            }
+            if(c.open) c.telemetry(now);
+            if(c.open) c.flush();
+            if(!c.open) it.remove();
+        }
+        clientCount = clients.size();
+    }
+
+    private class Client {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(StreamProtocol.MAX_REQUEST_BYTES);
+        private final ByteBuffer out = ByteBuffer.allocate(bufferBytes);
+        private boolean open = true;
+        private boolean wantsEvents;
+        private long behindSince;
+
+        //per channel: ns between sends (-1 if not subscribed), last send, version sent
+        private final long[] period = new long[Serial.MAX_TELEMETRY];
+        private final long[] lastSent = new long[Serial.MAX_TELEMETRY];
+        private final long[] sentVersion = new long[Serial.MAX_TELEMETRY];
+        private int[] subscribed = new int[0];
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            Arrays.fill(period, -1);
+        }
+
+        void hello() {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream data = new DataOutputStream(bytes);
+                data.writeInt(0);
+                data.writeByte(StreamProtocol.HELLO);
+                data.writeShort(StreamProtocol.VERSION);
+                int n = telemetry.maxIndex();
+                data.writeShort(n);
+                for(int id = 0; id < n; id++) {
+                    data.writeUTF(telemetry.getTelemetryName(id));
+                }
+                ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+                frame.putInt(0, frame.capacity() - 4);
+                event(frame.array());
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void event(byte[] frame) {
+            if(!open) return;
+            if(frame[4] != StreamProtocol.HELLO && !wantsEvents) return;
+            if(out.remaining() < frame.length) {
+                evict("no room for an event");
+                return;
+            }
+            out.put(frame);
+        }
+
+        void telemetry(long now) {
+            //let a lagging client drain before adding more
+            if(out.position() > out.capacity() / 2) {
+                if(behindSince == 0) behindSince = now;
+                if(now - behindSince > EVICT_AFTER_MS * 1000000L) {
+                    evict("behind for " + EVICT_AFTER_MS + " ms");
+                }
+                return;
+            }
+            behindSince = 0;
+
+            int start = out.position();
+            int needed = StreamProtocol.TELEMETRY_HEADER_BYTES
+                       + subscribed.length * StreamProtocol.TELEMETRY_ENTRY_BYTES;
+            if(subscribed.length == 0 || out.remaining() < needed) return;
+
+            out.position(start + StreamProtocol.TELEMETRY_HEADER_BYTES);
+            int n = 0;
+            for(int id : subscribed) {
+                long version = versions.get(id);
+                if(version == sentVersion[id]) continue;
+                if(now - lastSent[id] < period[id]) continue;
+                sentVersion[id] = version;
+                lastSent[id] = now;
+                out.putShort((short) id);
+                out.putDouble(Double.longBitsToDouble(values.get(id)));
+                n++;
+            }
+            if(n == 0) {
+                out.position(start);
+                return;
+            }
+            out.putInt(start, out.position() - start - 4);
+            out.put(start + 4, StreamProtocol.TELEMETRY);
+            out.putLong(start + 5, System.currentTimeMillis());
+            out.putShort(start + 13, (short) n);
+            framesSent.incrementAndGet();
+        }
+
+        void flush() {
+            if(!open) return;
+            try {
+                out.flip();
+                channel.write(out);
+                out.compact();
+                key.interestOps(out.position() > 0
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                    : SelectionKey.OP_READ);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void read() {
+            try {
+                if(channel.read(in) < 0) {
+                    close();
+                    return;
+                }
+                in.flip();
+                while(in.remaining() >= 4) {
+                    int length = in.getInt(in.position());
+                    if(length < 1 || length > StreamProtocol.MAX_REQUEST_BYTES - 4) {
+                        evict("bad frame length " + length);
+                        return;
+                    }
+                    if(in.remaining() < 4 + length) break;
+                    int end = in.position() + 4 + length;
+                    in.getInt();
+                    request(in.get());
+                    in.position(end);
+                }
+                in.compact();
+            } catch (IOException | RuntimeException e) {
+                evict("bad request " + e);
+            }
+        }
+
+        private void request(byte type) {
+            switch(type) {
+                case StreamProtocol.SUBSCRIBE:
+                    for(int i = in.getShort(); i > 0; i--) {
+                        int id = in.getShort() & 0xffff;
+                        int hz = in.getShort() & 0xffff;
+                        if(id >= Serial.MAX_TELEMETRY) continue;
+                        period[id] = (hz == 0) ? 0 : 1000000000L / hz;
+                        lastSent[id] = 0;
+                        sentVersion[id] = 0;
+                    }
+                    break;
+                case StreamProtocol.UNSUBSCRIBE:
+                    for(int i = in.getShort(); i > 0; i--) {
+                        int id = in.getShort() & 0xffff;
+                        if(id < Serial.MAX_TELEMETRY) period[id] = -1;
+                    }
+                    break;
+                case StreamProtocol.EVENTS:
+                    wantsEvents = in.get() != 0;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown frame " + type);
+            }
+
+            int n = 0;
+            int[] ids = new int[Serial.MAX_TELEMETRY];
+            for(int id = 0; id < Serial.MAX_TELEMETRY; id++) {
+                if(period[id] >= 0) ids[n++] = id;
+            }
+            subscribed = Arrays.copyOf(ids, n);
+        }
+
+        private void evict(String why) {
+            if(!open) return;
+            iolog.warning("Dropping telemetry client "
+                + channel.socket().getRemoteSocketAddress() + ": " + why);
+            evicted.incrementAndGet();
+            close();
+        }
+
+        void close() {
+            open = false;
+            if(key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                iolog.fine("Telemetry client close failed " + e);
+            }
+        }
+    }
+}
@@ -3,12 +3,14 @@ package com.table;
 import com.Context;
 import com.remote.*;
 import com.table.*;
+import com.telemetry.ChannelStats;
 import com.ui.telemetry.SliderRenderer;
 import com.ui.telemetry.SliderEditor;
 import com.ui.telemetry.SettingPercentage;
 
 import java.io.*;
 import java.util.*;
+import java.util.function.ToDoubleFunction;
 import javax.swing.*;
 import javax.swing.table.*;
 
@@ -224,6 +226,12 @@ public class TableFactory {
             }
         });
         
+        columns.add(statColumn("Min", context, ChannelStats::getMin));
+        columns.add(statColumn("Max", context, ChannelStats::getMax));
+        columns.add(statColumn("Mean", context, ChannelStats::getMean));
+        columns.add(statColumn("Std Dev", context, ChannelStats::getStdDev));
+        columns.add(statColumn("95%", context, s -> s.getQuantile(0.95)));
+        
         model = new ColumnTableModel(columns);
         table = new JTable(model);
         
@@ -232,4 +240,42 @@ public class TableFactory {
         
 		return table;
 	}
+	
+	/**
+	 * Creates a read only telemetry column showing one of the selected
+	 * vehicle's running statistics for each channel.
+	 * @param name - The column name
+	 * @param context - The application context
+	 * @param stat - Picks the statistic to show from a channel's stats
+	 * @return - The configured column
+	 */
+	private static TelemetryColumn<String> statColumn(String name, 
+			Context context, ToDoubleFunction<ChannelStats> stat) {
+		return new TelemetryColumn<String>() {
+            public String getName() {
+                return name;
+            }
+            
+            public String getValueAt(int row) {
+                ChannelStats stats = context.getStats().get(row);
+                if(stats == null || stats.getCount() == 0) return "";
+                return " "+(float) stat.applyAsDouble(stats);
+            }
+            
+            public int getRowCount() {
+                return context.getTelemetryCount();
+            }
+            
+            public Class<String> getDataClass() {
+                return String.class;
+            }
+            
+            public boolean isRowEditable(int row) {
+                return false;
+            }
+            
+            public void setValueAt(String val, int row) {
+            }
+		};
+	}
 }
@@ -0,0 +1,255 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Watches telemetry channels against a set of AlarmRules and runs named
+ * actions when one trips.
+ *
+ * Rules are evaluated on the thread that updates the TelemetryManager as
+ * each sample arrives, never on the EDT; every rule keeps its own rolling
+ * window with O(1) updates, so dozens of rules keep up with the full
+ * telemetry rate. A single alarm thread re-checks every rule each
+ * CHECK_PERIOD_MS, to catch timeouts and holds that run out while a channel
+ * is quiet, and runs the actions of tripped rules so a slow action never
+ * holds up the serial thread. Actions that touch Swing must hand themselves
+ * to the EDT.
+ *
+ * Rules can be read from XML:
+ * <pre>
+ *   &lt;alarms&gt;
+ *     &lt;alarm name="Battery low" telem="6" type="threshold" stat="mean"
+ *            window="2000" below="6.5" hold="5000" repeat="0"
+ *            ignoreZero="true" action="log,alert"/&gt;
+ *   &lt;/alarms&gt;
+ * </pre>
+ */
+public class AlarmEngine implements AutoCloseable {
+    public static final int CHECK_PERIOD_MS = 100;
+
+    /**
+     * Something to do when a rule trips
+     */
+    public interface Action {
+        /**
+         * @param rule - the rule that tripped
+         * @param value - the value that tripped it
+         */
+        void trigger(AlarmRule rule, double value);
+    }
+
+    private final LongSupplier clock;
+    private final Executor actionThread;
+    private final ScheduledExecutorService timer;
+    private final List<AlarmRule> rules = new ArrayList<AlarmRule>();
+    private final Map<String, Action> actions = new ConcurrentHashMap<String, Action>();
+    private volatile AlarmRule[] allRules = new AlarmRule[0];
+    private volatile boolean paused;
+
+    private final Logger serialLog = Logger.getLogger("d.serial");
+
+    /**
+     * Creates an engine with its own alarm thread and a "log" action
+     */
+    public AlarmEngine() {
+        this(System::currentTimeMillis, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "telemetry alarms");
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    private AlarmEngine(LongSupplier clock, ScheduledExecutorService timer) {
+        this(clock, timer, timer);
+        timer.scheduleAtFixedRate(this::check, CHECK_PERIOD_MS, CHECK_PERIOD_MS,
+                                  TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates an engine on a given clock that runs actions on `actionThread`
+     * and is only re-checked when check() is called
+     */
+    AlarmEngine(LongSupplier clock, Executor actionThread) {
+        this(clock, actionThread, null);
+    }
+
+    private AlarmEngine(LongSupplier clock, Executor actionThread,
+                        ScheduledExecutorService timer) {
+        this.clock = clock;
+        this.actionThread = actionThread;
+        this.timer = timer;
+        setAction("log", new Action() {
+            public void trigger(AlarmRule rule, double value) {
+                serialLog.warning("Alarm: " + rule.getName() + " (" + value + ")");
+            }
+        });
+    }
+
+    /**
+     * Binds an action name used by rules to what it does
+     */
+    public void setAction(String name, Action action) {
+        actions.put(name, action);
+    }
+
+    /**
+     * Adds a rule; must be called before attach
+     */
+    public synchronized void addRule(AlarmRule rule) {
+        if(rule.getChannel() < 0 || rule.getChannel() >= Serial.MAX_TELEMETRY) {
+            throw new IllegalArgumentException("No telemetry channel t" + rule.getChannel());
+        }
+        rules.add(rule);
+    }
+
+    public synchronized List<AlarmRule> getRules() {
+        return Collections.unmodifiableList(new ArrayList<AlarmRule>(rules));
+    }
+
+    /**
+     * Adds the rules described by an alarms XML document
+     * @throws IllegalArgumentException - if a rule is malformed
+     */
+    public void load(Reader source) throws XMLStreamException {
+        XMLStreamReader r = XMLInputFactory.newInstance().createXMLStreamReader(source);
+        while(r.hasNext()) {
+            if(r.next() != XMLStreamConstants.START_ELEMENT
+                    || !r.getLocalName().equals("alarm")) continue;
+
+            String name = r.getAttributeValue(null, "name");
+            try {
+                AlarmRule rule = new AlarmRule(name,
+                    Integer.parseInt(r.getAttributeValue(null, "telem")),
+                    AlarmRule.Type.valueOf(
+                        attribute(r, "type", "threshold").toUpperCase()));
+                rule.setStat(AlarmRule.Stat.valueOf(
+                    attribute(r, "stat", "last").toUpperCase()));
+                rule.setWindow(Long.parseLong(attribute(r, "window", "0")));
+                rule.setHold(Long.parseLong(attribute(r, "hold", "0")));
+                rule.setRepeat(Long.parseLong(attribute(r, "repeat", "0")));
+                rule.setIgnoreZero(Boolean.parseBoolean(attribute(r, "ignoreZero", "false")));
+                if(r.getAttributeValue(null, "below") != null) {
+                    rule.setBelow(Double.parseDouble(r.getAttributeValue(null, "below")));
+                }
+                if(r.getAttributeValue(null, "above") != null) {
+                    rule.setAbove(Double.parseDouble(r.getAttributeValue(null, "above")));
+                }
+                for(String action : attribute(r, "action", "log").split(",")) {
+                    rule.addAction(action.trim());
+                }
+                addRule(rule);
+            } catch (NumberFormatException | NullPointerException e) {
+                throw new IllegalArgumentException("Bad alarm " + name + ": " + e);
+            }
+        }
+    }
+
+    private static String attribute(XMLStreamReader r, String name, String otherwise) {
+        String value = r.getAttributeValue(null, name);
+        return (value == null) ? otherwise : value;
+    }
+
+    /**
+     * Starts evaluating the rules against `tm`'s channels
+     */
+    public synchronized void attach(TelemetryManager tm) {
+        allRules = rules.toArray(new AlarmRule[rules.size()]);
+        for(AlarmRule rule : allRules) {
+            for(String action : rule.getActions()) {
+                if(!actions.containsKey(action)) {
+                    serialLog.warning("Alarm " + rule.getName()
+                        + " has unknown action " + action);
+                }
+            }
+        }
+
+        final AlarmRule[][] byChannel = new AlarmRule[Serial.MAX_TELEMETRY][];
+        int[] watched = new int[Serial.MAX_TELEMETRY];
+        int n = 0;
+        for(int id = 0; id < Serial.MAX_TELEMETRY; id++) {
+            List<AlarmRule> watching = new ArrayList<AlarmRule>();
+            for(AlarmRule rule : allRules) {
+                if(rule.getChannel() == id) watching.add(rule);
+            }
+            if(watching.isEmpty()) continue;
+            byChannel[id] = watching.toArray(new AlarmRule[watching.size()]);
+            watched[n++] = id;
+        }
+
+        //every sample, on the updating thread
+        tm.subscribe(Arrays.copyOf(watched, n), new TelemetrySubscription.Subscriber() {
+            public void update(int id, double data, long time) {
+                if(paused) return;
+                long now = clock.getAsLong();
+                for(AlarmRule rule : byChannel[id]) {
+                    if(rule.sample(data, now)) fire(rule);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops evaluating rules while set, such as during a replay. Clearing it
+     * resets every rule, so nothing seen before the pause can trip one.
+     */
+    public void setPaused(boolean paused) {
+        if(!paused) {
+            for(AlarmRule rule : allRules) rule.reset();
+        }
+        this.paused = paused;
+    }
+
+    /**
+     * Re-evaluates every rule at the current time
+     */
+    void check() {
+        if(paused) return;
+        long now = clock.getAsLong();
+        for(AlarmRule rule : allRules) {
+            if(rule.check(now)) fire(rule);
+        }
+    }
+
+    private void fire(final AlarmRule rule) {
+        final double value = rule.getValue();
+        actionThread.execute(new Runnable() {
+            public void run() {
+                for(String name : rule.getActions()) {
+                    Action action = actions.get(name);
+                    if(action == null) continue;
+                    try {
+                        action.trigger(rule, value);
+                    } catch (RuntimeException e) {
+                        serialLog.severe("Alarm action " + name + " failed " + e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the alarm thread
+     */
+    @Override
+    public void close() {
+        if(timer != null) timer.shutdownNow();
+    }
+}
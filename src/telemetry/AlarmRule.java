@@ -0,0 +1,225 @@
+package com.telemetry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A condition on one telemetry channel, and the actions to take when it
+ * holds.
+ *
+ * THRESHOLD rules compare a statistic of the samples in a rolling window
+ * (the last value, mean, min or max) against a limit. RATE rules compare the
+ * change per second across the window. TIMEOUT rules trip when the channel
+ * has not been updated for `window` ms, once it has been seen at all.
+ *
+ * A rule set to ignore zero skips samples of exactly 0.0, which is what a
+ * channel holds before the vehicle has reported it.
+ *
+ * A rule trips once its condition has held for `hold` ms, running its
+ * actions, and runs them again every `repeat` ms while it keeps holding if
+ * repeat is set. It re-arms as soon as the condition stops holding.
+ */
+public class AlarmRule {
+    public enum Type { THRESHOLD, RATE, TIMEOUT }
+    public enum Stat { LAST, MEAN, MIN, MAX }
+
+    private final String name;
+    private final int channel;
+    private final Type type;
+    private Stat stat = Stat.LAST;
+    private long window;
+    private long hold;
+    private long repeat;
+    private double limit = Double.NaN;
+    private boolean above;
+    private boolean ignoreZero;
+    private final List<String> actions = new ArrayList<String>();
+
+    private SlidingWindow samples;
+    private long lastSample;
+    private boolean active;
+    private long activeSince;
+    private boolean tripped;
+    private long lastFired;
+    private double value = Double.NaN;
+
+    /**
+     * Class Constructor
+     * @param name - shown in logs and alerts
+     * @param channel - telemetry id the rule watches
+     * @param type - kind of condition
+     */
+    public AlarmRule(String name, int channel, Type type) {
+        this.name = name;
+        this.channel = channel;
+        this.type = type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getChannel() {
+        return channel;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @param stat - statistic of the window a THRESHOLD rule compares
+     */
+    public void setStat(Stat stat) {
+        this.stat = stat;
+    }
+
+    /**
+     * @param ms - width of the rolling window, or the silence allowed for a
+     *        TIMEOUT rule
+     */
+    public void setWindow(long ms) {
+        this.window = ms;
+    }
+
+    /**
+     * @param ms - how long the condition must hold before the rule trips
+     */
+    public void setHold(long ms) {
+        this.hold = ms;
+    }
+
+    /**
+     * @param ms - period to repeat the actions while tripped, 0 for once
+     */
+    public void setRepeat(long ms) {
+        this.repeat = ms;
+    }
+
+    /**
+     * Trips when the watched value is at or below `limit`
+     */
+    public void setBelow(double limit) {
+        this.limit = limit;
+        this.above = false;
+    }
+
+    /**
+     * Trips when the watched value is at or above `limit`
+     */
+    public void setAbove(double limit) {
+        this.limit = limit;
+        this.above = true;
+    }
+
+    /**
+     * @param ignore - whether samples of 0.0 are taken as not yet reported
+     */
+    public void setIgnoreZero(boolean ignore) {
+        this.ignoreZero = ignore;
+    }
+
+    /**
+     * @param action - name of an action registered with the AlarmEngine
+     */
+    public void addAction(String action) {
+        actions.add(action);
+    }
+
+    public List<String> getActions() {
+        return Collections.unmodifiableList(actions);
+    }
+
+    /**
+     * Whether the rule has tripped and not yet re-armed
+     */
+    public synchronized boolean isTripped() {
+        return tripped;
+    }
+
+    /**
+     * The value last compared against the limit; seconds of silence for a
+     * TIMEOUT rule
+     */
+    public synchronized double getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Records a sample of the channel
+     * @return - whether the actions should run now
+     */
+    synchronized boolean sample(double data, long now) {
+        if(ignoreZero && data == 0.0) return false;
+        lastSample = now;
+        if(type == Type.TIMEOUT) return update(false, now);
+
+        if(samples == null) samples = new SlidingWindow(window);
+        samples.add(now, data);
+        if(type == Type.RATE) {
+            value = samples.rate();
+        } else {
+            switch(stat) {
+                case MEAN: value = samples.mean(); break;
+                case MIN:  value = samples.min(); break;
+                case MAX:  value = samples.max(); break;
+                default:   value = data; break;
+            }
+        }
+        if(Double.isNaN(value) || Double.isNaN(limit)) return update(false, now);
+        return update(above ? value >= limit : value <= limit, now);
+    }
+
+    /**
+     * Re-evaluates the rule without a new sample, for timeouts and holds
+     * that run out while the channel is quiet
+     * @return - whether the actions should run now
+     */
+    synchronized boolean check(long now) {
+        if(type != Type.TIMEOUT) return update(active, now);
+        if(lastSample == 0) return false;
+        value = (now - lastSample) / 1000.0;
+        return update(now - lastSample > window, now);
+    }
+
+    /**
+     * Forgets every sample and re-arms the rule
+     */
+    synchronized void reset() {
+        samples = null;
+        lastSample = 0;
+        active = false;
+        tripped = false;
+        value = Double.NaN;
+    }
+
+    private boolean update(boolean holds, long now) {
+        if(!holds) {
+            active = false;
+            tripped = false;
+            return false;
+        }
+        if(!active) {
+            active = true;
+            activeSince = now;
+        }
+        if(now - activeSince < hold) return false;
+
+        if(!tripped) {
+            tripped = true;
+            lastFired = now;
+            return true;
+        }
+        if(repeat > 0 && now - lastFired >= repeat) {
+            lastFired = now;
+            return true;
+        }
+        return false;
+    }
+}
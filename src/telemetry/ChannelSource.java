@@ -0,0 +1,109 @@
+package com.telemetry;
+
+import com.graph.DataSource;
+import com.ui.SampleSource;
+
+/**
+ * Graph source for one telemetry channel that holds no samples until a
+ * graph draws it.
+ *
+ * The first get() fills a SampleSource with the channel's newest samples from
+ * the store's history, when it has one, and subscribes it to new values. A
+ * source that has not been read for IDLE_MS cancels its subscription and
+ * drops its samples on the next update, so channels no graph shows cost one
+ * small object each.
+ */
+class ChannelSource implements DataSource {
+    static final long IDLE_MS = 2000;
+
+    private final TelemetryManager telemetry;
+    private final int id;
+    private final String name;
+
+    private volatile SampleSource samples;
+    private TelemetrySubscription subscription;
+    private volatile int historyVersion;
+    private volatile long lastRead;
+
+    /**
+     * Class Constructor
+     * @param telemetry - the store to read from
+     * @param id - the channel
+     * @param name - label shown by graphs
+     */
+    ChannelSource(TelemetryManager telemetry, int id, String name) {
+        this.telemetry = telemetry;
+        this.id = id;
+        this.name = name;
+    }
+
+    public double get(double x) {
+        return materialize().get(x);
+    }
+
+    /**
+     * Sample time of the point nearest `x`, as SampleSource.getTime
+     */
+    public long getTime(double x) {
+        return materialize().getTime(x);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Whether samples are currently held for this channel
+     */
+    boolean isMaterialized() {
+        return samples != null;
+    }
+
+    private SampleSource materialize() {
+        lastRead = System.currentTimeMillis();
+        SampleSource current = samples;
+        if(current != null && historyVersion == telemetry.getHistoryVersion()) {
+            return current;
+        }
+
+        synchronized(this) {
+            release();
+            historyVersion = telemetry.getHistoryVersion();
+            current = new SampleSource(name);
+
+            HistoryStore history = telemetry.getHistory();
+            if(history != null) {
+                long[] times = new long[SampleSource.SAMPLES];
+                double[] values = new double[SampleSource.SAMPLES];
+                int n = history.latest(id, times, values);
+                for(int i = 0; i < n; i++) {
+                    current.update(values[i], times[i]);
+                }
+            }
+
+            final SampleSource target = current;
+            subscription = telemetry.subscribe(new int[] { id },
+                new TelemetrySubscription.Subscriber() {
+                    public void update(int channel, double value, long time) {
+                        if(System.currentTimeMillis() - lastRead > IDLE_MS) {
+                            idle(target);
+                            return;
+                        }
+                        target.update(value, time);
+                    }
+                });
+            samples = current;
+            return current;
+        }
+    }
+
+    private synchronized void idle(SampleSource expired) {
+        if(samples == expired) release();
+    }
+
+    private void release() {
+        if(subscription != null) subscription.cancel();
+        subscription = null;
+        samples = null;
+    }
+}
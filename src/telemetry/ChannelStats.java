@@ -0,0 +1,111 @@
+package com.telemetry;
+
+/**
+ * Running statistics of one telemetry channel: count, min, max, mean and
+ * variance by Welford's method, and a QuantileSketch for percentiles. Memory
+ * use is fixed however many samples are added, and two ChannelStats can be
+ * merged into the statistics of both streams together.
+ *
+ * Methods are synchronized so the ingest thread can add while the EDT reads.
+ */
+public class ChannelStats {
+    private long count;
+    private double mean;
+    private double m2;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private final QuantileSketch sketch;
+
+    public ChannelStats() {
+        this(new QuantileSketch());
+    }
+
+    private ChannelStats(QuantileSketch sketch) {
+        this.sketch = sketch;
+    }
+
+    /**
+     * Adds a sample; NaN is ignored
+     */
+    public synchronized void add(double value) {
+        if(Double.isNaN(value)) return;
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        min = (count == 1) ? value : Math.min(min, value);
+        max = (count == 1) ? value : Math.max(max, value);
+        sketch.add(value);
+    }
+
+    /**
+     * Adds every sample counted by `other`, as if they had been added here
+     */
+    public void merge(ChannelStats other) {
+        //copy first so the two locks are never held together
+        ChannelStats o = other.copy();
+        synchronized(this) {
+            if(o.count == 0) return;
+            if(count == 0) {
+                min = o.min;
+                max = o.max;
+            } else {
+                min = Math.min(min, o.min);
+                max = Math.max(max, o.max);
+            }
+            long total = count + o.count;
+            double delta = o.mean - mean;
+            m2 += o.m2 + delta * delta * ((double) count * o.count / total);
+            mean += delta * o.count / total;
+            count = total;
+            sketch.merge(o.sketch);
+        }
+    }
+
+    public synchronized ChannelStats copy() {
+        ChannelStats copy = new ChannelStats(sketch.copy());
+        copy.count = count;
+        copy.mean = mean;
+        copy.m2 = m2;
+        copy.min = min;
+        copy.max = max;
+        return copy;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /** Smallest sample, or NaN if there are none */
+    public synchronized double getMin() {
+        return min;
+    }
+
+    /** Largest sample, or NaN if there are none */
+    public synchronized double getMax() {
+        return max;
+    }
+
+    /** Mean of the samples, or NaN if there are none */
+    public synchronized double getMean() {
+        return (count == 0) ? Double.NaN : mean;
+    }
+
+    /** Sample variance, or NaN with fewer than two samples */
+    public synchronized double getVariance() {
+        return (count < 2) ? Double.NaN : m2 / (count - 1);
+    }
+
+    public double getStdDev() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Estimated value below which a fraction `q` of the samples fall, to
+     * within QuantileSketch.DEFAULT_ACCURACY
+     * @param q - quantile, 0 to 1
+     */
+    public synchronized double getQuantile(double q) {
+        return sketch.quantile(q);
+    }
+}
@@ -0,0 +1,287 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Computes telemetry channels from other channels, such as the altitude
+ * relative to home or electrical power, and publishes them as ordinary
+ * telemetry ids.
+ *
+ * Each output is declared with a Formula. When attached, the formulas are
+ * arranged in a dependency graph (an output may feed other formulas) and
+ * sorted so that inputs are always computed before the outputs reading
+ * them; a cycle is rejected. For every input channel the list of outputs it
+ * affects, directly or through other outputs, is worked out once, so an
+ * update only recomputes what depends on it. An output may instead be
+ * triggered by only some of its inputs, such as the last member of a
+ * record, so it is not published from a half-written one. An output whose
+ * formula gives NaN is left unchanged.
+ *
+ * When the store is reloaded, such as on switching vehicles or seeking a
+ * replay, the engine forgets what it has seen and the outputs read 0 until
+ * their inputs arrive again, so prev and dt never span two sources.
+ */
+public class DerivedTelemetry implements Formula.Channels {
+    private final Map<Integer, Formula> formulas = new TreeMap<Integer, Formula>();
+    private final Map<Integer, BitSet> triggers = new TreeMap<Integer, BitSet>();
+
+    private TelemetryManager telemetry;
+    private int[] order = new int[0];
+    private final int[][] affected = new int[Serial.MAX_TELEMETRY][];
+    private final Formula[] formulaOf = new Formula[Serial.MAX_TELEMETRY];
+
+    private final double[] value = new double[Serial.MAX_TELEMETRY];
+    private final double[] previous = new double[Serial.MAX_TELEMETRY];
+    private final long[] time = new long[Serial.MAX_TELEMETRY];
+    private final long[] previousTime = new long[Serial.MAX_TELEMETRY];
+    private long evaluations;
+
+    /**
+     * Declares output `id` as `formula`, replacing any earlier declaration.
+     * Must be called before attach.
+     * @throws IllegalArgumentException - if the formula does not parse or
+     *         `id` is not a telemetry channel
+     */
+    public void define(int id, String formula) {
+        if(id < 0 || id >= Serial.MAX_TELEMETRY) {
+            throw new IllegalArgumentException("No telemetry channel t" + id);
+        }
+        formulas.put(id, new Formula(formula));
+    }
+
+    /**
+     * Recomputes output `id` only when one of `channels` updates, rather
+     * than on any of its inputs. Must be called before attach.
+     * @throws IllegalArgumentException - if any id is not a telemetry channel
+     */
+    public void setTriggers(int id, int... channels) {
+        if(id < 0 || id >= Serial.MAX_TELEMETRY) {
+            throw new IllegalArgumentException("No telemetry channel t" + id);
+        }
+        BitSet set = new BitSet();
+        for(int channel : channels) {
+            if(channel < 0 || channel >= Serial.MAX_TELEMETRY) {
+                throw new IllegalArgumentException("No telemetry channel t" + channel);
+            }
+            set.set(channel);
+        }
+        triggers.put(id, set);
+    }
+
+    /**
+     * Reads declarations of the form "tN = formula", one per line, and
+     * optionally "tN.on = tA, tB" for the channels that trigger it; lines
+     * starting with # are comments.
+     */
+    public void load(Reader in) throws IOException {
+        Properties props = new Properties();
+        props.load(in);
+        for(String key : props.stringPropertyNames()) {
+            if(key.matches("t[0-9]+\\.on")) {
+                String[] names = props.getProperty(key).split(",");
+                int[] channels = new int[names.length];
+                for(int i = 0; i < names.length; i++) {
+                    String name = names[i].trim();
+                    if(!name.matches("t[0-9]+")) {
+                        throw new IllegalArgumentException(
+                            "Bad trigger " + name + " for " + key);
+                    }
+                    channels[i] = Integer.parseInt(name.substring(1));
+                }
+                setTriggers(Integer.parseInt(key.substring(1, key.indexOf('.'))),
+                            channels);
+            } else if(key.matches("t[0-9]+")) {
+                define(Integer.parseInt(key.substring(1)), props.getProperty(key));
+            } else {
+                throw new IllegalArgumentException("Bad derived channel " + key);
+            }
+        }
+    }
+
+    /**
+     * Starts computing the declared outputs from `tm`'s channels and
+     * publishing them back into it.
+     * @throws IllegalArgumentException - if the formulas depend on each
+     *         other in a cycle
+     */
+    public synchronized void attach(TelemetryManager tm) {
+        telemetry = tm;
+        order = sort();
+
+        int[] position = new int[Serial.MAX_TELEMETRY];
+        for(int i = 0; i < order.length; i++) {
+            position[order[i]] = i;
+            formulaOf[order[i]] = formulas.get(order[i]);
+        }
+
+        //outputs recomputed when each channel updates
+        List<List<Integer>> readers = new ArrayList<List<Integer>>();
+        for(int id = 0; id < Serial.MAX_TELEMETRY; id++) {
+            readers.add(new ArrayList<Integer>());
+        }
+        //channels to track, whether or not they trigger anything
+        BitSet watched = new BitSet();
+        for(int out : order) {
+            BitSet in = triggers.containsKey(out) ? triggers.get(out)
+                                                  : formulaOf[out].getInputs();
+            for(int id = in.nextSetBit(0); id >= 0; id = in.nextSetBit(id + 1)) {
+                readers.get(id).add(out);
+            }
+            watched.or(in);
+            watched.or(formulaOf[out].getInputs());
+        }
+
+        for(int id = 0; id < Serial.MAX_TELEMETRY; id++) {
+            if(!watched.get(id) || formulaOf[id] != null) continue;
+
+            //everything reachable from this input, in evaluation order
+            BitSet reached = new BitSet();
+            List<Integer> frontier = new ArrayList<Integer>(readers.get(id));
+            while(!frontier.isEmpty()) {
+                int out = frontier.remove(frontier.size() - 1);
+                if(reached.get(position[out])) continue;
+                reached.set(position[out]);
+                frontier.addAll(readers.get(out));
+            }
+            int[] list = new int[reached.cardinality()];
+            int n = 0;
+            for(int p = reached.nextSetBit(0); p >= 0; p = reached.nextSetBit(p + 1)) {
+                list[n++] = order[p];
+            }
+            affected[id] = list;
+
+            final int channel = id;
+            tm.registerListener(id, new TimedTelemetryListener() {
+                public void update(double data) {
+                    inputChanged(channel, data, TelemetryManager.NO_TIME);
+                }
+                public void update(double data, long sent) {
+                    inputChanged(channel, data, sent);
+                }
+            });
+        }
+        tm.addClearListener(this::reset);
+    }
+
+    /**
+     * Output ids in the order they are evaluated
+     */
+    public synchronized int[] getOutputs() {
+        return order.clone();
+    }
+
+    /**
+     * Whether channel `id` is computed here rather than sent by the vehicle
+     */
+    public synchronized boolean isOutput(int id) {
+        return id >= 0 && id < Serial.MAX_TELEMETRY && formulaOf[id] != null;
+    }
+
+    /**
+     * Number of formula evaluations so far
+     */
+    public synchronized long getEvaluationCount() {
+        return evaluations;
+    }
+
+    /**
+     * Forgets every value and update time seen so far and publishes each
+     * output as 0, so the next samples are not taken to follow the last ones
+     */
+    public synchronized void reset() {
+        Arrays.fill(value, 0);
+        Arrays.fill(previous, 0);
+        Arrays.fill(time, 0);
+        Arrays.fill(previousTime, 0);
+        if(telemetry == null) return;
+        for(int out : order) {
+            telemetry.update(out, 0.0);
+        }
+    }
+
+    private synchronized void inputChanged(int id, double data, long sent) {
+        long now = System.currentTimeMillis();
+        store(id, data, (sent == TelemetryManager.NO_TIME) ? now : sent);
+
+        for(int out : affected[id]) {
+            double result = formulaOf[out].eval(this);
+            evaluations++;
+            if(Double.isNaN(result)) continue;
+
+            store(out, result, (sent == TelemetryManager.NO_TIME) ? now : sent);
+            if(sent == TelemetryManager.NO_TIME) {
+                telemetry.update(out, result);
+            } else {
+                telemetry.update(out, result, sent, now);
+            }
+        }
+    }
+
+    private void store(int id, double data, long at) {
+        previous[id] = value[id];
+        previousTime[id] = time[id];
+        value[id] = data;
+        time[id] = at;
+    }
+
+    /** Latest value of channel `id` seen by the engine */
+    public double value(int id) {
+        return value[id];
+    }
+
+    /** Value channel `id` held before its latest update */
+    public double prev(int id) {
+        return previous[id];
+    }
+
+    /** Seconds between the last two updates of channel `id`, or NaN */
+    public double dt(int id) {
+        return (previousTime[id] == 0) ? Double.NaN
+                                       : (time[id] - previousTime[id]) / 1000.0;
+    }
+
+    //Kahn's algorithm over the outputs; anything left over is in a cycle
+    private int[] sort() {
+        int[] pending = new int[Serial.MAX_TELEMETRY];
+        for(Map.Entry<Integer, Formula> e : formulas.entrySet()) {
+            BitSet in = e.getValue().getInputs();
+            for(int id = in.nextSetBit(0); id >= 0; id = in.nextSetBit(id + 1)) {
+                if(formulas.containsKey(id)) pending[e.getKey()]++;
+            }
+        }
+
+        int[] sorted = new int[formulas.size()];
+        int n = 0;
+        for(int out : formulas.keySet()) {
+            if(pending[out] == 0) sorted[n++] = out;
+        }
+        for(int i = 0; i < n; i++) {
+            for(Map.Entry<Integer, Formula> e : formulas.entrySet()) {
+                if(e.getValue().getInputs().get(sorted[i])
+                        && --pending[e.getKey()] == 0) {
+                    sorted[n++] = e.getKey();
+                }
+            }
+        }
+
+        if(n < sorted.length) {
+            List<String> cycle = new ArrayList<String>();
+            for(int out : formulas.keySet()) {
+                if(pending[out] > 0) cycle.add("t" + out);
+            }
+            throw new IllegalArgumentException(
+                "Derived telemetry depends on itself through " + cycle);
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+}
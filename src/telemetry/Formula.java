@@ -0,0 +1,296 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A derived telemetry formula, parsed once into a tree of lambdas.
+ *
+ * Grammar, loosest binding first:
+ * <pre>
+ *   comparison  sum [(== | != | &lt; | &gt; | &lt;= | &gt;=) sum]   yields 1 or 0
+ *   sum         product {(+ | -) product}
+ *   product     unary {(* | / | %) unary}
+ *   unary       - unary | power
+ *   power       primary [^ unary]
+ *   primary     number | nan | pi | tN | name(args) | (comparison)
+ * </pre>
+ * tN is the latest value of telemetry channel N. Functions are abs, sqrt,
+ * min, max, hypot, atan2, sin, cos, deg, rad, if(cond, then, else),
+ * prev(tN) for the value channel N held before its latest update,
+ * dt(tN) for the seconds between its last two updates, and
+ * dist(lat1, lon1, lat2, lon2) for the great circle distance in meters.
+ */
+class Formula {
+    /** Where a formula reads its inputs from */
+    interface Channels {
+        double value(int id);
+        double prev(int id);
+        double dt(int id);
+    }
+
+    interface Expr {
+        double eval(Channels c);
+    }
+
+    private static final double EARTH_RADIUS_M = 6371000.0;
+
+    private final String source;
+    private final Expr root;
+    private final BitSet inputs = new BitSet();
+
+    private int at;
+
+    /**
+     * @throws IllegalArgumentException - if `source` is not a valid formula
+     */
+    Formula(String source) {
+        this.source = source;
+        this.at = 0;
+        Expr e = comparison();
+        skipSpace();
+        if(at != source.length()) throw error("Unexpected '" + source.charAt(at) + "'");
+        root = e;
+    }
+
+    double eval(Channels c) {
+        return root.eval(c);
+    }
+
+    /**
+     * Channels this formula reads
+     */
+    BitSet getInputs() {
+        return (BitSet) inputs.clone();
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private Expr comparison() {
+        Expr left = sum();
+        skipSpace();
+        String[] ops = { "==", "!=", "<=", ">=", "<", ">" };
+        for(String op : ops) {
+            if(!source.startsWith(op, at)) continue;
+            at += op.length();
+            final Expr a = left;
+            final Expr b = sum();
+            switch(op) {
+                case "==": return c -> (a.eval(c) == b.eval(c)) ? 1 : 0;
+                case "!=": return c -> (a.eval(c) != b.eval(c)) ? 1 : 0;
+                case "<=": return c -> (a.eval(c) <= b.eval(c)) ? 1 : 0;
+                case ">=": return c -> (a.eval(c) >= b.eval(c)) ? 1 : 0;
+                case "<":  return c -> (a.eval(c) <  b.eval(c)) ? 1 : 0;
+                default:   return c -> (a.eval(c) >  b.eval(c)) ? 1 : 0;
+            }
+        }
+        return left;
+    }
+
+    private Expr sum() {
+        Expr left = product();
+        while(true) {
+            final Expr a = left;
+            if(accept('+')) {
+                final Expr b = product();
+                left = c -> a.eval(c) + b.eval(c);
+            } else if(accept('-')) {
+                final Expr b = product();
+                left = c -> a.eval(c) - b.eval(c);
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Expr product() {
+        Expr left = unary();
+        while(true) {
+            final Expr a = left;
+            if(accept('*')) {
+                final Expr b = unary();
+                left = c -> a.eval(c) * b.eval(c);
+            } else if(accept('/')) {
+                final Expr b = unary();
+                left = c -> a.eval(c) / b.eval(c);
+            } else if(accept('%')) {
+                final Expr b = unary();
+                left = c -> a.eval(c) % b.eval(c);
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Expr unary() {
+        if(accept('-')) {
+            final Expr a = unary();
+            return c -> -a.eval(c);
+        }
+        return power();
+    }
+
+    private Expr power() {
+        final Expr base = primary();
+        if(accept('^')) {
+            final Expr exp = unary();
+            return c -> Math.pow(base.eval(c), exp.eval(c));
+        }
+        return base;
+    }
+
+    private Expr primary() {
+        skipSpace();
+        if(accept('(')) {
+            Expr e = comparison();
+            expect(')');
+            return e;
+        }
+        if(at < source.length() && (Character.isDigit(source.charAt(at))
+                                     || source.charAt(at) == '.')) {
+            int start = at;
+            while(at < source.length() && (Character.isDigit(source.charAt(at))
+                    || source.charAt(at) == '.' || source.charAt(at) == 'e'
+                    || ((source.charAt(at) == '-' || source.charAt(at) == '+')
+                        && source.charAt(at - 1) == 'e'))) {
+                at++;
+            }
+            final double v;
+            try {
+                v = Double.parseDouble(source.substring(start, at));
+            } catch (NumberFormatException e) {
+                throw error("Bad number");
+            }
+            return c -> v;
+        }
+
+        String name = identifier();
+        if(name.isEmpty()) throw error("Expected a value");
+        if(name.equals("nan")) return c -> Double.NaN;
+        if(name.equals("pi")) return c -> Math.PI;
+        if(isChannel(name)) {
+            final int id = channel(name);
+            return c -> c.value(id);
+        }
+
+        expect('(');
+        if(name.equals("prev") || name.equals("dt")) {
+            skipSpace();
+            String ref = identifier();
+            if(!isChannel(ref)) throw error(name + " takes a channel");
+            final int id = channel(ref);
+            expect(')');
+            return name.equals("prev") ? c -> c.prev(id) : c -> c.dt(id);
+        }
+
+        List<Expr> args = new ArrayList<Expr>();
+        if(!accept(')')) {
+            do {
+                args.add(comparison());
+            } while(accept(','));
+            expect(')');
+        }
+        return function(name, args);
+    }
+
+    private Expr function(String name, List<Expr> args) {
+        int arity;
+        switch(name) {
+            case "abs": case "sqrt": case "sin": case "cos":
+            case "deg": case "rad":
+                arity = 1; break;
+            case "min": case "max": case "hypot": case "atan2":
+                arity = 2; break;
+            case "if":
+                arity = 3; break;
+            case "dist":
+                arity = 4; break;
+            default:
+                throw error("Unknown function " + name);
+        }
+        if(args.size() != arity) {
+            throw error(name + " takes " + arity + " arguments");
+        }
+
+        final Expr a = args.get(0);
+        final Expr b = (arity > 1) ? args.get(1) : null;
+        final Expr d = (arity > 2) ? args.get(2) : null;
+        final Expr e = (arity > 3) ? args.get(3) : null;
+        switch(name) {
+            case "abs":   return c -> Math.abs(a.eval(c));
+            case "sqrt":  return c -> Math.sqrt(a.eval(c));
+            case "sin":   return c -> Math.sin(a.eval(c));
+            case "cos":   return c -> Math.cos(a.eval(c));
+            case "deg":   return c -> Math.toDegrees(a.eval(c));
+            case "rad":   return c -> Math.toRadians(a.eval(c));
+            case "min":   return c -> Math.min(a.eval(c), b.eval(c));
+            case "max":   return c -> Math.max(a.eval(c), b.eval(c));
+            case "hypot": return c -> Math.hypot(a.eval(c), b.eval(c));
+            case "atan2": return c -> Math.atan2(a.eval(c), b.eval(c));
+            case "if":    return c -> (a.eval(c) != 0) ? b.eval(c) : d.eval(c);
+            default:
+                return c -> distance(a.eval(c), b.eval(c), d.eval(c), e.eval(c));
+        }
+    }
+
+    //haversine distance in meters between two lat/lon points in degrees
+    static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                 + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                 * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    private static boolean isChannel(String name) {
+        return name.length() > 1 && name.charAt(0) == 't'
+            && name.substring(1).chars().allMatch(Character::isDigit);
+    }
+
+    private int channel(String name) {
+        int id = Integer.parseInt(name.substring(1));
+        if(id >= Serial.MAX_TELEMETRY) throw error("No telemetry channel " + name);
+        inputs.set(id);
+        return id;
+    }
+
+    private String identifier() {
+        skipSpace();
+        int start = at;
+        while(at < source.length() && Character.isLetterOrDigit(source.charAt(at))) {
+            at++;
+        }
+        return source.substring(start, at);
+    }
+
+    private boolean accept(char ch) {
+        skipSpace();
+        if(at < source.length() && source.charAt(at) == ch) {
+            at++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char ch) {
+        if(!accept(ch)) throw error("Expected '" + ch + "'");
+    }
+
+    private void skipSpace() {
+        while(at < source.length() && Character.isWhitespace(source.charAt(at))) {
+            at++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(
+            message + " at " + at + " in \"" + source + "\"");
+    }
+}
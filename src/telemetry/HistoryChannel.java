@@ -0,0 +1,236 @@
+package com.telemetry;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Time ordered history of one telemetry channel, kept off-heap.
+ *
+ * Samples are (time, value) pairs in a direct ByteBuffer used as a ring, so
+ * hours of data cost nothing to the garbage collector. Alongside the raw ring
+ * sit summary levels: every FANOUT raw samples are folded into a min, max and
+ * mean bucket, every FANOUT of those into a coarser bucket and so on, so a
+ * zoomed-out view reads a few hundred buckets instead of every sample.
+ *
+ * Times never go backwards; a sample stamped earlier than its predecessor is
+ * stored at the predecessor's time so the ring stays sorted for searching.
+ */
+class HistoryChannel {
+    static final int FANOUT = 32;
+    static final int LEVELS = 3;
+    private static final int SAMPLE_BYTES = 16;
+
+    private final int capacity;
+    private final ByteBuffer samples;
+    private final Level[] levels = new Level[LEVELS];
+    private long written;
+    private long lastTime;
+
+    HistoryChannel(int capacity) {
+        this.capacity = capacity;
+        samples = ByteBuffer.allocateDirect(capacity * SAMPLE_BYTES);
+
+        int bucketSamples = 1;
+        for(int i = 0; i < LEVELS; i++) {
+            bucketSamples *= FANOUT;
+            levels[i] = new Level(capacity / bucketSamples + 2, bucketSamples);
+        }
+    }
+
+    synchronized void append(long time, double value) {
+        if(written > 0 && time < lastTime) time = lastTime;
+
+        int slot = (int) (written % capacity) * SAMPLE_BYTES;
+        samples.putLong(slot, time);
+        samples.putDouble(slot + 8, value);
+        written++;
+        lastTime = time;
+
+        levels[0].add(time, time, value, value, value, 1);
+    }
+
+    synchronized int size() {
+        return (int) Math.min(written, capacity);
+    }
+
+    synchronized long oldestTime() {
+        return (written == 0) ? TelemetryManager.NO_TIME : timeAt(written - size());
+    }
+
+    synchronized long newestTime() {
+        return (written == 0) ? TelemetryManager.NO_TIME : lastTime;
+    }
+
+    long memoryBytes() {
+        long total = samples.capacity();
+        for(Level level : levels) total += level.buckets.capacity();
+        return total;
+    }
+
+    /**
+     * Copies samples with from <= time <= to, oldest first
+     * @return - the number of samples copied, at most times.length
+     */
+    synchronized int range(long from, long to, long[] times, double[] values) {
+        int count = 0;
+        for(long i = lowerBound(from); i < written && count < times.length; i++) {
+            long t = timeAt(i);
+            if(t > to) break;
+            times[count]  = t;
+            values[count] = valueAt(i);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Copies the newest samples, oldest first
+     * @return - the number of samples copied, at most times.length
+     */
+    synchronized int latest(long[] times, double[] values) {
+        int count = Math.min(size(), times.length);
+        long first = written - count;
+        for(int i = 0; i < count; i++) {
+            times[i]  = timeAt(first + i);
+            values[i] = valueAt(first + i);
+        }
+        return count;
+    }
+
+    /**
+     * Folds the samples between `from` and `to` into `out`, reading from the
+     * coarsest summary level that still gives each output bucket several
+     * inputs.
+     */
+    synchronized void summarize(HistorySummary out) {
+        long first = lowerBound(out.getFrom());
+        long last  = lowerBound(out.getTo() + 1);
+        long perBucket = (last - first) / out.size();
+
+        int level = -1;
+        while(level + 1 < LEVELS && levels[level + 1].bucketSamples <= perBucket
+                && levels[level + 1].closed > 0) {
+            level++;
+        }
+
+        if(level < 0) {
+            foldRaw(out, first, last);
+            return;
+        }
+
+        //whole buckets inside the range come from the level, the partial
+        //buckets at either end from the raw ring
+        Level l = levels[level];
+        long b = l.bucketSamples;
+        long lo = Math.max((first + b - 1) / b, l.closed - Math.min(l.closed, l.bucketCapacity));
+        long hi = Math.min(last / b, l.closed);
+        if(lo >= hi) {
+            foldRaw(out, first, last);
+            return;
+        }
+        foldRaw(out, first, lo * b);
+        l.foldInto(out, lo, hi);
+        foldRaw(out, hi * b, last);
+    }
+
+    private void foldRaw(HistorySummary out, long from, long to) {
+        for(long i = from; i < to; i++) {
+            double v = valueAt(i);
+            out.fold(timeAt(i), v, v, v, 1);
+        }
+    }
+
+    private long timeAt(long index) {
+        return samples.getLong((int) (index % capacity) * SAMPLE_BYTES);
+    }
+
+    private double valueAt(long index) {
+        return samples.getDouble((int) (index % capacity) * SAMPLE_BYTES + 8);
+    }
+
+    //first retained index with a time >= `time`
+    private long lowerBound(long time) {
+        long lo = written - size();
+        long hi = written;
+        while(lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if(timeAt(mid) < time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * One summary level: a ring of closed buckets plus the bucket being
+     * filled. Each bucket holds start, end, min, max, sum and count.
+     */
+    private class Level {
+        private static final int BUCKET_BYTES = 48;
+        final ByteBuffer buckets;
+        final int bucketCapacity;
+        final int bucketSamples;
+        long closed;
+
+        private long openStart, openEnd, openCount;
+        private double openMin, openMax, openSum;
+        private int children;
+
+        Level(int bucketCapacity, int bucketSamples) {
+            this.bucketCapacity = bucketCapacity;
+            this.bucketSamples  = bucketSamples;
+            buckets = ByteBuffer.allocateDirect(bucketCapacity * BUCKET_BYTES);
+        }
+
+        void add(long start, long end, double min, double max, double sum, long count) {
+            if(children == 0) {
+                openStart = start;
+                openMin = min;
+                openMax = max;
+                openSum = 0;
+                openCount = 0;
+            }
+            openEnd = end;
+            openMin = Math.min(openMin, min);
+            openMax = Math.max(openMax, max);
+            openSum += sum;
+            openCount += count;
+
+            if(++children == FANOUT) {
+                int at = (int) (closed % bucketCapacity) * BUCKET_BYTES;
+                buckets.putLong(at, openStart);
+                buckets.putLong(at + 8, openEnd);
+                buckets.putDouble(at + 16, openMin);
+                buckets.putDouble(at + 24, openMax);
+                buckets.putDouble(at + 32, openSum);
+                buckets.putLong(at + 40, openCount);
+                closed++;
+                children = 0;
+
+                Level next = nextLevel(this);
+                if(next != null) {
+                    next.add(openStart, openEnd, openMin, openMax, openSum, openCount);
+                }
+            }
+        }
+
+        /**
+         * Folds closed buckets lo (inclusive) to hi (exclusive) into `out`
+         */
+        void foldInto(HistorySummary out, long lo, long hi) {
+            for(long i = lo; i < hi; i++) {
+                int at = (int) (i % bucketCapacity) * BUCKET_BYTES;
+                out.fold(buckets.getLong(at),
+                         buckets.getDouble(at + 16),
+                         buckets.getDouble(at + 24),
+                         buckets.getDouble(at + 32),
+                         buckets.getLong(at + 40));
+            }
+        }
+    }
+
+    private Level nextLevel(Level level) {
+        for(int i = 0; i < LEVELS - 1; i++) {
+            if(levels[i] == level) return levels[i + 1];
+        }
+        return null;
+    }
+}
@@ -0,0 +1,144 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Columnar history of every telemetry channel.
+ *
+ * Each channel gets its own off-heap ring of (time, value) samples and a
+ * min/max/mean summary pyramid (see HistoryChannel), allocated the first time
+ * the channel reports. Retention is a fixed number of samples per channel;
+ * the default holds two hours of a channel updating at 20 Hz.
+ */
+public class HistoryStore {
+    public static final int DEFAULT_RETENTION_SAMPLES = 2 * 60 * 60 * 20;
+
+    private final int retention;
+    private final AtomicReferenceArray<HistoryChannel> channels =
+        new AtomicReferenceArray<HistoryChannel>(Serial.MAX_TELEMETRY);
+
+    public HistoryStore() {
+        this(DEFAULT_RETENTION_SAMPLES);
+    }
+
+    /**
+     * @param retention - samples kept per channel before the oldest are
+     *        overwritten
+     */
+    public HistoryStore(int retention) {
+        this.retention = Math.max(HistoryChannel.FANOUT, retention);
+    }
+
+    /**
+     * Records every channel of `telemetry` from now on
+     */
+    public void attach(TelemetryManager telemetry) {
+        for(int id = 0; id < Serial.MAX_TELEMETRY; id++) {
+            final int channel = id;
+            telemetry.registerListener(id, new TimedTelemetryListener() {
+                public void update(double data) {
+                    append(channel, System.currentTimeMillis(), data);
+                }
+                public void update(double data, long time) {
+                    if(time == TelemetryManager.NO_TIME) {
+                        time = System.currentTimeMillis();
+                    }
+                    append(channel, time, data);
+                }
+            });
+        }
+    }
+
+    public int getRetention() {
+        return retention;
+    }
+
+    /**
+     * Adds a sample to channel `id`
+     * @param time - sample time in local ms
+     */
+    public void append(int id, long time, double value) {
+        if(id < 0 || id >= Serial.MAX_TELEMETRY) return;
+
+        HistoryChannel channel = channels.get(id);
+        if(channel == null) {
+            channels.compareAndSet(id, null, new HistoryChannel(retention));
+            channel = channels.get(id);
+        }
+        channel.append(time, value);
+    }
+
+    /**
+     * Copies the samples of channel `id` with from <= time <= to, oldest
+     * first, into the given arrays.
+     * @return - the number of samples copied, at most times.length
+     */
+    public int range(int id, long from, long to, long[] times, double[] values) {
+        HistoryChannel channel = channel(id);
+        return (channel == null) ? 0 : channel.range(from, to, times, values);
+    }
+
+    /**
+     * Copies the newest samples of channel `id`, oldest first, filling as
+     * much of the given arrays as there is history for.
+     * @return - the number of samples copied
+     */
+    public int latest(int id, long[] times, double[] values) {
+        HistoryChannel channel = channel(id);
+        return (channel == null) ? 0 : channel.latest(times, values);
+    }
+
+    /**
+     * Summarizes channel `id` between `from` and `to` in `buckets` equal
+     * width buckets, reading pre-built summaries where it can.
+     */
+    public HistorySummary summarize(int id, long from, long to, int buckets) {
+        HistorySummary summary = new HistorySummary(from, to, buckets);
+        HistoryChannel channel = channel(id);
+        if(channel != null) channel.summarize(summary);
+        return summary;
+    }
+
+    /**
+     * Number of samples held for channel `id`
+     */
+    public int size(int id) {
+        HistoryChannel channel = channel(id);
+        return (channel == null) ? 0 : channel.size();
+    }
+
+    /**
+     * Time of the oldest sample still held for `id`, or NO_TIME
+     */
+    public long getOldestTime(int id) {
+        HistoryChannel channel = channel(id);
+        return (channel == null) ? TelemetryManager.NO_TIME : channel.oldestTime();
+    }
+
+    /**
+     * Time of the newest sample held for `id`, or NO_TIME
+     */
+    public long getNewestTime(int id) {
+        HistoryChannel channel = channel(id);
+        return (channel == null) ? TelemetryManager.NO_TIME : channel.newestTime();
+    }
+
+    /**
+     * Off-heap bytes reserved by all channels seen so far
+     */
+    public long getMemoryBytes() {
+        long total = 0;
+        for(int id = 0; id < Serial.MAX_TELEMETRY; id++) {
+            HistoryChannel channel = channels.get(id);
+            if(channel != null) total += channel.memoryBytes();
+        }
+        return total;
+    }
+
+    private HistoryChannel channel(int id) {
+        if(id < 0 || id >= Serial.MAX_TELEMETRY) return null;
+        return channels.get(id);
+    }
+}
@@ -0,0 +1,78 @@
+package com.telemetry;
+
+import java.util.Arrays;
+
+/**
+ * Min, max and mean of a channel over equal width time buckets, as read
+ * from a HistoryStore for drawing zoomed-out graphs. Buckets with no samples
+ * report NaN.
+ */
+public class HistorySummary {
+    private final long from;
+    private final long to;
+    private final double[] min;
+    private final double[] max;
+    private final double[] sum;
+    private final long[] count;
+
+    /**
+     * @param from - start of the first bucket, inclusive, in ms
+     * @param to - end of the last bucket, inclusive, in ms
+     * @param buckets - number of buckets to divide the range into
+     */
+    public HistorySummary(long from, long to, int buckets) {
+        this.from  = from;
+        this.to    = Math.max(from, to);
+        this.min   = new double[buckets];
+        this.max   = new double[buckets];
+        this.sum   = new double[buckets];
+        this.count = new long[buckets];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public int size() {
+        return count.length;
+    }
+
+    /**
+     * Start time of bucket `i`
+     */
+    public long timeAt(int i) {
+        return from + (long) ((to - from + 1) * (double) i / count.length);
+    }
+
+    public double minAt(int i) {
+        return (count[i] == 0) ? Double.NaN : min[i];
+    }
+
+    public double maxAt(int i) {
+        return (count[i] == 0) ? Double.NaN : max[i];
+    }
+
+    public double meanAt(int i) {
+        return (count[i] == 0) ? Double.NaN : sum[i] / count[i];
+    }
+
+    public long countAt(int i) {
+        return count[i];
+    }
+
+    void fold(long time, double bucketMin, double bucketMax, double bucketSum, long n) {
+        if(time < from || time > to) return;
+        int i = (int) ((time - from) * (double) count.length / (to - from + 1));
+        i = Math.min(i, count.length - 1);
+        min[i] = Math.min(min[i], bucketMin);
+        max[i] = Math.max(max[i], bucketMax);
+        sum[i] += bucketSum;
+        count[i] += n;
+    }
+}
@@ -1,5 +0,0 @@
-package com.telemetry;
-
-public interface IMonitorListener {
-	public void updateMonitor(TelemetryMonitor monitor);
-}
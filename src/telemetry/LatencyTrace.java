@@ -0,0 +1,228 @@
+package com.telemetry;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures how long telemetry takes to get from the serial port to the
+ * screen, stage by stage.
+ *
+ * A decode pass is started with begin(), given the System.nanoTime at which
+ * its bytes were reported by the port; that origin is carried on the
+ * decoding thread, and into the UI dispatcher alongside each value, so every
+ * stage a value passes through stamps its latency from the port. Each stage
+ * keeps the most recent RING_SIZE latencies in a preallocated ring, for
+ * percentiles, and a count per power of two microseconds since the trace
+ * was reset, for the histogram. Stamping costs a clock read and a few array
+ * stores, and nothing is stamped outside a traced pass, so replays and
+ * tests are not counted.
+ */
+public class LatencyTrace {
+    public enum Stage {
+        PORT_READ    ("Port read"),
+        FRAME_VALID  ("Frame validated"),
+        STORE_UPDATE ("Store updated"),
+        LISTENERS    ("Listeners run"),
+        EDT_DELIVERY ("EDT delivery"),
+        PAINT        ("Paint complete");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public static final int RING_SIZE = 4096;
+    /** Histogram bucket b counts latencies of 2^(b-1) to 2^b us; 0 is under 1 us */
+    public static final int BUCKETS = 28;
+    public static final String EXTENSION = ".latency.csv";
+
+    private static final int STAGES = Stage.values().length;
+    private static final LatencyTrace instance = new LatencyTrace();
+
+    private final long[][] rings = new long[STAGES][RING_SIZE];
+    private final AtomicLong[] cursors = new AtomicLong[STAGES];
+    private final AtomicLongArray buckets = new AtomicLongArray(STAGES * BUCKETS);
+    private final AtomicLongArray maxima = new AtomicLongArray(STAGES);
+    private final ThreadLocal<long[]> origin = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+    private volatile boolean enabled = true;
+
+    /**
+     * Returns the trace shared by the serial links and the display store
+     */
+    public static LatencyTrace getInstance() {
+        return instance;
+    }
+
+    public LatencyTrace() {
+        for(int s = 0; s < STAGES; s++) cursors[s] = new AtomicLong();
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a traced pass on this thread and stamps PORT_READ
+     * @param originNs - System.nanoTime when the pass's bytes arrived
+     */
+    public void begin(long originNs) {
+        if(!enabled) return;
+        origin.get()[0] = originNs;
+        stamp(Stage.PORT_READ, originNs);
+    }
+
+    /**
+     * Ends the traced pass on this thread
+     */
+    public void end() {
+        origin.get()[0] = 0;
+    }
+
+    /**
+     * Returns the origin of the pass running on this thread, or 0 if none
+     */
+    public long origin() {
+        return origin.get()[0];
+    }
+
+    /**
+     * Records that a value from `originNs` has reached `stage` now. Origins
+     * of 0, from outside a traced pass, are ignored.
+     */
+    public void stamp(Stage stage, long originNs) {
+        if(originNs == 0 || !enabled) return;
+        record(stage, System.nanoTime() - originNs);
+    }
+
+    /**
+     * Stamps `stage` with the origin of the pass running on this thread
+     */
+    public void stamp(Stage stage) {
+        stamp(stage, origin());
+    }
+
+    void record(Stage stage, long latencyNs) {
+        int s = stage.ordinal();
+        if(latencyNs < 0) latencyNs = 0;
+        long seq = cursors[s].getAndIncrement();
+        rings[s][(int) (seq & (RING_SIZE - 1))] = latencyNs;
+        buckets.incrementAndGet(s * BUCKETS + bucketOf(latencyNs));
+        long max;
+        while(latencyNs > (max = maxima.get(s))) {
+            if(maxima.compareAndSet(s, max, latencyNs)) break;
+        }
+    }
+
+    static int bucketOf(long latencyNs) {
+        long us = latencyNs / 1000;
+        int b = 64 - Long.numberOfLeadingZeros(us);
+        return Math.min(b, BUCKETS - 1);
+    }
+
+    /**
+     * Upper bound of histogram bucket `b` in microseconds
+     */
+    public static long bucketLimitUs(int b) {
+        return 1L << b;
+    }
+
+    /**
+     * Number of latencies recorded for `stage` since the last reset
+     */
+    public long getCount(Stage stage) {
+        return cursors[stage.ordinal()].get();
+    }
+
+    /**
+     * Longest latency recorded for `stage` in ms since the last reset
+     */
+    public double getMaxMs(Stage stage) {
+        return maxima.get(stage.ordinal()) / 1e6;
+    }
+
+    /**
+     * Copies the histogram counts of `stage`
+     */
+    public long[] getHistogram(Stage stage) {
+        long[] counts = new long[BUCKETS];
+        int base = stage.ordinal() * BUCKETS;
+        for(int b = 0; b < BUCKETS; b++) counts[b] = buckets.get(base + b);
+        return counts;
+    }
+
+    /**
+     * Returns the given percentiles, 0 to 100, of the most recent latencies
+     * of `stage` in ms; NaN where nothing has been recorded
+     */
+    public double[] getPercentilesMs(Stage stage, double... percentiles) {
+        int s = stage.ordinal();
+        int n = (int) Math.min(cursors[s].get(), RING_SIZE);
+        long[] recent = Arrays.copyOf(rings[s], n);
+        Arrays.sort(recent);
+
+        double[] result = new double[percentiles.length];
+        for(int i = 0; i < percentiles.length; i++) {
+            if(n == 0) {
+                result[i] = Double.NaN;
+                continue;
+            }
+            int rank = (int) Math.ceil(percentiles[i] / 100.0 * n) - 1;
+            result[i] = recent[Math.max(0, Math.min(n - 1, rank))] / 1e6;
+        }
+        return result;
+    }
+
+    /**
+     * Forgets every recorded latency
+     */
+    public void reset() {
+        for(int s = 0; s < STAGES; s++) {
+            cursors[s].set(0);
+            maxima.set(s, 0);
+        }
+        for(int i = 0; i < buckets.length(); i++) buckets.set(i, 0);
+    }
+
+    /**
+     * Writes the per stage percentiles and histograms as CSV
+     */
+    public void write(Writer out) throws IOException {
+        PrintWriter csv = new PrintWriter(out);
+        csv.println("stage,count,p50 ms,p90 ms,p99 ms,max ms");
+        for(Stage stage : Stage.values()) {
+            double[] p = getPercentilesMs(stage, 50, 90, 99);
+            csv.printf(Locale.ROOT, "%s,%d,%.3f,%.3f,%.3f,%.3f%n", stage.getLabel(),
+                       getCount(stage), p[0], p[1], p[2], getMaxMs(stage));
+        }
+        csv.println();
+        csv.println("stage,up to us,count");
+        for(Stage stage : Stage.values()) {
+            long[] counts = getHistogram(stage);
+            for(int b = 0; b < BUCKETS; b++) {
+                if(counts[b] == 0) continue;
+                csv.printf(Locale.ROOT, "%s,%d,%d%n", stage.getLabel(), bucketLimitUs(b), counts[b]);
+            }
+        }
+        csv.flush();
+        if(csv.checkError()) throw new IOException("Cannot write latency trace");
+    }
+}
@@ -0,0 +1,469 @@
+package com.telemetry;
+
+import com.logging.LogFiles;
+import com.serial.Serial;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Summarizes every recorded session in a log directory, for looking back
+ * over a field day; see LogSummary for what is totalled.
+ *
+ * Sessions, their segments and slices of each plain segment are scanned as
+ * fork-join tasks, so a directory of large logs is spread over every core.
+ * Plain segments are memory-mapped and cut into slices of about
+ * SLICE_BYTES at keyframes listed in the segment's TelemetryLogIndex; each
+ * slice is decoded straight from the mapping. Compressed or unindexed
+ * segments are read through in one task.
+ *
+ * The summary of each segment is cached in a file, keyed by a fingerprint of
+ * its contents: its size and a checksum of its first and last CHECK_BYTES,
+ * enough to tell apart logs that are only ever appended to. A segment is
+ * decoded again only when it changes, and one modified within SETTLE_MS,
+ * which may still be growing, is not cached at all.
+ *
+ * Usage: LogAnalyzer [directory]   (log by default)
+ */
+public class LogAnalyzer {
+    public static final String CACHE_NAME = "summaries.cache";
+    static final int CACHE_MAGIC = 0x4d544c53; //"MTLS"
+    static final short CACHE_VERSION = 1;
+    static final long SLICE_BYTES = 4 << 20;
+    static final int CHECK_BYTES = 64 * 1024;
+    static final long SETTLE_MS = 60 * 1000;
+
+    private static final String[] STATE_NAMES = new String[LogSummary.STATES];
+    static {
+        STATE_NAMES[Serial.DRIVE_STATE_STOP] = "stopped";
+        STATE_NAMES[Serial.DRIVE_STATE_AUTO] = "auto";
+        STATE_NAMES[Serial.DRIVE_STATE_RADIO] = "radio";
+        STATE_NAMES[Serial.DRIVE_STATE_LOW_VOLTAGE_STOP] = "low voltage stop";
+        STATE_NAMES[Serial.DRIVE_STATE_LOW_VOLTAGE_RESTART] = "low voltage restart";
+        STATE_NAMES[Serial.DRIVE_STATE_RADIO_FAILSAFE] = "radio failsafe";
+    }
+
+    //x.1.tlog, x.2.tlog.gz and so on continue the session started by x.tlog
+    private static final Pattern LATER_SEGMENT = Pattern.compile(
+        ".*\\.[0-9]+" + Pattern.quote(TelemetryLogWriter.EXTENSION)
+        + "(" + Pattern.quote(LogFiles.COMPRESSED_SUFFIX) + ")?");
+
+    private final Path cacheFile;
+    private final ForkJoinPool pool;
+    private final long sliceBytes;
+    private final Map<Long, LogSummary> cache = new ConcurrentHashMap<Long, LogSummary>();
+    private final AtomicBoolean cacheChanged = new AtomicBoolean();
+    private final AtomicLong decodedBytes = new AtomicLong();
+    private final AtomicInteger cacheHits = new AtomicInteger();
+
+    private final Logger iolog = Logger.getLogger("d.io");
+
+    /**
+     * @param cacheFile - where segment summaries are kept between runs, or
+     *        null to decode everything every time
+     */
+    public LogAnalyzer(Path cacheFile) {
+        this(cacheFile, ForkJoinPool.commonPool());
+    }
+
+    public LogAnalyzer(Path cacheFile, ForkJoinPool pool) {
+        this(cacheFile, pool, SLICE_BYTES);
+    }
+
+    LogAnalyzer(Path cacheFile, ForkJoinPool pool, long sliceBytes) {
+        this.cacheFile = cacheFile;
+        this.pool = pool;
+        this.sliceBytes = sliceBytes;
+        loadCache();
+    }
+
+    /**
+     * Summarizes every session in `dir`, ordered by name. A session that
+     * cannot be read is logged and left out.
+     */
+    public List<LogSummary> analyze(Path dir) throws IOException {
+        List<Path> sessions = new ArrayList<Path>();
+        String plain = TelemetryLogWriter.EXTENSION;
+        String packed = plain + LogFiles.COMPRESSED_SUFFIX;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for(Path file : files) {
+                String name = file.getFileName().toString();
+                if(LATER_SEGMENT.matcher(name).matches()) continue;
+                if(name.endsWith(plain)) {
+                    sessions.add(file);
+                } else if(name.endsWith(packed)) {
+                    //a first segment compressed after its session rotated
+                    Path first = file.resolveSibling(
+                        name.substring(0, name.length() - LogFiles.COMPRESSED_SUFFIX.length()));
+                    if(!Files.exists(first)) sessions.add(first);
+                }
+            }
+        }
+        Collections.sort(sessions);
+
+        final List<SessionTask> tasks = new ArrayList<SessionTask>();
+        for(Path first : sessions) tasks.add(new SessionTask(first));
+        pool.invoke(new RecursiveTask<Void>() {
+            protected Void compute() {
+                invokeAll(tasks);
+                return null;
+            }
+        });
+
+        List<LogSummary> summaries = new ArrayList<LogSummary>();
+        for(SessionTask task : tasks) {
+            if(task.failure != null) {
+                iolog.warning("Cannot summarize " + task.first + " " + task.failure);
+            } else {
+                summaries.add(task.join());
+            }
+        }
+        saveCache();
+        return summaries;
+    }
+
+    /**
+     * Summarizes the session whose first segment is `first`
+     */
+    public LogSummary summarize(Path first) throws IOException {
+        SessionTask task = new SessionTask(first);
+        pool.invoke(task);
+        saveCache();
+        if(task.failure != null) throw task.failure;
+        return task.join();
+    }
+
+    /** Bytes of plain log decoded so far, rather than taken from the cache */
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    /** Segments whose summary came from the cache so far */
+    public int getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Time in each drive state, longest first, such as "auto 0:12:03,
+     * stopped 0:01:10"
+     */
+    public static String describeStates(LogSummary summary) {
+        List<Integer> states = new ArrayList<Integer>();
+        for(int s = 1; s < LogSummary.STATES; s++) {
+            if(summary.getStateTime(s) > 0) states.add(s);
+        }
+        Collections.sort(states,
+            (a, b) -> Long.compare(summary.getStateTime(b), summary.getStateTime(a)));
+
+        StringBuilder text = new StringBuilder();
+        for(int s : states) {
+            if(text.length() > 0) text.append(", ");
+            text.append((STATE_NAMES[s] != null) ? STATE_NAMES[s] : "state " + s)
+                .append(' ').append(formatDuration(summary.getStateTime(s)));
+        }
+        return text.toString();
+    }
+
+    public static String formatDuration(long ms) {
+        long seconds = ms / 1000;
+        return String.format("%d:%02d:%02d",
+            seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+    //a failed session is recorded rather than thrown, so it does not cancel
+    //the others
+    private class SessionTask extends RecursiveTask<LogSummary> {
+        final Path first;
+        IOException failure;
+
+        SessionTask(Path first) {
+            this.first = first;
+        }
+
+        protected LogSummary compute() {
+            List<SegmentTask> segments = new ArrayList<SegmentTask>();
+            for(Path segment : LogFiles.segments(first)) {
+                segments.add(new SegmentTask(segment));
+            }
+            if(segments.isEmpty()) {
+                failure = new NoSuchFileException(first.toString());
+                return null;
+            }
+            try {
+                invokeAll(segments);
+            } catch (UncheckedIOException e) {
+                failure = e.getCause();
+                return null;
+            } catch (RuntimeException e) {
+                //a corrupt segment can fail anywhere in decoding
+                failure = new IOException("Corrupt log " + first, e);
+                return null;
+            }
+
+            LogSummary session = new LogSummary(first.getFileName().toString());
+            for(SegmentTask segment : segments) {
+                session.append(segment.join());
+            }
+            return session;
+        }
+    }
+
+    private class SegmentTask extends RecursiveTask<LogSummary> {
+        final Path path;
+
+        SegmentTask(Path path) {
+            this.path = path;
+        }
+
+        protected LogSummary compute() {
+            try {
+                long key = fingerprint(path);
+                LogSummary cached = cache.get(key);
+                if(cached != null) {
+                    cacheHits.incrementAndGet();
+                    return cached;
+                }
+
+                LogSummary summary = LogFiles.isCompressed(path) ? readThrough()
+                                                                 : readSlices();
+                long modified = Files.getLastModifiedTime(path).toMillis();
+                if(System.currentTimeMillis() - modified > SETTLE_MS) {
+                    cache.put(key, summary);
+                    cacheChanged.set(true);
+                }
+                return summary;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private LogSummary readThrough() throws IOException {
+            LogSummary summary = new LogSummary(path.getFileName().toString());
+            try (TelemetryLogReader log = TelemetryLogReader.open(path)) {
+                decode(log, summary);
+            }
+            return summary;
+        }
+
+        private LogSummary readSlices() throws IOException {
+            List<Long> starts = new ArrayList<Long>();
+            List<Long> rows = new ArrayList<Long>();
+            List<ByteBuffer> maps = new ArrayList<ByteBuffer>();
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = file.size();
+                starts.add(0L);
+                rows.add(0L);
+                TelemetryLogIndex index = TelemetryLogIndex.open(path);
+                for(int i = 0; index != null && i < index.size(); i++) {
+                    long offset = index.offsetAt(i);
+                    if(offset >= size) break;
+                    if(offset - starts.get(starts.size() - 1) < sliceBytes) continue;
+                    starts.add(offset);
+                    rows.add(index.rowAt(i));
+                }
+                starts.add(size);
+
+                for(int i = 0; i + 1 < starts.size(); i++) {
+                    long length = starts.get(i + 1) - starts.get(i);
+                    //too big to map in one piece; unindexed, so read it through
+                    if(length > Integer.MAX_VALUE) return readThrough();
+                    maps.add(file.map(FileChannel.MapMode.READ_ONLY, starts.get(i), length));
+                }
+            }
+
+            TelemetryLogReader header =
+                new TelemetryLogReader(new BufferInput(maps.get(0).duplicate()));
+            List<SliceTask> slices = new ArrayList<SliceTask>();
+            for(int i = 0; i < maps.size(); i++) {
+                slices.add(new SliceTask(maps.get(i), (i == 0) ? null : header, rows.get(i)));
+            }
+            invokeAll(slices);
+
+            LogSummary summary = new LogSummary(path.getFileName().toString());
+            for(SliceTask slice : slices) {
+                summary.append(slice.join());
+            }
+            return summary;
+        }
+    }
+
+    private class SliceTask extends RecursiveTask<LogSummary> {
+        final ByteBuffer bytes;
+        final TelemetryLogReader header;
+        final long row;
+
+        /**
+         * @param header - the segment's header, or null if the slice starts
+         *        with it
+         */
+        SliceTask(ByteBuffer bytes, TelemetryLogReader header, long row) {
+            this.bytes = bytes;
+            this.header = header;
+            this.row = row;
+        }
+
+        protected LogSummary compute() {
+            try {
+                InputStream in = new BufferInput(bytes);
+                TelemetryLogReader log = (header == null)
+                    ? new TelemetryLogReader(in)
+                    : new TelemetryLogReader(in, header, row);
+                LogSummary summary = new LogSummary("");
+                decode(log, summary);
+                decodedBytes.addAndGet(bytes.capacity());
+                return summary;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static void decode(TelemetryLogReader log, LogSummary summary)
+            throws IOException {
+        try {
+            while(log.next()) {
+                summary.add(log);
+            }
+        } catch (EOFException e) {
+            //truncated final row
+        }
+    }
+
+    /**
+     * Identifies a segment by its contents rather than its name, so renamed
+     * or copied logs are still found in the cache
+     */
+    static long fingerprint(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = file.size();
+            int n = (int) Math.min(size, CHECK_BYTES);
+            CRC32 head = new CRC32();
+            head.update(file.map(FileChannel.MapMode.READ_ONLY, 0, n));
+            CRC32 tail = new CRC32();
+            tail.update(file.map(FileChannel.MapMode.READ_ONLY, size - n, n));
+            return ((head.getValue() << 32) | tail.getValue())
+                   ^ (size * 0x9E3779B97F4A7C15L);
+        }
+    }
+
+    private void loadCache() {
+        if(cacheFile == null || !Files.exists(cacheFile)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(cacheFile)))) {
+            if(in.readInt() != CACHE_MAGIC || in.readShort() != CACHE_VERSION) {
+                iolog.warning("Ignoring unknown log summary cache " + cacheFile);
+                return;
+            }
+            int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                long key = in.readLong();
+                cache.put(key, LogSummary.read(in, ""));
+            }
+        } catch (IOException e) {
+            iolog.warning("Cannot read log summary cache " + cacheFile + " " + e);
+            cache.clear();
+        }
+    }
+
+    //written under a temporary name and moved into place, as LogFiles does
+    private void saveCache() {
+        if(cacheFile == null || !cacheChanged.getAndSet(false)) return;
+        Path partial = cacheFile.resolveSibling(cacheFile.getFileName() + ".part");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(partial)))) {
+                out.writeInt(CACHE_MAGIC);
+                out.writeShort(CACHE_VERSION);
+                List<Map.Entry<Long, LogSummary>> entries =
+                    new ArrayList<Map.Entry<Long, LogSummary>>(cache.entrySet());
+                out.writeInt(entries.size());
+                for(Map.Entry<Long, LogSummary> e : entries) {
+                    out.writeLong(e.getKey());
+                    e.getValue().write(out);
+                }
+            }
+            Files.move(partial, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            iolog.warning("Cannot write log summary cache " + cacheFile + " " + e);
+        }
+    }
+
+    //reads a mapped slice without copying it onto the heap first
+    private static class BufferInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(len == 0) return 0;
+            if(!buffer.hasRemaining()) return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get((args.length > 0) ? args[0] : "log");
+        LogAnalyzer analyzer = new LogAnalyzer(dir.resolve(CACHE_NAME));
+        long started = System.currentTimeMillis();
+        List<LogSummary> summaries = analyzer.analyze(dir);
+
+        SimpleDateFormat date = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        System.out.printf("%-28s %-16s %9s %10s %9s %8s  %s%n", "Session", "Start",
+            "Duration", "Distance", "Max Speed", "Min V", "Drive States");
+        for(LogSummary s : summaries) {
+            System.out.printf("%-28s %-16s %9s %9.0fm %9.2f %8.2f  %s%n",
+                s.getName(),
+                (s.getRows() == 0) ? "-" : date.format(new Date(s.getStartTime())),
+                formatDuration(s.getDuration()), s.getDistance(),
+                s.getMaxSpeed(), s.getMinVoltage(), describeStates(s));
+        }
+        System.out.printf("%d sessions, %.1f MB decoded, %d segments cached, %d ms%n",
+            summaries.size(), analyzer.getDecodedBytes() / 1e6,
+            analyzer.getCacheHits(), System.currentTimeMillis() - started);
+    }
+}
@@ -0,0 +1,388 @@
+package com.telemetry;
+
+import com.graph.DataSource;
+import com.graph.RangeSource;
+import com.logging.LogFiles;
+import com.serial.Serial;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Min/max summary pyramid of every channel of a telemetry log segment, kept
+ * in a sidecar file next to it (x.tlog.pyr for x.tlog or x.tlog.gz) so a log
+ * is only read through once.
+ *
+ * The segment's time span is cut into a power of two number of equal
+ * buckets, at most MAX_BUCKETS and no narrower than MIN_BUCKET_MS. Each
+ * bucket holds the least and greatest value each channel took during it,
+ * counting the value it held coming in. Every further level halves the
+ * buckets, down to about MIN_LEVEL_BUCKETS. The sidecar is:
+ * <pre>
+ *   int    PYRAMID_MAGIC
+ *   short  VERSION
+ *   long   size of the segment it summarizes
+ *   long   time of the first row, ms since the epoch
+ *   long   time of the last row
+ *   int    channels, buckets in level 0, levels
+ *   for each level, for each channel, for each bucket: float min, float max
+ * </pre>
+ * with NaN marking buckets before a channel missing from the log header
+ * first appeared. It is
+ * mapped rather than read, so opening costs the same for any log; asking for
+ * the range over a span reads one or two buckets of the coarsest level that
+ * still resolves it.
+ */
+public class LogPyramid {
+    public static final int PYRAMID_MAGIC = 0x4d544c50; //"MTLP"
+    public static final String EXTENSION = ".pyr";
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 4 + 2 + 8 + 8 + 8 + 4 + 4 + 4;
+    static final int MAX_BUCKETS = 1 << 16;
+    static final int MIN_BUCKET_MS = 10;
+    static final int MIN_LEVEL_BUCKETS = 256;
+
+    private final ByteBuffer data;
+    private final long startTime;
+    private final long endTime;
+    private final int channels;
+    private final int buckets;
+    private final int levels;
+    private final long[] levelOffset;
+    private final List<String> names;
+
+    private LogPyramid(ByteBuffer data, List<String> names) {
+        this.data = data;
+        this.names = names;
+        startTime = data.getLong(14);
+        endTime   = data.getLong(22);
+        channels  = data.getInt(30);
+        buckets   = data.getInt(34);
+        levels    = data.getInt(38);
+
+        levelOffset = new long[levels];
+        long offset = HEADER_BYTES;
+        for(int l = 0; l < levels; l++) {
+            levelOffset[l] = offset;
+            offset += 8L * channels * (buckets >> l);
+        }
+    }
+
+    /**
+     * Sidecar path for a segment, plain or compressed
+     */
+    public static Path pathFor(Path segment) {
+        String name = segment.getFileName().toString();
+        if(LogFiles.isCompressed(segment)) {
+            name = name.substring(0, name.length() - LogFiles.COMPRESSED_SUFFIX.length());
+        }
+        return segment.resolveSibling(name + EXTENSION);
+    }
+
+    /**
+     * Maps the pyramid of `segment`, building it first if it has none or
+     * the segment has grown since
+     * @param progress - told the fraction built so far, if building
+     */
+    public static LogPyramid load(Path segment, DoubleConsumer progress)
+            throws IOException {
+        LogPyramid pyramid = open(segment);
+        return (pyramid != null) ? pyramid : build(segment, progress);
+    }
+
+    /**
+     * Maps the pyramid of `segment`
+     * @return - the pyramid, or null if there is none or it is out of date
+     */
+    public static LogPyramid open(Path segment) throws IOException {
+        Path path = pathFor(segment);
+        if(!Files.exists(path)) return null;
+
+        ByteBuffer map;
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(file.size() < HEADER_BYTES) return null;
+            map = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        }
+        if(map.getInt(0) != PYRAMID_MAGIC || map.getShort(4) != VERSION
+                || map.getLong(6) != Files.size(segment)) {
+            return null;
+        }
+
+        List<String> names;
+        try (TelemetryLogReader log = TelemetryLogReader.open(segment)) {
+            names = log.getChannelNames();
+        }
+        LogPyramid pyramid = new LogPyramid(map, names);
+        long expected = pyramid.levelOffset[pyramid.levels - 1]
+                        + 8L * pyramid.channels * (pyramid.buckets >> (pyramid.levels - 1));
+        return (map.capacity() == expected) ? pyramid : null;
+    }
+
+    /**
+     * Reads `segment` through and writes its pyramid, replacing any old one
+     * @param progress - told the fraction built so far, or null
+     */
+    public static LogPyramid build(Path segment, DoubleConsumer progress)
+            throws IOException {
+        long size = Files.size(segment);
+        long start;
+        long end;
+        try (TelemetryLogReader log = TelemetryLogReader.open(segment)) {
+            start = nextRow(log) ? log.getTime() : log.getStartTime();
+        }
+        //the index lets the end be found without reading the whole log
+        try (TelemetryLogReader log = TelemetryLogReader.openAt(segment, Long.MAX_VALUE)) {
+            end = start;
+            while(nextRow(log)) end = Math.max(end, log.getTime());
+        }
+
+        long span = end - start + 1;
+        int count = 1;
+        while(count < MAX_BUCKETS && (long) count * 2 * MIN_BUCKET_MS <= span) count *= 2;
+
+        float[][] level0 = new float[Serial.MAX_TELEMETRY][];
+        int channels = 0;
+        try (TelemetryLogReader log = TelemetryLogReader.open(segment)) {
+            //named channels hold 0.0 from the start, like every channel
+            channels = Math.min(log.getChannelNames().size(), Serial.MAX_TELEMETRY);
+            for(int id = 0; id < channels; id++) {
+                level0[id] = new float[count * 2];
+                Arrays.fill(level0[id], Float.NaN);
+            }
+            double[] held = new double[Serial.MAX_TELEMETRY];
+            int bucket = -1;
+            int reported = -1;
+            while(nextRow(log)) {
+                int b = (int) Math.min(count - 1, (log.getTime() - start) * count / span);
+                if(b < 0) b = 0;
+                if(bucket < 0) {
+                    //every named channel has a value from the first row on
+                    for(int id = 0; id < channels; id++) {
+                        held[id] = log.getValue(id);
+                        fold(level0[id], b, held[id]);
+                    }
+                    bucket = b;
+                }
+                //the values held coming into each new bucket are part of it
+                for(int k = bucket + 1; k <= b; k++) {
+                    for(int id = 0; id < channels; id++) {
+                        if(level0[id] != null) fold(level0[id], k, held[id]);
+                    }
+                }
+                bucket = Math.max(bucket, b);
+
+                for(int i = 0; i < log.changedCount(); i++) {
+                    int id = log.changedId(i);
+                    double value = log.getValue(id);
+                    if(level0[id] == null) {
+                        level0[id] = new float[count * 2];
+                        Arrays.fill(level0[id], Float.NaN);
+                    }
+                    channels = Math.max(channels, id + 1);
+                    fold(level0[id], b, value);
+                    held[id] = value;
+                }
+
+                if(progress != null && b * 100 / count != reported) {
+                    reported = b * 100 / count;
+                    progress.accept(b / (double) count);
+                }
+            }
+        }
+
+        int levels = 1;
+        while((count >> levels) >= MIN_LEVEL_BUCKETS) levels++;
+
+        Path path = pathFor(segment);
+        Path partial = path.resolveSibling(path.getFileName() + ".part");
+        try (FileChannel file = FileChannel.open(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(PYRAMID_MAGIC).putShort(VERSION).putLong(size)
+                  .putLong(start).putLong(end)
+                  .putInt(channels).putInt(count).putInt(levels);
+            header.flip();
+            write(file, header);
+
+            ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024);
+            float[] empty = new float[count * 2];
+            Arrays.fill(empty, Float.NaN);
+            for(int l = 0; l < levels; l++) {
+                for(int id = 0; id < channels; id++) {
+                    float[] level = (level0[id] != null) ? level0[id] : empty;
+                    for(int i = 0; i < (count >> l) * 2; i++) {
+                        if(!out.hasRemaining()) {
+                            out.flip();
+                            write(file, out);
+                            out.clear();
+                        }
+                        out.putFloat(level[i]);
+                    }
+                }
+                //halve every channel for the next level
+                for(float[] level : level0) {
+                    if(level == null) continue;
+                    for(int i = 0; i < (count >> (l + 1)); i++) {
+                        level[2 * i]     = least(level[4 * i], level[4 * i + 2]);
+                        level[2 * i + 1] = greatest(level[4 * i + 1], level[4 * i + 3]);
+                    }
+                }
+            }
+            out.flip();
+            write(file, out);
+        }
+        Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING);
+        if(progress != null) progress.accept(1.0);
+
+        LogPyramid pyramid = open(segment);
+        if(pyramid == null) throw new IOException("Cannot read back " + path);
+        return pyramid;
+    }
+
+    private static boolean nextRow(TelemetryLogReader log) throws IOException {
+        try {
+            return log.next();
+        } catch (EOFException e) {
+            return false; //truncated final row
+        }
+    }
+
+    private static void write(FileChannel file, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) file.write(buffer);
+    }
+
+    private static void fold(float[] level, int bucket, double value) {
+        float v = (float) value;
+        level[2 * bucket]     = least(level[2 * bucket], v);
+        level[2 * bucket + 1] = greatest(level[2 * bucket + 1], v);
+    }
+
+    //NaN is empty rather than contagious
+    private static float least(float a, float b) {
+        return (Float.isNaN(a) || b < a) ? b : a;
+    }
+
+    private static float greatest(float a, float b) {
+        return (Float.isNaN(a) || b > a) ? b : a;
+    }
+
+    /** Time of the first row, ms since the epoch */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /** Time of the last row, ms since the epoch */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /** Channels summarized, ids 0 up to this */
+    public int getChannelCount() {
+        return channels;
+    }
+
+    /** Buckets in the finest level */
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Least value of `channel` between `from` and `to`, where 0.0 is the
+     * first row and 1.0 the last; NaN if there is none
+     */
+    public double min(int channel, double from, double to) {
+        return extreme(channel, from, to, 0);
+    }
+
+    /**
+     * Greatest value of `channel` between `from` and `to`, as min
+     */
+    public double max(int channel, double from, double to) {
+        return extreme(channel, from, to, 4);
+    }
+
+    private double extreme(int channel, double from, double to, int which) {
+        if(channel < 0 || channel >= channels || !(from <= to)
+                || to < 0.0 || from > 1.0) {
+            return Double.NaN;
+        }
+        from = Math.max(0.0, from);
+        to   = Math.min(1.0, to);
+
+        //coarsest level whose buckets are no wider than the span
+        double across = (to - from) * buckets;
+        int level = (across < 2) ? 0 : 31 - Integer.numberOfLeadingZeros((int) across);
+        level = Math.min(levels - 1, level);
+
+        int count = buckets >> level;
+        int first = (int) Math.min(count - 1, (long) (from * count));
+        int last  = (int) Math.min(count - 1, (long) Math.ceil(to * count) - 1);
+        last = Math.max(first, last);
+
+        long base = levelOffset[level] + 8L * count * channel;
+        float result = Float.NaN;
+        for(int i = first; i <= last; i++) {
+            float v = data.getFloat((int) (base + 8L * i + which));
+            result = (which == 0) ? least(result, v) : greatest(result, v);
+        }
+        return result;
+    }
+
+    /**
+     * Name of channel `id` from the log header
+     */
+    public String getChannelName(int id) {
+        return (id < names.size()) ? names.get(id) : "# " + id;
+    }
+
+    /**
+     * Graph sources for every channel, named from the log header
+     */
+    public List<DataSource> getSources() {
+        List<DataSource> list = new ArrayList<DataSource>(channels);
+        for(int id = 0; id < channels; id++) {
+            list.add(new PyramidSource(id, getChannelName(id)));
+        }
+        return list;
+    }
+
+    private class PyramidSource implements RangeSource {
+        private final int id;
+        private final String name;
+
+        PyramidSource(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public double get(double x) {
+            return (min(x, x) + max(x, x)) / 2;
+        }
+
+        public double min(double from, double to) {
+            return LogPyramid.this.min(id, from, to);
+        }
+
+        public double max(double from, double to) {
+            return LogPyramid.this.max(id, from, to);
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Totals for one recorded session, or for a stretch of one while it is
+ * being scanned: how long it ran, how far and how fast the vehicle went, the
+ * lowest battery voltage and how long it spent in each drive state.
+ *
+ * A channel still at 0.0 is taken as not yet reported, so voltages of zero
+ * and positions at 0,0 are ignored, as is time spent in drive state 0.
+ * Summaries of consecutive stretches are joined with append, which also
+ * counts the distance and state time across the gap between them; joining
+ * the pieces of a log gives the same totals as reading it straight through.
+ */
+public class LogSummary {
+    static final int STATES = 256;
+
+    private final String name;
+    private long rows;
+    private long firstTime = TelemetryManager.NO_TIME;
+    private long lastTime = TelemetryManager.NO_TIME;
+    private double distance;
+    private double maxSpeed = Double.NaN;
+    private double minVoltage = Double.NaN;
+    private final long[] stateTime = new long[STATES];
+    private int lastState;
+    private double firstLat = Double.NaN;
+    private double firstLon = Double.NaN;
+    private double lastLat = Double.NaN;
+    private double lastLon = Double.NaN;
+
+    /**
+     * @param name - the session, usually its first segment's file name
+     */
+    public LogSummary(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Folds in the current row of `log`
+     */
+    void add(TelemetryLogReader log) {
+        long time = log.getTime();
+        if(rows == 0) {
+            firstTime = time;
+        } else if(lastState != 0) {
+            stateTime[lastState] += time - lastTime;
+        }
+        rows++;
+        lastTime = time;
+
+        double speed = log.getValue(Serial.SPEED);
+        if(!(speed <= maxSpeed)) maxSpeed = speed;
+        double voltage = log.getValue(Serial.VOLTAGE);
+        if(voltage > 0 && !(voltage >= minVoltage)) minVoltage = voltage;
+        lastState = ((int) log.getValue(Serial.DRIVESTATE)) & (STATES - 1);
+
+        double lat = log.getValue(Serial.LATITUDE);
+        double lon = log.getValue(Serial.LONGITUDE);
+        if(lat == 0 && lon == 0) return;
+        if(Double.isNaN(firstLat)) {
+            firstLat = lat;
+            firstLon = lon;
+        } else if(lat != lastLat || lon != lastLon) {
+            distance += Formula.distance(lastLat, lastLon, lat, lon);
+        }
+        lastLat = lat;
+        lastLon = lon;
+    }
+
+    /**
+     * Adds the totals of `next`, which must start no earlier than this ends
+     */
+    void append(LogSummary next) {
+        if(next.rows == 0) return;
+        if(rows == 0) {
+            firstTime = next.firstTime;
+            firstLat = next.firstLat;
+            firstLon = next.firstLon;
+        } else {
+            if(lastState != 0) stateTime[lastState] += next.firstTime - lastTime;
+            if(!Double.isNaN(lastLat) && !Double.isNaN(next.firstLat)) {
+                distance += Formula.distance(lastLat, lastLon,
+                                             next.firstLat, next.firstLon);
+            }
+        }
+        if(Double.isNaN(firstLat)) {
+            firstLat = next.firstLat;
+            firstLon = next.firstLon;
+        }
+
+        rows += next.rows;
+        lastTime = next.lastTime;
+        lastState = next.lastState;
+        distance += next.distance;
+        if(!(next.maxSpeed <= maxSpeed) && !Double.isNaN(next.maxSpeed)) {
+            maxSpeed = next.maxSpeed;
+        }
+        if(!(next.minVoltage >= minVoltage) && !Double.isNaN(next.minVoltage)) {
+            minVoltage = next.minVoltage;
+        }
+        for(int s = 0; s < STATES; s++) stateTime[s] += next.stateTime[s];
+        if(!Double.isNaN(next.lastLat)) {
+            lastLat = next.lastLat;
+            lastLon = next.lastLon;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Rows read */
+    public long getRows() {
+        return rows;
+    }
+
+    /** Time of the first row, ms since the epoch, or NO_TIME if empty */
+    public long getStartTime() {
+        return firstTime;
+    }
+
+    /** Time of the last row, ms since the epoch, or NO_TIME if empty */
+    public long getEndTime() {
+        return lastTime;
+    }
+
+    /** ms from the first row to the last */
+    public long getDuration() {
+        return lastTime - firstTime;
+    }
+
+    /** Meters travelled between successive reported positions */
+    public double getDistance() {
+        return distance;
+    }
+
+    /** Highest ground speed, or NaN if there were no rows */
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    /** Lowest reported voltage, or NaN if none was reported */
+    public double getMinVoltage() {
+        return minVoltage;
+    }
+
+    /**
+     * ms spent in a drive state, such as Serial.DRIVE_STATE_AUTO
+     */
+    public long getStateTime(int state) {
+        return (state > 0 && state < STATES) ? stateTime[state] : 0;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeLong(rows);
+        out.writeLong(firstTime);
+        out.writeLong(lastTime);
+        out.writeDouble(distance);
+        out.writeDouble(maxSpeed);
+        out.writeDouble(minVoltage);
+        out.writeByte(lastState);
+        out.writeDouble(firstLat);
+        out.writeDouble(firstLon);
+        out.writeDouble(lastLat);
+        out.writeDouble(lastLon);
+
+        int states = 0;
+        for(long t : stateTime) if(t != 0) states++;
+        out.writeShort(states);
+        for(int s = 0; s < STATES; s++) {
+            if(stateTime[s] == 0) continue;
+            out.writeByte(s);
+            out.writeLong(stateTime[s]);
+        }
+    }
+
+    static LogSummary read(DataInput in, String name) throws IOException {
+        LogSummary summary = new LogSummary(name);
+        summary.rows = in.readLong();
+        summary.firstTime = in.readLong();
+        summary.lastTime = in.readLong();
+        summary.distance = in.readDouble();
+        summary.maxSpeed = in.readDouble();
+        summary.minVoltage = in.readDouble();
+        summary.lastState = in.readUnsignedByte();
+        summary.firstLat = in.readDouble();
+        summary.firstLon = in.readDouble();
+        summary.lastLat = in.readDouble();
+        summary.lastLon = in.readDouble();
+
+        int states = in.readUnsignedShort();
+        for(int i = 0; i < states; i++) {
+            int s = in.readUnsignedByte();
+            summary.stateTime[s] = in.readLong();
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,212 @@
+package com.telemetry;
+
+/**
+ * Constant memory sketch of a stream of values that answers quantile
+ * queries to within a fixed relative error, and can be merged with other
+ * sketches of the same accuracy.
+ *
+ * Values are counted in logarithmic buckets: bucket k holds magnitudes in
+ * (gamma^(k-1), gamma^k], with gamma = (1 + accuracy) / (1 - accuracy), so
+ * any value reported from a bucket is within `accuracy` of every value
+ * counted in it. Positive and negative values have separate bucket arrays
+ * of at most `maxBuckets` entries each; should a channel's range of
+ * magnitudes outgrow that, the smallest magnitudes are folded together,
+ * which only loses accuracy close to zero.
+ */
+public class QuantileSketch {
+    public static final double DEFAULT_ACCURACY = 0.01;
+    public static final int DEFAULT_MAX_BUCKETS = 1024;
+    //magnitudes below this are counted as zero
+    private static final double MIN_MAGNITUDE = 1e-9;
+
+    private final double accuracy;
+    private final int maxBuckets;
+    private final double gamma;
+    private final double logGamma;
+
+    private final Buckets positive;
+    private final Buckets negative;
+    private long zeroCount;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_ACCURACY, DEFAULT_MAX_BUCKETS);
+    }
+
+    /**
+     * @param accuracy - relative error of reported quantiles, 0 to 1
+     * @param maxBuckets - bucket limit for each sign
+     */
+    public QuantileSketch(double accuracy, int maxBuckets) {
+        if(!(accuracy > 0 && accuracy < 1) || maxBuckets < 2) {
+            throw new IllegalArgumentException("Bad sketch accuracy or size");
+        }
+        this.accuracy = accuracy;
+        this.maxBuckets = maxBuckets;
+        this.gamma = (1 + accuracy) / (1 - accuracy);
+        this.logGamma = Math.log(gamma);
+        this.positive = new Buckets(maxBuckets);
+        this.negative = new Buckets(maxBuckets);
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Counts a value; NaN is ignored
+     */
+    public void add(double value) {
+        if(Double.isNaN(value)) return;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+
+        double magnitude = Math.abs(value);
+        if(magnitude < MIN_MAGNITUDE) {
+            zeroCount++;
+        } else if(value > 0) {
+            positive.add(index(magnitude), 1);
+        } else {
+            negative.add(index(magnitude), 1);
+        }
+    }
+
+    /**
+     * Adds everything counted by `other` to this sketch
+     * @throws IllegalArgumentException - if the sketches differ in accuracy
+     *         or size
+     */
+    public void merge(QuantileSketch other) {
+        if(other.accuracy != accuracy || other.maxBuckets != maxBuckets) {
+            throw new IllegalArgumentException("Sketches are not compatible");
+        }
+        positive.addAll(other.positive);
+        negative.addAll(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Estimates the value below which a fraction `q` of the values fall
+     * @param q - quantile, 0 to 1
+     * @return - the estimate, or NaN if nothing has been counted
+     */
+    public double quantile(double q) {
+        if(count == 0) return Double.NaN;
+        if(q <= 0) return min;
+        if(q >= 1) return max;
+
+        long rank = (long) (q * (count - 1));
+        double estimate;
+        if(rank < negative.total) {
+            //most negative first, so from the largest magnitude down
+            estimate = -value(negative.indexFromTop(rank));
+        } else if(rank < negative.total + zeroCount) {
+            estimate = 0;
+        } else {
+            estimate = value(positive.indexFromBottom(rank - negative.total - zeroCount));
+        }
+        return Math.max(min, Math.min(max, estimate));
+    }
+
+    public QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(accuracy, maxBuckets);
+        copy.merge(this);
+        return copy;
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * Counts per bucket index over a sliding range of at most `capacity`
+     * indexes; counts below the range are folded into its lowest bucket.
+     */
+    private static class Buckets {
+        private final int capacity;
+        private long[] counts;
+        private int offset;
+        private int low = Integer.MAX_VALUE;
+        private int high = Integer.MIN_VALUE;
+        private long total;
+
+        Buckets(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void add(int index, long n) {
+            if(counts == null) {
+                counts = new long[capacity];
+                offset = index - capacity / 2;
+            }
+            if(index < offset) {
+                //make room below if the top allows, else fold into the bottom
+                int lowest = Math.max(index, high - capacity + 1);
+                if(lowest < offset) shift(lowest);
+                index = Math.max(index, offset);
+            } else if(index >= offset + capacity) {
+                shift(index - capacity + 1);
+            }
+            counts[index - offset] += n;
+            total += n;
+            low = Math.min(low, index);
+            high = Math.max(high, index);
+        }
+
+        void addAll(Buckets other) {
+            if(other.counts == null) return;
+            for(int i = other.low; i <= other.high; i++) {
+                long n = other.counts[i - other.offset];
+                if(n != 0) add(i, n);
+            }
+        }
+
+        //moves the range to start at `newOffset`
+        private void shift(int newOffset) {
+            long[] moved = new long[capacity];
+            int newLow = Integer.MAX_VALUE;
+            for(int i = low; i <= high; i++) {
+                long n = counts[i - offset];
+                if(n == 0) continue;
+                int to = Math.max(i, newOffset);
+                moved[to - newOffset] += n;
+                newLow = Math.min(newLow, to);
+            }
+            counts = moved;
+            offset = newOffset;
+            low = newLow;
+        }
+
+        int indexFromBottom(long rank) {
+            long seen = 0;
+            for(int i = low; i <= high; i++) {
+                seen += counts[i - offset];
+                if(seen > rank) return i;
+            }
+            return high;
+        }
+
+        int indexFromTop(long rank) {
+            long seen = 0;
+            for(int i = high; i >= low; i--) {
+                seen += counts[i - offset];
+                if(seen > rank) return i;
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import java.util.Arrays;
+
+/**
+ * Indexes the moments a vehicle's obstacle sensors fired: a bumper being
+ * pressed, or a sonar reading entering near range, stamped with the time and
+ * the vehicle's position then.
+ *
+ * The index subscribes inline to the sensor channels of a telemetry store,
+ * so it sees every reading rather than one per frame, and only looks at
+ * edges; a steady stream of readings costs a comparison each. Events are kept
+ * oldest first in a ring of primitive arrays, dropping the oldest once
+ * `capacity` is reached, and found by time with a binary search. A sonar is
+ * only armed once it has read beyond near range, so the 0.0 of a channel
+ * not yet reported is not taken for an obstacle.
+ *
+ * Events are expected in time order. One stamped earlier than the newest,
+ * as when a replay seeks backwards, discards the events after it.
+ */
+public class SensorEventIndex {
+    public static final int DEFAULT_CAPACITY = 16 * 1024;
+    /**
+     * Sonar readings at or below these, in mm, are near range; PingWidget
+     * shows the same levels as blocked
+     */
+    public static final int[] NEAR_RANGE = {1000, 1600, 3000, 1600, 1000};
+
+    private static final int[] CHANNELS = new int[Serial.SONAR_COUNT + Serial.BUMPER_COUNT];
+    static {
+        for(int i = 0; i < Serial.SONAR_COUNT; i++) {
+            CHANNELS[i] = Serial.SONAR_FIRST + i;
+        }
+        for(int i = 0; i < Serial.BUMPER_COUNT; i++) {
+            CHANNELS[Serial.SONAR_COUNT + i] = Serial.BUMPER_FIRST + i;
+        }
+    }
+
+    private final int capacity;
+    private final long[] times;
+    private final byte[] channels;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private int head;
+    private int count;
+
+    private final boolean[] armed = new boolean[Serial.SONAR_COUNT];
+    private final boolean[] pressed = new boolean[Serial.BUMPER_COUNT];
+    private volatile TelemetryManager telemetry;
+    private volatile TelemetrySubscription subscription;
+
+    public SensorEventIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity - events kept before the oldest are dropped
+     */
+    public SensorEventIndex(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        times      = new long[this.capacity];
+        channels   = new byte[this.capacity];
+        latitudes  = new double[this.capacity];
+        longitudes = new double[this.capacity];
+    }
+
+    /**
+     * Indexes the sensor channels of `store` from now on, taking event
+     * positions from its latitude and longitude
+     */
+    public void attach(TelemetryManager store) {
+        detach();
+        telemetry = store;
+        subscription = store.subscribe(CHANNELS, this::update);
+    }
+
+    /**
+     * Stops indexing; the events found so far are kept
+     */
+    public void detach() {
+        if(subscription != null) subscription.cancel();
+        subscription = null;
+        telemetry = null;
+    }
+
+    /**
+     * Passes a sensor reading through the edge detectors
+     * @param id - a sonar or bumper channel; others are ignored
+     * @param time - local ms, or NO_TIME for now
+     */
+    public synchronized void update(int id, double value, long time) {
+        int sonar  = id - Serial.SONAR_FIRST;
+        int bumper = id - Serial.BUMPER_FIRST;
+        if(sonar >= 0 && sonar < Serial.SONAR_COUNT) {
+            boolean near = value <= NEAR_RANGE[sonar];
+            if(near && armed[sonar]) add(id, time);
+            armed[sonar] = !near;
+        } else if(bumper >= 0 && bumper < Serial.BUMPER_COUNT) {
+            boolean down = value != 0;
+            if(down && !pressed[bumper]) add(id, time);
+            pressed[bumper] = down;
+        }
+    }
+
+    private void add(int id, long time) {
+        if(time == TelemetryManager.NO_TIME) time = System.currentTimeMillis();
+        if(count > 0 && time < times[slot(count - 1)]) count = find(time);
+
+        int slot;
+        if(count < capacity) {
+            slot = slot(count);
+            count++;
+        } else {
+            slot = head;
+            head = (head + 1) % capacity;
+        }
+        times[slot]    = time;
+        channels[slot] = (byte) id;
+        TelemetryManager store = telemetry;
+        if(store != null) {
+            latitudes[slot]  = store.get(Serial.LATITUDE);
+            longitudes[slot] = store.get(Serial.LONGITUDE);
+        } else {
+            latitudes[slot]  = Double.NaN;
+            longitudes[slot] = Double.NaN;
+        }
+    }
+
+    private int slot(int index) {
+        return (head + index) % capacity;
+    }
+
+    //index of the first event at or after `time`
+    private int find(long time) {
+        return search(time, false);
+    }
+
+    //index of the first event after `time`
+    private int findAfter(long time) {
+        return search(time, true);
+    }
+
+    private int search(long time, boolean after) {
+        int lo = 0;
+        int hi = count;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long t = times[slot(mid)];
+            if(t < time || (after && t == time)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Events held */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Counts the events with from <= time <= to
+     */
+    public synchronized int count(long from, long to) {
+        return (to < from) ? 0 : findAfter(to) - find(from);
+    }
+
+    /**
+     * Copies the events with from <= time <= to, oldest first. A null array
+     * skips that field. Latitude and longitude are NaN for events indexed
+     * without a store to take the position from.
+     * @return - the number of events copied, at most times.length
+     */
+    public synchronized int range(long from, long to, long[] eventTimes,
+                                  int[] eventChannels, double[] eventLatitudes,
+                                  double[] eventLongitudes) {
+        if(to < from) return 0;
+        int first = find(from);
+        int n = Math.min(findAfter(to) - first, eventTimes.length);
+        copy(first, n, eventTimes, eventChannels, eventLatitudes, eventLongitudes);
+        return n;
+    }
+
+    /**
+     * Copies the newest events, oldest first, filling as much of the given
+     * arrays as there are events for. A null array skips that field.
+     * @return - the number of events copied
+     */
+    public synchronized int latest(long[] eventTimes, int[] eventChannels,
+                                   double[] eventLatitudes, double[] eventLongitudes) {
+        int n = Math.min(count, eventTimes.length);
+        copy(count - n, n, eventTimes, eventChannels, eventLatitudes, eventLongitudes);
+        return n;
+    }
+
+    private void copy(int first, int n, long[] eventTimes, int[] eventChannels,
+                      double[] eventLatitudes, double[] eventLongitudes) {
+        for(int i = 0; i < n; i++) {
+            int slot = slot(first + i);
+            eventTimes[i] = times[slot];
+            if(eventChannels != null) eventChannels[i] = channels[slot];
+            if(eventLatitudes != null) eventLatitudes[i] = latitudes[slot];
+            if(eventLongitudes != null) eventLongitudes[i] = longitudes[slot];
+        }
+    }
+
+    /**
+     * Forgets every event and sensor state
+     */
+    public synchronized void clear() {
+        head = 0;
+        count = 0;
+        Arrays.fill(armed, false);
+        Arrays.fill(pressed, false);
+    }
+
+    /**
+     * True if `id` is a bumper channel
+     */
+    public static boolean isBumper(int id) {
+        return id >= Serial.BUMPER_FIRST && id < Serial.BUMPER_FIRST + Serial.BUMPER_COUNT;
+    }
+}
@@ -0,0 +1,181 @@
+package com.telemetry;
+
+import com.graph.DataSource;
+import com.graph.RangeSource;
+import com.logging.LogFiles;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Min/max summary of a whole recorded session, which rotation splits into
+ * many log segments. Each segment keeps its own LogPyramid; this joins them
+ * end to end in time, so x = 0.0 is the first row of the first segment and
+ * x = 1.0 the last row of the last.
+ *
+ * A span of the session is answered by finding the first segment that
+ * reaches it with a binary search on segment end times, then asking each
+ * segment it covers for its part of the span.
+ */
+public class SessionPyramid {
+    private final LogPyramid[] segments;
+    private final long[] starts;
+    private final long[] ends;
+    private final long startTime;
+    private final long endTime;
+    private final int channels;
+
+    private SessionPyramid(List<LogPyramid> list) {
+        segments = list.toArray(new LogPyramid[list.size()]);
+        starts = new long[segments.length];
+        ends = new long[segments.length];
+        int most = 0;
+        for(int i = 0; i < segments.length; i++) {
+            starts[i] = segments[i].getStartTime();
+            //segments are written in order, but never let an end run backwards
+            ends[i] = Math.max(segments[i].getEndTime(),
+                               (i > 0) ? ends[i - 1] : Long.MIN_VALUE);
+            most = Math.max(most, segments[i].getChannelCount());
+        }
+        startTime = starts[0];
+        endTime = ends[ends.length - 1];
+        channels = most;
+    }
+
+    /**
+     * Maps the pyramid of every segment of the session starting at `first`,
+     * plain or compressed, building those that are missing or out of date
+     * @param progress - told the fraction of the session built so far
+     */
+    public static SessionPyramid load(Path first, DoubleConsumer progress)
+            throws IOException {
+        //segments are found from the plain name, whichever form each is in
+        if(LogFiles.isCompressed(first)) {
+            String name = first.getFileName().toString();
+            first = first.resolveSibling(name.substring(
+                0, name.length() - LogFiles.COMPRESSED_SUFFIX.length()));
+        }
+        List<Path> paths = LogFiles.segments(first);
+        if(paths.isEmpty()) throw new IOException("No log segments for " + first);
+
+        List<LogPyramid> list = new ArrayList<LogPyramid>(paths.size());
+        for(int i = 0; i < paths.size(); i++) {
+            final double done = i;
+            final double count = paths.size();
+            list.add(LogPyramid.load(paths.get(i), (progress == null) ? null
+                : fraction -> progress.accept((done + fraction) / count)));
+        }
+        return new SessionPyramid(list);
+    }
+
+    /** Time of the first row of the session, ms since the epoch */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /** Time of the last row of the session */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /** Channels summarized by any segment, ids 0 up to this */
+    public int getChannelCount() {
+        return channels;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Least value of `channel` between `from` and `to`, where 0.0 is the
+     * first row of the session and 1.0 the last; NaN if there is none
+     */
+    public double min(int channel, double from, double to) {
+        return extreme(channel, from, to, true);
+    }
+
+    /**
+     * Greatest value of `channel` between `from` and `to`, as min
+     */
+    public double max(int channel, double from, double to) {
+        return extreme(channel, from, to, false);
+    }
+
+    private double extreme(int channel, double from, double to, boolean least) {
+        if(!(from <= to) || to < 0.0 || from > 1.0) return Double.NaN;
+
+        double span = endTime - startTime;
+        double t0 = startTime + Math.max(0.0, from) * span;
+        double t1 = startTime + Math.min(1.0, to) * span;
+
+        double result = Double.NaN;
+        for(int i = firstEndingAfter(t0); i < segments.length && starts[i] <= t1; i++) {
+            double width = ends[i] - starts[i];
+            double v;
+            if(width <= 0) {
+                v = least ? segments[i].min(channel, 0.0, 1.0)
+                          : segments[i].max(channel, 0.0, 1.0);
+            } else {
+                double a = (t0 - starts[i]) / width;
+                double b = (t1 - starts[i]) / width;
+                v = least ? segments[i].min(channel, a, b)
+                          : segments[i].max(channel, a, b);
+            }
+            if(Double.isNaN(result) || (least ? v < result : v > result)) result = v;
+        }
+        return result;
+    }
+
+    //index of the first segment whose end is at or after `time`
+    private int firstEndingAfter(double time) {
+        int lo = 0;
+        int hi = ends.length;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(ends[mid] < time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Graph sources for every channel, named from the first segment's header
+     */
+    public List<DataSource> getSources() {
+        List<DataSource> list = new ArrayList<DataSource>(channels);
+        for(int id = 0; id < channels; id++) {
+            list.add(new SessionSource(id, segments[0].getChannelName(id)));
+        }
+        return list;
+    }
+
+    private class SessionSource implements RangeSource {
+        private final int id;
+        private final String name;
+
+        SessionSource(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public double get(double x) {
+            return (min(x, x) + max(x, x)) / 2;
+        }
+
+        public double min(double from, double to) {
+            return SessionPyramid.this.min(id, from, to);
+        }
+
+        public double max(double from, double to) {
+            return SessionPyramid.this.max(id, from, to);
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
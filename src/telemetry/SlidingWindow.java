@@ -0,0 +1,133 @@
+package com.telemetry;
+
+/**
+ * The samples of one channel taken within the last `span` milliseconds,
+ * with their running sum, minimum and maximum.
+ *
+ * Samples sit in a ring that doubles when full. The sum is kept as samples
+ * enter and leave; the minimum and maximum come from monotonic deques of
+ * sample numbers, so every add and eviction is O(1) amortized however wide
+ * the window is.
+ */
+class SlidingWindow {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long span;
+
+    private long[] times = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private long[] minQueue = new long[INITIAL_CAPACITY];
+    private long[] maxQueue = new long[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+
+    //sample numbers; sample n lives at index n & mask
+    private long first;
+    private long end;
+    private long minHead, minTail;
+    private long maxHead, maxTail;
+    private double sum;
+
+    /**
+     * @param span - width of the window in milliseconds
+     */
+    SlidingWindow(long span) {
+        this.span = span;
+    }
+
+    long getSpan() {
+        return span;
+    }
+
+    /**
+     * Adds a sample and drops those that have left the window
+     * @param time - ms time of the sample, no earlier than the last one
+     */
+    void add(long time, double value) {
+        evict(time);
+        if(end - first == times.length) grow();
+
+        long n = end++;
+        times[(int) (n & mask)] = time;
+        values[(int) (n & mask)] = value;
+        sum += value;
+
+        while(minTail > minHead && valueOf(minQueue, minTail - 1) >= value) minTail--;
+        minQueue[(int) (minTail++ & mask)] = n;
+        while(maxTail > maxHead && valueOf(maxQueue, maxTail - 1) <= value) maxTail--;
+        maxQueue[(int) (maxTail++ & mask)] = n;
+    }
+
+    /**
+     * Drops samples taken more than `span` before `now`
+     */
+    void evict(long now) {
+        while(first < end && times[(int) (first & mask)] < now - span) {
+            sum -= values[(int) (first & mask)];
+            if(minQueue[(int) (minHead & mask)] == first) minHead++;
+            if(maxQueue[(int) (maxHead & mask)] == first) maxHead++;
+            first++;
+        }
+        //rounding error would otherwise outlive the samples
+        if(first == end) sum = 0;
+    }
+
+    int size() {
+        return (int) (end - first);
+    }
+
+    double last() {
+        return (first == end) ? Double.NaN : values[(int) ((end - 1) & mask)];
+    }
+
+    double mean() {
+        return (first == end) ? Double.NaN : sum / (end - first);
+    }
+
+    double min() {
+        return (first == end) ? Double.NaN : valueOf(minQueue, minHead);
+    }
+
+    double max() {
+        return (first == end) ? Double.NaN : valueOf(maxQueue, maxHead);
+    }
+
+    /**
+     * Change per second between the oldest and newest samples, or NaN with
+     * fewer than two samples a measurable time apart
+     */
+    double rate() {
+        if(end - first < 2) return Double.NaN;
+        long dt = times[(int) ((end - 1) & mask)] - times[(int) (first & mask)];
+        if(dt <= 0) return Double.NaN;
+        return (values[(int) ((end - 1) & mask)] - values[(int) (first & mask)])
+             / (dt / 1000.0);
+    }
+
+    private double valueOf(long[] queue, long at) {
+        return values[(int) (queue[(int) (at & mask)] & mask)];
+    }
+
+    private void grow() {
+        int capacity = times.length * 2;
+        int newMask = capacity - 1;
+        long[] newTimes = new long[capacity];
+        double[] newValues = new double[capacity];
+        long[] newMin = new long[capacity];
+        long[] newMax = new long[capacity];
+        for(long n = first; n < end; n++) {
+            newTimes[(int) (n & newMask)] = times[(int) (n & mask)];
+            newValues[(int) (n & newMask)] = values[(int) (n & mask)];
+        }
+        for(long i = minHead; i < minTail; i++) {
+            newMin[(int) (i & newMask)] = minQueue[(int) (i & mask)];
+        }
+        for(long i = maxHead; i < maxTail; i++) {
+            newMax[(int) (i & newMask)] = maxQueue[(int) (i & mask)];
+        }
+        times = newTimes;
+        values = newValues;
+        minQueue = newMin;
+        maxQueue = newMax;
+        mask = newMask;
+    }
+}
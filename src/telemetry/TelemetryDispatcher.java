@@ -0,0 +1,304 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+
+/**
+ * Delivers telemetry to UI consumers on the EDT at a bounded frame rate.
+ *
+ * Values arriving from the serial thread are parked per channel, replacing
+ * any value that has not been delivered yet. Once per frame the EDT hands the
+ * latest value of every changed channel, and of every changed record, to its
+ * UI listeners, so a burst of packets costs one repaint per frame instead of
+ * one per packet. Replaced values are counted as dropped, and the time the
+ * oldest parked value waited is tracked as delivery lag.
+ *
+ * The frame rate comes from the ui_frame_rate resource. The frame timer
+ * starts with the first UI listener and is never stopped, since the display
+ * store lives as long as the application; a frame with nothing parked only
+ * reads the pending flags.
+ *
+ * When the store has a LatencyTrace, the trace origin of each parked value
+ * is kept with it; delivered values stamp EDT_DELIVERY, and PAINT once the
+ * repaints their listeners asked for, queued ahead of it, have run.
+ */
+public class TelemetryDispatcher {
+    public static final int DEFAULT_FRAME_RATE = 30;
+
+    private static final TelemetryListener[] NO_LISTENERS = new TelemetryListener[0];
+
+    private final TelemetryManager telemetry;
+    private final javax.swing.Timer frameTimer;
+
+    private final TelemetryListener[][] uiListeners =
+        new TelemetryListener[Serial.MAX_TELEMETRY][];
+    private final AtomicLongArray latest = new AtomicLongArray(Serial.MAX_TELEMETRY);
+    private final AtomicIntegerArray pending = new AtomicIntegerArray(Serial.MAX_TELEMETRY);
+    private final AtomicLongArray parkedAt = new AtomicLongArray(Serial.MAX_TELEMETRY);
+    private final AtomicLongArray parkedOrigin = new AtomicLongArray(Serial.MAX_TELEMETRY);
+
+    private final RecordSlot[] records =
+        new RecordSlot[TelemetryRecord.Kind.values().length];
+
+    private final AtomicLong dropped = new AtomicLong();
+    private long delivered;
+    private long frames;
+    private long maxLagNs;
+    private long totalLagNs;
+    private long lagSamples;
+
+    //trace origins of the values delivered since the last PAINT stamp
+    private final long[] unpainted =
+        new long[Serial.MAX_TELEMETRY + TelemetryRecord.Kind.values().length];
+    private int unpaintedCount;
+    private boolean paintQueued;
+    private final Runnable paintDone = this::stampPainted;
+
+    /**
+     * Class Constructor
+     * @param telemetry - the store whose updates are to be dispatched
+     */
+    public TelemetryDispatcher(TelemetryManager telemetry) {
+        this.telemetry = telemetry;
+        frameTimer = new javax.swing.Timer(1000 / DEFAULT_FRAME_RATE,
+                                           new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                flush();
+            }
+        });
+        frameTimer.setCoalesce(true);
+    }
+
+    /**
+     * Sets how many times a second UI listeners may be updated
+     */
+    public void setFrameRate(int framesPerSecond) {
+        int period = 1000 / Math.max(1, framesPerSecond);
+        frameTimer.setDelay(period);
+        frameTimer.setInitialDelay(period);
+    }
+
+    public int getFrameRate() {
+        return 1000 / frameTimer.getDelay();
+    }
+
+    /**
+     * Registers `tl` to receive the latest value of channel `id` on the EDT,
+     * at most once per frame
+     */
+    public synchronized void addListener(int id, TelemetryListener tl) {
+        if(id < 0 || id >= Serial.MAX_TELEMETRY) return;
+
+        TelemetryListener[] current = uiListeners[id];
+        if(current == null) {
+            current = NO_LISTENERS;
+            telemetry.registerListener(id, new Parker(id));
+        }
+        TelemetryListener[] next = java.util.Arrays.copyOf(current, current.length + 1);
+        next[current.length] = tl;
+        uiListeners[id] = next;
+        startTimer();
+    }
+
+    /**
+     * Registers `l` to receive the latest commit of a record on the EDT, at
+     * most once per frame
+     */
+    public synchronized void addListener(TelemetryRecord.Kind kind,
+                                         TelemetryRecord.Listener l) {
+        RecordSlot slot = records[kind.ordinal()];
+        if(slot == null) {
+            slot = new RecordSlot(kind);
+            records[kind.ordinal()] = slot;
+            telemetry.registerListener(kind, slot);
+        }
+        slot.add(l);
+        startTimer();
+    }
+
+    /**
+     * Number of values replaced before they could be delivered
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Number of values handed to UI listeners
+     */
+    public synchronized long getDeliveredCount() {
+        return delivered;
+    }
+
+    /**
+     * Longest time in ms a value waited for delivery
+     */
+    public synchronized double getMaxLagMs() {
+        return maxLagNs / 1e6;
+    }
+
+    /**
+     * Average time in ms a value waited for delivery
+     */
+    public synchronized double getMeanLagMs() {
+        return (lagSamples == 0) ? 0 : (totalLagNs / (double) lagSamples) / 1e6;
+    }
+
+    public synchronized long getFrameCount() {
+        return frames;
+    }
+
+    private void startTimer() {
+        if(!frameTimer.isRunning()) {
+            frameTimer.start();
+        }
+    }
+
+    /**
+     * Delivers everything parked since the last frame. Runs on the EDT from
+     * the frame timer.
+     */
+    synchronized void flush() {
+        long now = System.nanoTime();
+        frames++;
+
+        for(int id = 0; id < Serial.MAX_TELEMETRY; id++) {
+            TelemetryListener[] listeners = uiListeners[id];
+            if(listeners == null || pending.getAndSet(id, 0) == 0) continue;
+
+            recordLag(now - parkedAt.get(id));
+            double value = Double.longBitsToDouble(latest.get(id));
+            for(TelemetryListener tl : listeners) {
+                tl.update(value);
+            }
+            delivered++;
+            traced(parkedOrigin.get(id));
+        }
+
+        for(RecordSlot slot : records) {
+            if(slot != null && slot.deliver()) {
+                recordLag(now - slot.parkedAt);
+                delivered++;
+                traced(slot.deliveredOrigin);
+            }
+        }
+
+        //repaints requested by the listeners are already queued, so this
+        //runs once they have been painted
+        if(unpaintedCount > 0 && !paintQueued) {
+            paintQueued = true;
+            SwingUtilities.invokeLater(paintDone);
+        }
+    }
+
+    private void traced(long origin) {
+        LatencyTrace trace = telemetry.getLatencyTrace();
+        if(trace == null || origin == 0) return;
+        trace.stamp(LatencyTrace.Stage.EDT_DELIVERY, origin);
+        if(unpaintedCount < unpainted.length) unpainted[unpaintedCount++] = origin;
+    }
+
+    private synchronized void stampPainted() {
+        LatencyTrace trace = telemetry.getLatencyTrace();
+        for(int i = 0; i < unpaintedCount; i++) {
+            if(trace != null) trace.stamp(LatencyTrace.Stage.PAINT, unpainted[i]);
+        }
+        unpaintedCount = 0;
+        paintQueued = false;
+    }
+
+    //origin of the traced pass storing a value on this thread, or 0
+    private long currentOrigin() {
+        LatencyTrace trace = telemetry.getLatencyTrace();
+        return (trace != null) ? trace.origin() : 0;
+    }
+
+    private void recordLag(long lagNs) {
+        maxLagNs = Math.max(maxLagNs, lagNs);
+        totalLagNs += lagNs;
+        lagSamples++;
+    }
+
+    /**
+     * Registered on the store for a channel; parks each value for the next
+     * frame
+     */
+    private class Parker implements TelemetryListener {
+        private final int id;
+
+        Parker(int id) {
+            this.id = id;
+        }
+
+        public void update(double data) {
+            latest.set(id, Double.doubleToRawLongBits(data));
+            parkedOrigin.set(id, currentOrigin());
+            if(pending.get(id) == 0) {
+                parkedAt.set(id, System.nanoTime());
+            }
+            if(pending.getAndSet(id, 1) == 1) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Holds the most recent commit of one record until the next frame
+     */
+    private class RecordSlot implements TelemetryRecord.Listener {
+        private final TelemetryRecord copy;
+        private final double[] parked;
+        private TelemetryRecord.Listener[] listeners =
+            new TelemetryRecord.Listener[0];
+        private boolean isPending;
+        private long parkedSentTime;
+        private long parkedOrigin;
+        long parkedAt;
+        long deliveredOrigin;
+
+        RecordSlot(TelemetryRecord.Kind kind) {
+            copy   = new TelemetryRecord(kind);
+            parked = new double[kind.size()];
+        }
+
+        void add(TelemetryRecord.Listener l) {
+            listeners = java.util.Arrays.copyOf(listeners, listeners.length + 1);
+            listeners[listeners.length - 1] = l;
+        }
+
+        public void update(TelemetryRecord record) {
+            synchronized(this) {
+                System.arraycopy(record.values, 0, parked, 0, parked.length);
+                parkedSentTime = record.getSentTime();
+                parkedOrigin = currentOrigin();
+                if(isPending) {
+                    dropped.incrementAndGet();
+                } else {
+                    isPending = true;
+                    parkedAt = System.nanoTime();
+                }
+            }
+        }
+
+        //returns true if a commit was delivered
+        boolean deliver() {
+            synchronized(this) {
+                if(!isPending) return false;
+                isPending = false;
+                System.arraycopy(parked, 0, copy.values, 0, parked.length);
+                copy.sentTime = parkedSentTime;
+                deliveredOrigin = parkedOrigin;
+            }
+            for(TelemetryRecord.Listener l : listeners) {
+                l.update(copy);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Records every individual telemetry update, rather than periodic samples,
+ * as a one channel row of a binary telemetry log.
+ *
+ * Updates are handed from the telemetry threads to a dedicated writer thread
+ * through a TelemetryEventQueue, so the only cost on the telemetry path is
+ * a few array stores. The writer drains the queue in batches and makes them
+ * durable with group commit: the log is forced to disk once
+ * GROUP_COMMIT_BYTES have built up or the oldest unforced update is
+ * GROUP_COMMIT_MS old, whichever comes first, so the number of syncs does not
+ * grow with the telemetry rate. Updates arriving while the queue is full are
+ * dropped and counted.
+ *
+ * With nothing queued the writer parks until the group commit deadline, or
+ * indefinitely if nothing is waiting to be forced, and the first update to
+ * arrive unparks it.
+ */
+public class TelemetryEventLog implements AutoCloseable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 64 * 1024;
+    public static final int GROUP_COMMIT_BYTES = 64 * 1024;
+    public static final int GROUP_COMMIT_MS = 200;
+    private static final long GROUP_COMMIT_NS =
+        TimeUnit.MILLISECONDS.toNanos(GROUP_COMMIT_MS);
+
+    private final TelemetryLogWriter log;
+    private final TelemetryEventQueue queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile boolean idle;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long written;
+    private volatile long commits;
+    private IOException failure;
+
+    private final Logger iolog = Logger.getLogger("d.io");
+
+    public TelemetryEventLog(TelemetryLogWriter log) {
+        this(log, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Starts the writer thread
+     * @param log - the log to append to; owned by this object from now on
+     * @param capacity - updates that can be waiting for the writer
+     */
+    public TelemetryEventLog(TelemetryLogWriter log, int capacity) {
+        this.log   = log;
+        this.queue = new TelemetryEventQueue(capacity);
+        writer = new Thread(this::writeLoop, "telemetry log writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records every update of every channel of `telemetry` from now on.
+     * Updates without a sent time are stamped with the time they arrive.
+     */
+    public void attach(TelemetryManager telemetry) {
+        for(int id = 0; id < Serial.MAX_TELEMETRY; id++) {
+            final int channel = id;
+            telemetry.registerListener(id, new TimedTelemetryListener() {
+                public void update(double data) {
+                    record(channel, System.currentTimeMillis(), data);
+                }
+                public void update(double data, long time) {
+                    if(time == TelemetryManager.NO_TIME) {
+                        time = System.currentTimeMillis();
+                    }
+                    record(channel, time, data);
+                }
+            });
+        }
+    }
+
+    /**
+     * Queues one update for the writer; safe from any thread
+     * @return - false if it was dropped because the writer has fallen behind
+     */
+    public boolean record(int id, long time, double value) {
+        if(running && queue.offer(id, time, value)) {
+            if(idle) LockSupport.unpark(writer);
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Updates written to the log so far
+     */
+    public long getWrittenCount() {
+        return written;
+    }
+
+    /**
+     * Number of times the log has been forced to disk
+     */
+    public long getCommitCount() {
+        return commits;
+    }
+
+    /**
+     * Writes and forces any queued updates, then closes the log
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            log.close();
+        } finally {
+            if(failure != null) throw failure;
+        }
+    }
+
+    private void writeLoop() {
+        long syncedBytes = 0;
+        long pendingSince = 0;
+        try {
+            syncedBytes = log.getBytesWritten();
+            while(true) {
+                boolean stopping = !running;
+                int batch = drain();
+                long now = System.nanoTime();
+                if(batch > 0 && pendingSince == 0) pendingSince = now;
+
+                if(pendingSince != 0) {
+                    long pending = log.getBytesWritten() - syncedBytes;
+                    if(stopping || pending >= GROUP_COMMIT_BYTES
+                            || now - pendingSince >= GROUP_COMMIT_NS) {
+                        log.sync();
+                        commits++;
+                        syncedBytes = log.getBytesWritten();
+                        pendingSince = 0;
+                    }
+                }
+
+                if(stopping) return;
+                if(batch == 0) park(pendingSince, now);
+            }
+        } catch (IOException e) {
+            failure = e;
+            running = false;
+            iolog.severe("Telemetry event log failed " + e);
+        }
+    }
+
+    //sleeps until an update is offered or the pending updates are due
+    private void park(long pendingSince, long now) {
+        idle = true;
+        if(running && queue.isEmpty()) {
+            if(pendingSince == 0) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, pendingSince + GROUP_COMMIT_NS - now);
+            }
+        }
+        idle = false;
+    }
+
+    //writes everything currently published in the queue
+    private int drain() throws IOException {
+        int count = 0;
+        while(queue.ready()) {
+            log.writeSample(queue.peekTime(), queue.peekId(), queue.peekValue());
+            queue.remove();
+            count++;
+        }
+        written += count;
+        return count;
+    }
+}
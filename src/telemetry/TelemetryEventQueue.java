@@ -0,0 +1,99 @@
+package com.telemetry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of (id, time, value) telemetry events with any
+ * number of producers and a single consumer.
+ *
+ * Events live in preallocated primitive arrays, so offering one allocates
+ * nothing. Each slot carries a sequence number: a producer claims the next
+ * position with a CAS on the tail, fills the slot and then publishes it by
+ * advancing the slot's sequence, which is what the consumer waits on. When
+ * the queue is full offer fails rather than blocking the telemetry path.
+ */
+class TelemetryEventQueue {
+    private final int mask;
+    private final int[] ids;
+    private final long[] times;
+    private final double[] values;
+    private final AtomicLongArray sequence;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    /**
+     * @param capacity - slots, rounded up to a power of two
+     */
+    TelemetryEventQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask   = size - 1;
+        ids    = new int[size];
+        times  = new long[size];
+        values = new double[size];
+        sequence = new AtomicLongArray(size);
+        for(int i = 0; i < size; i++) sequence.set(i, i);
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds an event; safe from any thread
+     * @return - false if the queue was full and the event dropped
+     */
+    boolean offer(int id, long time, double value) {
+        while(true) {
+            long t = tail.get();
+            int slot = (int) t & mask;
+            long s = sequence.get(slot);
+            if(s == t) {
+                if(!tail.compareAndSet(t, t + 1)) continue;
+                ids[slot]    = id;
+                times[slot]  = time;
+                values[slot] = value;
+                sequence.lazySet(slot, t + 1);
+                return true;
+            }
+            if(s < t) return false;
+        }
+    }
+
+    /**
+     * True if no event has been claimed, published or not. Consumer thread
+     * only. This reads the tail, so a consumer that announces it is going
+     * idle before checking can not miss a producer that checks afterwards.
+     */
+    boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    /**
+     * True if the next event has been published. Consumer thread only.
+     */
+    boolean ready() {
+        return sequence.get((int) head & mask) == head + 1;
+    }
+
+    int peekId() {
+        return ids[(int) head & mask];
+    }
+
+    long peekTime() {
+        return times[(int) head & mask];
+    }
+
+    double peekValue() {
+        return values[(int) head & mask];
+    }
+
+    /**
+     * Releases the event just read with the peek methods. Consumer thread
+     * only, and only after ready returned true.
+     */
+    void remove() {
+        sequence.lazySet((int) head & mask, head + mask + 1);
+        head++;
+    }
+}
@@ -0,0 +1,122 @@
+package com.telemetry;
+
+import com.logging.LogFiles;
+
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.DecimalFormat;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Converts a binary telemetry log back into the CSV layout the dashboard
+ * used to write, for tools that still expect it: one line per row holding
+ * the ms since the log started followed by the value of every channel, each
+ * followed by ", ".
+ *
+ * Usage: TelemetryLogConverter [-n] input.tlog [output.csv]
+ * With -n a first line naming the columns is written. Without an output
+ * file the CSV goes to standard out. Given the first segment of a rotated
+ * session, every segment is converted in order, compressed or not.
+ */
+public class TelemetryLogConverter {
+    private final DecimalFormat numberFormat = new DecimalFormat("#.########");
+    private boolean writeNames;
+
+    /**
+     * Sets whether a line of column names is written before the rows
+     */
+    public void setWriteNames(boolean writeNames) {
+        this.writeNames = writeNames;
+    }
+
+    /**
+     * Streams every row of `log` to `out` as CSV. A row cut short at the
+     * end of the log, as left by a crash, is ignored.
+     * @return - the number of rows written
+     */
+    public long toCsv(TelemetryLogReader log, Writer out) throws IOException {
+        return toCsv(log, out, writeNames);
+    }
+
+    /**
+     * Streams every segment of a log to `out` as one CSV
+     * @param segments - segment paths in order, plain or gzipped
+     * @return - the number of rows written
+     */
+    public long toCsv(List<Path> segments, Writer out) throws IOException {
+        long rows = 0;
+        for(int i = 0; i < segments.size(); i++) {
+            try (TelemetryLogReader log = TelemetryLogReader.open(segments.get(i))) {
+                rows += toCsv(log, out, writeNames && i == 0);
+            }
+        }
+        return rows;
+    }
+
+    private long toCsv(TelemetryLogReader log, Writer out, boolean names)
+            throws IOException {
+        if(names) {
+            out.write("time, ");
+            for(String name : log.getChannelNames()) {
+                out.write(name.replace(",", ""));
+                out.write(", ");
+            }
+            out.write(System.lineSeparator());
+        }
+
+        long rows = 0;
+        try {
+            while(log.next()) {
+                out.write(Long.toString(log.getTime() - log.getStartTime()));
+                out.write(", ");
+                for(int i = 0; i < log.getChannelCount(); i++) {
+                    out.write(numberFormat.format(log.getValue(i)));
+                    out.write(", ");
+                }
+                out.write(System.lineSeparator());
+                rows++;
+            }
+        } catch (EOFException e) {
+            //truncated final row
+        }
+        out.flush();
+        return rows;
+    }
+
+    public static void main(String[] args) throws IOException {
+        TelemetryLogConverter converter = new TelemetryLogConverter();
+        int arg = 0;
+        if(arg < args.length && args[arg].equals("-n")) {
+            converter.setWriteNames(true);
+            arg++;
+        }
+        if(arg >= args.length) {
+            System.err.println(
+                "Usage: TelemetryLogConverter [-n] input.tlog [output.csv]");
+            System.exit(1);
+        }
+
+        Path input = Paths.get(args[arg]);
+        List<Path> segments = LogFiles.isCompressed(input)
+            ? Collections.singletonList(input) : LogFiles.segments(input);
+        if(segments.isEmpty()) {
+            System.err.println("No such log " + input);
+            System.exit(1);
+        }
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    (arg + 1 < args.length) ? new FileOutputStream(args[arg + 1])
+                                            : System.out,
+                    StandardCharsets.UTF_8))) {
+            converter.toCsv(segments, out);
+        }
+    }
+}
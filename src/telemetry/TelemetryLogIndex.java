@@ -0,0 +1,126 @@
+package com.telemetry;
+
+import com.logging.LogFiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sparse time index of a telemetry log segment, kept in a sidecar file next
+ * to it (x.tlog.idx for x.tlog or x.tlog.gz).
+ *
+ * TelemetryLogWriter writes a keyframe row, holding the full value of every
+ * channel, about once a second and appends an entry for it here:
+ * <pre>
+ *   int    INDEX_MAGIC
+ *   short  VERSION
+ *   repeated: long time, long byte offset of the keyframe, long row number
+ * </pre>
+ * Entries have a fixed size and rising times, so the file is mapped and
+ * searched in place; finding the keyframe before a time is O(log n) however
+ * long the log is. A reader positioned on a keyframe needs nothing that came
+ * before it.
+ */
+public class TelemetryLogIndex {
+    public static final int INDEX_MAGIC = 0x4d544c49; //"MTLI"
+    public static final String EXTENSION = ".idx";
+    static final int HEADER_BYTES = 6;
+    static final int ENTRY_BYTES = 24;
+
+    private final ByteBuffer entries;
+    private final int size;
+
+    private TelemetryLogIndex(ByteBuffer entries) {
+        this.entries = entries;
+        this.size = entries.capacity() / ENTRY_BYTES;
+    }
+
+    /**
+     * Sidecar path for a segment, plain or compressed
+     */
+    public static Path pathFor(Path segment) {
+        String name = segment.getFileName().toString();
+        if(LogFiles.isCompressed(segment)) {
+            name = name.substring(0, name.length() - LogFiles.COMPRESSED_SUFFIX.length());
+        }
+        return segment.resolveSibling(name + EXTENSION);
+    }
+
+    /**
+     * Maps the index of `segment`
+     * @return - the index, or null if the segment has none
+     */
+    public static TelemetryLogIndex open(Path segment) throws IOException {
+        Path path = pathFor(segment);
+        if(!Files.exists(path)) return null;
+
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = file.size() - HEADER_BYTES;
+            if(length < 0) return null;
+            //an entry cut short by a crash is ignored
+            length -= length % ENTRY_BYTES;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            file.read(header, 0);
+            header.flip();
+            if(header.remaining() < HEADER_BYTES || header.getInt() != INDEX_MAGIC
+                    || header.getShort() != TelemetryLogWriter.VERSION) {
+                throw new IOException("Not a telemetry log index " + path);
+            }
+
+            MappedByteBuffer map = file.map(FileChannel.MapMode.READ_ONLY,
+                                            HEADER_BYTES, length);
+            return new TelemetryLogIndex(map);
+        }
+    }
+
+    /**
+     * Number of keyframes indexed
+     */
+    public int size() {
+        return size;
+    }
+
+    public long timeAt(int i) {
+        return entries.getLong(i * ENTRY_BYTES);
+    }
+
+    /**
+     * Byte offset of keyframe `i` from the start of the uncompressed segment
+     */
+    public long offsetAt(int i) {
+        return entries.getLong(i * ENTRY_BYTES + 8);
+    }
+
+    /**
+     * Number of the first row after keyframe `i`, counting from 0
+     */
+    public long rowAt(int i) {
+        return entries.getLong(i * ENTRY_BYTES + 16);
+    }
+
+    /**
+     * Finds the last keyframe at or before `time`
+     * @return - its entry, or 0 if every keyframe is later
+     */
+    public int floor(long time) {
+        int lo = 0;
+        int hi = size - 1;
+        int found = 0;
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if(timeAt(mid) <= time) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,269 @@
+package com.telemetry;
+
+import com.logging.LogFiles;
+import com.serial.Serial;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streams the rows of a log written by TelemetryLogWriter, keeping the
+ * current value of every channel. The format is described there.
+ *
+ * Reading goes forward from the front, or from a keyframe found through
+ * the segment's TelemetryLogIndex; nothing but the current row is held,
+ * so logs of any length can be read with constant memory.
+ */
+public class TelemetryLogReader implements AutoCloseable {
+    private final DataInputStream in;
+    private final long startTime;
+    private final List<String> names;
+    private final boolean keyframes;
+    private final long headerBytes;
+
+    private final long[] bits = new long[Serial.MAX_TELEMETRY];
+    private final int[] changed = new int[Serial.MAX_TELEMETRY];
+    private int changedCount;
+    private int channelCount;
+    private long time;
+    private long row = -1;
+
+    /**
+     * Reads the log header from `stream`
+     * @throws IOException - if the stream does not hold a telemetry log
+     */
+    public TelemetryLogReader(InputStream stream) throws IOException {
+        in = new DataInputStream((stream instanceof BufferedInputStream)
+                ? stream : new BufferedInputStream(stream, 64 * 1024));
+
+        if(in.readInt() != TelemetryLogWriter.MAGIC) {
+            throw new IOException("Not a telemetry log");
+        }
+        short version = in.readShort();
+        if(version < 1 || version > TelemetryLogWriter.VERSION) {
+            throw new IOException("Unsupported telemetry log version " + version);
+        }
+        keyframes = version >= 2;
+        startTime = in.readLong();
+        time = startTime;
+
+        int count = in.readUnsignedShort();
+        long read = 16;
+        List<String> list = new ArrayList<String>(count);
+        for(int i = 0; i < count; i++) {
+            byte[] utf = new byte[in.readUnsignedShort()];
+            in.readFully(utf);
+            list.add(new String(utf, StandardCharsets.UTF_8));
+            read += 2 + utf.length;
+        }
+        headerBytes = read;
+        names = Collections.unmodifiableList(list);
+        channelCount = Math.min(count, Serial.MAX_TELEMETRY);
+    }
+
+    /**
+     * Reads rows of the log whose header `header` read from `stream`, which
+     * starts on keyframe row number `row`; used to decode slices of one
+     * segment in parallel
+     */
+    TelemetryLogReader(InputStream stream, TelemetryLogReader header, long row) {
+        in = new DataInputStream((stream instanceof BufferedInputStream)
+                ? stream : new BufferedInputStream(stream, 64 * 1024));
+        keyframes = header.keyframes;
+        startTime = header.startTime;
+        time = startTime;
+        headerBytes = header.headerBytes;
+        names = header.names;
+        channelCount = header.channelCount;
+        this.row = row - 1;
+    }
+
+    /**
+     * Opens a log segment, plain or gzipped
+     */
+    public static TelemetryLogReader open(Path path) throws IOException {
+        InputStream in = LogFiles.open(path);
+        try {
+            return new TelemetryLogReader(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a log segment positioned so that reading continues from the
+     * last keyframe at or before `time`; call advanceTo to reach the row
+     * itself. Without an index the segment is read from the front.
+     * Seeking is O(log n) in a plain segment; a compressed one still has to
+     * be inflated up to the keyframe, though not decoded.
+     */
+    public static TelemetryLogReader openAt(Path path, long time) throws IOException {
+        TelemetryLogReader reader = open(path);
+        try {
+            TelemetryLogIndex index = TelemetryLogIndex.open(path);
+            if(index != null && index.size() > 0) {
+                reader.seek(index, index.floor(time));
+            }
+            return reader;
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Jumps to keyframe `entry` of `index`. Only valid on a reader that has
+     * not read any rows yet.
+     */
+    public void seek(TelemetryLogIndex index, int entry) throws IOException {
+        if(row != -1) {
+            throw new IllegalStateException("Seek after reading has begun");
+        }
+        long skip = index.offsetAt(entry) - headerBytes;
+        while(skip > 0) {
+            long skipped = in.skip(skip);
+            if(skipped <= 0) throw new EOFException("Index points past the log");
+            skip -= skipped;
+        }
+        row = index.rowAt(entry) - 1;
+    }
+
+    /**
+     * Reads forward to the first row at or after `time`
+     * @return - false if the log ends first
+     */
+    public boolean advanceTo(long time) throws IOException {
+        while(next()) {
+            if(this.time >= time) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Advances to the next row
+     * @return - false at the end of the log
+     */
+    public boolean next() throws IOException {
+        while(true) {
+            int first = in.read();
+            if(first < 0) return false;
+
+            long head = readVarint(first);
+            boolean keyframe = keyframes && (head & 1) != 0;
+            if(keyframes) head >>>= 1;
+            if(keyframe) {
+                time = startTime + unzigzag(head);
+                Arrays.fill(bits, 0);
+            } else {
+                time += unzigzag(head);
+            }
+
+            changedCount = 0;
+            int id = -1;
+            for(long gap = readVarint(); gap != 0; gap = readVarint()) {
+                id += (int) gap;
+                long xor = Long.reverse(readVarint());
+                if(id >= Serial.MAX_TELEMETRY) continue;
+                bits[id] ^= xor;
+                changed[changedCount++] = id;
+                channelCount = Math.max(channelCount, id + 1);
+            }
+            if(keyframe) continue;
+
+            row++;
+            return true;
+        }
+    }
+
+    /**
+     * ms since the epoch at which the log was started
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Names of the channels known when the log was started, by id
+     */
+    public List<String> getChannelNames() {
+        return names;
+    }
+
+    /**
+     * Number of channels seen so far: the header's names plus any channel
+     * that first appeared in a row
+     */
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * Time of the current row, ms since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Index of the current row, from 0
+     */
+    public long getRow() {
+        return row;
+    }
+
+    /**
+     * Value of channel `id` as of the current row
+     */
+    public double getValue(int id) {
+        return Double.longBitsToDouble(bits[id]);
+    }
+
+    /**
+     * Number of channels written in the current row
+     */
+    public int changedCount() {
+        return changedCount;
+    }
+
+    /**
+     * Id of the `i`th channel written in the current row
+     */
+    public int changedId(int i) {
+        return changed[i];
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private long readVarint() throws IOException {
+        int b = in.read();
+        if(b < 0) throw new EOFException("Truncated telemetry log row");
+        return readVarint(b);
+    }
+
+    private long readVarint(int b) throws IOException {
+        long v = b & 0x7f;
+        for(int shift = 7; (b & 0x80) != 0; shift += 7) {
+            b = in.read();
+            if(b < 0) throw new EOFException("Truncated telemetry log row");
+            v |= (long) (b & 0x7f) << shift;
+        }
+        return v;
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,322 @@
+package com.telemetry;
+
+import com.logging.LogFiles;
+import com.logging.RotationPolicy;
+import com.serial.Serial;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes telemetry in the compact binary log format read back by
+ * TelemetryLogReader.
+ *
+ * The file starts with a header:
+ * <pre>
+ *   int    MAGIC
+ *   short  VERSION
+ *   long   start time, ms since the epoch
+ *   short  channel name count, then for each name a short length and UTF-8
+ * </pre>
+ * followed by rows. A row holds only the channels that changed:
+ * <pre>
+ *   varint  zigzag(time - previous row's time) shifted left once, with the
+ *           low bit clear; the first row counts from the start time
+ *   repeated for each changed channel, in increasing id order:
+ *     varint  id - previous id in this row (the first counts from -1)
+ *     varint  bit reversed (value bits xor the channel's previous value bits)
+ *   varint  0, ending the row
+ * </pre>
+ * Every channel starts at 0.0. Xoring against the previous value leaves
+ * mostly zero bits for slowly moving channels, and reversing moves the
+ * zero mantissa tail of widened floats to the top, so most values encode in
+ * a few bytes without losing any precision.
+ *
+ * About once a second (or every INDEX_ROWS rows) a keyframe row is written
+ * ahead of the next row: its low time bit is set, its time counts from the
+ * start time and it holds every non-zero channel xored against 0.0, so
+ * decoding can begin there. Keyframes repeat values already known to a
+ * reader going from the front and are not reported as rows. Each one is
+ * listed in the segment's TelemetryLogIndex for seeking.
+ *
+ * Rows are built in a large direct buffer and written through a
+ * FileChannel when it fills or flush is called.
+ *
+ * With a RotationPolicy set, the writer starts a new segment (named by
+ * LogFiles.segmentPath) at a row boundary once the policy says so. Each
+ * segment is a complete log with its own header and every channel starting
+ * again from 0.0, so it can be read on its own.
+ */
+public class TelemetryLogWriter implements AutoCloseable {
+    public static final int MAGIC = 0x4d544c47; //"MTLG"
+    public static final short VERSION = 2;
+    public static final int INDEX_PERIOD_MS = 1000;
+    public static final int INDEX_ROWS = 4096;
+    public static final String EXTENSION = ".tlog";
+
+    private static final int BUFFER_BYTES = 256 * 1024;
+    //largest possible row: time, every channel at two maximal varints, end
+    private static final int MAX_ROW_BYTES = 10 + 20 * Serial.MAX_TELEMETRY + 1;
+
+    private final Path first;
+    private final long startTime;
+    private final List<String> names;
+    private RotationPolicy rotation = RotationPolicy.NEVER;
+    private FileChannel file;
+    private Path current;
+    private int segment;
+    private long openedAt;
+    private long closedBytes;
+    private FileChannel indexFile;
+    private final ByteBuffer indexBuffer =
+        ByteBuffer.allocateDirect(256 * TelemetryLogIndex.ENTRY_BYTES);
+    private long indexTime;
+    private long indexRow = -1;
+    private final ByteBuffer buffer =
+        ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.BIG_ENDIAN);
+    private final long[] previousBits = new long[Serial.MAX_TELEMETRY];
+    private long previousTime;
+    private int rowId = -1;
+    private long rows;
+
+    /**
+     * Creates (or truncates) `path` and writes the log header
+     * @param path - file to write
+     * @param startTime - ms since the epoch that row times are relative to
+     * @param names - channel names, by telemetry id
+     */
+    public TelemetryLogWriter(Path path, long startTime, List<String> names)
+            throws IOException {
+        this.first     = path;
+        this.startTime = startTime;
+        this.names     = names;
+        open(path);
+    }
+
+    /**
+     * Sets when to move on to a new segment; checked as each row is begun
+     */
+    public void setRotation(RotationPolicy rotation) {
+        this.rotation = rotation;
+    }
+
+    /** Path of the segment currently being written */
+    public Path getCurrentPath() {
+        return current;
+    }
+
+    private void open(Path path) throws IOException {
+        file = FileChannel.open(path, StandardOpenOption.CREATE,
+                                      StandardOpenOption.WRITE,
+                                      StandardOpenOption.TRUNCATE_EXISTING);
+        indexFile = FileChannel.open(TelemetryLogIndex.pathFor(path),
+                                     StandardOpenOption.CREATE,
+                                     StandardOpenOption.WRITE,
+                                     StandardOpenOption.TRUNCATE_EXISTING);
+        current  = path;
+        openedAt = System.currentTimeMillis();
+        previousTime = startTime;
+        Arrays.fill(previousBits, 0);
+        indexRow = -1;
+
+        indexBuffer.putInt(TelemetryLogIndex.INDEX_MAGIC);
+        indexBuffer.putShort(VERSION);
+
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putLong(startTime);
+        buffer.putShort((short) names.size());
+        for(String name : names) {
+            byte[] utf = name.getBytes(StandardCharsets.UTF_8);
+            ensureRoom(2 + utf.length);
+            buffer.putShort((short) utf.length);
+            buffer.put(utf);
+        }
+    }
+
+    /**
+     * Starts a row at `time`. Channels are then added with put in increasing
+     * id order and the row finished with endRow.
+     */
+    public void beginRow(long time) throws IOException {
+        if(rotation != RotationPolicy.NEVER && rotation.shouldRotate(
+                size(), openedAt, System.currentTimeMillis())) {
+            rotate();
+        }
+        ensureRoom(2 * MAX_ROW_BYTES);
+        if(indexRow < 0 || rows - indexRow >= INDEX_ROWS
+                || time - indexTime >= INDEX_PERIOD_MS) {
+            putKeyframe(time);
+        }
+        putVarint(zigzag(time - previousTime) << 1);
+        previousTime = time;
+        rowId = -1;
+    }
+
+    //full state row that decoding can start from, listed in the index
+    private void putKeyframe(long time) throws IOException {
+        long offset = size();
+        putVarint((zigzag(time - startTime) << 1) | 1);
+        rowId = -1;
+        for(int id = 0; id < Serial.MAX_TELEMETRY; id++) {
+            if(previousBits[id] == 0) continue;
+            putVarint(id - rowId);
+            putVarint(Long.reverse(previousBits[id]));
+            rowId = id;
+        }
+        buffer.put((byte) 0);
+        previousTime = time;
+
+        //keep index times sorted even if row times step back
+        indexTime = (indexRow < 0) ? time : Math.max(indexTime, time);
+        indexRow  = rows;
+        //rows first, so the index never points past the written log
+        if(indexBuffer.remaining() < TelemetryLogIndex.ENTRY_BYTES) flush();
+        indexBuffer.putLong(indexTime);
+        indexBuffer.putLong(offset);
+        indexBuffer.putLong(rows);
+    }
+
+    /**
+     * Adds channel `id` to the current row if its value differs from the one
+     * last written for it.
+     * @return - true if the channel was written
+     */
+    public boolean put(int id, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        if(id <= rowId || id >= Serial.MAX_TELEMETRY) return false;
+        if(bits == previousBits[id]) return false;
+
+        putChannel(id, bits);
+        return true;
+    }
+
+    public void endRow() {
+        buffer.put((byte) 0);
+        rows++;
+    }
+
+    /**
+     * Writes one row holding every channel of `snapshot` that changed
+     * @param time - ms since the epoch
+     */
+    public void writeRow(long time, TelemetrySnapshot snapshot)
+            throws IOException {
+        beginRow(time);
+        for(int i = 0; i < snapshot.size(); i++) {
+            put(snapshot.idAt(i), snapshot.valueAt(i));
+        }
+        endRow();
+    }
+
+    /**
+     * Writes a row holding a single channel. The channel is written even if
+     * its value is unchanged, so every sample shows up when read back.
+     */
+    public void writeSample(long time, int id, double value)
+            throws IOException {
+        beginRow(time);
+        if(id >= 0 && id < Serial.MAX_TELEMETRY) {
+            putChannel(id, Double.doubleToRawLongBits(value));
+        }
+        endRow();
+    }
+
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Bytes in the current segment, including any still buffered
+     */
+    public long size() throws IOException {
+        return file.position() + buffer.position();
+    }
+
+    /**
+     * Bytes written over every segment, including any still buffered
+     */
+    public long getBytesWritten() throws IOException {
+        return closedBytes + size();
+    }
+
+    /**
+     * Hands buffered rows to the operating system
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+        buffer.clear();
+        //after the rows, so the index never points past the written log
+        flushIndex();
+    }
+
+    private void flushIndex() throws IOException {
+        indexBuffer.flip();
+        while(indexBuffer.hasRemaining()) {
+            indexFile.write(indexBuffer);
+        }
+        indexBuffer.clear();
+    }
+
+    /**
+     * Flushes and forces written rows to the storage device
+     */
+    public void sync() throws IOException {
+        flush();
+        file.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            file.close();
+            indexFile.close();
+        }
+    }
+
+    //finish the current segment durably, then carry on in the next one
+    private void rotate() throws IOException {
+        Path finished = current;
+        sync();
+        closedBytes += file.position();
+        file.close();
+        indexFile.close();
+        open(LogFiles.segmentPath(first, ++segment));
+        if(rotation.isCompressed()) LogFiles.compress(finished);
+    }
+
+    private void putChannel(int id, long bits) {
+        putVarint(id - rowId);
+        putVarint(Long.reverse(bits ^ previousBits[id]));
+        previousBits[id] = bits;
+        rowId = id;
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if(buffer.remaining() < bytes) flush();
+    }
+
+    private void putVarint(long v) {
+        while((v & ~0x7fL) != 0) {
+            buffer.put((byte) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+}
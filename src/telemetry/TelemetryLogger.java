@@ -5,33 +5,77 @@ import com.ui.SampleSource;
 import com.Context;
 import java.util.*;
 import java.io.*;
-import java.text.SimpleDateFormat;
-import java.text.DecimalFormat;
+import java.nio.file.Paths;
 
+/**
+ * Records a telemetry store to a binary log in the log directory; see
+ * TelemetryLogWriter for the format and TelemetryLogConverter to turn it
+ * back into CSV. Each vehicle link is logged from its own store, so a log
+ * only ever holds one vehicle.
+ *
+ * In the default PERIODIC mode the changed channels are sampled every log
+ * period. In EVENTS mode, chosen with the telemetry_log_mode resource, every
+ * individual update is recorded with its time through a TelemetryEventLog.
+ */
 public class TelemetryLogger{
-    private final static int DEFAULT_LOG_PERIOD_MS = 250;
-    static final DecimalFormat numberFormat = new DecimalFormat("#.########");
-    private BufferedWriter logFile;
+    public enum Mode { PERIODIC, EVENTS }
+
+    public final static int DEFAULT_LOG_PERIOD_MS = 250;
+    //rows are handed to the OS at most this often rather than every row
+    private final static int FLUSH_PERIOD_MS = 1000;
+    private final Mode mode;
+    private TelemetryLogWriter logFile;
+    private TelemetryEventLog events;
     private java.util.Timer logTimer;
     private int logPeriod;
-    private long startTime;
+    private long lastFlush;
     private TelemetryManager telemetry;
     private int previousTelemetryIndex;
 
-    public TelemetryLogger(Context ctx, TelemetryManager tm){
+    /**
+     * Starts logging `tm` to log/`name` with TelemetryLogWriter.EXTENSION
+     * @param ctx - the application context, whose display store names the
+     *              channels
+     * @param tm - the store to record
+     * @param name - log file name without its extension
+     */
+    public TelemetryLogger(Context ctx, TelemetryManager tm, String name){
         telemetry = tm;
+        long startTime = System.currentTimeMillis();
         try {
-            String logn = ctx.getInstanceLogName();
-            FileWriter fileWriter = new FileWriter("log/"+logn+".telem", false);
-            logFile = new BufferedWriter(fileWriter);
+            List<String> names = new ArrayList<String>();
+            for(int i = 0; i < ctx.telemetry.maxIndex(); i++) {
+                names.add(ctx.telemetry.getTelemetryName(i));
+            }
+            logFile = new TelemetryLogWriter(
+                Paths.get("log", name + TelemetryLogWriter.EXTENSION),
+                startTime, names);
+            logFile.setRotation(ctx.getLogRotation());
         } catch (IOException ex) {
             System.err.println(ex);
         }
+        lastFlush = startTime;
+
+        String modeName = ctx.getResource("telemetry_log_mode", "periodic");
+        mode = modeName.trim().equalsIgnoreCase("events") ? Mode.EVENTS
+                                                          : Mode.PERIODIC;
+        if(mode == Mode.EVENTS && logFile != null) {
+            events = new TelemetryEventLog(logFile);
+            events.attach(tm);
+        }
         setPeriod(DEFAULT_LOG_PERIOD_MS);
-        startTime = System.currentTimeMillis();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
     }
 
+    /**
+     * Sets the sampling period in PERIODIC mode; in EVENTS mode the period
+     * is only remembered, since every update is already recorded.
+     */
     public void setPeriod(int period){
+        logPeriod = period;
+        if(mode == Mode.EVENTS) return;
+
         if(logTimer != null) {
             logTimer.cancel();
             logTimer.purge();
@@ -39,37 +83,61 @@ public class TelemetryLogger{
         logTimer = new java.util.Timer();
         TimerTask task = makeTimerTask();
         logTimer.scheduleAtFixedRate(task, period, period);
-        logPeriod = period;
     }
 
     public int getPeriod(){
         return logPeriod;
     }
 
-    private String formatLog(double t) {
-        return numberFormat.format(t);
+    public Mode getMode(){
+        return mode;
+    }
+
+    /**
+     * Returns the event log recording updates in EVENTS mode, or null
+     */
+    public TelemetryEventLog getEventLog(){
+        return events;
+    }
+
+    /**
+     * Stops logging and writes out any buffered rows
+     */
+    public synchronized void close() {
+        if(logTimer != null) logTimer.cancel();
+        if(logFile == null) return;
+        try {
+            if(events != null) {
+                events.close();
+            } else {
+                logFile.close();
+            }
+        } catch (IOException ex) {
+            System.err.println(ex);
+        }
+        logFile = null;
     }
 
     private TimerTask makeTimerTask() {
         return new TimerTask() {
             public void run() {
-                try {
-                    int tmIdx = telemetry.changeIndex();
-                    if(tmIdx == previousTelemetryIndex) return;
-                    previousTelemetryIndex = tmIdx;
+                synchronized(TelemetryLogger.this) {
+                    if(logFile == null) return;
+                    try {
+                        if(telemetry.changeIndex() == previousTelemetryIndex) return;
+                        TelemetrySnapshot snap = telemetry.snapshot();
+                        previousTelemetryIndex = snap.getVersion();
 
-                    long dt = System.currentTimeMillis() - startTime;
-                    logFile.write(dt+", ");
+                        long now = System.currentTimeMillis();
+                        logFile.writeRow(now, snap);
 
-                    for(int i=0; i<telemetry.maxIndex(); i++){
-                        logFile.write(formatLog(telemetry.get(i)));
-                        logFile.write(", ");
+                        if(now - lastFlush >= FLUSH_PERIOD_MS) {
+                            logFile.flush();
+                            lastFlush = now;
+                        }
+                    } catch (IOException ex) {
+                        System.err.println(ex);
                     }
-
-                    logFile.newLine();
-                    logFile.flush();
-                } catch (IOException ex) {
-                    System.err.println(ex);
                 }
             }
         };
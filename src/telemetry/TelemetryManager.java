@@ -1,23 +1,80 @@
 package com.telemetry;
 
 import com.graph.DataSource;
-import com.ui.SampleSource;
 import com.Context;
+import com.serial.Serial;
 import java.util.*;
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.text.DecimalFormat;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
 import java.util.regex.*;
 
+/**
+ * Holds the latest value of every telemetry channel and notifies listeners
+ * when one changes.
+ *
+ * Values and sample times live in flat primitive arrays indexed by channel,
+ * and each channel's listeners in an array that is copied whenever a listener
+ * is added or removed. Updating a channel therefore never boxes or allocates;
+ * the only allocation is the one-off growth when a channel is first seen.
+ *
+ * Writes go through a StampedLock used as a seqlock: readers take an
+ * optimistic stamp, copy what they need and retry if a write slipped in, so
+ * the serial thread is never held up by the EDT or logging timers.
+ *
+ * Channels that belong to a TelemetryRecord, such as latitude and longitude,
+ * mark it dirty when written. commit() then hands each dirty record to its
+ * listeners once, with all of its members taken at the same instant.
+ */
 public class TelemetryManager {
+    /** Time value for a sample whose vehicle time is not known */
+    public static final long NO_TIME = 0;
+    private static final int OPTIMISTIC_TRIES = 4;
+    private static final TelemetryListener[] NO_LISTENERS = new TelemetryListener[0];
+    private static final TimedTelemetryListener[] NO_TIMED_LISTENERS =
+        new TimedTelemetryListener[0];
+    private static final TelemetrySubscription[] NO_SUBSCRIPTIONS =
+        new TelemetrySubscription[0];
+    private static final Runnable[] NO_CLEAR_LISTENERS = new Runnable[0];
 	
-    private final List<Double> telemetry = new ArrayList<Double>();
-    private final Map<Integer,List<TelemetryListener>> listenerMap =
-        new HashMap<Integer,List<TelemetryListener>>();
-    private final List<DataSource> streams = new ArrayList<DataSource>();
+    private final double[] telemetry = new double[Serial.MAX_TELEMETRY];
+    private final long[] sentTimes = new long[Serial.MAX_TELEMETRY];
+    private final long[] receivedTimes = new long[Serial.MAX_TELEMETRY];
+    private final AtomicReferenceArray<TelemetryListener[]> listeners =
+        new AtomicReferenceArray<TelemetryListener[]>(Serial.MAX_TELEMETRY);
+    private final AtomicReferenceArray<TimedTelemetryListener[]> timedListeners =
+        new AtomicReferenceArray<TimedTelemetryListener[]>(Serial.MAX_TELEMETRY);
+    private final AtomicReferenceArray<TelemetrySubscription[]> subscriptions =
+        new AtomicReferenceArray<TelemetrySubscription[]>(Serial.MAX_TELEMETRY);
+    private volatile Runnable[] clearListeners = NO_CLEAR_LISTENERS;
+    private final ChannelSource[] sources = new ChannelSource[Serial.MAX_TELEMETRY];
+    private volatile HistoryStore history;
+    private volatile int historyVersion = 0;
     
     private ResourceBundle labels = null;
-    private int telemetryIndex = 0;
+    private final StampedLock lock = new StampedLock();
+    private final Object commitLock = new Object();
+    private final TelemetryRecord[] records =
+        new TelemetryRecord[TelemetryRecord.Kind.values().length];
+    private final byte[] recordOf = new byte[Serial.MAX_TELEMETRY];
+    private int dirtyRecords = 0;
+    private TelemetryDispatcher dispatcher;
+    private volatile LatencyTrace trace;
+    private volatile int size = 0;
+    private volatile int telemetryIndex = 0;
+    private int staleCount = 0;
+
+    {
+        Arrays.fill(recordOf, (byte) -1);
+        for(TelemetryRecord.Kind kind : TelemetryRecord.Kind.values()) {
+            records[kind.ordinal()] = new TelemetryRecord(kind);
+            for(int i = 0; i < kind.size(); i++) {
+                recordOf[kind.idAt(i)] = (byte) kind.ordinal();
+            }
+        }
+    }
 
     /**
      * Class Constructor
@@ -57,32 +114,250 @@ public class TelemetryManager {
         return "# "+index;
     }
     
-    public List<DataSource> getDataSources() {
-        return streams;
+    /**
+     * Graph sources for every channel seen so far. They hold no samples
+     * until a graph reads them; see ChannelSource.
+     */
+    public synchronized List<DataSource> getDataSources() {
+        List<DataSource> list = new ArrayList<DataSource>(size);
+        for(int i = 0; i < size; i++) {
+            if(sources[i] == null) {
+                sources[i] = new ChannelSource(this, i, getTelemetryName(i));
+            }
+            list.add(sources[i]);
+        }
+        return list;
+    }
+
+    /**
+     * Sets the history graph sources are filled from when first drawn, or
+     * null for none. Sources already holding samples reload on their next
+     * read.
+     */
+    public synchronized void setHistory(HistoryStore history) {
+        this.history = history;
+        historyVersion++;
+    }
+
+    public HistoryStore getHistory() {
+        return history;
+    }
+
+    int getHistoryVersion() {
+        return historyVersion;
     }
     
     public void updateTelemetry(int id, double value) {
         update(id, value);
     }
     
+    /**
+     * Stores a telemetry value with no timing information. Reading the clock
+     * is left to callers that want receive times, keeping this path cheap.
+     */
     public void update(int id, double value) {
-        if(id >= telemetry.size()) {
-            for(int i = telemetry.size(); i <= id; i++) {
-                telemetry.add(0.0);
-                SampleSource newSource = new SampleSource(getTelemetryName(i));
-                this.registerListener(i, newSource);
-                streams.add(newSource);
+        update(id, value, NO_TIME, NO_TIME);
+    }
+
+    /**
+     * Stores a telemetry value along with when it was taken and when it
+     * arrived. A value sampled before the one already held for that channel
+     * arrived out of order; it is counted and dropped so the channel never
+     * steps backwards in time. Ids outside 0 to MAX_TELEMETRY are ignored.
+     * @param id - telemetry index
+     * @param value - the new value
+     * @param sentTime - local time the vehicle sampled the value, or NO_TIME
+     * @param receivedTime - local time the value arrived
+     */
+    public void update(int id, double value, long sentTime, long receivedTime) {
+        if(id < 0 || id >= Serial.MAX_TELEMETRY) return;
+        if(id >= size) grow(id);
+
+        long stamp = lock.writeLock();
+        try {
+            if(sentTime != NO_TIME && sentTime < sentTimes[id]) {
+                staleCount++;
+                return;
             }
+
+            telemetry[id] = value;
+            sentTimes[id] = sentTime;
+            receivedTimes[id] = receivedTime;
+            if(recordOf[id] >= 0) dirtyRecords |= (1 << recordOf[id]);
+            telemetryIndex += 1;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        LatencyTrace t = trace;
+        long origin = (t != null) ? t.origin() : 0;
+        if(origin != 0) t.stamp(LatencyTrace.Stage.STORE_UPDATE, origin);
+        updateObservers(id, value, (sentTime != NO_TIME) ? sentTime : receivedTime);
+        if(origin != 0) t.stamp(LatencyTrace.Stage.LISTENERS, origin);
+    }
+
+    /**
+     * Takes a consistent copy of several channels at once, without blocking
+     * writers unless they keep winning the race.
+     * @param ids - the channels to copy; every channel if none are given
+     * @return - the values and sample times as of a single version
+     */
+    public TelemetrySnapshot snapshot(int... ids) {
+        if(ids.length == 0) {
+            ids = new int[size];
+            for(int i = 0; i < ids.length; i++) ids[i] = i;
+        } else {
+            ids = ids.clone();
+        }
+        double[] values = new double[ids.length];
+        long[] sent = new long[ids.length];
+
+        for(int attempt = 0; attempt < OPTIMISTIC_TRIES; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if(stamp == 0) continue;
+            int version = copy(ids, values, sent);
+            if(lock.validate(stamp)) {
+                return new TelemetrySnapshot(ids, values, sent, version);
+            }
+        }
+
+        long stamp = lock.readLock();
+        try {
+            int version = copy(ids, values, sent);
+            return new TelemetrySnapshot(ids, values, sent, version);
+        } finally {
+            lock.unlockRead(stamp);
         }
-        
-        telemetry.set(id, value);
-        updateObservers(id, value);
-        telemetryIndex += 1;
+    }
+
+    private int copy(int[] ids, double[] values, long[] sent) {
+        int version = telemetryIndex;
+        for(int i = 0; i < ids.length; i++) {
+            int id = ids[i];
+            boolean valid = (id >= 0 && id < Serial.MAX_TELEMETRY);
+            values[i] = valid ? telemetry[id] : 0;
+            sent[i]   = valid ? sentTimes[id] : NO_TIME;
+        }
+        return version;
+    }
+
+    /**
+     * Publishes every record with a member written since the last commit.
+     * Called once per decode pass, after all of that pass's frames have been
+     * stored, so each record is notified at most once per pass.
+     */
+    public void commit() {
+        synchronized(commitLock) {
+            int dirty;
+            long stamp = lock.writeLock();
+            try {
+                dirty = dirtyRecords;
+                dirtyRecords = 0;
+                for(TelemetryRecord record : records) {
+                    if((dirty & (1 << record.getKind().ordinal())) == 0) continue;
+
+                    TelemetryRecord.Kind kind = record.getKind();
+                    long latest = NO_TIME;
+                    for(int i = 0; i < kind.size(); i++) {
+                        record.values[i] = telemetry[kind.idAt(i)];
+                        latest = Math.max(latest, sentTimes[kind.idAt(i)]);
+                    }
+                    record.sentTime = latest;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+
+            for(TelemetryRecord record : records) {
+                if((dirty & (1 << record.getKind().ordinal())) != 0) {
+                    record.notifyListeners();
+                }
+            }
+        }
+    }
+
+    //Channels are only counted here; graph sources are made on request
+    private synchronized void grow(int id) {
+        size = Math.max(size, id + 1);
+    }
+
+    /**
+     * Local time the current value of `id` was sampled on the vehicle, or
+     * NO_TIME if the vehicle did not stamp it
+     */
+    public long getSentTime(int id) {
+        return (id >= 0 && id < size) ? sentTimes[id] : NO_TIME;
+    }
+
+    /**
+     * Local time the current value of `id` arrived, or NO_TIME
+     */
+    public long getReceivedTime(int id) {
+        return (id >= 0 && id < size) ? receivedTimes[id] : NO_TIME;
+    }
+
+    /**
+     * Time in ms between the vehicle sampling the current value of `id` and
+     * it arriving here, or -1 if that is not known
+     */
+    public long getLatency(int id) {
+        if(id < 0 || id >= size) return -1;
+
+        long stamp = lock.tryOptimisticRead();
+        long sent = sentTimes[id];
+        long received = receivedTimes[id];
+        if(!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                sent = sentTimes[id];
+                received = receivedTimes[id];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        if(sent == NO_TIME) return -1;
+        return received - sent;
+    }
+
+    /**
+     * Number of values dropped for arriving after a newer sample
+     */
+    public int getStaleCount() {
+        return staleCount;
+    }
+
+    /**
+     * Forgets the sample times held for every channel, so values from a
+     * different clock can be accepted, such as when switching vehicles or
+     * seeking a replay. Listeners added with addClearListener are then told
+     * that the values which follow do not continue the earlier ones.
+     */
+    public void clearTimes() {
+        long stamp = lock.writeLock();
+        try {
+            Arrays.fill(sentTimes, NO_TIME);
+            Arrays.fill(receivedTimes, NO_TIME);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        for(Runnable r : clearListeners) {
+            r.run();
+        }
+    }
+
+    /**
+     * Registers `r` to run after every clearTimes, on the thread reloading
+     * the store
+     */
+    public synchronized void addClearListener(Runnable r) {
+        clearListeners = append(clearListeners, r);
     }
     
     /**
      * An index that can be used to see if an update has been made to any
-     *   telemetry values since the last time it was observed
+     *   telemetry values since the last time it was observed. It is safe to
+     *   read from any thread; once a change is seen, the values written
+     *   before it are visible too.
      */
     public int changeIndex() {
         return telemetryIndex;
@@ -93,43 +368,184 @@ public class TelemetryManager {
     }
     
     public double get(int id) {
-        if(id >= telemetry.size()) {
+        if(id < 0 || id >= size) {
         	return 0;
         }
         
-        return telemetry.get(id);
+        long stamp = lock.tryOptimisticRead();
+        double value = telemetry[id];
+        if(!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = telemetry[id];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return value;
     }
     
     public int maxIndex() {
-        return telemetry.size();
+        return size;
     }
     
-    public void registerListener(int id, TelemetryListener tl) {
-        List<TelemetryListener> listeners = listenerMap.get(id);
-        
-        if(listeners == null) {
-            listeners = new LinkedList<TelemetryListener>();
-            listenerMap.put(id, listeners);
+    public synchronized void registerListener(int id, TelemetryListener tl) {
+        if(id < 0 || id >= Serial.MAX_TELEMETRY) return;
+
+        if(tl instanceof TimedTelemetryListener) {
+            TimedTelemetryListener[] current = timedListeners.get(id);
+            if(current == null) current = NO_TIMED_LISTENERS;
+            timedListeners.set(id, append(current, (TimedTelemetryListener) tl));
+        } else {
+            TelemetryListener[] current = listeners.get(id);
+            if(current == null) current = NO_LISTENERS;
+            listeners.set(id, append(current, tl));
         }
-        
-        listeners.add(tl);
     }
     
-    public void removeListener(TelemetryListener tl) {
-        for(List<TelemetryListener> ll : listenerMap.values()) {
-            ll.remove(tl);
+    /**
+     * Starts delivering the channels of `s` as its options describe
+     * @return - `s`, whose cancel() ends the subscription
+     */
+    public synchronized TelemetrySubscription subscribe(TelemetrySubscription s) {
+        s.attach(this);
+        for(int id : s.getChannels()) {
+            TelemetrySubscription[] current = subscriptions.get(id);
+            if(current == null) current = NO_SUBSCRIPTIONS;
+            subscriptions.set(id, append(current, s));
         }
+        return s;
+    }
+
+    /**
+     * Convenience for an unlimited INLINE subscription that only wants the
+     * latest value, much like a listener on each of `channels`
+     */
+    public TelemetrySubscription subscribe(int[] channels,
+                                           TelemetrySubscription.Subscriber subscriber) {
+        return subscribe(new TelemetrySubscription(channels, 0,
+            TelemetrySubscription.Delivery.INLINE,
+            TelemetrySubscription.Conflation.LATEST, subscriber));
+    }
+
+    //Called by TelemetrySubscription.cancel; dispatch already skips `s`, so
+    //it only needs taking out of the arrays of the channels it covers
+    synchronized void cancelled(TelemetrySubscription s) {
+        for(int id : s.getChannels()) {
+            TelemetrySubscription[] current = subscriptions.get(id);
+            if(current != null) subscriptions.set(id, without(current, s));
+        }
+    }
+
+    //Number of subscriptions dispatched updates of channel `id`
+    int getSubscriptionCount(int id) {
+        TelemetrySubscription[] current = subscriptions.get(id);
+        return (current == null) ? 0 : current.length;
+    }
+
+    /**
+     * Stamps updates made during a traced decode pass, and their delivery
+     * to the UI, into `trace`; null, the default, stamps nothing
+     */
+    public void setLatencyTrace(LatencyTrace trace) {
+        this.trace = trace;
+    }
+
+    public LatencyTrace getLatencyTrace() {
+        return trace;
+    }
+
+    /**
+     * Returns the dispatcher that feeds UI listeners of this store on the
+     * EDT, creating it on first use
+     */
+    public synchronized TelemetryDispatcher getDispatcher() {
+        if(dispatcher == null) {
+            dispatcher = new TelemetryDispatcher(this);
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Registers a UI consumer of channel `id`. It is called on the EDT with
+     * only the latest value, at most once per frame.
+     */
+    public void registerUiListener(int id, TelemetryListener tl) {
+        getDispatcher().addListener(id, tl);
+    }
+
+    /**
+     * Registers a UI consumer of a record. It is called on the EDT with only
+     * the latest commit, at most once per frame.
+     */
+    public void registerUiListener(TelemetryRecord.Kind kind,
+                                   TelemetryRecord.Listener l) {
+        getDispatcher().addListener(kind, l);
+    }
+
+    /**
+     * Registers for commits of a composite record
+     */
+    public synchronized void registerListener(TelemetryRecord.Kind kind,
+                                              TelemetryRecord.Listener l) {
+        records[kind.ordinal()].addListener(l);
+    }
+
+    public synchronized void removeRecordListener(TelemetryRecord.Listener l) {
+        for(TelemetryRecord record : records) {
+            record.removeListener(l);
+        }
+    }
+
+    public synchronized void removeListener(TelemetryListener tl) {
+        for(int id = 0; id < Serial.MAX_TELEMETRY; id++) {
+            TelemetryListener[] current = listeners.get(id);
+            if(current != null) listeners.set(id, without(current, tl));
+
+            TimedTelemetryListener[] timed = timedListeners.get(id);
+            if(timed != null) timedListeners.set(id, without(timed, tl));
+        }
+    }
+
+    private static <T> T[] append(T[] current, T tl) {
+        T[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = tl;
+        return next;
+    }
+
+    private static <T> T[] without(T[] current, Object tl) {
+        for(int i = 0; i < current.length; i++) {
+            if(current[i].equals(tl)) {
+                T[] next = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, i + 1, next, i, next.length - i);
+                return next;
+            }
+        }
+        return current;
     }
     
-    private void updateObservers(int id, double newValue) {
-        List<TelemetryListener> listeners = listenerMap.get(id);
-        
-        if(listeners == null) {
-        	return;
+    //Listeners are split by kind when registered so that dispatch needs no
+    //type checks
+    private void updateObservers(int id, double newValue, long time) {
+        TelemetrySubscription[] subs = subscriptions.get(id);
+        if(subs != null) {
+            for(TelemetrySubscription s : subs) {
+                s.offer(id, newValue, time);
+            }
         }
-        
-        for(TelemetryListener tl : listeners) {
-            tl.update(newValue);
+
+        TimedTelemetryListener[] timed = timedListeners.get(id);
+        if(timed != null) {
+            for(TimedTelemetryListener tl : timed) {
+                tl.update(newValue, time);
+            }
+        }
+
+        TelemetryListener[] current = listeners.get(id);
+        if(current != null) {
+            for(TelemetryListener tl : current) {
+                tl.update(newValue);
+            }
         }
     }
 }
@@ -1,15 +1,14 @@
 package com.telemetry;
 
-import java.util.*;
-import java.awt.event.ActionListener;
-import java.awt.event.ActionEvent;
+import java.io.FileReader;
+import java.io.Reader;
 
 import com.Context;
-import com.util.UtilHelper;
 
 import java.util.logging.Logger;
 
-import com.telemetry.TelemetryListener;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 /**
  * @author Chris Park @ Infinetix Corp.
@@ -17,235 +16,91 @@ import com.telemetry.TelemetryListener;
  * Description: Class responsible for monitoring and handling
  * changes in various telemetry data types. This can sometimes include
  * issuing commands in response to those changes.
+ * 
+ * The conditions watched are AlarmRules read from the "alarms" resource
+ * and evaluated by an AlarmEngine; this class binds the actions those rules
+ * can name to the dashboard:
+ *   log   - write a warning to the serial log
+ *   alert - show a message to the user
+ *   stop  - stop the unit if it is running a mission
  */
 public class TelemetryMonitor {
 	
 	//Constants
-	protected static final int UPDATE_CYCLE_MS = 100;
 	protected final Logger serialLog = Logger.getLogger("d.serial");
 	
 	//Vars, Standard Refs
 	private Context context;
-	protected VCCMonitor vccMonitor;
-	
-	//Timers
-	protected javax.swing.Timer updateTimer;
-	protected javax.swing.Timer vccEvalTimer;
-	
-	//List of all subscribed listeners
-	protected List<IMonitorListener> listeners;
-	
-	/**
-	 * Pre-defined strings to identify those telemetry
-	 * value types that the monitor can service in some way.
-	 */
-	public enum TelemetryDataType {
-		VOLTAGE ("Vcc");
-		
-		private final String text;
-		
-		TelemetryDataType(String text) {
-			this.text = text;
-		}
-	};
+	protected AlarmEngine engine;
 	
 	/**
 	 * Class Constructor
-	 * @param ctx
+	 * @param ctx - the application context
 	 */
 	public TelemetryMonitor(Context ctx) {
 		context = ctx;
-		vccMonitor = new VCCMonitor();
-		updateTimer = new javax.swing.Timer(UPDATE_CYCLE_MS, cycleUpdateAction);
-		listeners = new LinkedList<IMonitorListener>();
-	}
-	
-	/**
-	 * Stops the timers for this monitor.
-	 */
-	public void stop() {
-		if(updateTimer.isRunning()) {
-			updateTimer.stop();	
+		engine = new AlarmEngine();
+		engine.setAction("alert", alertAction);
+		engine.setAction("stop", stopAction);
+		
+		try (Reader source = new FileReader(ctx.getResource("alarms"))) {
+			engine.load(source);
 		}
-	}
-	
-	/**
-	 * Starts the timers for this monitor.
-	 */
-	public void start() {
-		if(!updateTimer.isRunning()) {
-			updateTimer.start();	
+		catch (Exception e) {
+			serialLog.severe("Can't load alarm rules " + e);
 		}
-	}
-	
-	/*
-	 * Returns whether the update timer is currently running.
-	 */
-	public boolean isRunning() {
-		return updateTimer.isRunning();
+		engine.attach(ctx.telemetry);
 	}
 	
 	/**
-	 * Adds a listener along with its corresponding type to the
-	 * tracking list.
-	 * @param toRegister - the listener to track
+	 * Returns the engine evaluating the alarm rules.
+	 * @return - the alarm engine
 	 */
-	public void register(IMonitorListener toRegister) {
-		listeners.add(toRegister);
+	public AlarmEngine getEngine() {
+		return engine;
 	}
 	
 	/**
-	 * Removes a lisener from the tracking list.
-	 * @param toUnregister - the listener to stop tracking
+	 * Suspends or resumes alarm evaluation, such as while a recorded 
+	 * session is being replayed.
+	 * @param paused - whether to suspend evaluation
 	 */
-	public void unregister(IMonitorListener toUnregister) {
-		listeners.remove(toUnregister);
+	public void setPaused(boolean paused) {
+		engine.setPaused(paused);
 	}
 	
 	/**
-	 * Action response that triggers listener updates.
+	 * Shows the user a message naming the rule that tripped.
 	 */
-	protected ActionListener cycleUpdateAction = new ActionListener() {
-		public void actionPerformed(ActionEvent event) {
-			signalUpdate();
+	protected AlarmEngine.Action alertAction = new AlarmEngine.Action() {
+		public void trigger(final AlarmRule rule, final double value) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					JOptionPane.showMessageDialog(null, 
+							rule.getName() + String.format(" (%.2f)", value),
+							"Alarm", JOptionPane.WARNING_MESSAGE);
+				}
+			});
 		}
 	};
 	
 	/**
-	 * Notifies all listeners that its time to run their update 
-	 * services and send in new values.
-	 */
-	public void signalUpdate() {
-		
-		//If the rover is stopped, do not update.
-		if(!context.dash.mapPanel.waypointPanel.getIsMoving()) {
-			return;
-		}
-		
-		for(IMonitorListener l : listeners) {
-			l.updateMonitor(this);
-		}
-	}
-	
-	/**
-	 * Listener driven function call that updates tracked values for
-	 * monitoring of specific telemetry data types, if the type is not
-	 * recognized or handled, it is ignored.
-	 * @param data - The telemetry data to store
-	 * @param type - the type of telemetry data being sent
+	 * Stops the unit through the mission button if it is moving.
 	 */
-	public void storeData(double data, TelemetryDataType type) {
-		switch(type) {
-		case VOLTAGE:
-			vccMonitor.add(data);
-			break;
-		default:
-			System.err.println(
-					"ERROR - TelemetryMonitor - data storage" + 
-					" attempted for unknown type");
-		}
-	}
-	
-	/**
-	 * @author Chris Park
-	 * Date: 9-14-21
-	 * Description: Tracks a units voltage and responds to persistent 
-	 * low voltage events.
-	 */
-	protected class VCCMonitor {
-		
-		//Constants
-		protected static final double BATTERY_LOW_WARNING_THRESHOLD = 6.5;
-		protected static final double BATTERY_LOW_CUTOFF_THRESHOLD 	= 6.0;
-		protected static final int 	  VCC_AVERAGING_SIZE 			= 20;
-		protected static final int 	  LOW_VCC_SETTLING_TIME_MS 		= 20000;
-		protected static final int 	  VCC_EVAL_CYCLE_MS 			= 1000;
-		
-		//Vars
-		protected int sampleIndex;
-		protected double average;
-		protected double[] sampleArray;
-		protected boolean isBelowThreshold;
-		protected int elapsedMS;
-		
-		/**
-		 * Class Constructor
-		 */
-		public VCCMonitor() {
-			sampleIndex = 0;
-			average = 0.0;
-			sampleArray = new double[VCC_AVERAGING_SIZE];
-			isBelowThreshold = false;
-			elapsedMS = 0;
-		}
-		
-		/**
-		 * Adds a value to the sample array and increments the count.
-		 * Wraps to index 0 once the end of the array is reached.
-		 * @param val - The sample value to be added
-		 */
-		public void add(double val) {
-			if(sampleIndex == VCC_AVERAGING_SIZE) {
-				sampleIndex = 0;
-			}
-			
-			sampleArray[sampleIndex] = val;
-			sampleIndex++;
-			
-			elapsedMS += UPDATE_CYCLE_MS;
-			
-			//Check for acceptable voltage every VCC_EVAL_CYCLE_MS
-			if(elapsedMS % VCC_EVAL_CYCLE_MS == 0) {
-				calculateAverage();
-				evaluateVoltage();
-			}
-		}
-		
-		/**
-		 * Updates the stored average using the the values currently stored in
-		 * the sample array.
-		 */
-		public void calculateAverage() {
-			average = UtilHelper.getInstance().average(sampleArray, 
-					VCC_AVERAGING_SIZE);
-		}
-		
-		/**
-		 * Checks the current average against BATTERY_LOW_CUTOFF_THRESHOLD.
-		 * If the average is above the cutoff, settling time is reset. If
-		 * the settling time is met and the voltage remains low, the units
-		 * operation is stopped (GROUND VEHICLES ONLY)
-		 */
-		public void evaluateVoltage() {
-			
-			//Voltage monitor reset
-			if(average > BATTERY_LOW_CUTOFF_THRESHOLD) {
-				isBelowThreshold = false;
-				elapsedMS = 0;
-				return;
-			}
-			
-			//LOW_VCC_SETTLING_TIME_MS time starts from here.
-			if(average <= BATTERY_LOW_CUTOFF_THRESHOLD) {
-				isBelowThreshold = true;
-			}
-			
-			//if voltage has remained low over settling time. stop the unit.
-			if(elapsedMS == LOW_VCC_SETTLING_TIME_MS) {
-				
-				if(isBelowThreshold 
-				&& (context.getCurrentLocale() == "ground")) {
-					
-					if((context.dash.mapPanel != null)
-					&& context.dash.mapPanel.waypointPanel.getIsMoving()) {
-						serialLog.warning("VCC: Battery voltage low. Stopping unit.");
-						context.dash.mapPanel.waypointPanel.missionButton.doClick();
+	protected AlarmEngine.Action stopAction = new AlarmEngine.Action() {
+		public void trigger(final AlarmRule rule, double value) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					if((context.dash == null) 
+					|| (context.dash.mapPanel == null)
+					|| !context.dash.mapPanel.waypointPanel.getIsMoving()) {
+						return;
 					}
 					
-					elapsedMS = 0;
+					serialLog.warning(rule.getName() + ". Stopping unit.");
+					context.dash.mapPanel.waypointPanel.missionButton.doClick();
 				}
-			}
+			});
 		}
-		
-	}
+	};
 }
@@ -0,0 +1,107 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import java.util.Arrays;
+
+/**
+ * A group of telemetry channels that only make sense together, such as the
+ * latitude and longitude of a position.
+ *
+ * Member channels are written one at a time as their frames arrive. The
+ * record is copied out of the TelemetryManager in a single step when the
+ * manager is committed, after a decode pass, and its listeners are told once
+ * with a consistent set of values. The record's buffer is reused for every
+ * commit, so listeners must copy anything they want to keep.
+ */
+public class TelemetryRecord {
+    //Member positions for POSITION and HOME
+    public static final int LATITUDE  = 0;
+    public static final int LONGITUDE = 1;
+    public static final int ALTITUDE  = 2;
+    //Member positions for ATTITUDE
+    public static final int PITCH     = 0;
+    public static final int ROLL      = 1;
+    public static final int HEADING   = 2;
+
+    public enum Kind {
+        POSITION(Serial.LATITUDE, Serial.LONGITUDE, Serial.ALTITUDE),
+        HOME(Serial.HOMELATITUDE, Serial.HOMELONGITUDE, Serial.HOMEALTITUDE),
+        ATTITUDE(Serial.PITCH, Serial.ROLL, Serial.HEADING);
+
+        private final int[] ids;
+
+        Kind(int... ids) {
+            this.ids = ids;
+        }
+
+        /**
+         * Telemetry channel of the member at `position`
+         */
+        public int idAt(int position) {
+            return ids[position];
+        }
+
+        public int size() {
+            return ids.length;
+        }
+    }
+
+    public interface Listener {
+        void update(TelemetryRecord record);
+    }
+
+    private static final Listener[] NO_LISTENERS = new Listener[0];
+
+    private final Kind kind;
+    final double[] values;
+    long sentTime;
+    volatile Listener[] listeners = NO_LISTENERS;
+
+    TelemetryRecord(Kind kind) {
+        this.kind   = kind;
+        this.values = new double[kind.size()];
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Value of the member at `position`, e.g. TelemetryRecord.LATITUDE
+     */
+    public double get(int position) {
+        return values[position];
+    }
+
+    /**
+     * Latest vehicle sample time among the members, or NO_TIME
+     */
+    public long getSentTime() {
+        return sentTime;
+    }
+
+    void addListener(Listener l) {
+        Listener[] next = Arrays.copyOf(listeners, listeners.length + 1);
+        next[listeners.length] = l;
+        listeners = next;
+    }
+
+    void removeListener(Object l) {
+        Listener[] current = listeners;
+        for(int i = 0; i < current.length; i++) {
+            if(current[i].equals(l)) {
+                Listener[] next = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, i + 1, next, i, next.length - i);
+                listeners = next;
+                return;
+            }
+        }
+    }
+
+    void notifyListeners() {
+        for(Listener l : listeners) {
+            l.update(this);
+        }
+    }
+}
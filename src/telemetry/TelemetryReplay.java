@@ -0,0 +1,301 @@
+package com.telemetry;
+
+import com.logging.LogFiles;
+import com.serial.Serial;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Plays a recorded telemetry log back into a TelemetryManager, so that
+ * everything listening to it (map, widgets, graphs, data tables) behaves as
+ * it would with a live vehicle.
+ *
+ * Rows are streamed from disk on a replay thread as the play position
+ * advances; only one row is held at a time, so memory does not grow with the
+ * length of the log. Seeking goes through the segments' time indexes and
+ * then pushes the full state at the new position, so scrubbing an hour long
+ * mission costs the same as scrubbing a minute. A scrubber hands its seeks
+ * to the replay thread with requestSeek, where only the newest of a burst is
+ * carried out.
+ */
+public class TelemetryReplay implements AutoCloseable {
+    public static final double MIN_SPEED = 0.1;
+    public static final double MAX_SPEED = 50.0;
+    private static final int TICK_MS = 20;
+    private static final long NO_SEEK = Long.MIN_VALUE;
+
+    /**
+     * Told when the position or play state changes; called on the replay
+     * thread.
+     */
+    public interface Listener {
+        void replayChanged(TelemetryReplay replay);
+    }
+
+    private final TelemetryManager target;
+    private final List<Path> segments;
+    private final long[] segmentStart;
+    private final long startTime;
+    private final long endTime;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private final ScheduledExecutorService thread;
+    private final AtomicLong requestedSeek = new AtomicLong(NO_SEEK);
+
+    private TelemetryLogReader reader;
+    private int segment;
+    private boolean rowPending;
+    private final double[] state = new double[Serial.MAX_TELEMETRY];
+    private int channels;
+
+    private double position;
+    private boolean playing;
+    private double speed = 1.0;
+    private long lastTick;
+
+    private final Logger iolog = Logger.getLogger("d.io");
+
+    /**
+     * Opens a recorded session for replay, paused at its start
+     * @param first - first segment of the session's telemetry log
+     * @param target - store to play the telemetry into
+     */
+    public TelemetryReplay(Path first, TelemetryManager target) throws IOException {
+        this.target = target;
+        this.segments = LogFiles.isCompressed(first)
+            ? Collections.singletonList(first) : LogFiles.segments(first);
+        if(segments.isEmpty()) throw new IOException("No such log " + first);
+
+        segmentStart = new long[segments.size()];
+        for(int i = 0; i < segments.size(); i++) {
+            try (TelemetryLogReader log = TelemetryLogReader.open(segments.get(i))) {
+                segmentStart[i] = log.next() ? log.getTime() : log.getStartTime();
+            }
+        }
+        startTime = segmentStart[0];
+
+        //the last keyframe is at most a second from the end
+        long end = segmentStart[segments.size() - 1];
+        try (TelemetryLogReader log = TelemetryLogReader.openAt(
+                segments.get(segments.size() - 1), Long.MAX_VALUE)) {
+            while(log.next()) end = Math.max(end, log.getTime());
+        }
+        endTime = end;
+
+        thread = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "telemetry replay");
+            t.setDaemon(true);
+            return t;
+        });
+        thread.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        seek(startTime);
+    }
+
+    public void addListener(Listener l) {
+        listeners.add(l);
+    }
+
+    public void removeListener(Listener l) {
+        listeners.remove(l);
+    }
+
+    /** Time of the first row, ms since the epoch */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /** Time of the last row, ms since the epoch */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /** Current play position, ms since the epoch */
+    public synchronized long getPosition() {
+        return (long) position;
+    }
+
+    public synchronized boolean isPlaying() {
+        return playing;
+    }
+
+    public synchronized double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @param speed - multiple of real time, clamped to MIN_SPEED..MAX_SPEED
+     */
+    public synchronized void setSpeed(double speed) {
+        this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    }
+
+    public void play() {
+        synchronized(this) {
+            if(playing) return;
+            if(position >= endTime) seekLocked(startTime);
+            playing = true;
+            lastTick = System.nanoTime();
+        }
+        fireChanged();
+    }
+
+    public void pause() {
+        synchronized(this) {
+            if(!playing) return;
+            playing = false;
+        }
+        fireChanged();
+    }
+
+    /**
+     * Moves the play position to `time` and pushes the state recorded at
+     * that moment into the target store.
+     */
+    public void seek(long time) {
+        synchronized(this) {
+            seekLocked(time);
+        }
+        fireChanged();
+    }
+
+    /**
+     * Seeks to `time` on the replay thread, without waiting for it. A request
+     * made while another is still waiting replaces it, so dragging a scrubber
+     * only costs one seek per pass of the replay thread.
+     */
+    public void requestSeek(long time) {
+        if(requestedSeek.getAndSet(time) != NO_SEEK) return;
+        try {
+            thread.execute(() -> {
+                long latest = requestedSeek.getAndSet(NO_SEEK);
+                if(latest != NO_SEEK) seek(latest);
+            });
+        } catch (RejectedExecutionException e) {
+            //closed; there is nothing left to seek
+        }
+    }
+
+    /**
+     * Stops playback and releases the log
+     */
+    @Override
+    public void close() {
+        thread.shutdownNow();
+        synchronized(this) {
+            playing = false;
+            closeReader();
+        }
+    }
+
+    private void tick() {
+        synchronized(this) {
+            if(!playing) return;
+            long now = System.nanoTime();
+            position += (now - lastTick) / 1e6 * speed;
+            lastTick = now;
+            if(position >= endTime) {
+                position = endTime;
+                playing = false;
+            }
+            try {
+                playUntil((long) position);
+            } catch (IOException e) {
+                iolog.warning("Replay stopped: " + e);
+                playing = false;
+            }
+            target.commit();
+        }
+        fireChanged();
+    }
+
+    //apply every row up to and including `time`
+    private void playUntil(long time) throws IOException {
+        while(nextRow()) {
+            if(reader.getTime() > time) return;
+            for(int i = 0; i < reader.changedCount(); i++) {
+                int id = reader.changedId(i);
+                target.update(id, reader.getValue(id),
+                              reader.getTime(), reader.getTime());
+            }
+            rowPending = false;
+        }
+    }
+
+    //make sure the reader holds a row not yet applied; false at the end
+    private boolean nextRow() throws IOException {
+        while(!rowPending) {
+            if(reader == null) return false;
+            if(reader.next()) {
+                rowPending = true;
+            } else if(segment + 1 < segments.size()) {
+                closeReader();
+                reader = TelemetryLogReader.open(segments.get(++segment));
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void seekLocked(long time) {
+        time = Math.max(startTime, Math.min(endTime, time));
+        closeReader();
+        rowPending = false;
+        Arrays.fill(state, 0);
+
+        segment = 0;
+        while(segment + 1 < segments.size() && segmentStart[segment + 1] <= time) {
+            segment++;
+        }
+        try {
+            reader = TelemetryLogReader.openAt(segments.get(segment), time);
+            while(reader.next()) {
+                if(reader.getTime() > time) {
+                    rowPending = true;
+                    break;
+                }
+                //the reader holds the full state once past a keyframe
+                channels = Math.max(channels, reader.getChannelCount());
+                for(int id = 0; id < reader.getChannelCount(); id++) {
+                    state[id] = reader.getValue(id);
+                }
+            }
+        } catch (IOException e) {
+            iolog.warning("Replay seek failed: " + e);
+        }
+
+        target.clearTimes();
+        for(int id = 0; id < channels; id++) {
+            target.update(id, state[id], time, time);
+        }
+        target.commit();
+        position = time;
+        lastTick = System.nanoTime();
+    }
+
+    private void closeReader() {
+        if(reader == null) return;
+        try {
+            reader.close();
+        } catch (IOException e) {
+            iolog.fine("Replay log close failed " + e);
+        }
+        reader = null;
+    }
+
+    private void fireChanged() {
+        for(Listener l : listeners) {
+            l.replayChanged(this);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.telemetry;
+
+/**
+ * An immutable copy of a set of telemetry channels, all taken at the same
+ * TelemetryManager version.
+ */
+public class TelemetrySnapshot {
+    private final int[] ids;
+    private final double[] values;
+    private final long[] sentTimes;
+    private final int version;
+
+    TelemetrySnapshot(int[] ids, double[] values, long[] sentTimes, int version) {
+        this.ids       = ids;
+        this.values    = values;
+        this.sentTimes = sentTimes;
+        this.version   = version;
+    }
+
+    /**
+     * The TelemetryManager changeIndex this snapshot was taken at
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Number of channels in this snapshot
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    public int idAt(int position) {
+        return ids[position];
+    }
+
+    public double valueAt(int position) {
+        return values[position];
+    }
+
+    public long sentTimeAt(int position) {
+        return sentTimes[position];
+    }
+
+    /**
+     * Returns the value of channel `id`, or 0 if it was not captured
+     */
+    public double get(int id) {
+        int position = positionOf(id);
+        return (position < 0) ? 0 : values[position];
+    }
+
+    /**
+     * Returns the sample time of channel `id`, or NO_TIME if it is unknown
+     * or was not captured
+     */
+    public long getSentTime(int id) {
+        int position = positionOf(id);
+        return (position < 0) ? TelemetryManager.NO_TIME : sentTimes[position];
+    }
+
+    private int positionOf(int id) {
+        if(id >= 0 && id < ids.length && ids[id] == id) return id;
+        for(int i = 0; i < ids.length; i++) {
+            if(ids[i] == id) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,74 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Per-channel statistics of a session's telemetry (see ChannelStats),
+ * updated as each sample arrives. A channel's statistics are created the
+ * first time it reports and take a fixed amount of memory from then on.
+ * Statistics of several sessions can be merged into one.
+ */
+public class TelemetryStats {
+    private final AtomicReferenceArray<ChannelStats> channels =
+        new AtomicReferenceArray<ChannelStats>(Serial.MAX_TELEMETRY);
+
+    /**
+     * Counts every channel of `telemetry` from now on
+     */
+    public void attach(TelemetryManager telemetry) {
+        int[] all = new int[Serial.MAX_TELEMETRY];
+        for(int id = 0; id < all.length; id++) all[id] = id;
+        telemetry.subscribe(all, new TelemetrySubscription.Subscriber() {
+            public void update(int id, double data, long time) {
+                add(id, data);
+            }
+        });
+    }
+
+    /**
+     * Adds a sample to channel `id`
+     */
+    public void add(int id, double value) {
+        if(id < 0 || id >= Serial.MAX_TELEMETRY) return;
+        channelFor(id).add(value);
+    }
+
+    /**
+     * Returns the live statistics of channel `id`, or null if it has not
+     * reported this session
+     */
+    public ChannelStats get(int id) {
+        if(id < 0 || id >= Serial.MAX_TELEMETRY) return null;
+        return channels.get(id);
+    }
+
+    /**
+     * Adds every channel of `other` into this session
+     */
+    public void merge(TelemetryStats other) {
+        for(int id = 0; id < Serial.MAX_TELEMETRY; id++) {
+            ChannelStats theirs = other.channels.get(id);
+            if(theirs != null) channelFor(id).merge(theirs);
+        }
+    }
+
+    /**
+     * Starts a new session, forgetting every sample so far
+     */
+    public void reset() {
+        for(int id = 0; id < Serial.MAX_TELEMETRY; id++) {
+            channels.set(id, null);
+        }
+    }
+
+    private ChannelStats channelFor(int id) {
+        ChannelStats stats = channels.get(id);
+        if(stats == null) {
+            channels.compareAndSet(id, null, new ChannelStats());
+            stats = channels.get(id);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,292 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+
+/**
+ * A consumer's interest in a set of telemetry channels, registered with
+ * TelemetryManager.subscribe and ended with cancel().
+ *
+ * A subscription says how its values are to be delivered:
+ * <ul>
+ *   <li>maxRate - at most this many deliveries a second, 0 for every update
+ *   <li>Delivery - on the thread that updated the store (INLINE), on the
+ *       EDT, or on a shared thread POOL
+ *   <li>Conflation - LATEST hands over only the newest value of each
+ *       channel per delivery; ALL queues every value, up to QUEUE_SIZE,
+ *       and drops the oldest beyond that
+ * </ul>
+ * An INLINE subscription with no rate limit costs one call per update.
+ * Otherwise values are parked on the updating thread, which never blocks on
+ * the subscriber, and handed over in batches; one batch is in flight at a
+ * time, so a subscriber is never called concurrently. Values held back by
+ * the rate limit of an INLINE subscription are delivered from a shared
+ * timer thread.
+ */
+public class TelemetrySubscription {
+    public enum Delivery { INLINE, EDT, POOL }
+    public enum Conflation { LATEST, ALL }
+
+    /**
+     * Receives the values of a subscription
+     */
+    public interface Subscriber {
+        /**
+         * @param id - the channel
+         * @param value - its value
+         * @param time - local time in ms the value was sampled, or received
+         *        if not stamped, or TelemetryManager.NO_TIME
+         */
+        void update(int id, double value, long time);
+    }
+
+    public static final int QUEUE_SIZE = 1024;
+
+    private static ScheduledExecutorService timer;
+
+    private final int[] channels;
+    private final int[] slotOf = new int[Serial.MAX_TELEMETRY];
+    private final long periodNs;
+    private final Delivery delivery;
+    private final Conflation conflation;
+    private final Subscriber subscriber;
+    private final Executor executor;
+    private final boolean direct;
+    private final Runnable drainTask = this::drain;
+
+    //parked values; LATEST uses one slot per channel, ALL a ring
+    private final int[] ids;
+    private final double[] values;
+    private final long[] times;
+    private final boolean[] pending;
+    private int head;
+    private int count;
+
+    //the batch being delivered
+    private final int[] batchIds;
+    private final double[] batchValues;
+    private final long[] batchTimes;
+
+    private boolean scheduled;
+    private long lastDelivery;
+    private volatile boolean cancelled;
+    private TelemetryManager owner;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+
+    /**
+     * Class Constructor
+     * @param channels - telemetry ids to receive
+     * @param maxRate - most deliveries per second, or 0 for no limit
+     * @param delivery - where the subscriber is called
+     * @param conflation - whether to deliver every value or only the latest
+     * @param subscriber - receives the values
+     */
+    public TelemetrySubscription(int[] channels, double maxRate, Delivery delivery,
+                                 Conflation conflation, Subscriber subscriber) {
+        Arrays.fill(slotOf, -1);
+        int n = 0;
+        int[] unique = new int[channels.length];
+        for(int id : channels) {
+            if(id < 0 || id >= Serial.MAX_TELEMETRY) {
+                throw new IllegalArgumentException("No telemetry channel t" + id);
+            }
+            if(slotOf[id] >= 0) continue;
+            slotOf[id] = n;
+            unique[n++] = id;
+        }
+        this.channels = Arrays.copyOf(unique, n);
+        this.periodNs = (maxRate > 0) ? (long) (1e9 / maxRate) : 0;
+        this.delivery = delivery;
+        this.conflation = conflation;
+        this.subscriber = subscriber;
+        this.direct = (delivery == Delivery.INLINE && periodNs == 0);
+
+        switch(delivery) {
+            case EDT:  executor = SwingUtilities::invokeLater; break;
+            case POOL: executor = ForkJoinPool.commonPool(); break;
+            default:   executor = Runnable::run; break;
+        }
+
+        int size = (conflation == Conflation.LATEST) ? n : QUEUE_SIZE;
+        ids = new int[size];
+        values = new double[size];
+        times = new long[size];
+        pending = new boolean[size];
+        batchIds = new int[size];
+        batchValues = new double[size];
+        batchTimes = new long[size];
+    }
+
+    /**
+     * Channels this subscription receives, without duplicates
+     */
+    public int[] getChannels() {
+        return channels.clone();
+    }
+
+    public Delivery getDelivery() {
+        return delivery;
+    }
+
+    public Conflation getConflation() {
+        return conflation;
+    }
+
+    /**
+     * Stops deliveries and removes the subscription from the store, at a
+     * cost proportional to the channels it covers. A batch already being
+     * delivered may finish.
+     */
+    public void cancel() {
+        if(cancelled) return;
+        cancelled = true;
+        TelemetryManager tm;
+        synchronized(this) {
+            tm = owner;
+            count = 0;
+            Arrays.fill(pending, false);
+        }
+        if(tm != null) tm.cancelled(this);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Values handed to the subscriber */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /** Values replaced by a newer one, or dropped from a full queue */
+    public long getConflatedCount() {
+        return conflated.get();
+    }
+
+    synchronized void attach(TelemetryManager tm) {
+        if(owner != null && owner != tm) {
+            throw new IllegalStateException("Subscription already registered");
+        }
+        owner = tm;
+    }
+
+    /**
+     * Called by the store on the updating thread
+     */
+    void offer(int id, double value, long time) {
+        if(cancelled) return;
+        if(direct) {
+            delivered.incrementAndGet();
+            subscriber.update(id, value, time);
+            return;
+        }
+
+        long delay;
+        synchronized(this) {
+            park(id, value, time);
+            if(scheduled) return;
+            scheduled = true;
+            delay = Math.max(0, lastDelivery + periodNs - System.nanoTime());
+        }
+        schedule(delay);
+    }
+
+    private void park(int id, double value, long time) {
+        int slot;
+        if(conflation == Conflation.LATEST) {
+            slot = slotOf[id];
+            if(pending[slot]) {
+                conflated.incrementAndGet();
+            } else {
+                pending[slot] = true;
+                count++;
+            }
+        } else {
+            if(count == QUEUE_SIZE) {
+                head = (head + 1) % QUEUE_SIZE;
+                count--;
+                conflated.incrementAndGet();
+            }
+            slot = (head + count) % QUEUE_SIZE;
+            count++;
+        }
+        ids[slot] = id;
+        values[slot] = value;
+        times[slot] = time;
+    }
+
+    private void schedule(long delayNs) {
+        if(delayNs <= 0) {
+            executor.execute(drainTask);
+        } else {
+            timer().schedule(new Runnable() {
+                public void run() {
+                    executor.execute(drainTask);
+                }
+            }, delayNs, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void drain() {
+        int n = 0;
+        synchronized(this) {
+            if(conflation == Conflation.LATEST) {
+                for(int slot = 0; slot < pending.length && n < count; slot++) {
+                    if(!pending[slot]) continue;
+                    pending[slot] = false;
+                    batchIds[n] = ids[slot];
+                    batchValues[n] = values[slot];
+                    batchTimes[n] = times[slot];
+                    n++;
+                }
+            } else {
+                for(; n < count; n++) {
+                    int slot = (head + n) % QUEUE_SIZE;
+                    batchIds[n] = ids[slot];
+                    batchValues[n] = values[slot];
+                    batchTimes[n] = times[slot];
+                }
+                head = 0;
+            }
+            count = 0;
+            lastDelivery = System.nanoTime();
+        }
+
+        for(int i = 0; i < n && !cancelled; i++) {
+            subscriber.update(batchIds[i], batchValues[i], batchTimes[i]);
+        }
+        delivered.addAndGet(n);
+
+        //values parked while delivering go out in the next batch
+        long delay;
+        synchronized(this) {
+            if(count == 0 || cancelled) {
+                scheduled = false;
+                return;
+            }
+            delay = Math.max(0, lastDelivery + periodNs - System.nanoTime());
+        }
+        schedule(delay);
+    }
+
+    private static synchronized ScheduledExecutorService timer() {
+        if(timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "telemetry subscriptions");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,14 @@
+package com.telemetry;
+
+/**
+ * A TelemetryListener that also wants to know when each value was taken.
+ */
+public interface TimedTelemetryListener extends TelemetryListener {
+    /**
+     * @param data - the new value
+     * @param time - local time in ms the value was sampled on the vehicle,
+     *        or the time it was received if the vehicle did not stamp it,
+     *        or TelemetryManager.NO_TIME if neither is known
+     */
+    void update(double data, long time);
+}
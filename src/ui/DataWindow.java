@@ -231,7 +231,7 @@ public class DataWindow implements ActionListener {
 
         logInput = new JTextField();
         logInput.addActionListener(this);
-        logInput.setText(Integer.toString(context.telemLog.getPeriod()));
+        logInput.setText(Integer.toString(context.getLogPeriod()));
         logInput.setColumns(8);
 
         logPanel.add(label);
@@ -261,10 +261,15 @@ public class DataWindow implements ActionListener {
                 if(telModel == null) return;
                 if(setModel == null) return;
                 if(context.connected) {
-                    telModel.fireTableRowsUpdated(0, Serial.MAX_TELEMETRY);
-                    setModel.fireTableRowsUpdated(0, Serial.MAX_SETTINGS);
-                    telTable.invalidate();
-                    setTable.invalidate();
+                    //table models are read on the EDT, so refresh them there
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            telModel.fireTableRowsUpdated(0, Serial.MAX_TELEMETRY);
+                            setModel.fireTableRowsUpdated(0, Serial.MAX_SETTINGS);
+                            telTable.invalidate();
+                            setTable.invalidate();
+                        }
+                    });
                 }
             }
         }, PERIOD, PERIOD);
@@ -279,10 +284,10 @@ public class DataWindow implements ActionListener {
         try {
             input = Integer.parseInt(inputText);
             logInput.setText(Integer.toString(input));
-            context.telemLog.setPeriod(input);
+            context.setLogPeriod(input);
         } 
         catch (NumberFormatException e) {
-            logInput.setText(Integer.toString(context.telemLog.getPeriod()));
+            logInput.setText(Integer.toString(context.getLogPeriod()));
         }
     }
     
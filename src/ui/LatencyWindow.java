@@ -0,0 +1,227 @@
+package com.ui;
+
+import com.telemetry.LatencyTrace;
+import com.telemetry.LatencyTrace.Stage;
+import com.telemetry.TelemetryDispatcher;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.logging.Logger;
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Shows the LatencyTrace live: percentiles of the recent latency from the
+ * serial port to each stage, and the histogram of the selected stage since
+ * the last reset, along with the values the UI dispatcher dropped and how
+ * long delivered ones waited for a frame. Refreshed once a second while
+ * open.
+ */
+public class LatencyWindow {
+    private static final String[] COLUMNS = { "Stage", "Count", "p50 ms",
+        "p90 ms", "p99 ms", "Max ms" };
+    private static final int REFRESH_MS = 1000;
+
+    private final LatencyTrace trace;
+    private final TelemetryDispatcher dispatcher;
+    private final JFrame frame;
+    private final JTable table;
+    private final JLabel deliveryLabel;
+    private final StageModel model = new StageModel();
+    private final Histogram histogram = new Histogram();
+    private final javax.swing.Timer refreshTimer;
+
+    private final Logger iolog = Logger.getLogger("d.io");
+
+    public LatencyWindow(LatencyTrace trace, TelemetryDispatcher dispatcher) {
+        this.trace = trace;
+        this.dispatcher = dispatcher;
+        frame = new JFrame("Telemetry Latency");
+
+        table = new JTable(model);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getColumnModel().getColumn(0).setPreferredWidth(140);
+        table.setPreferredScrollableViewportSize(new Dimension(520,
+            table.getRowHeight() * Stage.values().length));
+        table.getSelectionModel().addListSelectionListener(e -> histogram.repaint());
+        table.setRowSelectionInterval(Stage.PAINT.ordinal(), Stage.PAINT.ordinal());
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        controls.add(new JButton(resetAction));
+        controls.add(new JButton(exportAction));
+        deliveryLabel = new JLabel();
+        controls.add(deliveryLabel);
+        if(!trace.isEnabled()) {
+            controls.add(new JLabel("Tracing is off (latency_trace resource)"));
+        }
+
+        JPanel container = new JPanel(new BorderLayout(5, 5));
+        container.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        container.add(controls, BorderLayout.PAGE_START);
+        container.add(new JScrollPane(table), BorderLayout.CENTER);
+        container.add(histogram, BorderLayout.PAGE_END);
+
+        refreshTimer = new javax.swing.Timer(REFRESH_MS, e -> refresh());
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                refreshTimer.stop();
+            }
+        });
+
+        frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        frame.add(container);
+        frame.pack();
+        frame.setVisible(true);
+        refresh();
+        refreshTimer.start();
+    }
+
+    public boolean getVisible() {
+        return frame.isVisible();
+    }
+
+    public void toFront() {
+        frame.toFront();
+    }
+
+    private void refresh() {
+        model.reload();
+        histogram.repaint();
+        deliveryLabel.setText(String.format(
+            "UI %d fps: %d dropped, lag mean %.1f ms, max %.1f ms",
+            dispatcher.getFrameRate(), dispatcher.getDroppedCount(),
+            dispatcher.getMeanLagMs(), dispatcher.getMaxLagMs()));
+    }
+
+    private Stage selectedStage() {
+        int row = table.getSelectedRow();
+        return (row < 0) ? Stage.PAINT : Stage.values()[row];
+    }
+
+    private class StageModel extends AbstractTableModel {
+        private final Object[][] rows = new Object[Stage.values().length][];
+
+        StageModel() {
+            reload();
+        }
+
+        void reload() {
+            for(Stage stage : Stage.values()) {
+                double[] p = trace.getPercentilesMs(stage, 50, 90, 99);
+                rows[stage.ordinal()] = new Object[] { stage.getLabel(),
+                    trace.getCount(stage), p[0], p[1], p[2], trace.getMaxMs(stage) };
+            }
+            fireTableRowsUpdated(0, rows.length - 1);
+        }
+
+        public int getRowCount() {
+            return rows.length;
+        }
+
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int col) {
+            return COLUMNS[col];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int col) {
+            switch(col) {
+                case 0: return String.class;
+                case 1: return Long.class;
+                default: return Double.class;
+            }
+        }
+
+        public Object getValueAt(int row, int col) {
+            Object value = rows[row][col];
+            if(value instanceof Double) {
+                return Math.round((Double) value * 1000) / 1000.0;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Bars for each power of two microseconds, labelled every few buckets
+     */
+    private class Histogram extends JPanel {
+        Histogram() {
+            setPreferredSize(new Dimension(520, 140));
+            setBackground(Color.WHITE);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Stage stage = selectedStage();
+            long[] counts = trace.getHistogram(stage);
+            long most = 1;
+            for(long c : counts) most = Math.max(most, c);
+
+            FontMetrics fm = g.getFontMetrics();
+            int axis = getHeight() - fm.getHeight() - 2;
+            int top = fm.getHeight() + 2;
+            double width = getWidth() / (double) counts.length;
+
+            g.setColor(Color.BLACK);
+            g.drawString(stage.getLabel() + ", latency from port read", 4, fm.getAscent());
+            for(int b = 0; b < counts.length; b++) {
+                int x = (int) (b * width);
+                int h = (int) ((axis - top) * counts[b] / (double) most);
+                g.setColor(new Color(70, 110, 190));
+                g.fillRect(x + 1, axis - h, Math.max(1, (int) width - 2), h);
+                if(b % 4 == 0) {
+                    g.setColor(Color.DARK_GRAY);
+                    g.drawString(label(LatencyTrace.bucketLimitUs(b)), x + 1,
+                                 axis + fm.getAscent() + 1);
+                }
+            }
+        }
+
+        private String label(long us) {
+            if(us >= 1000000) return (us / 1000000) + "s";
+            if(us >= 1000) return (us / 1000) + "ms";
+            return us + "us";
+        }
+    }
+
+    private Action resetAction = new AbstractAction() {
+        {
+            putValue(Action.NAME, "Reset");
+        }
+        public void actionPerformed(ActionEvent e) {
+            trace.reset();
+            refresh();
+        }
+    };
+
+    private Action exportAction = new AbstractAction() {
+        {
+            putValue(Action.NAME, "Export...");
+        }
+        public void actionPerformed(ActionEvent e) {
+            JFileChooser chooser = new JFileChooser(new File("log"));
+            chooser.setFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+            if(chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) return;
+
+            File target = chooser.getSelectedFile();
+            try (Writer out = Files.newBufferedWriter(target.toPath())) {
+                trace.write(out);
+            } catch (IOException ex) {
+                iolog.severe("Cannot export latency to " + target + " " + ex);
+                JOptionPane.showMessageDialog(frame, "Cannot write " + target
+                    + ": " + ex.getMessage());
+            }
+        }
+    };
+}
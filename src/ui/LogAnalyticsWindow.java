@@ -0,0 +1,178 @@
+package com.ui;
+
+import com.telemetry.LogAnalyzer;
+import com.telemetry.LogSummary;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Lists a summary of every recorded session in a log directory: when it
+ * started, how long it ran, how far and fast the vehicle went, its lowest
+ * voltage and its time in each drive state. Scanning runs off the EDT
+ * through a LogAnalyzer caching its results in the directory.
+ */
+public class LogAnalyticsWindow {
+    private static final String[] COLUMNS = { "Session", "Start", "Duration",
+        "Distance (m)", "Max Speed", "Min Voltage", "Drive States" };
+
+    private final JFrame frame;
+    private final JLabel dirLabel;
+    private final JLabel statusLabel;
+    private final JButton scanButton;
+    private final SummaryModel model = new SummaryModel();
+
+    private Path dir = Paths.get("log");
+
+    private final Logger iolog = Logger.getLogger("d.io");
+
+    public LogAnalyticsWindow() {
+        frame = new JFrame("Log Analytics");
+
+        dirLabel = new JLabel(dir.toAbsolutePath().toString());
+        statusLabel = new JLabel(" ");
+        scanButton = new JButton(scanAction);
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        controls.add(new JButton(chooseAction));
+        controls.add(scanButton);
+        controls.add(dirLabel);
+
+        JTable table = new JTable(model);
+        table.setAutoCreateRowSorter(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(160);
+        table.getColumnModel().getColumn(6).setPreferredWidth(260);
+
+        JPanel container = new JPanel(new BorderLayout(5, 5));
+        container.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        container.add(controls, BorderLayout.PAGE_START);
+        container.add(new JScrollPane(table), BorderLayout.CENTER);
+        container.add(statusLabel, BorderLayout.PAGE_END);
+
+        frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        frame.add(container);
+        frame.setPreferredSize(new Dimension(900, 400));
+        frame.pack();
+        frame.setVisible(true);
+        scan();
+    }
+
+    public boolean getVisible() {
+        return frame.isVisible();
+    }
+
+    public void toFront() {
+        frame.toFront();
+    }
+
+    private void scan() {
+        final Path target = dir;
+        scanButton.setEnabled(false);
+        statusLabel.setText("Scanning " + target + "...");
+        new SwingWorker<List<LogSummary>, Void>() {
+            private LogAnalyzer analyzer;
+            private long started;
+
+            protected List<LogSummary> doInBackground() throws Exception {
+                started = System.currentTimeMillis();
+                analyzer = new LogAnalyzer(target.resolve(LogAnalyzer.CACHE_NAME));
+                return analyzer.analyze(target);
+            }
+
+            protected void done() {
+                scanButton.setEnabled(true);
+                try {
+                    model.setSummaries(get());
+                    statusLabel.setText(String.format(
+                        "%d sessions, %.1f MB decoded, %d segments cached, %d ms",
+                        model.getRowCount(), analyzer.getDecodedBytes() / 1e6,
+                        analyzer.getCacheHits(),
+                        System.currentTimeMillis() - started));
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+                    iolog.severe("Cannot analyze logs in " + target + " " + cause);
+                    model.setSummaries(new ArrayList<LogSummary>());
+                    statusLabel.setText("Cannot read " + target + ": " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private static class SummaryModel extends AbstractTableModel {
+        private final SimpleDateFormat date = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        private List<LogSummary> summaries = new ArrayList<LogSummary>();
+
+        void setSummaries(List<LogSummary> list) {
+            summaries = list;
+            fireTableDataChanged();
+        }
+
+        public int getRowCount() {
+            return summaries.size();
+        }
+
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int col) {
+            return COLUMNS[col];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int col) {
+            return (col >= 3 && col <= 5) ? Double.class : String.class;
+        }
+
+        public Object getValueAt(int row, int col) {
+            LogSummary s = summaries.get(row);
+            switch(col) {
+                case 0: return s.getName();
+                case 1: return (s.getRows() == 0) ? ""
+                                                  : date.format(new Date(s.getStartTime()));
+                case 2: return LogAnalyzer.formatDuration(s.getDuration());
+                case 3: return Math.round(s.getDistance() * 10) / 10.0;
+                case 4: return s.getMaxSpeed();
+                case 5: return s.getMinVoltage();
+                default: return LogAnalyzer.describeStates(s);
+            }
+        }
+    }
+
+    private Action chooseAction = new AbstractAction() {
+        {
+            putValue(Action.NAME, "Directory...");
+        }
+        public void actionPerformed(ActionEvent e) {
+            JFileChooser chooser = new JFileChooser(dir.toFile());
+            chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if(chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+                File chosen = chooser.getSelectedFile();
+                dir = chosen.toPath();
+                dirLabel.setText(chosen.getAbsolutePath());
+                scan();
+            }
+        }
+    };
+
+    private Action scanAction = new AbstractAction() {
+        {
+            putValue(Action.NAME, "Rescan");
+        }
+        public void actionPerformed(ActionEvent e) {
+            scan();
+        }
+    };
+}
@@ -0,0 +1,102 @@
+package com.ui;
+
+import com.graph.Graph;
+import com.graph.LogViewSpec;
+import com.telemetry.LogAnalyzer;
+import com.telemetry.SessionPyramid;
+
+import java.awt.*;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+import javax.swing.*;
+
+/**
+ * Graphs a whole recorded session, however large and however many segments
+ * it was rotated into, from the LogPyramid of each segment. Pyramids are
+ * built on first opening, with a progress bar, and reused after that. The mouse wheel zooms into time and dragging pans; channels
+ * are picked from the graph's Configure window.
+ */
+public class LogViewerWindow {
+    private final JFrame frame;
+    private final JPanel container;
+    private final JProgressBar progress;
+    private final JLabel statusLabel;
+
+    private final Logger iolog = Logger.getLogger("d.io");
+
+    public LogViewerWindow(Path log) {
+        frame = new JFrame(log.getFileName().toString());
+
+        progress = new JProgressBar(0, 1000);
+        progress.setStringPainted(true);
+        progress.setString("Summarizing " + log.getFileName() + "...");
+        statusLabel = new JLabel(" ");
+
+        container = new JPanel(new BorderLayout(5, 5));
+        container.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        container.add(progress, BorderLayout.PAGE_START);
+        container.add(statusLabel, BorderLayout.PAGE_END);
+
+        frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        frame.add(container);
+        frame.setPreferredSize(new Dimension(800, 400));
+        frame.pack();
+        frame.setVisible(true);
+
+        load(log);
+    }
+
+    private void load(final Path log) {
+        new SwingWorker<SessionPyramid, Double>() {
+            protected SessionPyramid doInBackground() throws Exception {
+                return SessionPyramid.load(log, fraction -> publish(fraction));
+            }
+
+            protected void process(List<Double> fractions) {
+                double latest = fractions.get(fractions.size() - 1);
+                progress.setValue((int) (latest * 1000));
+            }
+
+            protected void done() {
+                container.remove(progress);
+                try {
+                    show(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+                    iolog.severe("Cannot view " + log + " " + cause);
+                    statusLabel.setText("Cannot read " + log.getFileName()
+                        + ": " + cause.getMessage());
+                }
+                container.revalidate();
+            }
+        }.execute();
+    }
+
+    private void show(SessionPyramid pyramid) {
+        Graph graph = new Graph(pyramid.getSources(), false);
+        graph.setViewSpec(new LogViewSpec());
+        container.add(graph, BorderLayout.CENTER);
+
+        SimpleDateFormat date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        statusLabel.setText(String.format("%s, %s long, %d channels, %d segments",
+            date.format(new Date(pyramid.getStartTime())),
+            LogAnalyzer.formatDuration(pyramid.getEndTime() - pyramid.getStartTime()),
+            pyramid.getChannelCount(), pyramid.getSegmentCount()));
+        if(pyramid.getSegmentCount() > 1) {
+            frame.setTitle(frame.getTitle() + " (" + pyramid.getSegmentCount()
+                           + " segments)");
+        }
+    }
+
+    public boolean getVisible() {
+        return frame.isVisible();
+    }
+
+    public void toFront() {
+        frame.toFront();
+    }
+}
@@ -0,0 +1,223 @@
+package com.ui;
+
+import com.Context;
+import com.telemetry.TelemetryLogWriter;
+import com.telemetry.TelemetryReplay;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+import javax.swing.*;
+import javax.swing.event.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+/**
+ * Controls for replaying a recorded session through the whole dashboard:
+ * open a telemetry log, play or pause it, pick a speed and scrub along its
+ * timeline. Closing the window returns the dashboard to the live vehicle.
+ */
+public class ReplayWindow {
+    private static final Double[] SPEEDS =
+        { 0.1, 0.25, 0.5, 1.0, 2.0, 5.0, 10.0, 25.0, 50.0 };
+    //scrubber resolution
+    private static final int TICK_MS = 100;
+
+    private final Context context;
+    private final JFrame frame;
+    private final JButton playButton;
+    private final JComboBox<Double> speedSelect;
+    private final JSlider scrubber;
+    private final JLabel timeLabel;
+    private final JLabel fileLabel;
+
+    private TelemetryReplay replay;
+    private LogAnalyticsWindow analytics;
+    private boolean updatingScrubber;
+    private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+
+    private final Logger iolog = Logger.getLogger("d.io");
+
+    public ReplayWindow(Context cxt) {
+        context = cxt;
+        frame = new JFrame("Replay");
+
+        fileLabel = new JLabel("No log open");
+        playButton = new JButton(playAction);
+        playButton.setEnabled(false);
+
+        speedSelect = new JComboBox<Double>(SPEEDS);
+        speedSelect.setSelectedItem(1.0);
+        speedSelect.setRenderer(new DefaultListCellRenderer() {
+            public Component getListCellRendererComponent(JList<?> list,
+                    Object value, int index, boolean selected, boolean focus) {
+                return super.getListCellRendererComponent(
+                    list, value + "x", index, selected, focus);
+            }
+        });
+        speedSelect.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if(replay != null) {
+                    replay.setSpeed((Double) speedSelect.getSelectedItem());
+                }
+            }
+        });
+
+        scrubber = new JSlider(0, 0, 0);
+        scrubber.setEnabled(false);
+        scrubber.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                if(updatingScrubber || replay == null) return;
+                //seeking reopens a segment, so keep it off the EDT
+                replay.requestSeek(replay.getStartTime()
+                                   + (long) scrubber.getValue() * TICK_MS);
+            }
+        });
+        timeLabel = new JLabel(formatTime(0) + " / " + formatTime(0));
+
+        JPanel controls = new JPanel(new FlowLayout());
+        controls.add(new JButton(openAction));
+        controls.add(playButton);
+        controls.add(new JLabel("Speed"));
+        controls.add(speedSelect);
+        controls.add(timeLabel);
+        controls.add(new JButton(viewAction));
+        controls.add(new JButton(analyzeAction));
+
+        JPanel container = new JPanel(new BorderLayout(5, 5));
+        container.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        container.add(fileLabel, BorderLayout.PAGE_START);
+        container.add(scrubber, BorderLayout.CENTER);
+        container.add(controls, BorderLayout.PAGE_END);
+
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if(replay != null) context.stopReplay();
+                replay = null;
+            }
+        });
+        frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        frame.add(container);
+        frame.setPreferredSize(new Dimension(700, 130));
+        frame.pack();
+        frame.setVisible(true);
+    }
+
+    public boolean getVisible() {
+        return frame.isVisible();
+    }
+
+    public void toFront() {
+        frame.toFront();
+    }
+
+    private void open(File file) {
+        try {
+            replay = context.startReplay(file.toPath());
+        } catch (IOException e) {
+            iolog.severe("Cannot replay " + file + " " + e);
+            JOptionPane.showMessageDialog(frame, "Cannot replay " + file.getName()
+                + ": " + e.getMessage(), "Replay", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        replay.setSpeed((Double) speedSelect.getSelectedItem());
+        replay.addListener(new TelemetryReplay.Listener() {
+            public void replayChanged(TelemetryReplay r) {
+                //coalesce the replay thread's updates into one per repaint
+                if(refreshPending.compareAndSet(false, true)) {
+                    SwingUtilities.invokeLater(ReplayWindow.this::refresh);
+                }
+            }
+        });
+
+        fileLabel.setText(file.getName());
+        updatingScrubber = true;
+        scrubber.setMaximum((int)
+            ((replay.getEndTime() - replay.getStartTime()) / TICK_MS));
+        scrubber.setValue(0);
+        updatingScrubber = false;
+        scrubber.setEnabled(true);
+        playButton.setEnabled(true);
+        refresh();
+    }
+
+    private void refresh() {
+        refreshPending.set(false);
+        TelemetryReplay r = replay;
+        if(r == null || r != context.getReplay()) return;
+
+        long elapsed = r.getPosition() - r.getStartTime();
+        if(!scrubber.getValueIsAdjusting()) {
+            updatingScrubber = true;
+            scrubber.setValue((int) (elapsed / TICK_MS));
+            updatingScrubber = false;
+        }
+        timeLabel.setText(formatTime(elapsed) + " / "
+            + formatTime(r.getEndTime() - r.getStartTime()));
+        playAction.putValue(Action.NAME, r.isPlaying() ? "Pause" : "Play");
+    }
+
+    private static String formatTime(long ms) {
+        long seconds = ms / 1000;
+        return String.format("%d:%02d:%02d",
+            seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+    private Action openAction = new AbstractAction() {
+        {
+            putValue(Action.NAME, "Open...");
+        }
+        public void actionPerformed(ActionEvent e) {
+            JFileChooser chooser = new JFileChooser(new File("log"));
+            chooser.setFileFilter(new FileNameExtensionFilter(
+                "Telemetry logs", TelemetryLogWriter.EXTENSION.substring(1), "gz"));
+            if(chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+                open(chooser.getSelectedFile());
+            }
+        }
+    };
+
+    private Action viewAction = new AbstractAction() {
+        {
+            putValue(Action.NAME, "Graph...");
+        }
+        public void actionPerformed(ActionEvent e) {
+            JFileChooser chooser = new JFileChooser(new File("log"));
+            chooser.setFileFilter(new FileNameExtensionFilter(
+                "Telemetry logs", TelemetryLogWriter.EXTENSION.substring(1), "gz"));
+            if(chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+                new LogViewerWindow(chooser.getSelectedFile().toPath());
+            }
+        }
+    };
+
+    private Action analyzeAction = new AbstractAction() {
+        {
+            putValue(Action.NAME, "Summaries...");
+        }
+        public void actionPerformed(ActionEvent e) {
+            if(analytics != null && analytics.getVisible()) {
+                analytics.toFront();
+                return;
+            }
+            analytics = new LogAnalyticsWindow();
+        }
+    };
+
+    private Action playAction = new AbstractAction() {
+        {
+            putValue(Action.NAME, "Play");
+        }
+        public void actionPerformed(ActionEvent e) {
+            if(replay == null) return;
+            if(replay.isPlaying()) {
+                replay.pause();
+            } else {
+                replay.play();
+            }
+        }
+    };
+}
@@ -2,29 +2,41 @@ package com.ui;
 
 import com.graph.DataSource;
 import com.telemetry.*;
-import java.util.List;
-import java.util.ArrayList;
 import java.awt.Paint;
 import java.awt.Color;
 
-public class SampleSource implements DataSource, TelemetryListener {
-    static final int   SAMPLES = 1000;
+public class SampleSource implements DataSource, TimedTelemetryListener {
+    public static final int SAMPLES = 1000;
     static final float SAT     = 0.90f;
     static final float BRIGHT  = 0.5f;
-    private List<Double> data;
+    private double[] data = new double[SAMPLES];
+    private long[] times = new long[SAMPLES];
     private int oldestPosition;
     private final String name;
     
     public SampleSource(String name) {
         this.name = name;
-        data = new ArrayList<Double>(SAMPLES);
-        for(int i = 0; i < SAMPLES; i++) data.add(0.0d);
     }
     
     public void update(double d) {
-        data.set(oldestPosition, d);
+        update(d, TelemetryManager.NO_TIME);
+    }
+
+    public void update(double d, long time) {
+        data[oldestPosition] = d;
+        times[oldestPosition] = time;
         oldestPosition = (oldestPosition + 1) % SAMPLES;
     }
+
+    /**
+     * Returns the sample time, in local ms, of the sample nearest `x` on the
+     * same 0 to 1 scale as get, so graphs can label the vehicle's time axis.
+     */
+    public long getTime(double x) {
+        if(x > 1.0 || x < 0.0) return TelemetryManager.NO_TIME;
+        int pos = ((int)Math.round(x * ((double)SAMPLES - 1)) + oldestPosition) % SAMPLES;
+        return times[pos];
+    }
     
     public double get(double x) {
         if(x > 1.0 || x < 0.0) return 0.0;
@@ -32,8 +44,8 @@ public class SampleSource implements DataSource, TelemetryListener {
         int dataPos = ((int)Math.ceil(xPoint) + oldestPosition) % SAMPLES;
         int dataPrv = ((int)Math.floor(xPoint) + oldestPosition) % SAMPLES;
         double ratio = xPoint - Math.floor(xPoint);
-        double rtn = data.get(dataPos) * ratio
-                     + data.get(dataPrv) * (1.0d - ratio);
+        double rtn = data[dataPos] * ratio
+                     + data[dataPrv] * (1.0d - ratio);
         return rtn;
     }
     
@@ -4,6 +4,8 @@ import com.Context;
 import com.remote.*;
 import com.serial.*;
 import com.table.TableFactory;
+import com.telemetry.LatencyTrace;
+import com.ui.LatencyWindow;
 
 import java.util.TimerTask;
 
@@ -46,7 +48,7 @@ public class TelemetryDataWindow implements ActionListener {
 	private static final int WINDOW_HEIGHT 		= 560;
 	private static final int LOG_FIELD_WIDTH 	= 8;
 
-    private static final Dimension TELEM_DIM_PREF    = new Dimension(500, 140);
+    private static final Dimension TELEM_DIM_PREF    = new Dimension(700, 140);
     private static final Dimension TELEM_DIM_MIN	 = new Dimension(500, 140);
     private static final Dimension TELEM_DIM_MAX     = new Dimension(Integer.MAX_VALUE, 140);
     
@@ -73,6 +75,8 @@ public class TelemetryDataWindow implements ActionListener {
 	private JTextField TXF_Log;
 	
 	private JButton BTN_RestoreDefaults;
+	private JButton BTN_ResetStats;
+	private JButton BTN_Latency;
 	
 	private JTextPane TXP_Description;
 	private JTextComponent TXC_DescriptionBox;
@@ -87,6 +91,7 @@ public class TelemetryDataWindow implements ActionListener {
 	//Standard Vars
 	private Context context;
 	private java.util.Timer updateTimer;
+	private LatencyWindow latencyWindow;
 		
 	/**
 	 * Class constructor resposnible for intializing and creating required 
@@ -201,12 +206,16 @@ public class TelemetryDataWindow implements ActionListener {
 		LBL_Log = new JLabel("Set logging period (ms)");
 		TXF_Log = new JTextField();
 		TXF_Log.addActionListener(this);
-		TXF_Log.setText(Integer.toString(context.telemLog.getPeriod()));
+		TXF_Log.setText(Integer.toString(context.getLogPeriod()));
 		TXF_Log.setColumns(LOG_FIELD_WIDTH);
 		BTN_RestoreDefaults = new JButton(restoreDefaultsAction);
 		PNL_Top.add(LBL_Log);
 		PNL_Top.add(TXF_Log);		
 		PNL_Top.add(BTN_RestoreDefaults);
+		BTN_ResetStats = new JButton(resetStatsAction);
+		PNL_Top.add(BTN_ResetStats);
+		BTN_Latency = new JButton(openLatencyAction);
+		PNL_Top.add(BTN_Latency);
 		
 		//Set up main JPanel
 		PNL_Main = new JPanel();
@@ -269,10 +278,10 @@ public class TelemetryDataWindow implements ActionListener {
 		try {
 			int input = Integer.parseInt(TXF_Log.getText());
 			TXF_Log.setText(Integer.toString(input));
-			context.telemLog.setPeriod(input);
+			context.setLogPeriod(input);
 		}
 		catch(NumberFormatException e) {
-			TXF_Log.setText(Integer.toString(context.telemLog.getPeriod()));
+			TXF_Log.setText(Integer.toString(context.getLogPeriod()));
 		}
 	}
 	
@@ -304,6 +313,27 @@ public class TelemetryDataWindow implements ActionListener {
 		return FRM_Window.isVisible();
 	}
 	
+	/**
+	 * Refreshes both tables from the telemetry and settings stores. Run on
+	 * the EDT by the update timer.
+	 */
+	private final Runnable refreshTables = new Runnable() {
+		public void run() {
+			AbstractTableModel telemetryModel = 
+					(AbstractTableModel) TBL_Telemetry.getModel();
+			AbstractTableModel settingsModel = 
+					(AbstractTableModel) TBL_Settings.getModel();
+			
+			telemetryModel.fireTableRowsUpdated(
+					0, Serial.MAX_TELEMETRY);
+			settingsModel.fireTableRowsUpdated(
+					0, Serial.MAX_TELEMETRY);
+			
+			TBL_Telemetry.invalidate();
+			TBL_Settings.invalidate();
+		}
+	};
+	
 	/**
 	 * Initializes a periodic table update timer using the UPDATE_PERIOD_MS
 	 * variable. When the timer fires the table models will attempt to
@@ -319,18 +349,8 @@ public class TelemetryDataWindow implements ActionListener {
 				}
 				
 				if(context.connected) {
-					AbstractTableModel telemetryModel = 
-							(AbstractTableModel) TBL_Telemetry.getModel();
-					AbstractTableModel settingsModel = 
-							(AbstractTableModel) TBL_Settings.getModel();
-					
-					telemetryModel.fireTableRowsUpdated(
-							0, Serial.MAX_TELEMETRY);
-					settingsModel.fireTableRowsUpdated(
-							0, Serial.MAX_TELEMETRY);
-					
-					TBL_Telemetry.invalidate();
-					TBL_Settings.invalidate();
+					//Table models are read on the EDT, so refresh them there
+					SwingUtilities.invokeLater(refreshTables);
 				}
 			}
 		}, UPDATE_PERIOD_MS, UPDATE_PERIOD_MS);
@@ -374,4 +394,39 @@ public class TelemetryDataWindow implements ActionListener {
 			context.sender.resetSettings();
 		}
 	};
+	
+	/**
+	 * Action used to start a new statistics session for the telemetry 
+	 * table's min/max/mean/percentile columns.
+	 */
+	private Action resetStatsAction = new AbstractAction() {
+		{
+			String text = "Reset Stats";
+			putValue(Action.NAME, text);
+		}
+		
+		public void actionPerformed(ActionEvent e) {
+			context.getStats().reset();
+		}
+	};
+	
+	/**
+	 * Action used to open the live view of telemetry latency, from serial
+	 * port to screen.
+	 */
+	private Action openLatencyAction = new AbstractAction() {
+		{
+			String text = "Latency";
+			putValue(Action.NAME, text);
+		}
+		
+		public void actionPerformed(ActionEvent e) {
+			if(latencyWindow != null && latencyWindow.getVisible()) {
+				latencyWindow.toFront();
+				return;
+			}
+			latencyWindow = new LatencyWindow(LatencyTrace.getInstance(),
+					context.telemetry.getDispatcher());
+		}
+	};
 }
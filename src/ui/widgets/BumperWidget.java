@@ -2,6 +2,7 @@ package com.ui.widgets;
 
 import com.Context;
 import com.serial.Serial;
+import com.telemetry.TelemetryListener;
 
 import java.awt.*;
 import javax.swing.*;
@@ -114,6 +115,17 @@ public class BumperWidget extends UIWidget {
 		outerPanel.add(lowerPanel);
 		this.add(outerPanel);
 		
+		//Readings arrive as telemetry channels, on the EDT
+		for(int i = 0; i < Serial.BUMPER_COUNT; i++) {
+			final int bumper = i;
+			ctx.telemetry.registerUiListener(Serial.BUMPER_FIRST + i,
+											 new TelemetryListener() {
+				public void update(double data) {
+					BumperWidget.this.update(bumper, (int) data);
+				}
+			});
+		}
+		
 		//Default to off state
 		setEnabled(false);
 	}
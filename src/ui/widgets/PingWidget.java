@@ -8,6 +8,9 @@ import java.awt.image.BufferedImage;
 import javax.swing.*;
 
 import com.Context;
+import com.serial.Serial;
+import com.telemetry.SensorEventIndex;
+import com.telemetry.TelemetryListener;
 
 /** 
  * @author Chris Park @ Infinetix Corp.
@@ -21,7 +24,7 @@ public class PingWidget extends UIWidget {
 	protected static final int 	 NUM_SENSORS 	  	= 5;
 	protected static final int 	 UPDATE_DELAY_MS 	= 500;
 	protected static final int[] WARN_LEVELS  		= {2000, 3200, 6000, 3200, 2000};
-	protected static final int[] BLOCK_LEVELS 		= {1000, 1600, 3000, 1600, 1000};
+	protected static final int[] BLOCK_LEVELS 		= SensorEventIndex.NEAR_RANGE;
 	
 	//Ping Sensor Meters
 	protected HashMap<Integer, ArrayList<JPanel>> sensorMeters;
@@ -74,6 +77,17 @@ public class PingWidget extends UIWidget {
 
 		this.add(sensorOuterPanel);
 		
+		//Readings arrive as telemetry channels, on the EDT
+		for(int i = 0; i < NUM_SENSORS; i++) {
+			final int sensor = i;
+			ctx.telemetry.registerUiListener(Serial.SONAR_FIRST + i,
+											 new TelemetryListener() {
+				public void update(double data) {
+					PingWidget.this.update(sensor, (int) data);
+				}
+			});
+		}
+		
 		meterUpdateTimer = new javax.swing.Timer(UPDATE_DELAY_MS, meterUpdateAction);
 		meterUpdateTimer.start();
 	}
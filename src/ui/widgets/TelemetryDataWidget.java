@@ -5,9 +5,6 @@ import com.ui.widgets.UIWidget;
 import com.util.UtilHelper;
 
 import com.telemetry.TelemetryListener;
-import com.telemetry.TelemetryMonitor;
-import com.telemetry.TelemetryMonitor.TelemetryDataType;
-import com.telemetry.IMonitorListener;
 
 import java.io.Reader;
 import java.io.FileReader;
@@ -34,7 +31,6 @@ public class TelemetryDataWidget extends UIWidget {
 	
 	//Vars
 	protected JPanel panel;
-	protected TelemetryMonitor telemetryMonitor;
 	private int lineWidth;
 	private Collection<Line> lines = new ArrayList<Line>();
 
@@ -91,10 +87,8 @@ public class TelemetryDataWidget extends UIWidget {
 	 * Date: 11-25-2020
 	 * Description: Nested internal class used to display telemetry data.
 	 */
-	private class Line extends JLabel implements TelemetryListener, IMonitorListener {
+	private class Line extends JLabel implements TelemetryListener {
         private String formatStr;
-        private double currData;
-    	private boolean shouldNotifyUser;
         
         
         /**
@@ -106,11 +100,6 @@ public class TelemetryDataWidget extends UIWidget {
             formatStr = format;
             setPreferredSize(new Dimension(100, 20));
             update(0.0);
-            
-            telemetryMonitor.register(this);
-            telemetryMonitor.start();
-            
-    		shouldNotifyUser = true;
         }
         
         /**
@@ -118,7 +107,6 @@ public class TelemetryDataWidget extends UIWidget {
          * @param data - the value to update the line text to.
          */
         public void update(double data) { 
-        	currData = data;
         	String format = String.format(formatStr, data);
             
             if(format.contains("Vcc")) {        		
@@ -134,37 +122,6 @@ public class TelemetryDataWidget extends UIWidget {
             setText(format.substring(0, finalWidth));
         }
         
-        /**
-         * Sends the last received data value to the telemetry manager along
-         * with an identifier so that it can process the data appropriately.
-         * @param monitor - The reference to the telemetry monitor this object
-         * is registered/subscribed to.
-         */
-        @Override
-        public void updateMonitor(TelemetryMonitor monitor) {
-        	if(formatStr.contains("Vcc")) {
-        		monitor.storeData(currData, TelemetryDataType.VOLTAGE);
-        		
-        		
-        		//TODO - CP - Rework low voltage warning popup here.
-        		//Move to TelemetryMonitor evaluateVoltage function to
-        		//average out stray values and settling time.
-        		
-        		//If below the warning threshold, and this is
-        		//not a reset value (0.0), and we have not yet
-        		//warned the user, Do so now.
-//        		if((currData < BATTERY_LOW_WARNING_THRESHOLD)
-//				&& (currData > 0.0)
-//				&& (shouldNotifyUser)) {
-//        			JFrame messageFrame = new JFrame("message");
-//        			JOptionPane.showMessageDialog(messageFrame,
-//        					"Unit voltage is low and will soon shut down. " 
-//        				  + "Replace or recharge batteries.");
-//        			shouldNotifyUser = false;
-//        		}
-        	}
-        }
-        
         /**
          * Repaints the parent widget to avoid a change in order layering
          */	
@@ -174,15 +131,6 @@ public class TelemetryDataWidget extends UIWidget {
             TelemetryDataWidget.this.repaint(getX(), getY(), 
             		getWidth(), getHeight());
         }
-        
-        /**
-         * Resets the boolean used to determine if this line should
-         * give a user facing notification when triggered to do so by
-         * some pre-defined, telemetry type specific event.
-         */
-        public void resetNotificationFlag() {
-        	shouldNotifyUser = true;
-        }
 	}
 	
 	/**
@@ -197,7 +145,6 @@ public class TelemetryDataWidget extends UIWidget {
 			Color textColor, Collection<LineItem> items) {
 		super(ctx, "Telemetry");
 		
-		telemetryMonitor = new TelemetryMonitor(ctx);
 		this.lineWidth = lineWidth;
 
         panel = new JPanel();
@@ -214,7 +161,7 @@ public class TelemetryDataWidget extends UIWidget {
             l.setBackground(i.getBackgroundColor());
             l.setOpaque(true);
             if(i.getTelemetryID() != -1) {
-                ctx.telemetry.registerListener(i.getTelemetryID(), l);
+                ctx.telemetry.registerUiListener(i.getTelemetryID(), l);
             }
 
             lines.add(l);
@@ -231,7 +178,6 @@ public class TelemetryDataWidget extends UIWidget {
 	public void reset() {
 		for(Line l : lines) {
 			l.update(0.0);
-			l.resetNotificationFlag();
 		}
 	}
 	
@@ -173,7 +173,7 @@ public class TelemetryWidget extends JPanel{
             l.setOpaque(true);
             l.setBorder(padding);
             if(i.getTelemetryId() != -1) {
-                ctx.telemetry.registerListener(i.getTelemetryId(), l);
+                ctx.telemetry.registerUiListener(i.getTelemetryId(), l);
             }
 
             lines.add(l);
@@ -0,0 +1,84 @@
+package com.logging;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+import java.util.logging.*;
+
+public class RotatingFileHandler_test {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String read(Path path) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        try (Reader in = new InputStreamReader(LogFiles.open(path),
+                                               StandardCharsets.UTF_8)) {
+            char[] buf = new char[1024];
+            int n;
+            while((n = in.read(buf)) > 0) sb.append(buf, 0, n);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void segmentNames() {
+        Path first = Paths.get("log", "x.tlog");
+        assertThat(LogFiles.segmentPath(first, 0), is(first));
+        assertThat(LogFiles.segmentPath(first, 2), is(Paths.get("log", "x.2.tlog")));
+    }
+
+    @Test
+    public void rotatesBySizeAndCompresses() throws Exception {
+        Path first = folder.getRoot().toPath().resolve("session.log");
+        RotatingFileHandler handler =
+            new RotatingFileHandler(first, new RotationPolicy(100, 0, true));
+        handler.setFormatter(new Formatter() {
+            public String format(LogRecord r) {
+                return r.getMessage() + "\n";
+            }
+        });
+
+        //each record is 40 bytes, so every third one starts a new segment
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 10; i++) {
+            String line = String.format("%039d", i);
+            handler.publish(new LogRecord(Level.INFO, line));
+            expected.append(line).append('\n');
+        }
+        handler.close();
+        LogFiles.awaitCompression();
+
+        List<Path> segments = LogFiles.segments(first);
+        assertThat(segments.size(), is(4));
+        for(int i = 0; i < 3; i++) {
+            assertTrue(LogFiles.isCompressed(segments.get(i)));
+        }
+        assertFalse(LogFiles.isCompressed(segments.get(3)));
+
+        StringBuilder actual = new StringBuilder();
+        for(Path segment : segments) actual.append(read(segment));
+        assertThat(actual.toString(), is(expected.toString()));
+    }
+
+    @Test
+    public void plainPathOpensCompressedCopy() throws Exception {
+        Path path = folder.newFile("old.log").toPath();
+        Files.write(path, "hello".getBytes(StandardCharsets.UTF_8));
+        assertThat(LogFiles.compress(path).get(), is(LogFiles.compressedPath(path)));
+        assertFalse(Files.exists(path));
+        assertThat(read(path), is("hello"));
+    }
+
+    @Test
+    public void neverPolicyDoesNotRotate() {
+        assertFalse(RotationPolicy.NEVER.shouldRotate(Long.MAX_VALUE, 0, Long.MAX_VALUE));
+        RotationPolicy hourly = new RotationPolicy(0, 3600000, false);
+        assertFalse(hourly.shouldRotate(1 << 30, 0, 3599999));
+        assertTrue(hourly.shouldRotate(0, 0, 3600000));
+    }
+}
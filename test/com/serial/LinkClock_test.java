@@ -0,0 +1,42 @@
+package com.serial;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+public class LinkClock_test {
+    @Test public void unsyncedUntilFirstSample() {
+        LinkClock clock = new LinkClock();
+        assertFalse(clock.isSynced());
+        assertThat(clock.getRoundTrip(), is(-1L));
+    }
+
+    @Test public void symmetricExchangeGivesOffset() {
+        LinkClock clock = new LinkClock();
+        long local = 1000000L;
+        //vehicle clock reads 500 while local reads 1000050, 100ms round trip
+        clock.addSample(LinkClock.wireTime(local), 500, local + 100);
+        assertThat(clock.getRoundTrip(), is(100L));
+        assertThat(clock.getOffset(), is(500L - (local + 50)));
+        assertThat(clock.toLocalTime(500), is(local + 50));
+    }
+
+    @Test public void shortestRoundTripWins() {
+        LinkClock clock = new LinkClock();
+        long local = 1000000L;
+        clock.addSample(LinkClock.wireTime(local), 510, local + 20);
+        //a queued reply skews the offset by 200ms, but should be ignored
+        clock.addSample(LinkClock.wireTime(local + 1000), 1710, local + 1400);
+        assertThat(clock.getRoundTrip(), is(20L));
+        assertThat(clock.toLocalTime(510), is(local + 10));
+    }
+
+    @Test public void unwrapsVehicleCounter() {
+        LinkClock clock = new LinkClock();
+        long before = clock.unwrap(0xFFFFFFF0);
+        long after  = clock.unwrap(0x00000010);
+        long late   = clock.unwrap(0xFFFFFFF8);
+        assertThat(after - before, is(0x20L));
+        assertThat(after - late, is(0x18L));
+    }
+}
@@ -0,0 +1,106 @@
+package com.serial;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.mockito.Mockito.any;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import jssc.SerialPort;
+
+public class LinkSupervisor_test {
+    private static final String PORT = "ttyTest";
+    private static final String[] NO_PORTS = {};
+
+    private SerialLink link;
+    private SerialPort reopened;
+    private ScheduledExecutorService scheduler;
+    private LinkSupervisor supervisor;
+    private String[] available = { PORT };
+    private Runnable onOpen = () -> {};
+
+    @Before public void setup() {
+        link = mock(SerialLink.class);
+        SerialPort port = mock(SerialPort.class);
+        when(port.isOpened()).thenReturn(true);
+        when(link.port()).thenReturn(port);
+        when(link.getName()).thenReturn("Vehicle 1");
+        reopened = mock(SerialPort.class);
+
+        //checks are driven by the test rather than a background thread
+        scheduler = mock(ScheduledExecutorService.class);
+        doReturn(mock(ScheduledFuture.class)).when(scheduler)
+            .scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(),
+                                    any(TimeUnit.class));
+
+        supervisor = new LinkSupervisor(link, scheduler) {
+            @Override String[] portNames() {
+                return available;
+            }
+            @Override SerialPort openPort(String name, int baud) {
+                onOpen.run();
+                return reopened;
+            }
+        };
+        supervisor.start(PORT, 9600);
+    }
+
+    @Test public void healthyPortIsLeftAlone() {
+        supervisor.check();
+        verify(link, never()).suspend();
+        assertFalse(supervisor.isRecovering());
+    }
+
+    @Test public void lostPortSuspendsLink() {
+        available = NO_PORTS;
+        supervisor.check();
+        verify(link).suspend();
+        assertTrue(supervisor.isRecovering());
+    }
+
+    @Test public void missingPortIsNotReopened() {
+        available = NO_PORTS;
+        supervisor.check();
+        supervisor.check();
+        verify(link, never()).resume(any(SerialPort.class));
+        assertTrue(supervisor.isRecovering());
+    }
+
+    @Test public void returningPortResumesSession() {
+        available = NO_PORTS;
+        supervisor.check();
+        available = new String[] { PORT };
+        supervisor.check();
+
+        verify(link).resume(reopened);
+        assertFalse(supervisor.isRecovering());
+        assertThat(supervisor.getRecoveryCount(), is(1));
+        assertThat(supervisor.getMaxRecoveryMs(),
+                   is(supervisor.getLastRecoveryMs()));
+    }
+
+    @Test public void disconnectWhileReopeningLeavesLinkSuspended() {
+        available = NO_PORTS;
+        supervisor.check();
+        available = new String[] { PORT };
+        onOpen = () -> supervisor.stop();
+        supervisor.check();
+
+        verify(link, times(2)).suspend();
+        assertThat(supervisor.getRecoveryCount(), is(0));
+    }
+
+    @Test public void failureReportDoesNotWaitForMonitor() throws Exception {
+        Thread reporter = new Thread(
+            () -> supervisor.reportFailure(new Exception("write failed")));
+        synchronized(supervisor) {
+            reporter.start();
+            reporter.join(1000);
+            assertFalse(reporter.isAlive());
+        }
+        verify(scheduler).execute(any(Runnable.class));
+    }
+}
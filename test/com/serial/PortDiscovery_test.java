@@ -0,0 +1,65 @@
+package com.serial;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.*;
+import jssc.SerialPort;
+import jssc.SerialPortException;
+
+public class PortDiscovery_test {
+    private byte[] telemetryFrame() throws IOException {
+        byte[] content = { Serial.buildMessageLabel(Serial.DATA_TYPE,
+                                                    Serial.TELEMETRY_DATA),
+                           3, 0x41, 0x20, 0x00, 0x00 };
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(Serial.HEADER);
+        frame.write(content);
+        frame.write(Serial.fletcher16bytes(content));
+        frame.write(Serial.FOOTER);
+        return frame.toByteArray();
+    }
+
+    @Test public void countsValidFrames() throws IOException {
+        PortDiscovery.FrameCounter counter = new PortDiscovery.FrameCounter();
+        byte[] frame = telemetryFrame();
+        counter.feed(frame);
+        counter.feed(frame);
+        assertThat(counter.count, is(2));
+    }
+
+    @Test public void ignoresCorruptFrames() throws IOException {
+        PortDiscovery.FrameCounter counter = new PortDiscovery.FrameCounter();
+        byte[] frame = telemetryFrame();
+        frame[4] ^= 0x55;
+        counter.feed(frame);
+        assertThat(counter.count, is(0));
+    }
+
+    @Test public void stopsAtFirstAnsweringBaud() throws Exception {
+        SerialPort sp = mock(SerialPort.class);
+        when(sp.getPortName()).thenReturn("ttyTest");
+        when(sp.readBytes()).thenReturn(telemetryFrame());
+
+        PortDiscovery.Result r = PortDiscovery.probe(sp, 30);
+
+        assertThat(r.getBaud(), is(PortDiscovery.CANDIDATE_BAUDS[0]));
+        assertThat(r.getFrames(), not(0));
+        verify(sp, times(1)).setParams(anyInt(), anyInt(), anyInt(), anyInt());
+        verify(sp).closePort();
+    }
+
+    @Test public void silentPortTriesEveryBaud() throws Exception {
+        SerialPort sp = mock(SerialPort.class);
+        when(sp.getPortName()).thenReturn("ttyTest");
+
+        PortDiscovery.Result r = PortDiscovery.probe(sp, 30);
+
+        assertThat(r.getFrames(), is(0));
+        verify(sp, times(PortDiscovery.CANDIDATE_BAUDS.length))
+            .setParams(anyInt(), anyInt(), anyInt(), anyInt());
+        verify(sp).closePort();
+    }
+}
@@ -0,0 +1,133 @@
+package com.serial;
+
+import com.Context;
+import com.map.Dot;
+import com.map.WaypointList;
+import com.serial.Messages.Message;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.mockito.Mockito.any;
+
+import jssc.SerialPort;
+import jssc.SerialPortException;
+
+public class SerialSender_test {
+    private SerialSender sender;
+    private SerialLink link;
+    private SerialPort port;
+    private WaypointList waypoints;
+
+    @Before public void setup() {
+        link = mock(SerialLink.class);
+        port = mock(SerialPort.class);
+        waypoints = new WaypointList();
+        when(link.isConnected()).thenReturn(true);
+        when(link.port()).thenReturn(port);
+        when(link.getWaypointList()).thenReturn(waypoints);
+        when(link.getName()).thenReturn("Vehicle 1");
+        sender = new SerialSender(mock(Context.class), link);
+    }
+
+    @After public void teardown() {
+        sender.stop();
+    }
+
+    private void sendTargets(int count) {
+        for(int i = 0; i < count; i++) {
+            sender.sendMessage(Message.setTarget((byte)1));
+        }
+    }
+
+    @Test public void windowLimitsMessagesInFlight() {
+        sender.setSequenced(true);
+        sendTargets(Serial.ARQ_WINDOW + 4);
+        assertThat(sender.inFlight(), is(Serial.ARQ_WINDOW));
+        assertThat(sender.queued(), is(4));
+    }
+
+    @Test public void cumulativeAckSlidesWindow() {
+        sender.setSequenced(true);
+        sendTargets(Serial.ARQ_WINDOW + 4);
+        sender.notifyOfAck(2, 0);
+        assertThat(sender.inFlight(), is(Serial.ARQ_WINDOW));
+        assertThat(sender.queued(), is(1));
+    }
+
+    @Test public void selectiveAckReleasesOnlyMarkedMessages() {
+        sender.setSequenced(true);
+        sendTargets(4);
+        //nothing in order yet, #0 and #2 received out of order
+        sender.notifyOfAck(0xff, 0b0101);
+        assertThat(sender.inFlight(), is(2));
+        sender.notifyOfAck(3, 0);
+        assertThat(sender.inFlight(), is(0));
+    }
+
+    @Test public void resyncRenumbersMessagesInFlight() {
+        sender.setSequenced(true);
+        sendTargets(3);
+        sender.setSequenced(true);
+        assertThat(sender.inFlight(), is(3));
+        sender.notifyOfAck(2, 0);
+        assertThat(sender.inFlight(), is(0));
+    }
+
+    @Test public void legacyConfirmReleasesOneIdenticalMessage() {
+        Message msg = Message.setTarget((byte)1);
+        sendTargets(2);
+        assertThat(sender.pending(), is(2));
+        sender.notifyOfConfirm(msg.getConfirmSum());
+        assertThat(sender.pending(), is(1));
+    }
+
+    //every message confirmed, so the vehicle holds the current mission
+    private void syncMission() {
+        sender.setSequenced(true);
+        sendTargets(1);
+        sender.notifyOfAck(0, 0);
+        assertThat(sender.pending(), is(0));
+    }
+
+    @Test public void resumeResendsPendingMessages() throws Exception {
+        syncMission();
+        sendTargets(2);
+        reset(port);
+        sender.resume();
+        verify(port, times(2)).writeBytes(Serial.HEADER);
+        assertThat(sender.inFlight(), is(2));
+    }
+
+    @Test public void resumeSkipsUnchangedMission() {
+        syncMission();
+        sender.resume();
+        assertThat(sender.inFlight(), is(0));
+    }
+
+    @Test public void resumeResendsChangedMission() {
+        syncMission();
+        waypoints.add(new Dot(1.0, 2.0, (short)0), 0);
+        sender.resume();
+        //clear, one waypoint and the loop flag
+        assertThat(sender.inFlight(), is(3));
+    }
+
+    @Test public void writeFailureIsReportedOutsideLock() throws Exception {
+        sendTargets(1);
+        doThrow(new SerialPortException("ttyTest", "writeBytes", "gone"))
+            .when(port).writeBytes(any(byte[].class));
+        //the supervisor may be resuming this sender from another thread
+        doAnswer(invocation -> {
+            Thread other = new Thread(() -> sender.pending());
+            other.start();
+            other.join(1000);
+            assertFalse(other.isAlive());
+            return null;
+        }).when(link).reportFailure(any(Exception.class));
+
+        sender.resume();
+        verify(link).reportFailure(any(SerialPortException.class));
+    }
+}
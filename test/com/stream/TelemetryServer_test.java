@@ -0,0 +1,162 @@
+package com.stream;
+
+import com.telemetry.TelemetryManager;
+import com.util.Await;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class TelemetryServer_test {
+    private TelemetryManager tm;
+    private TelemetryServer server;
+
+    @Before public void start() throws Exception {
+        tm = new TelemetryManager();
+        tm.update(0, 0);
+        tm.update(6, 0);
+        server = new TelemetryServer(tm, new InetSocketAddress("127.0.0.1", 0), 4096);
+    }
+
+    @After public void stop() {
+        server.close();
+    }
+
+    private StreamClient.Frame nextOf(StreamClient c, byte type) throws Exception {
+        while(true) {
+            StreamClient.Frame f = c.next();
+            if(f.getType() == type) return f;
+        }
+    }
+
+    @Test public void streamsSubscribedChannels() throws Exception {
+        try (StreamClient c = new StreamClient("127.0.0.1", server.getPort())) {
+            assertThat(c.getChannelNames().size(), is(7));
+            c.setTimeout(5000);
+            c.subscribe(6, 0);
+            Await.until(() -> server.getClientCount() == 1);
+            Thread.sleep(50);
+
+            tm.update(0, 45.5);
+            tm.update(6, 7.25);
+            StreamClient.Frame f = nextOf(c, StreamProtocol.TELEMETRY);
+            assertThat(f.size(), is(1));
+            assertThat(f.getId(0), is(6));
+            assertThat(f.getValue(0), is(7.25));
+
+            //only the latest value of a burst is needed
+            for(int i = 0; i < 1000; i++) tm.update(6, i);
+            double last = -1;
+            while(last != 999) {
+                f = nextOf(c, StreamProtocol.TELEMETRY);
+                last = f.getValue(f.size() - 1);
+            }
+        }
+    }
+
+    @Test public void capsRate() throws Exception {
+        try (StreamClient c = new StreamClient("127.0.0.1", server.getPort())) {
+            c.setTimeout(5000);
+            c.subscribe(0, 10);
+            Await.until(() -> server.getClientCount() == 1);
+            Thread.sleep(50);
+
+            long start = System.currentTimeMillis();
+            int frames = 0;
+            for(int i = 0; System.currentTimeMillis() - start < 500; i++) {
+                tm.update(0, i);
+                Thread.sleep(1);
+            }
+            c.setTimeout(200);
+            try {
+                while(true) {
+                    if(c.next().getType() == StreamProtocol.TELEMETRY) frames++;
+                }
+            } catch (SocketTimeoutException done) {}
+            assertThat(frames, is(both(greaterThanOrEqualTo(4)).and(lessThanOrEqualTo(7))));
+        }
+    }
+
+    @Test public void deliversEventsToThoseWhoAsk() throws Exception {
+        try (StreamClient quiet = new StreamClient("127.0.0.1", server.getPort());
+             StreamClient c = new StreamClient("127.0.0.1", server.getPort())) {
+            c.setTimeout(5000);
+            quiet.setTimeout(300);
+            c.setEvents(true);
+            Await.until(() -> server.getClientCount() == 2);
+            Thread.sleep(50);
+
+            server.publishWaypoint(StreamProtocol.WAYPOINT_ADD, 3, 1.5, -2.5, (short) 12);
+            server.publishState((byte) 2, (byte) 5);
+            StreamClient.Frame f = c.next();
+            assertThat(f.getType(), is(StreamProtocol.WAYPOINT));
+            assertThat(f.getIndex(), is(3));
+            assertThat(f.getLongitude(), is(-2.5));
+            assertThat(f.getAltitude(), is((short) 12));
+            f = c.next();
+            assertThat(f.getType(), is(StreamProtocol.STATE));
+            assertThat(f.getKind(), is((byte) 2));
+            assertThat(f.getIndex(), is(5));
+
+            try {
+                quiet.next();
+                fail("Unrequested event");
+            } catch (SocketTimeoutException expected) {}
+        }
+    }
+
+    @Test public void evictsClientsThatStopReading() throws Exception {
+        server.close();
+        server = new TelemetryServer(tm, new InetSocketAddress("127.0.0.1", 0), 64 * 1024);
+        try (Socket stalled = new Socket("127.0.0.1", server.getPort());
+             StreamClient c = new StreamClient("127.0.0.1", server.getPort())) {
+            stalled.setReceiveBufferSize(1024);
+            OutputStream out = stalled.getOutputStream();
+            ByteBuffer events = ByteBuffer.allocate(6);
+            events.putInt(2).put(StreamProtocol.EVENTS).put((byte) 1);
+            out.write(events.array());
+            out.flush();
+            c.setEvents(true);
+            c.setTimeout(5000);
+            Await.until(() -> server.getClientCount() == 2);
+            Thread.sleep(50);
+
+            Thread reader = new Thread(() -> {
+                try {
+                    while(true) c.next();
+                } catch (Exception closed) {}
+            });
+            reader.start();
+
+            //far more than the socket buffers and the client buffer hold
+            long start = System.currentTimeMillis();
+            while(server.getEvictedCount() == 0
+                    && System.currentTimeMillis() - start < 20000) {
+                for(int i = 0; i < 1000; i++) {
+                    server.publishWaypoint(StreamProtocol.WAYPOINT_SET, i, 1, 2, (short) 3);
+                }
+                Thread.sleep(5);
+            }
+            assertThat(server.getEvictedCount(), is(1L));
+            Await.until(() -> server.getClientCount() == 1);
+            assertThat(reader.isAlive(), is(true));
+        }
+    }
+
+    @Test public void rejectsMalformedRequests() throws Exception {
+        try (Socket bad = new Socket("127.0.0.1", server.getPort())) {
+            Await.until(() -> server.getClientCount() == 1);
+            ByteBuffer frame = ByteBuffer.allocate(5);
+            frame.putInt(1).put((byte) 99);
+            bad.getOutputStream().write(frame.array());
+            bad.getOutputStream().flush();
+            Await.until(() -> server.getClientCount() == 0);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.telemetry;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class AlarmEngine_test {
+    private long now;
+    private TelemetryManager tm;
+    private AlarmEngine engine;
+    private List<String> fired;
+
+    @Before public void setup() {
+        now = 1000;
+        tm = new TelemetryManager();
+        engine = new AlarmEngine(() -> now, Runnable::run);
+        fired = new ArrayList<String>();
+        engine.setAction("record", new AlarmEngine.Action() {
+            public void trigger(AlarmRule rule, double value) {
+                fired.add(rule.getName());
+            }
+        });
+    }
+
+    private void sample(int id, double value, long dt) {
+        now += dt;
+        tm.update(id, value);
+    }
+
+    @Test public void windowMatchesBruteForce() {
+        SlidingWindow window = new SlidingWindow(500);
+        List<long[]> times = new ArrayList<long[]>();
+        List<Double> values = new ArrayList<Double>();
+        Random random = new Random(42);
+        long t = 0;
+        for(int i = 0; i < 5000; i++) {
+            t += random.nextInt(40);
+            double v = random.nextGaussian();
+            window.add(t, v);
+            times.add(new long[] { t });
+            values.add(v);
+
+            double sum = 0, min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            int n = 0;
+            for(int j = times.size() - 1; j >= 0 && times.get(j)[0] >= t - 500; j--) {
+                sum += values.get(j);
+                min = Math.min(min, values.get(j));
+                max = Math.max(max, values.get(j));
+                n++;
+            }
+            assertThat(window.size(), is(n));
+            assertThat(window.mean(), closeTo(sum / n, 1e-9));
+            assertThat(window.min(), is(min));
+            assertThat(window.max(), is(max));
+        }
+    }
+
+    @Test public void thresholdTripsAfterHoldAndRearms() {
+        AlarmRule rule = new AlarmRule("low", 6, AlarmRule.Type.THRESHOLD);
+        rule.setStat(AlarmRule.Stat.MEAN);
+        rule.setWindow(1000);
+        rule.setBelow(6.0);
+        rule.setHold(2000);
+        rule.addAction("record");
+        engine.addRule(rule);
+        engine.attach(tm);
+
+        for(int i = 0; i < 10; i++) sample(6, 7.0, 100);
+        //one low sample does not pull the mean down far enough
+        sample(6, 4.0, 100);
+        assertThat(rule.isTripped(), is(false));
+
+        for(int i = 0; i < 15; i++) sample(6, 5.0, 100);
+        assertThat(fired, is(empty()));
+        for(int i = 0; i < 15; i++) sample(6, 5.0, 100);
+        assertThat(fired, contains("low"));
+        assertThat(rule.getValue(), closeTo(5.0, 1e-9));
+
+        //fires once per excursion
+        for(int i = 0; i < 30; i++) sample(6, 5.0, 100);
+        assertThat(fired.size(), is(1));
+
+        for(int i = 0; i < 20; i++) sample(6, 7.0, 100);
+        assertThat(rule.isTripped(), is(false));
+        for(int i = 0; i < 40; i++) sample(6, 5.0, 100);
+        assertThat(fired.size(), is(2));
+    }
+
+    @Test public void repeatsWhileHeld() {
+        AlarmRule rule = new AlarmRule("high", 2, AlarmRule.Type.THRESHOLD);
+        rule.setAbove(10);
+        rule.setRepeat(1000);
+        rule.addAction("record");
+        engine.addRule(rule);
+        engine.attach(tm);
+
+        for(int i = 0; i < 25; i++) sample(2, 11, 100);
+        assertThat(fired.size(), is(3));
+    }
+
+    @Test public void rateOfChange() {
+        AlarmRule rule = new AlarmRule("falling", 8, AlarmRule.Type.RATE);
+        rule.setWindow(1000);
+        rule.setBelow(-2.0);
+        rule.addAction("record");
+        engine.addRule(rule);
+        engine.attach(tm);
+
+        for(int i = 0; i < 20; i++) sample(8, 100 - i * 0.1, 100);
+        assertThat(fired, is(empty()));
+        for(int i = 0; i < 20; i++) sample(8, 90 - i * 0.5, 100);
+        assertThat(fired, contains("falling"));
+        assertThat(rule.getValue(), closeTo(-5.0, 1e-9));
+    }
+
+    @Test public void timeoutNeedsFirstSampleAndCheck() {
+        AlarmRule rule = new AlarmRule("silent", 0, AlarmRule.Type.TIMEOUT);
+        rule.setWindow(500);
+        rule.addAction("record");
+        engine.addRule(rule);
+        engine.attach(tm);
+
+        now += 10000;
+        engine.check();
+        assertThat(fired, is(empty()));
+
+        sample(0, 1.0, 0);
+        now += 400;
+        engine.check();
+        assertThat(fired, is(empty()));
+        now += 200;
+        engine.check();
+        assertThat(fired, contains("silent"));
+
+        //paused and resumed, earlier samples are forgotten
+        engine.setPaused(true);
+        sample(0, 1.0, 100);
+        engine.setPaused(false);
+        now += 10000;
+        engine.check();
+        assertThat(fired.size(), is(1));
+    }
+
+    @Test public void loadsRulesFromXml() throws Exception {
+        engine.load(new StringReader(
+            "<alarms>" +
+            "<alarm name='Battery' telem='6' type='threshold' stat='min'" +
+            "  window='2000' below='6.0' hold='0' action='record, log'/>" +
+            "<alarm name='Lost' telem='0' type='timeout' window='5000'/>" +
+            "</alarms>"));
+        List<AlarmRule> rules = engine.getRules();
+        assertThat(rules.size(), is(2));
+        assertThat(rules.get(0).getActions(), contains("record", "log"));
+        assertThat(rules.get(1).getType(), is(AlarmRule.Type.TIMEOUT));
+
+        engine.attach(tm);
+        sample(6, 5.0, 100);
+        assertThat(fired, contains("Battery"));
+    }
+
+    @Test public void unreportedChannelDoesNotTrip() throws Exception {
+        engine.load(new StringReader(
+            "<alarms>" +
+            "<alarm name='Battery' telem='6' type='threshold' stat='mean'" +
+            "  window='2000' below='6.5' hold='5000' ignoreZero='true'" +
+            "  action='record'/>" +
+            "</alarms>"));
+        engine.attach(tm);
+
+        for(int i = 0; i < 100; i++) sample(6, 0.0, 100);
+        engine.check();
+        assertThat(fired, is(empty()));
+
+        for(int i = 0; i < 60; i++) sample(6, 6.0, 100);
+        assertThat(fired, contains("Battery"));
+    }
+
+    @Test public void unpausingForgetsEarlierSamples() {
+        AlarmRule rule = new AlarmRule("low", 6, AlarmRule.Type.THRESHOLD);
+        rule.setBelow(6.0);
+        rule.setHold(2000);
+        rule.addAction("record");
+        engine.addRule(rule);
+        engine.attach(tm);
+
+        for(int i = 0; i < 15; i++) sample(6, 5.0, 100);
+        engine.setPaused(true);
+        engine.setPaused(false);
+        for(int i = 0; i < 15; i++) sample(6, 5.0, 100);
+        assertThat(fired, is(empty()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadRules() throws Exception {
+        engine.load(new StringReader(
+            "<alarms><alarm name='x' telem='six' type='threshold'/></alarms>"));
+    }
+}
@@ -0,0 +1,145 @@
+package com.telemetry;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class DerivedTelemetry_test {
+    private TelemetryManager tm;
+    private DerivedTelemetry derived;
+
+    @Before public void setup() {
+        tm = new TelemetryManager();
+        derived = new DerivedTelemetry();
+    }
+
+    @Test public void relativeAltitudeWaitsForHome() throws Exception {
+        derived.load(new StringReader(
+            "# altitude above home\n" +
+            "t17 = if(t16 != 0, t8 - t16, nan)\n"));
+        derived.attach(tm);
+
+        tm.update(8, 120.0);
+        assertThat(tm.get(17), is(0.0));
+
+        tm.update(16, 100.0);
+        assertThat(tm.get(17), is(20.0));
+        tm.update(8, 95.5);
+        assertThat(tm.get(17), is(-4.5));
+    }
+
+    @Test public void outputsFeedOtherOutputsInOrder() {
+        derived.define(31, "t30 * 2");
+        derived.define(30, "t6 * t7");
+        derived.define(32, "t31 + t30 + t6");
+        derived.attach(tm);
+        assertThat(derived.getOutputs(), is(new int[] { 30, 31, 32 }));
+        assertTrue(derived.isOutput(31));
+        assertFalse(derived.isOutput(6));
+
+        tm.update(6, 12.0);
+        tm.update(7, 3.0);
+        assertThat(tm.get(30), is(36.0));
+        assertThat(tm.get(31), is(72.0));
+        assertThat(tm.get(32), is(120.0));
+    }
+
+    @Test public void onlyAffectedOutputsAreRecomputed() {
+        derived.define(30, "t6 * t7");
+        derived.define(31, "t5 * 3.6");
+        derived.attach(tm);
+
+        tm.update(5, 10.0);
+        assertThat(derived.getEvaluationCount(), is(1L));
+        assertThat(tm.get(31), is(36.0));
+        tm.update(6, 12.0);
+        tm.update(7, 3.0);
+        assertThat(derived.getEvaluationCount(), is(3L));
+    }
+
+    @Test public void historyFunctions() {
+        derived.define(30, "t0 - prev(t0)");
+        derived.define(31, "dist(0, 0, 0, 1)");
+        derived.attach(tm);
+        tm.update(0, 4.0, 1000, 1000);
+        tm.update(0, 7.0, 2000, 2000);
+        assertThat(tm.get(30), is(3.0));
+        assertThat(derived.dt(0), is(1.0));
+        assertThat(Formula.distance(0, 0, 0, 1), closeTo(111195, 1));
+    }
+
+    @Test public void groundSpeedFromPosition() throws Exception {
+        derived.load(new StringReader(
+            "t31.on = t1\n" +
+            "t31 = if((prev(t0) != 0) * (prev(t1) != 0) * (dt(t0) > 0)," +
+            " dist(prev(t0), prev(t1), t0, t1) / dt(t0), nan)\n"));
+        derived.attach(tm);
+        final List<Double> published = new ArrayList<Double>();
+        tm.registerListener(31, published::add);
+
+        tm.update(0, 45.0, 1000, 1000);
+        tm.update(1, -93.0, 1000, 1000);
+        assertThat(tm.get(31), is(0.0));
+
+        //1e-4 degrees of latitude north in two seconds
+        tm.update(0, 45.0001, 3000, 3000);
+        tm.update(1, -93.0, 3000, 3000);
+        assertThat(tm.get(31), closeTo(5.56, 0.01));
+
+        //then turning east at the same speed; latitude alone must not count
+        double east = 0.0001 / Math.cos(Math.toRadians(45.0001));
+        tm.update(0, 45.0001, 5000, 5000);
+        tm.update(1, -93.0 + east, 5000, 5000);
+        assertThat(tm.get(31), closeTo(5.56, 0.01));
+
+        assertThat(published, hasSize(2));
+        assertThat(published, everyItem(closeTo(5.56, 0.01)));
+    }
+
+    @Test public void reloadingTheStoreStartsOver() throws Exception {
+        derived.load(new StringReader(
+            "t31 = if((prev(t0) != 0) * (prev(t1) != 0) * (dt(t0) > 0)," +
+            " dist(prev(t0), prev(t1), t0, t1) / dt(t0), nan)\n"));
+        derived.attach(tm);
+
+        //one parked vehicle, then another about 200 m north of it
+        tm.update(0, 45.0, 1000, 1000);
+        tm.update(1, -93.0, 1000, 1000);
+        tm.update(0, 45.0, 2000, 2000);
+        tm.update(1, -93.0, 2000, 2000);
+        assertThat(tm.get(31), is(0.0));
+
+        tm.clearTimes();
+        tm.update(0, 45.0018, 2100, 2100);
+        tm.update(1, -93.0, 2100, 2100);
+        assertThat(tm.get(31), is(0.0));
+
+        tm.update(0, 45.0018, 3100, 3100);
+        tm.update(1, -93.0, 3100, 3100);
+        assertThat(tm.get(31), is(0.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCycles() {
+        derived.define(30, "t31 + 1");
+        derived.define(31, "t5 + t30");
+        derived.attach(tm);
+    }
+
+    @Test public void reportsBadFormulas() {
+        String[] bad = { "t1 +", "sqrt(t1, t2)", "foo(1)", "(t1", "t1 t2",
+                         "prev(2)", "t999" };
+        for(String f : bad) {
+            try {
+                new Formula(f);
+                fail("Parsed " + f);
+            } catch (IllegalArgumentException expected) {}
+        }
+        assertThat(new Formula("-2^2 + 10 % 4 * 3").eval(null), is(2.0));
+        assertThat(new Formula("1 + 2 >= 3").eval(null), is(1.0));
+    }
+}
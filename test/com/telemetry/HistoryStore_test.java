@@ -0,0 +1,99 @@
+package com.telemetry;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class HistoryStore_test {
+    @Test public void rangeReturnsSamplesInWindow() {
+        HistoryStore store = new HistoryStore(1000);
+        for(int i = 0; i < 100; i++) {
+            store.append(3, 1000 + i * 10, i);
+        }
+
+        long[] times = new long[100];
+        double[] values = new double[100];
+        int n = store.range(3, 1100, 1195, times, values);
+
+        assertThat(n, is(10));
+        assertThat(times[0], is(1100L));
+        assertThat(values[0], is(10.0));
+        assertThat(times[9], is(1190L));
+        assertThat(values[9], is(19.0));
+    }
+
+    @Test public void summaryReportsMinMaxMean() {
+        HistoryStore store = new HistoryStore(1000);
+        for(int i = 0; i < 100; i++) {
+            store.append(0, i, i);
+        }
+
+        HistorySummary summary = store.summarize(0, 0, 99, 10);
+        assertThat(summary.size(), is(10));
+        for(int b = 0; b < 10; b++) {
+            assertThat(summary.countAt(b), is(10L));
+            assertThat(summary.minAt(b), is(b * 10.0));
+            assertThat(summary.maxAt(b), is(b * 10.0 + 9));
+            assertThat(summary.meanAt(b), is(b * 10.0 + 4.5));
+        }
+    }
+
+    @Test public void oldSamplesAreEvicted() {
+        HistoryStore store = new HistoryStore(64);
+        for(int i = 0; i < 200; i++) {
+            store.append(1, i, i);
+        }
+
+        assertThat(store.size(1), is(64));
+        assertThat(store.getOldestTime(1), is(136L));
+        assertThat(store.getNewestTime(1), is(199L));
+        long[] times = new long[200];
+        double[] values = new double[200];
+        assertThat(store.range(1, 0, 135, times, values), is(0));
+    }
+
+    @Test public void wideSummaryMatchesRawSamples() {
+        HistoryStore store = new HistoryStore(100000);
+        int n = 50000;
+        for(int i = 0; i < n; i++) {
+            store.append(2, i, Math.sin(i / 100.0));
+        }
+
+        //wide enough that the summary is read from the pyramid levels
+        HistorySummary summary = store.summarize(2, 1234, 45678, 7);
+        long[] times = new long[n];
+        double[] values = new double[n];
+        int count = store.range(2, 1234, 45678, times, values);
+
+        long total = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for(int b = 0; b < summary.size(); b++) {
+            total += summary.countAt(b);
+            sum += summary.meanAt(b) * summary.countAt(b);
+            min = Math.min(min, summary.minAt(b));
+            max = Math.max(max, summary.maxAt(b));
+        }
+        double rawSum = 0;
+        double rawMin = Double.POSITIVE_INFINITY;
+        double rawMax = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < count; i++) {
+            rawSum += values[i];
+            rawMin = Math.min(rawMin, values[i]);
+            rawMax = Math.max(rawMax, values[i]);
+        }
+
+        assertThat(total, is((long) count));
+        assertThat(sum, closeTo(rawSum, 1e-6));
+        assertThat(min, is(rawMin));
+        assertThat(max, is(rawMax));
+    }
+
+    @Test public void unseenChannelIsEmpty() {
+        HistoryStore store = new HistoryStore();
+        assertThat(store.size(5), is(0));
+        assertThat(store.getNewestTime(5), is(TelemetryManager.NO_TIME));
+        assertThat(Double.isNaN(store.summarize(5, 0, 10, 2).meanAt(0)), is(true));
+    }
+}
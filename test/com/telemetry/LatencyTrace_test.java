@@ -0,0 +1,78 @@
+package com.telemetry;
+
+import com.telemetry.LatencyTrace.Stage;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class LatencyTrace_test {
+    @Test public void onlyTracedPassesAreStamped() {
+        LatencyTrace trace = new LatencyTrace();
+        TelemetryManager tm = new TelemetryManager();
+        tm.setLatencyTrace(trace);
+
+        tm.update(0, 1.0);
+        assertThat(trace.getCount(Stage.STORE_UPDATE), is(0L));
+
+        trace.begin(System.nanoTime());
+        tm.update(0, 2.0);
+        tm.update(1, 3.0);
+        trace.end();
+        tm.update(0, 4.0);
+
+        assertThat(trace.getCount(Stage.PORT_READ), is(1L));
+        assertThat(trace.getCount(Stage.STORE_UPDATE), is(2L));
+        assertThat(trace.getCount(Stage.LISTENERS), is(2L));
+        assertThat(trace.getCount(Stage.PAINT), is(0L));
+    }
+
+    @Test public void histogramsAndPercentiles() {
+        LatencyTrace trace = new LatencyTrace();
+        for(int i = 1; i <= 100; i++) {
+            trace.record(Stage.EDT_DELIVERY, i * 1000000L);
+        }
+        trace.record(Stage.FRAME_VALID, 500);
+
+        double[] p = trace.getPercentilesMs(Stage.EDT_DELIVERY, 50, 99, 100);
+        assertThat(p[0], is(50.0));
+        assertThat(p[1], is(99.0));
+        assertThat(p[2], is(100.0));
+        assertThat(trace.getMaxMs(Stage.EDT_DELIVERY), is(100.0));
+        assertTrue(Double.isNaN(trace.getPercentilesMs(Stage.PAINT, 50)[0]));
+
+        long[] counts = trace.getHistogram(Stage.EDT_DELIVERY);
+        long total = 0;
+        for(long c : counts) total += c;
+        assertThat(total, is(100L));
+        //1 ms falls in 512 to 1024 us, 100 ms in 65536 to 131072 us
+        assertThat(counts[10], is(1L));
+        assertThat(counts[17], greaterThan(0L));
+        assertThat(trace.getHistogram(Stage.FRAME_VALID)[0], is(1L));
+
+        trace.reset();
+        assertThat(trace.getCount(Stage.EDT_DELIVERY), is(0L));
+        assertThat(trace.getHistogram(Stage.EDT_DELIVERY)[10], is(0L));
+    }
+
+    @Test public void ringKeepsTheRecentLatencies() throws IOException {
+        LatencyTrace trace = new LatencyTrace();
+        for(int i = 0; i < LatencyTrace.RING_SIZE; i++) {
+            trace.record(Stage.PAINT, 90000000L);
+        }
+        for(int i = 0; i < LatencyTrace.RING_SIZE; i++) {
+            trace.record(Stage.PAINT, 2000000L);
+        }
+        assertThat(trace.getCount(Stage.PAINT), is(2L * LatencyTrace.RING_SIZE));
+        assertThat(trace.getPercentilesMs(Stage.PAINT, 100)[0], is(2.0));
+        assertThat(trace.getMaxMs(Stage.PAINT), is(90.0));
+
+        StringWriter out = new StringWriter();
+        trace.write(out);
+        assertThat(out.toString(), containsString("Paint complete,8192,2.000,2.000,2.000,90.000"));
+        assertThat(out.toString(), containsString("Paint complete,2048,4096"));
+    }
+}
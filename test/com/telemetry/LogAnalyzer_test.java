@@ -0,0 +1,132 @@
+package com.telemetry;
+
+import com.logging.LogFiles;
+import com.serial.Serial;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class LogAnalyzer_test {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final List<String> NAMES = Arrays.asList("Latitude", "Longitude");
+
+    //a drive heading north at 1e-5 degrees a row, 100 ms apart
+    private Path write(Path path, long start, int rows, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (TelemetryLogWriter log = new TelemetryLogWriter(path, start, NAMES)) {
+            TelemetryManager tm = new TelemetryManager();
+            for(int i = 0; i < rows; i++) {
+                tm.update(Serial.LATITUDE, 45.0 + i * 1e-5);
+                tm.update(Serial.LONGITUDE, -93.0);
+                tm.update(Serial.SPEED, random.nextDouble() * 3);
+                tm.update(Serial.VOLTAGE, 12.0 - i * 0.001);
+                tm.update(Serial.DRIVESTATE, (i < rows / 2) ? Serial.DRIVE_STATE_AUTO
+                                                            : Serial.DRIVE_STATE_STOP);
+                log.writeRow(start + (i + 1) * 100, tm.snapshot());
+            }
+        }
+        //settled logs are the ones cached
+        Files.setLastModifiedTime(path, FileTime.fromMillis(0));
+        return path;
+    }
+
+    @Test public void totals() throws IOException {
+        Path log = write(folder.getRoot().toPath().resolve("a.tlog"), 1000, 101, 1);
+        LogSummary s = new LogAnalyzer(null).summarize(log);
+
+        assertThat(s.getName(), is("a.tlog"));
+        assertThat(s.getRows(), is(101L));
+        assertThat(s.getStartTime(), is(1100L));
+        assertThat(s.getDuration(), is(10000L));
+        assertThat(s.getMinVoltage(), closeTo(11.9, 1e-9));
+        assertThat(s.getMaxSpeed(), lessThan(3.0));
+        //100 steps of 1e-5 degrees of latitude, about 1.11 m each
+        assertThat(s.getDistance(), closeTo(111.2, 0.5));
+        assertThat(s.getStateTime(Serial.DRIVE_STATE_AUTO), is(5000L));
+        assertThat(s.getStateTime(Serial.DRIVE_STATE_STOP), is(5000L));
+        assertThat(LogAnalyzer.describeStates(s),
+                   is("stopped 0:00:05, auto 0:00:05"));
+    }
+
+    @Test public void slicesMatchSequentialRead() throws IOException {
+        Path log = write(folder.getRoot().toPath().resolve("b.tlog"), 0, 20000, 2);
+        LogSummary whole = new LogAnalyzer(null, ForkJoinPool.commonPool(),
+                                           Long.MAX_VALUE).summarize(log);
+        LogAnalyzer sliced = new LogAnalyzer(null, ForkJoinPool.commonPool(), 4096);
+        LogSummary parts = sliced.summarize(log);
+
+        assertThat(sliced.getDecodedBytes(), is(Files.size(log)));
+        assertThat(parts.getRows(), is(whole.getRows()));
+        assertThat(parts.getStartTime(), is(whole.getStartTime()));
+        assertThat(parts.getEndTime(), is(whole.getEndTime()));
+        assertThat(parts.getDistance(), closeTo(whole.getDistance(), 1e-6));
+        assertThat(parts.getMaxSpeed(), is(whole.getMaxSpeed()));
+        assertThat(parts.getMinVoltage(), is(whole.getMinVoltage()));
+        assertThat(parts.getStateTime(Serial.DRIVE_STATE_AUTO),
+                   is(whole.getStateTime(Serial.DRIVE_STATE_AUTO)));
+        assertThat(parts.getStateTime(Serial.DRIVE_STATE_STOP),
+                   is(whole.getStateTime(Serial.DRIVE_STATE_STOP)));
+    }
+
+    @Test public void rotatedSessionIsOneSummary() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        Path first = write(dir.resolve("c.tlog"), 0, 50, 3);
+        Path second = write(LogFiles.segmentPath(first, 1), 5000, 50, 4);
+        LogFiles.compress(second).get();
+
+        List<LogSummary> sessions = new LogAnalyzer(null).analyze(dir);
+        assertThat(sessions.size(), is(1));
+        assertThat(sessions.get(0).getName(), is("c.tlog"));
+        assertThat(sessions.get(0).getRows(), is(100L));
+        assertThat(sessions.get(0).getDuration(), is(10000L - 100));
+    }
+
+    @Test public void corruptSessionIsLeftOut() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        write(dir.resolve("f.tlog"), 0, 50, 6);
+        Path bad = write(dir.resolve("g.tlog"), 0, 0, 7);
+        //a row whose channel gap is a varint of -1, taking the id negative
+        byte[] row = { 0x02, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+                       0x0f, 0x00, 0x00 };
+        Files.write(bad, row, StandardOpenOption.APPEND);
+
+        List<LogSummary> sessions = new LogAnalyzer(null).analyze(dir);
+        assertThat(sessions.size(), is(1));
+        assertThat(sessions.get(0).getName(), is("f.tlog"));
+    }
+
+    @Test public void cacheIsKeyedByContents() throws IOException {
+        Path dir = folder.newFolder("logs").toPath();
+        Path cache = folder.getRoot().toPath().resolve(LogAnalyzer.CACHE_NAME);
+        write(dir.resolve("d.tlog"), 0, 500, 5);
+        LogSummary first = new LogAnalyzer(cache).analyze(dir).get(0);
+
+        //renamed, and read by a fresh analyzer
+        Files.move(dir.resolve("d.tlog"), dir.resolve("e.tlog"));
+        LogAnalyzer again = new LogAnalyzer(cache);
+        LogSummary second = again.analyze(dir).get(0);
+        assertThat(again.getCacheHits(), is(1));
+        assertThat(again.getDecodedBytes(), is(0L));
+        assertThat(second.getName(), is("e.tlog"));
+        assertThat(second.getDistance(), is(first.getDistance()));
+
+        //changed contents are decoded again
+        write(dir.resolve("e.tlog"), 0, 600, 5);
+        LogAnalyzer changed = new LogAnalyzer(cache);
+        assertThat(changed.analyze(dir).get(0).getRows(), is(600L));
+        assertThat(changed.getCacheHits(), is(0));
+    }
+}
@@ -0,0 +1,125 @@
+package com.telemetry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import com.graph.DataSource;
+import com.graph.RangeSource;
+import com.logging.LogFiles;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class LogPyramid_test {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int ROWS = 100000;
+
+    //channel 0 counts rows; channel 1 spikes to 100 on a single row
+    private Path write(String name) throws IOException {
+        Path path = folder.getRoot().toPath().resolve(name);
+        try (TelemetryLogWriter log = new TelemetryLogWriter(
+                path, 0, Arrays.asList("Count", "Spike"))) {
+            TelemetryManager tm = new TelemetryManager();
+            for(int i = 0; i < ROWS; i++) {
+                tm.update(0, i);
+                tm.update(1, (i == 77777) ? 100 : 1);
+                log.writeRow(i * 10L, tm.snapshot());
+            }
+        }
+        return path;
+    }
+
+    @Test public void extremesAtEveryZoom() throws IOException {
+        LogPyramid pyramid = LogPyramid.build(write("a.tlog"), null);
+        assertThat(pyramid.getStartTime(), is(0L));
+        assertThat(pyramid.getEndTime(), is((ROWS - 1) * 10L));
+        assertThat(pyramid.getChannelCount(), is(2));
+        assertThat(pyramid.getBuckets(), is(LogPyramid.MAX_BUCKETS));
+        assertThat(pyramid.getLevels(), greaterThan(1));
+
+        //the whole log from the coarsest level
+        assertThat(pyramid.min(0, 0.0, 1.0), is(0.0));
+        assertThat(pyramid.max(0, 0.0, 1.0), is(ROWS - 1.0));
+        //a one row spike survives every level
+        assertThat(pyramid.max(1, 0.0, 1.0), is(100.0));
+        assertThat(pyramid.min(1, 0.0, 1.0), is(1.0));
+
+        //the spike is found in a narrow span around it but not beside it
+        double at = 77777 / (double) ROWS;
+        assertThat(pyramid.max(1, at - 0.001, at + 0.001), is(100.0));
+        assertThat(pyramid.max(1, 0.1, 0.2), is(1.0));
+
+        //a middle span brackets the rows inside it
+        assertThat(pyramid.min(0, 0.5, 0.6), allOf(greaterThan(49000.0), lessThanOrEqualTo(50000.0)));
+        assertThat(pyramid.max(0, 0.5, 0.6), allOf(greaterThanOrEqualTo(60000.0), lessThan(61000.0)));
+
+        assertTrue(Double.isNaN(pyramid.min(0, 1.5, 2.0)));
+        assertTrue(Double.isNaN(pyramid.min(5, 0.0, 1.0)));
+    }
+
+    @Test public void sourcesUseHeaderNames() throws IOException {
+        LogPyramid pyramid = LogPyramid.load(write("b.tlog"), null);
+        List<DataSource> sources = pyramid.getSources();
+        assertThat(sources.size(), is(2));
+        assertThat(sources.get(1).getName(), is("Spike"));
+        RangeSource spike = (RangeSource) sources.get(1);
+        assertThat(spike.max(0.0, 1.0), is(100.0));
+        assertThat(sources.get(0).get(0.0), lessThan(10.0));
+    }
+
+    @Test public void sidecarIsReusedUntilTheLogChanges() throws IOException {
+        Path log = write("c.tlog");
+        assertNull(LogPyramid.open(log));
+        double[] last = { 0 };
+        LogPyramid.load(log, fraction -> last[0] = fraction);
+        assertThat(last[0], is(1.0));
+        assertTrue(Files.exists(LogPyramid.pathFor(log)));
+        assertNotNull(LogPyramid.open(log));
+
+        Files.write(log, new byte[] { 0 }, StandardOpenOption.APPEND);
+        assertNull(LogPyramid.open(log));
+    }
+
+    @Test public void sessionSpansEverySegment() throws Exception {
+        Path first = folder.getRoot().toPath().resolve("d.tlog");
+        //three rotated segments, the spike in the last one
+        for(int s = 0; s < 3; s++) {
+            try (TelemetryLogWriter log = new TelemetryLogWriter(
+                    LogFiles.segmentPath(first, s), 0, Arrays.asList("Count", "Spike"))) {
+                TelemetryManager tm = new TelemetryManager();
+                for(int i = s * 1000; i < (s + 1) * 1000; i++) {
+                    tm.update(0, i);
+                    tm.update(1, (i == 2500) ? 100 : 1);
+                    log.writeRow(i * 10L, tm.snapshot());
+                }
+            }
+        }
+        LogFiles.compress(first).get();
+
+        double[] last = { 0 };
+        SessionPyramid session = SessionPyramid.load(
+            LogFiles.compressedPath(first), fraction -> last[0] = fraction);
+        assertThat(last[0], is(1.0));
+        assertThat(session.getSegmentCount(), is(3));
+        assertThat(session.getStartTime(), is(0L));
+        assertThat(session.getEndTime(), is(29990L));
+
+        assertThat(session.min(0, 0.0, 1.0), is(0.0));
+        assertThat(session.max(0, 0.0, 1.0), is(2999.0));
+        assertThat(session.max(1, 0.8, 0.9), is(100.0));
+        assertThat(session.max(1, 0.0, 0.5), is(1.0));
+        //a span across a segment boundary draws on both
+        assertThat(session.min(0, 0.3, 0.4), allOf(greaterThan(800.0), lessThan(1000.0)));
+        assertThat(session.max(0, 0.3, 0.4), allOf(greaterThan(1000.0), lessThan(1300.0)));
+
+        List<DataSource> sources = session.getSources();
+        assertThat(sources.get(1).getName(), is("Spike"));
+    }
+}
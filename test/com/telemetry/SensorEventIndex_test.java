@@ -0,0 +1,84 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class SensorEventIndex_test {
+    private static final int LEFT = Serial.BUMPER_FIRST;
+    private static final int SONAR = Serial.SONAR_FIRST;
+
+    @Test public void edgesOnlyAreIndexed() {
+        TelemetryManager tm = new TelemetryManager();
+        SensorEventIndex events = new SensorEventIndex();
+        events.attach(tm);
+
+        tm.update(Serial.LATITUDE, 45.0, 1000, 1000);
+        tm.update(Serial.LONGITUDE, -93.0, 1000, 1000);
+        //a bumper held down is one hit
+        tm.update(LEFT, 1, 1100, 1100);
+        tm.update(LEFT, 1, 1200, 1200);
+        tm.update(LEFT, 0, 1300, 1300);
+        tm.update(LEFT, 1, 1400, 1400);
+        //an unreported sonar reads 0 and is not an obstacle until it has
+        //read far first
+        tm.update(SONAR, 0, 1500, 1500);
+        tm.update(SONAR, 5000, 1600, 1600);
+        tm.update(SONAR, 800, 1700, 1700);
+        tm.update(SONAR, 700, 1800, 1800);
+
+        long[] times = new long[10];
+        int[] channels = new int[10];
+        double[] lats = new double[10];
+        double[] lons = new double[10];
+        int n = events.range(0, Long.MAX_VALUE, times, channels, lats, lons);
+        assertThat(n, is(3));
+        assertThat(times[0], is(1100L));
+        assertThat(times[1], is(1400L));
+        assertThat(times[2], is(1700L));
+        assertThat(channels[2], is(SONAR));
+        assertThat(lats[0], is(45.0));
+        assertThat(lons[0], is(-93.0));
+        assertTrue(SensorEventIndex.isBumper(channels[0]));
+
+        events.detach();
+        tm.update(LEFT, 0, 1900, 1900);
+        tm.update(LEFT, 1, 2000, 2000);
+        assertThat(events.size(), is(3));
+    }
+
+    @Test public void rangesSearchAFullRing() {
+        SensorEventIndex events = new SensorEventIndex(100);
+        for(int i = 1; i <= 250; i++) {
+            events.update(LEFT, 1, i * 10);
+            events.update(LEFT, 0, i * 10 + 5);
+        }
+        assertThat(events.size(), is(100));
+        assertThat(events.count(0, 1505), is(0));
+        assertThat(events.count(1510, 2000), is(50));
+        assertThat(events.count(2000, 2000), is(1));
+
+        long[] times = new long[5];
+        assertThat(events.range(2000, Long.MAX_VALUE, times, null, null, null), is(5));
+        assertThat(times[0], is(2000L));
+        assertThat(events.latest(times, null, null, null), is(5));
+        assertThat(times[4], is(2500L));
+    }
+
+    @Test public void seekingBackDropsLaterEvents() {
+        SensorEventIndex events = new SensorEventIndex();
+        for(int i = 1; i <= 10; i++) {
+            events.update(LEFT, 1, i * 100);
+            events.update(LEFT, 0, i * 100 + 50);
+        }
+        events.update(LEFT, 1, 420);
+        assertThat(events.size(), is(5));
+        assertThat(events.count(0, 2000), is(5));
+        long[] times = new long[5];
+        events.latest(times, null, null, null);
+        assertThat(times[3], is(400L));
+        assertThat(times[4], is(420L));
+    }
+}
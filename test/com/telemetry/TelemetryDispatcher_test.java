@@ -0,0 +1,62 @@
+package com.telemetry;
+
+import com.serial.Serial;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.mockito.Mockito.any;
+import static org.hamcrest.Matchers.*;
+
+public class TelemetryDispatcher_test {
+    private TelemetryManager tm;
+    private TelemetryDispatcher dispatcher;
+
+    @Before public void setup() {
+        tm = new TelemetryManager();
+        dispatcher = tm.getDispatcher();
+        //keep the frame timer out of the way; frames are flushed by hand
+        dispatcher.setFrameRate(1);
+    }
+
+    @Test public void burstIsConflatedToLatestValue() {
+        TelemetryListener tl = mock(TelemetryListener.class);
+        tm.registerUiListener(2, tl);
+
+        for(int i = 1; i <= 100; i++) {
+            tm.update(2, i);
+        }
+        verify(tl, never()).update(anyDouble());
+
+        dispatcher.flush();
+        verify(tl, times(1)).update(anyDouble());
+        verify(tl).update(100.0);
+        assertThat(dispatcher.getDroppedCount(), is(99L));
+        assertThat(dispatcher.getDeliveredCount(), is(1L));
+        assertThat(dispatcher.getMaxLagMs(), greaterThanOrEqualTo(0.0));
+    }
+
+    @Test public void quietChannelsAreNotRedelivered() {
+        TelemetryListener tl = mock(TelemetryListener.class);
+        tm.registerUiListener(2, tl);
+
+        tm.update(2, 5.0);
+        dispatcher.flush();
+        dispatcher.flush();
+        verify(tl, times(1)).update(5.0);
+    }
+
+    @Test public void recordsAreConflatedPerFrame() {
+        TelemetryRecord.Listener rl = mock(TelemetryRecord.Listener.class);
+        tm.registerUiListener(TelemetryRecord.Kind.POSITION, rl);
+
+        tm.update(Serial.LATITUDE, 1.0);
+        tm.commit();
+        tm.update(Serial.LATITUDE, 2.0);
+        tm.commit();
+
+        dispatcher.flush();
+        verify(rl, times(1)).update(any(TelemetryRecord.class));
+        assertThat(dispatcher.getDroppedCount(), is(1L));
+    }
+}
@@ -0,0 +1,114 @@
+package com.telemetry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import com.util.Await;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class TelemetryEventLog_test {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void fullQueueRejectsUntilDrained() {
+        TelemetryEventQueue queue = new TelemetryEventQueue(4);
+        assertThat(queue.capacity(), is(4));
+        for(int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i, i * 10, i / 2.0));
+        }
+        assertFalse(queue.offer(9, 90, 0));
+
+        assertTrue(queue.ready());
+        assertThat(queue.peekId(), is(0));
+        queue.remove();
+        assertTrue(queue.offer(4, 40, 2.0));
+
+        for(int i = 1; i <= 4; i++) {
+            assertTrue(queue.ready());
+            assertThat(queue.peekId(), is(i));
+            assertThat(queue.peekTime(), is(i * 10L));
+            assertThat(queue.peekValue(), is(i / 2.0));
+            queue.remove();
+        }
+        assertFalse(queue.ready());
+    }
+
+    @Test public void everyUpdateFromEveryThreadIsLogged()
+            throws IOException, InterruptedException {
+        Path path = folder.newFile("events.tlog").toPath();
+        final TelemetryEventLog events = new TelemetryEventLog(
+            new TelemetryLogWriter(path, 0, Arrays.<String>asList()), 1024);
+
+        final int perThread = 20000;
+        Thread[] producers = new Thread[4];
+        for(int t = 0; t < producers.length; t++) {
+            final int id = t;
+            producers[t] = new Thread(() -> {
+                for(int i = 0; i < perThread; i++) {
+                    while(!events.record(id, i, i)) Thread.yield();
+                }
+            });
+            producers[t].start();
+        }
+        for(Thread t : producers) t.join();
+        events.close();
+
+        assertThat(events.getWrittenCount(), is(4L * perThread));
+        assertThat(events.getCommitCount(), greaterThan(0L));
+
+        int[] next = new int[producers.length];
+        try (TelemetryLogReader log =
+                new TelemetryLogReader(Files.newInputStream(path))) {
+            while(log.next()) {
+                assertThat(log.changedCount(), is(1));
+                int id = log.changedId(0);
+                //each producer's updates stay in order
+                assertThat(log.getValue(id), is((double) next[id]));
+                assertThat(log.getTime(), is((long) next[id]));
+                next[id]++;
+            }
+        }
+        for(int n : next) assertThat(n, is(perThread));
+    }
+
+    @Test public void idleWriterWakesForUpdates()
+            throws IOException, InterruptedException {
+        Path path = folder.newFile("idle.tlog").toPath();
+        final TelemetryEventLog events = new TelemetryEventLog(
+            new TelemetryLogWriter(path, 0, Arrays.<String>asList()));
+        Thread.sleep(50);
+
+        events.record(1, 100, 2.0);
+        Await.until(() -> events.getWrittenCount() == 1);
+        //nothing else arrives, so only the deadline ends the next park
+        Await.until(() -> events.getCommitCount() == 1);
+        events.close();
+    }
+
+    @Test public void repeatedValuesAreStillRecorded() throws IOException {
+        Path path = folder.newFile("repeat.tlog").toPath();
+        TelemetryEventLog events = new TelemetryEventLog(
+            new TelemetryLogWriter(path, 0, Arrays.<String>asList()));
+        TelemetryManager tm = new TelemetryManager();
+        events.attach(tm);
+        tm.update(2, 5.0, 100, 100);
+        tm.update(2, 5.0, 200, 200);
+        events.close();
+
+        try (TelemetryLogReader log =
+                new TelemetryLogReader(Files.newInputStream(path))) {
+            assertTrue(log.next());
+            assertThat(log.getTime(), is(100L));
+            assertTrue(log.next());
+            assertThat(log.getTime(), is(200L));
+            assertThat(log.changedCount(), is(1));
+            assertThat(log.getValue(2), is(5.0));
+            assertFalse(log.next());
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.telemetry;
+
+import com.logging.LogFiles;
+import com.logging.RotationPolicy;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class TelemetryLog_test {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(long start) throws IOException {
+        Path path = folder.newFile("test.tlog").toPath();
+        try (TelemetryLogWriter log = new TelemetryLogWriter(
+                path, start, Arrays.asList("Latitude", "Longitude", "Heading"))) {
+            TelemetryManager tm = new TelemetryManager();
+            tm.update(0, 44.97);
+            tm.update(1, -93.26);
+            log.writeRow(start + 250, tm.snapshot());
+            tm.update(2, 180.5f);
+            log.writeRow(start + 500, tm.snapshot());
+            log.writeSample(start + 600, 4, -1.0 / 3);
+        }
+        return path;
+    }
+
+    @Test public void rowsRoundTrip() throws IOException {
+        Path path = write(1000);
+        try (TelemetryLogReader log =
+                new TelemetryLogReader(Files.newInputStream(path))) {
+            assertThat(log.getStartTime(), is(1000L));
+            assertThat(log.getChannelNames(), contains("Latitude", "Longitude", "Heading"));
+
+            assertTrue(log.next());
+            assertThat(log.getTime(), is(1250L));
+            assertThat(log.changedCount(), is(2));
+            assertThat(log.getValue(0), is(44.97));
+            assertThat(log.getValue(1), is(-93.26));
+
+            assertTrue(log.next());
+            assertThat(log.getTime(), is(1500L));
+            assertThat(log.changedCount(), is(1));
+            assertThat(log.changedId(0), is(2));
+            assertThat(log.getValue(2), is((double) 180.5f));
+            assertThat(log.getValue(0), is(44.97));
+
+            assertTrue(log.next());
+            assertThat(log.getValue(4), is(-1.0 / 3));
+            assertThat(log.getChannelCount(), is(5));
+            assertFalse(log.next());
+        }
+    }
+
+    @Test public void unchangedChannelsAreNotWritten() throws IOException {
+        Path path = folder.newFile("same.tlog").toPath();
+        try (TelemetryLogWriter log = new TelemetryLogWriter(
+                path, 0, Arrays.<String>asList())) {
+            TelemetryManager tm = new TelemetryManager();
+            tm.update(3, 12.0);
+            log.writeRow(10, tm.snapshot());
+            long first = log.size();
+            //within one index period, so no keyframe is added
+            for(int i = 0; i < 100; i++) {
+                log.writeRow(11 + i, tm.snapshot());
+            }
+            //each unchanged row is one time byte and the end marker
+            assertThat(log.size() - first, is(200L));
+        }
+    }
+
+    @Test public void convertsToLegacyCsv() throws IOException {
+        Path path = write(0);
+        StringWriter csv = new StringWriter();
+        try (TelemetryLogReader log =
+                new TelemetryLogReader(Files.newInputStream(path))) {
+            TelemetryLogConverter converter = new TelemetryLogConverter();
+            assertThat(converter.toCsv(log, csv), is(3L));
+        }
+        String[] lines = csv.toString().split(System.lineSeparator());
+        assertThat(lines[0], is("250, 44.97, -93.26, 0, "));
+        assertThat(lines[1], is("500, 44.97, -93.26, 180.5, "));
+        assertThat(lines[2], is("600, 44.97, -93.26, 180.5, 0, -0.33333333, "));
+    }
+
+    @Test public void truncatedRowEndsConversion() throws IOException {
+        Path path = write(0);
+        byte[] bytes = Files.readAllBytes(path);
+        InputStream cut = new ByteArrayInputStream(bytes, 0, bytes.length - 2);
+        try (TelemetryLogReader log = new TelemetryLogReader(cut)) {
+            assertThat(new TelemetryLogConverter().toCsv(log, new StringWriter()), is(2L));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        new TelemetryLogReader(new ByteArrayInputStream("0, 1, 2, ".getBytes()));
+    }
+
+    @Test public void rotatedSegmentsReadBackAsOneLog() throws Exception {
+        Path first = folder.getRoot().toPath().resolve("rotated.tlog");
+        try (TelemetryLogWriter log = new TelemetryLogWriter(
+                first, 0, Arrays.asList("a", "b"))) {
+            log.setRotation(new RotationPolicy(256, 0, true));
+            for(int i = 0; i < 200; i++) {
+                log.writeSample(i, i % 2, i);
+            }
+        }
+        LogFiles.awaitCompression();
+
+        List<Path> segments = LogFiles.segments(first);
+        assertThat(segments.size(), greaterThan(2));
+        assertTrue(LogFiles.isCompressed(segments.get(0)));
+
+        StringWriter csv = new StringWriter();
+        assertThat(new TelemetryLogConverter().toCsv(segments, csv), is(200L));
+        String[] lines = csv.toString().split(System.lineSeparator());
+        assertThat(lines[199], is("199, 198, 199, "));
+    }
+
+    @Test public void seeksThroughIndex() throws IOException {
+        Path path = folder.newFile("seek.tlog").toPath();
+        TelemetryManager tm = new TelemetryManager();
+        try (TelemetryLogWriter log = new TelemetryLogWriter(
+                path, 0, Arrays.<String>asList())) {
+            //ten minutes at 10 Hz, channels changing at different rates
+            for(int i = 0; i < 6000; i++) {
+                tm.update(0, i);
+                if(i % 7 == 0) tm.update(1, i / 7);
+                if(i == 50) tm.update(2, -1);
+                log.writeRow(i * 100L, tm.snapshot());
+            }
+        }
+
+        TelemetryLogIndex index = TelemetryLogIndex.open(path);
+        assertThat(index.size(), is(600));
+        assertThat(index.floor(123456), is(123));
+        assertThat(index.timeAt(123), is(123000L));
+
+        for(long target : new long[] { 0, 150, 99999, 345678, 599900 }) {
+            try (TelemetryLogReader log = TelemetryLogReader.openAt(path, target)) {
+                assertTrue(log.advanceTo(target));
+                int i = (int) ((target + 99) / 100);
+                assertThat(log.getTime(), is(i * 100L));
+                assertThat(log.getRow(), is((long) i));
+                assertThat(log.getValue(0), is((double) i));
+                assertThat(log.getValue(1), is((double) (i - i % 7) / 7));
+                assertThat(log.getValue(2), is(i >= 50 ? -1.0 : 0.0));
+            }
+        }
+
+        //keyframes are invisible when reading from the front
+        try (TelemetryLogReader log = TelemetryLogReader.open(path)) {
+            long rows = 0;
+            while(log.next()) {
+                assertThat(log.getRow(), is(rows++));
+            }
+            assertThat(rows, is(6000L));
+        }
+    }
+
+    @Test public void indexNeverPointsPastWrittenRows() throws IOException {
+        Path path = folder.newFile("live.tlog").toPath();
+        TelemetryManager tm = new TelemetryManager();
+        try (TelemetryLogWriter log = new TelemetryLogWriter(
+                path, 0, Arrays.<String>asList())) {
+            //a keyframe every row, enough to fill the index buffer
+            for(int i = 0; i < 1000; i++) {
+                tm.update(0, i);
+                log.writeRow(i * (long) TelemetryLogWriter.INDEX_PERIOD_MS,
+                             tm.snapshot());
+
+                TelemetryLogIndex index = TelemetryLogIndex.open(path);
+                if(index == null || index.size() == 0) continue;
+                assertThat(index.offsetAt(index.size() - 1),
+                           lessThan(Files.size(path)));
+            }
+        }
+    }
+
+    @Test public void seeksInCompressedSegment() throws Exception {
+        Path path = folder.newFile("packed.tlog").toPath();
+        try (TelemetryLogWriter log = new TelemetryLogWriter(
+                path, 0, Arrays.<String>asList())) {
+            for(int i = 0; i < 1000; i++) {
+                log.writeSample(i * 100L, 3, i);
+            }
+        }
+        Path packed = LogFiles.compress(path).get();
+        assertTrue(LogFiles.isCompressed(packed));
+
+        try (TelemetryLogReader log = TelemetryLogReader.openAt(packed, 55500)) {
+            assertTrue(log.advanceTo(55500));
+            assertThat(log.getRow(), is(555L));
+            assertThat(log.getValue(3), is(555.0));
+        }
+    }
+}
@@ -1,8 +1,15 @@
 package com.telemetry;
 
+import com.graph.DataSource;
+import com.serial.Serial;
+
+import java.util.List;
+
 import org.junit.*;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
+import static org.mockito.Mockito.any;
+import org.mockito.ArgumentCaptor;
 import static org.hamcrest.Matchers.*;
 
 public class TelemetryManager_test {
@@ -64,4 +71,100 @@ public class TelemetryManager_test {
         newIndex = tm.changeIndex();
         assertThat(newIndex, greaterThan(index));
     }
+
+    @Test public void dropsOutOfOrderSamples(){
+        TelemetryManager tm = new TelemetryManager();
+        TelemetryListener tl = mock(TelemetryListener.class);
+        tm.registerListener(1, tl);
+
+        tm.update(1, 10.0, 2000L, 2050L);
+        tm.update(1, 20.0, 1000L, 2060L);
+
+        assertThat(tm.get(1), is(10.0));
+        assertThat(tm.getLatency(1), is(50L));
+        assertThat(tm.getStaleCount(), is(1));
+        verify(tl, never()).update(20.0);
+    }
+
+    @Test public void ignoresIdsOutsideStore(){
+        TelemetryManager tm = new TelemetryManager();
+        tm.update(-1, 5.0);
+        tm.update(Serial.MAX_TELEMETRY, 5.0);
+        assertThat(tm.maxIndex(), is(0));
+        assertThat(tm.get(-1), is(0.0));
+    }
+
+    @Test public void removingOneListenerKeepsOthers(){
+        TelemetryManager tm = new TelemetryManager();
+        TelemetryListener a = mock(TelemetryListener.class);
+        TelemetryListener b = mock(TelemetryListener.class);
+        tm.registerListener(4, a);
+        tm.registerListener(4, b);
+        tm.removeListener(a);
+
+        tm.update(4, 3.0);
+        verify(a, never()).update(3.0);
+        verify(b).update(3.0);
+    }
+
+    @Test public void recordNotifiedOncePerCommit(){
+        TelemetryManager tm = new TelemetryManager();
+        TelemetryRecord.Listener rl = mock(TelemetryRecord.Listener.class);
+        tm.registerListener(TelemetryRecord.Kind.POSITION, rl);
+
+        tm.update(Serial.LATITUDE, 45.0);
+        tm.update(Serial.LONGITUDE, -93.0);
+        verify(rl, never()).update(any(TelemetryRecord.class));
+
+        tm.commit();
+        tm.commit();
+        ArgumentCaptor<TelemetryRecord> record =
+            ArgumentCaptor.forClass(TelemetryRecord.class);
+        verify(rl, times(1)).update(record.capture());
+        assertThat(record.getValue().get(TelemetryRecord.LATITUDE), is(45.0));
+        assertThat(record.getValue().get(TelemetryRecord.LONGITUDE), is(-93.0));
+    }
+
+    @Test public void unrelatedChannelsLeaveRecordsClean(){
+        TelemetryManager tm = new TelemetryManager();
+        TelemetryRecord.Listener rl = mock(TelemetryRecord.Listener.class);
+        tm.registerListener(TelemetryRecord.Kind.ATTITUDE, rl);
+
+        tm.update(Serial.LATITUDE, 45.0);
+        tm.commit();
+        verify(rl, never()).update(any(TelemetryRecord.class));
+    }
+
+    @Test public void graphSourcesAreLazy(){
+        TelemetryManager tm = new TelemetryManager();
+        tm.update(3, 1.0);
+        List<DataSource> sources = tm.getDataSources();
+        assertThat(sources.size(), is(4));
+
+        ChannelSource source = (ChannelSource) sources.get(3);
+        assertThat(source.isMaterialized(), is(false));
+        tm.update(3, 2.0);
+        assertThat(source.isMaterialized(), is(false));
+
+        source.get(1.0);
+        assertThat(source.isMaterialized(), is(true));
+        tm.update(3, 5.0);
+        assertThat(source.get(1.0), is(5.0));
+        assertThat(((ChannelSource) sources.get(0)).isMaterialized(), is(false));
+    }
+
+    @Test public void graphSourcesFillFromHistory(){
+        TelemetryManager tm = new TelemetryManager();
+        HistoryStore history = new HistoryStore(4096);
+        history.attach(tm);
+        tm.setHistory(history);
+        for(int i = 1; i <= 1500; i++) {
+            tm.update(2, i, i, i);
+        }
+
+        ChannelSource source = (ChannelSource) tm.getDataSources().get(2);
+        assertThat(source.get(1.0), is(1500.0));
+        assertThat(source.get(0.0), is(501.0));
+        assertThat(source.getTime(1.0), is(1500L));
+    }
 }
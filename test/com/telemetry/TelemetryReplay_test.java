@@ -0,0 +1,98 @@
+package com.telemetry;
+
+import com.logging.RotationPolicy;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class TelemetryReplay_test {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+    private Path log;
+
+    @Before public void record() throws Exception {
+        log = folder.getRoot().toPath().resolve("session.tlog");
+        TelemetryManager tm = new TelemetryManager();
+        try (TelemetryLogWriter writer = new TelemetryLogWriter(
+                log, 0, Arrays.asList("a", "b", "c"))) {
+            //split over several segments to replay across them
+            writer.setRotation(new RotationPolicy(1024, 0, false));
+            tm.update(2, 7.0);
+            for(int i = 0; i < 600; i++) {
+                tm.update(0, i);
+                tm.update(1, i % 10);
+                writer.writeRow(10000 + i * 10L, tm.snapshot());
+            }
+        }
+    }
+
+    @Test public void seekRestoresRecordedState() throws Exception {
+        TelemetryManager display = new TelemetryManager();
+        try (TelemetryReplay replay = new TelemetryReplay(log, display)) {
+            assertThat(replay.getStartTime(), is(10000L));
+            assertThat(replay.getEndTime(), is(15990L));
+            assertThat(display.get(0), is(0.0));
+            assertThat(display.get(2), is(7.0));
+
+            replay.seek(14567);
+            assertThat(replay.getPosition(), is(14567L));
+            assertThat(display.get(0), is(456.0));
+            assertThat(display.get(1), is(6.0));
+            assertThat(display.get(2), is(7.0));
+
+            //backwards as well as forwards
+            replay.seek(10105);
+            assertThat(display.get(0), is(10.0));
+            assertThat(display.get(2), is(7.0));
+        }
+    }
+
+    @Test public void requestedSeeksKeepTheLatest() throws Exception {
+        TelemetryManager display = new TelemetryManager();
+        try (TelemetryReplay replay = new TelemetryReplay(log, display)) {
+            final CountDownLatch settled = new CountDownLatch(1);
+            replay.addListener(r -> {
+                if(r.getPosition() == 15000L) settled.countDown();
+            });
+            for(long t = 10000; t <= 15000; t += 10) {
+                replay.requestSeek(t);
+            }
+            assertTrue(settled.await(5, TimeUnit.SECONDS));
+            assertThat(display.get(0), is(500.0));
+        }
+    }
+
+    @Test public void playsToTheEndAcrossSegments() throws Exception {
+        TelemetryManager display = new TelemetryManager();
+        final int[] updates = new int[1];
+        display.registerListener(0, new TelemetryListener() {
+            public void update(double v) {
+                updates[0]++;
+            }
+        });
+
+        try (TelemetryReplay replay = new TelemetryReplay(log, display)) {
+            replay.seek(14000);
+            updates[0] = 0;
+            replay.setSpeed(100);
+            assertThat(replay.getSpeed(), is(TelemetryReplay.MAX_SPEED));
+            replay.play();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while(replay.isPlaying() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(replay.isPlaying());
+            assertThat(replay.getPosition(), is(15990L));
+            assertThat(display.get(0), is(599.0));
+            //every recorded row after the seek point is played
+            assertThat(updates[0], is(199));
+        }
+    }
+}
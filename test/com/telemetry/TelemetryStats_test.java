@@ -0,0 +1,123 @@
+package com.telemetry;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class TelemetryStats_test {
+    private static double exactQuantile(double[] sorted, double q) {
+        return sorted[(int) (q * (sorted.length - 1))];
+    }
+
+    private static void assertQuantiles(QuantileSketch sketch, double[] data) {
+        double[] sorted = data.clone();
+        Arrays.sort(sorted);
+        for(double q : new double[] { 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99 }) {
+            double exact = exactQuantile(sorted, q);
+            assertThat("q" + q, sketch.quantile(q),
+                closeTo(exact, Math.abs(exact) * sketch.getAccuracy() + 1e-9));
+        }
+        assertThat(sketch.quantile(0), is(sorted[0]));
+        assertThat(sketch.quantile(1), is(sorted[sorted.length - 1]));
+    }
+
+    @Test public void sketchIsWithinRelativeError() {
+        Random random = new Random(7);
+        double[] data = new double[100000];
+        for(int i = 0; i < data.length; i++) {
+            //exponential, like current draw
+            data[i] = -Math.log(1 - random.nextDouble()) * 5;
+        }
+        QuantileSketch sketch = new QuantileSketch();
+        for(double v : data) sketch.add(v);
+        assertThat(sketch.getCount(), is((long) data.length));
+        assertQuantiles(sketch, data);
+    }
+
+    @Test public void sketchHandlesNegativesAndZero() {
+        Random random = new Random(8);
+        double[] data = new double[20000];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = (i % 10 == 0) ? 0 : random.nextGaussian() * 100;
+        }
+        QuantileSketch sketch = new QuantileSketch();
+        for(double v : data) sketch.add(v);
+        assertQuantiles(sketch, data);
+    }
+
+    @Test public void sketchFoldsSmallMagnitudesWhenFull() {
+        QuantileSketch sketch = new QuantileSketch(0.01, 64);
+        for(int i = 0; i < 1000; i++) sketch.add(1000 + i);
+        for(int i = 1; i <= 1000; i++) sketch.add(i * 1e-3);
+        //the large values keep their accuracy
+        assertThat(sketch.quantile(0.99), closeTo(1980, 1980 * 0.01));
+        assertThat(sketch.quantile(0.75), closeTo(1500, 1500 * 0.01));
+    }
+
+    @Test public void sketchesMerge() {
+        Random random = new Random(9);
+        double[] data = new double[30000];
+        QuantileSketch a = new QuantileSketch();
+        QuantileSketch b = new QuantileSketch();
+        for(int i = 0; i < data.length; i++) {
+            data[i] = (i < 10000) ? random.nextDouble() * 10 : 50 + random.nextDouble() * 1000;
+            ((i % 3 == 0) ? a : b).add(data[i]);
+        }
+        a.merge(b);
+        assertQuantiles(a, data);
+    }
+
+    @Test public void welfordMatchesTwoPass() {
+        Random random = new Random(10);
+        double[] data = new double[5000];
+        ChannelStats stats = new ChannelStats();
+        ChannelStats first = new ChannelStats();
+        ChannelStats second = new ChannelStats();
+        for(int i = 0; i < data.length; i++) {
+            data[i] = 1e6 + random.nextGaussian();
+            stats.add(data[i]);
+            ((i < 1234) ? first : second).add(data[i]);
+        }
+        double mean = 0;
+        for(double v : data) mean += v;
+        mean /= data.length;
+        double var = 0;
+        for(double v : data) var += (v - mean) * (v - mean);
+        var /= data.length - 1;
+
+        assertThat(stats.getMean(), closeTo(mean, 1e-6));
+        assertThat(stats.getVariance(), closeTo(var, 1e-6));
+
+        first.merge(second);
+        assertThat(first.getCount(), is((long) data.length));
+        assertThat(first.getMean(), closeTo(mean, 1e-6));
+        assertThat(first.getVariance(), closeTo(var, 1e-6));
+        assertThat(first.getMin(), is(stats.getMin()));
+        assertThat(first.getMax(), is(stats.getMax()));
+    }
+
+    @Test public void tracksManagerChannels() {
+        TelemetryManager tm = new TelemetryManager();
+        TelemetryStats stats = new TelemetryStats();
+        stats.attach(tm);
+        assertThat(stats.get(7), is(nullValue()));
+
+        for(int i = 1; i <= 100; i++) tm.update(7, i);
+        tm.update(6, 12.5);
+        assertThat(stats.get(7).getCount(), is(100L));
+        assertThat(stats.get(7).getMax(), is(100.0));
+        assertThat(stats.get(7).getQuantile(0.95), closeTo(95, 1));
+        assertThat(stats.get(6).getStdDev(), is(Double.NaN));
+
+        TelemetryStats other = new TelemetryStats();
+        other.add(7, 500);
+        stats.merge(other);
+        assertThat(stats.get(7).getMax(), is(500.0));
+
+        stats.reset();
+        assertThat(stats.get(7), is(nullValue()));
+    }
+}
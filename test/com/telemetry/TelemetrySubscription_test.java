@@ -0,0 +1,134 @@
+package com.telemetry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+
+import com.util.Await;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+public class TelemetrySubscription_test {
+    private TelemetryManager tm;
+    private List<String> seen;
+
+    private final TelemetrySubscription.Subscriber record =
+        new TelemetrySubscription.Subscriber() {
+            public void update(int id, double value, long time) {
+                seen.add(id + "=" + value);
+            }
+        };
+
+    @Before public void setup() {
+        tm = new TelemetryManager();
+        seen = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @Test public void inlineDeliversEveryUpdateOfItsChannels() {
+        TelemetrySubscription s = tm.subscribe(new int[] { 2, 5, 2 }, record);
+        assertThat(s.getChannels(), is(new int[] { 2, 5 }));
+
+        tm.update(2, 1.0);
+        tm.update(3, 9.0);
+        tm.update(5, 2.0);
+        tm.update(2, 3.0);
+        assertThat(seen, contains("2=1.0", "5=2.0", "2=3.0"));
+
+        s.cancel();
+        tm.update(2, 4.0);
+        assertThat(seen.size(), is(3));
+        assertThat(s.getDeliveredCount(), is(3L));
+    }
+
+    @Test public void rateLimitConflatesToLatest() throws Exception {
+        TelemetrySubscription s = tm.subscribe(new TelemetrySubscription(
+            new int[] { 0, 1 }, 10, TelemetrySubscription.Delivery.INLINE,
+            TelemetrySubscription.Conflation.LATEST, record));
+
+        tm.update(0, 1.0);
+        assertThat(seen, contains("0=1.0"));
+        for(int i = 2; i <= 50; i++) tm.update(0, i);
+        tm.update(1, 7.0);
+        assertThat(seen.size(), is(1));
+
+        //held back values follow once the period is up
+        Await.until(() -> seen.size() == 3);
+        assertThat(seen, contains("0=1.0", "0=50.0", "1=7.0"));
+        assertThat(s.getConflatedCount(), is(48L));
+    }
+
+    @Test public void queueKeepsEveryValueUpToItsSize() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Double> values = Collections.synchronizedList(new ArrayList<Double>());
+        TelemetrySubscription s = tm.subscribe(new TelemetrySubscription(
+            new int[] { 4 }, 0, TelemetrySubscription.Delivery.POOL,
+            TelemetrySubscription.Conflation.ALL,
+            new TelemetrySubscription.Subscriber() {
+                public void update(int id, double value, long time) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {}
+                    values.add(value);
+                }
+            }));
+
+        //the subscriber holds the first value while the rest queue up
+        tm.update(4, -1);
+        Thread.sleep(50);
+        int total = TelemetrySubscription.QUEUE_SIZE + 100;
+        for(int i = 0; i < total; i++) tm.update(4, i);
+        release.countDown();
+
+        Await.until(() -> values.size() == 1 + TelemetrySubscription.QUEUE_SIZE);
+        assertThat(values.get(0), is(-1.0));
+        assertThat(values.get(1), is(100.0));
+        assertThat(values.get(values.size() - 1), is(total - 1.0));
+        assertThat(s.getConflatedCount(), is(100L));
+    }
+
+    @Test public void deliversOnTheEdt() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final boolean[] onEdt = new boolean[1];
+        tm.subscribe(new TelemetrySubscription(
+            new int[] { 6 }, 30, TelemetrySubscription.Delivery.EDT,
+            TelemetrySubscription.Conflation.LATEST,
+            new TelemetrySubscription.Subscriber() {
+                public void update(int id, double value, long time) {
+                    onEdt[0] = SwingUtilities.isEventDispatchThread();
+                    done.countDown();
+                }
+            }));
+        tm.update(6, 12.0);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(onEdt[0]);
+    }
+
+    @Test public void cancelledSubscriptionsArePurged() {
+        List<TelemetrySubscription> subs = new ArrayList<TelemetrySubscription>();
+        for(int i = 0; i < 100; i++) {
+            subs.add(tm.subscribe(new int[] { 1 }, record));
+        }
+        TelemetrySubscription both = tm.subscribe(new int[] { 1, 2 }, record);
+        for(int i = 0; i < 99; i++) subs.get(i).cancel();
+        assertThat(tm.getSubscriptionCount(1), is(2));
+
+        both.cancel();
+        assertThat(tm.getSubscriptionCount(1), is(1));
+        assertThat(tm.getSubscriptionCount(2), is(0));
+        tm.update(1, 5.0);
+        assertThat(seen, contains("1=5.0"));
+        assertThat(subs.get(99).getDeliveredCount(), is(1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownChannels() {
+        new TelemetrySubscription(new int[] { 300 }, 0,
+            TelemetrySubscription.Delivery.INLINE,
+            TelemetrySubscription.Conflation.LATEST, record);
+    }
+}
@@ -0,0 +1,27 @@
+package com.util;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Polling for tests of work done on other threads
+ */
+public class Await {
+    private static final int TIMEOUT_MS = 5000;
+    private static final int POLL_MS = 10;
+
+    private Await() {}
+
+    /**
+     * Waits up to five seconds for `condition` to hold, failing the test
+     * if it never does
+     */
+    public static void until(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while(!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(POLL_MS);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}